@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openbaton.catalogue.nfvo.VNFPackage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the charm of the last VNF of generated network services, which is the target of two
+ * dependencies and whose CONFIGURE scripts are matched against every VNF of the network service.
+ * createCharm also writes the charm into a temporary directory, which is what JujuVnfm.createCharm
+ * does for VNF packages without a git repository.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CharmBuilderBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int vnfs;
+
+  /** The number of configuration parameters of every VNF. */
+  @Param({"3", "50"})
+  public int parameters;
+
+  private CharmBuilder charmBuilder;
+  private NetworkService networkService;
+  private VirtualNetworkFunctionRecord vnfr;
+  private VNFPackage vnfPackage;
+  private File charmDirectory;
+
+  @Setup
+  public void createNetworkService() {
+    charmBuilder =
+        new CharmBuilder(
+            "/opt/openbaton/scripts",
+            "/var/log/openbaton/scriptsLog",
+            PosixFilePermissions.fromString("rwxr-xr-x"));
+    networkService = TestRecords.networkService("ns", vnfs);
+    for (VirtualNetworkFunctionRecord record : networkService.getVnfrList()) {
+      for (int i = 3; i < parameters; i++) TestRecords.addParameter(record, "key" + i, "value" + i);
+    }
+    vnfr = networkService.getVnfrByName("vnf" + (vnfs - 1));
+    vnfPackage = networkService.getVnfPackage(vnfr.getName());
+  }
+
+  @Setup(Level.Invocation)
+  public void createDirectory() throws IOException {
+    charmDirectory = Files.createTempDirectory("charm-benchmark").toFile();
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteDirectory() throws IOException {
+    Files.walkFileTree(
+        charmDirectory.toPath(),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+              throws IOException {
+            Files.delete(file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path directory, IOException e)
+              throws IOException {
+            Files.delete(directory);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  @Benchmark
+  public Charm build() throws IOException {
+    return charmBuilder.build(networkService, vnfr, vnfPackage);
+  }
+
+  @Benchmark
+  public File createCharm() throws IOException {
+    charmBuilder.build(networkService, vnfr, vnfPackage).writeTo(charmDirectory);
+    return charmDirectory;
+  }
+
+  @Benchmark
+  public Charm createEnvironmentVariableFile() throws IOException {
+    Charm charm = new Charm();
+    charmBuilder.createEnvironmentVariableFile(charm, networkService, vnfr);
+    return charm;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a charm from the in-memory {@link Charm} tree with reopening, appending to and
+ * chmod-ing a hook file for every fragment, which is how charms were written before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CharmWriteBenchmark {
+
+  private static final Set<PosixFilePermission> EXECUTABLE =
+      PosixFilePermissions.fromString("rwxr-xr-x");
+
+  /** The number of hook files of the charm. */
+  @Param({"4", "16", "64"})
+  public int hooks;
+
+  /** The number of fragments appended to every hook. */
+  @Param({"10", "100"})
+  public int fragments;
+
+  private File charmDirectory;
+
+  @Setup(Level.Invocation)
+  public void createDirectory() throws IOException {
+    charmDirectory = Files.createTempDirectory("charm-benchmark").toFile();
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteDirectory() throws IOException {
+    File[] hookFiles = new File(charmDirectory, "hooks").listFiles();
+    if (hookFiles != null) for (File file : hookFiles) Files.delete(file.toPath());
+    Files.deleteIfExists(new File(charmDirectory, "hooks").toPath());
+    Files.delete(charmDirectory.toPath());
+  }
+
+  private String fragment(int hook, int fragment) {
+    return "echo \"hook " + hook + " fragment " + fragment + "\" >> $CHARM_DIR/log\n";
+  }
+
+  @Benchmark
+  public File inMemory() throws IOException {
+    Charm charm = new Charm();
+    for (int hook = 0; hook < hooks; hook++) {
+      String path = "hooks/hook" + hook;
+      charm.setPermissions(path, EXECUTABLE);
+      for (int fragment = 0; fragment < fragments; fragment++)
+        charm.append(path, fragment(hook, fragment));
+    }
+    charm.writeTo(charmDirectory);
+    return charmDirectory;
+  }
+
+  @Benchmark
+  public File perAppend() throws IOException {
+    File hooksDirectory = new File(charmDirectory, "hooks");
+    hooksDirectory.mkdirs();
+    for (int hook = 0; hook < hooks; hook++) {
+      File file = new File(hooksDirectory, "hook" + hook);
+      for (int fragment = 0; fragment < fragments; fragment++) {
+        file.createNewFile();
+        Files.setPosixFilePermissions(file.toPath(), EXECUTABLE);
+        Files.write(
+            file.toPath(),
+            fragment(hook, fragment).getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+      }
+    }
+    return charmDirectory;
+  }
+}
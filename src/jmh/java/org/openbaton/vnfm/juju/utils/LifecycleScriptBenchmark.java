@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.common.Event;
+import org.openbaton.catalogue.mano.common.LifecycleEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** Renders the hook of a lifecycle event with a growing number of scripts. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LifecycleScriptBenchmark {
+
+  @Param({"1", "10", "100"})
+  public int scripts;
+
+  private CharmBuilder charmBuilder;
+  private LifecycleEvent lifecycleEvent;
+
+  @Setup
+  public void createLifecycleEvent() {
+    charmBuilder =
+        new CharmBuilder(
+            "/opt/openbaton/scripts",
+            "/var/log/openbaton/scriptsLog",
+            PosixFilePermissions.fromString("rwxr-xr-x"));
+    lifecycleEvent = new LifecycleEvent();
+    lifecycleEvent.setEvent(Event.START);
+    List<String> scriptNames = new ArrayList<>();
+    for (int i = 0; i < scripts; i++) scriptNames.add("start" + i + ".sh");
+    lifecycleEvent.setLifecycle_events(scriptNames);
+  }
+
+  @Benchmark
+  public Charm prepareLifecycleScript() throws IOException {
+    Charm charm = new Charm();
+    charmBuilder.prepareLifecycleScript(charm, "start", "vnf", lifecycleEvent);
+    return charm;
+  }
+}
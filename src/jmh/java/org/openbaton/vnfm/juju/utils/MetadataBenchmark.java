@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dumps the metadata.yaml of a charm whose requires section contains an InterfaceMap for every
+ * source VNF, as the charm of a VNF with many dependencies does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetadataBenchmark {
+
+  @Param({"1", "10", "100"})
+  public int sources;
+
+  /** The number of interfaces required from every source. */
+  @Param({"2", "20"})
+  public int interfaces;
+
+  private Map<String, Object> data;
+
+  @Setup
+  public void createData() {
+    data = new HashMap<>();
+    data.put("name", "vnf");
+    data.put("maintainer", "fokus");
+    data.put("subordinate", "false");
+    data.put("summary", "Charm created by Open Baton");
+    data.put("description", "Charm created by Open Baton");
+    Map<String, Map<String, String>> requires = new HashMap<>();
+    for (int source = 0; source < sources; source++) {
+      Map<String, String> interfaceMap = new InterfaceMap();
+      for (int i = 0; i < interfaces; i++) interfaceMap.put("interface", "parameter" + i);
+      requires.put("source" + source, interfaceMap);
+    }
+    data.put("requires", requires);
+  }
+
+  @Benchmark
+  public String dumpMetadata() {
+    return CharmBuilder.dumpMetadata(data);
+  }
+}
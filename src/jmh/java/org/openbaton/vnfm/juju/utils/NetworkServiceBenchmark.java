@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the dependency queries of the charm generation for every VNF of generated network services.
+ * The scan benchmarks compute the same results by scanning all dependencies, as NetworkService did
+ * before it kept the reverse index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NetworkServiceBenchmark {
+
+  @Param({"10", "100", "2000"})
+  public int vnfs;
+
+  private NetworkService networkService;
+  private List<String> names;
+
+  @Setup
+  public void createNetworkService() {
+    networkService = TestRecords.networkService("ns", vnfs);
+    names = new ArrayList<>();
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList())
+      names.add(vnfr.getName());
+  }
+
+  @Benchmark
+  public void sourceQueries(Blackhole blackhole) {
+    for (String name : names) {
+      if (networkService.vnfIsSource(name)) {
+        blackhole.consume(networkService.getProvidesOfVnf(name));
+        blackhole.consume(networkService.getTargetsOfVnf(name));
+      }
+    }
+  }
+
+  @Benchmark
+  public void targetQueries(Blackhole blackhole) {
+    for (String name : names) {
+      if (networkService.vnfIsTarget(name)) {
+        blackhole.consume(networkService.getSourcesOfVnf(name));
+        for (String source : networkService.getSourcesNames(name))
+          blackhole.consume(networkService.getParameters(source, name));
+      }
+    }
+  }
+
+  @Benchmark
+  public void sourceQueriesByScan(Blackhole blackhole) {
+    Map<String, Map<String, List<String>>> dependencies = networkService.getDependencies();
+    for (String name : names) {
+      boolean isSource = false;
+      for (Map<String, List<String>> sources : dependencies.values()) {
+        if (sources.containsKey(name)) {
+          isSource = true;
+          break;
+        }
+      }
+      if (isSource) {
+        Set<String> provides = new HashSet<>();
+        Map<String, List<String>> targets = new HashMap<>();
+        for (Map.Entry<String, Map<String, List<String>>> entry : dependencies.entrySet()) {
+          List<String> parameters = entry.getValue().get(name);
+          if (parameters != null) {
+            provides.addAll(parameters);
+            targets.put(entry.getKey(), parameters);
+          }
+        }
+        blackhole.consume(provides);
+        blackhole.consume(targets);
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the recovery of the network services on startup: a snapshot of all network services is
+ * replayed, followed by a journal of status changes that were appended after it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecoveryBenchmark {
+
+  @Param({"1000", "5000"})
+  public int networkServices;
+
+  /** The number of records journaled after the snapshot. */
+  @Param({"0", "1000"})
+  public int journalRecords;
+
+  private File directory;
+
+  @Setup
+  public void writeState() throws IOException {
+    directory = Files.createTempDirectory("recovery-benchmark").toFile();
+    StateStore stateStore = new StateStore(directory, Integer.MAX_VALUE, false);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    List<NetworkServiceMutation> snapshot = new ArrayList<>();
+    for (int i = 0; i < networkServices; i++)
+      snapshot.addAll(NetworkServiceMutation.describe(TestRecords.networkService("ns" + i, 5)));
+    stateStore.snapshot(snapshot);
+    for (int i = 0; i < journalRecords; i++) {
+      stateStore.append(
+          new NetworkServiceMutation.SetVnfStatus(
+              "ns" + i % networkServices, "vnf" + i % 5, VnfState.STARTED));
+    }
+    // waits for the snapshot
+    stateStore.close();
+  }
+
+  @TearDown
+  public void deleteState() {
+    FileUtils.removeDirectory(directory);
+  }
+
+  /**
+   * Recover the state. Every recovery starts a new empty journal, which is closed again, so the
+   * state stays the same across invocations.
+   */
+  @Benchmark
+  public Map<String, NetworkService> recover() throws IOException {
+    Map<String, NetworkService> recovered = new HashMap<>();
+    StateStore stateStore = new StateStore(directory, Integer.MAX_VALUE, false);
+    stateStore.recover(recovered);
+    stateStore.close();
+    return recovered;
+  }
+}
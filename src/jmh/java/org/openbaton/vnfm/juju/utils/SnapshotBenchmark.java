@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the part of a snapshot that runs while the VNFM holds its lock. collect only gathers the
+ * mutations describing the network services, as the VNFM does now. collectAndSerialize also
+ * serializes them, as the VNFM did when the whole snapshot was written under the lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SnapshotBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int networkServices;
+
+  private List<NetworkService> networkServiceList;
+
+  @Setup
+  public void createNetworkServices() {
+    networkServiceList = new ArrayList<>();
+    for (int i = 0; i < networkServices; i++)
+      networkServiceList.add(TestRecords.networkService("ns" + i, 10));
+  }
+
+  @Benchmark
+  public List<NetworkServiceMutation> collect() {
+    List<NetworkServiceMutation> snapshot = new ArrayList<>();
+    for (NetworkService networkService : networkServiceList)
+      snapshot.addAll(NetworkServiceMutation.describe(networkService));
+    return snapshot;
+  }
+
+  @Benchmark
+  public List<NetworkServiceMutation> collectAndSerialize() throws IOException {
+    List<NetworkServiceMutation> snapshot = collect();
+    OutputStream discard =
+        new OutputStream() {
+          @Override
+          public void write(int b) {}
+
+          @Override
+          public void write(byte[] b, int off, int len) {}
+        };
+    // one stream per record, as the StateStore writes them
+    for (NetworkServiceMutation mutation : snapshot) {
+      try (ObjectOutputStream out = new ObjectOutputStream(discard)) {
+        out.writeObject(mutation);
+      }
+    }
+    return snapshot;
+  }
+}
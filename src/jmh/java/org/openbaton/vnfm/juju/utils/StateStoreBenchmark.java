@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures appending records of different sizes to the journal, with and without forcing them to
+ * the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StateStoreBenchmark {
+
+  @Param({"false", "true"})
+  public boolean sync;
+
+  /** The number of VNFCs of the journaled VNFR. */
+  @Param({"1", "10", "100"})
+  public int vnfcs;
+
+  private File directory;
+  private StateStore stateStore;
+  private NetworkServiceMutation mutation;
+
+  @Setup
+  public void openStateStore() throws IOException {
+    directory = Files.createTempDirectory("state-benchmark").toFile();
+    stateStore = new StateStore(directory, Integer.MAX_VALUE, sync);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    mutation =
+        new NetworkServiceMutation.ReplaceVnfr(
+            "ns", TestRecords.vnfr("ns", "vnf", "type", vnfcs, "private", "mgmt"));
+  }
+
+  @TearDown
+  public void closeStateStore() {
+    stateStore.close();
+    File[] files = directory.listFiles();
+    if (files != null) for (File file : files) file.delete();
+    directory.delete();
+  }
+
+  @Benchmark
+  public void append() throws IOException {
+    stateStore.append(mutation);
+  }
+}
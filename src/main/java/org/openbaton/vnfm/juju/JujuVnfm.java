@@ -16,51 +16,345 @@
 
 package org.openbaton.vnfm.juju;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 import org.openbaton.catalogue.mano.common.Event;
 import org.openbaton.catalogue.mano.common.LifecycleEvent;
 import org.openbaton.catalogue.mano.descriptor.VNFComponent;
 import org.openbaton.catalogue.mano.descriptor.VNFDConnectionPoint;
 import org.openbaton.catalogue.mano.descriptor.VirtualDeploymentUnit;
 import org.openbaton.catalogue.mano.descriptor.VirtualNetworkFunctionDescriptor;
+import org.openbaton.catalogue.mano.record.Ip;
 import org.openbaton.catalogue.mano.record.VNFCInstance;
+import org.openbaton.catalogue.mano.record.Status;
 import org.openbaton.catalogue.mano.record.VNFRecordDependency;
 import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
 import org.openbaton.catalogue.nfvo.*;
 import org.openbaton.catalogue.nfvo.messages.Interfaces.NFVMessage;
 import org.openbaton.catalogue.nfvo.messages.OrVnfmGenericMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmHealVNFRequestMessage;
 import org.openbaton.catalogue.nfvo.messages.OrVnfmInstantiateMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmScalingMessage;
 import org.openbaton.catalogue.nfvo.messages.OrVnfmStartStopMessage;
 import org.openbaton.common.vnfm_sdk.amqp.AbstractVnfmSpringAmqp;
 import org.openbaton.common.vnfm_sdk.exception.BadFormatException;
 import org.openbaton.common.vnfm_sdk.exception.NotFoundException;
 import org.openbaton.common.vnfm_sdk.exception.VnfmSdkException;
 import org.openbaton.common.vnfm_sdk.utils.VnfmUtils;
-import org.openbaton.vnfm.juju.utils.InterfaceMap;
+import org.openbaton.vnfm.juju.client.ApiConnectionPool;
+import org.openbaton.vnfm.juju.client.ApiJujuClient;
+import org.openbaton.vnfm.juju.client.CliJujuClient;
+import org.openbaton.vnfm.juju.client.ControllerPool;
+import org.openbaton.vnfm.juju.client.JujuClient;
+import org.openbaton.vnfm.juju.client.JujuException;
+import org.openbaton.vnfm.juju.client.JujuModel;
+import org.openbaton.vnfm.juju.client.JujuStatus;
+import org.openbaton.vnfm.juju.client.JujuStatusWatcher;
+import org.openbaton.vnfm.juju.client.ReleaseBatcher;
+import org.openbaton.vnfm.juju.client.ScaleBatcher;
+import org.openbaton.vnfm.juju.client.UnitHealer;
+import org.openbaton.vnfm.juju.utils.BundleBuilder;
+import org.openbaton.vnfm.juju.utils.Charm;
+import org.openbaton.vnfm.juju.utils.CharmBuilder;
+import org.openbaton.vnfm.juju.utils.CharmCache;
+import org.openbaton.vnfm.juju.utils.CommandException;
+import org.openbaton.vnfm.juju.utils.CommandExecutor;
+import org.openbaton.vnfm.juju.utils.FileUtils;
+import org.openbaton.vnfm.juju.utils.GitRepositoryCache;
+import org.openbaton.vnfm.juju.utils.HashRing;
+import org.openbaton.vnfm.juju.utils.MessageDispatcher;
+import org.openbaton.vnfm.juju.utils.MetricRegistry;
 import org.openbaton.vnfm.juju.utils.NetworkService;
+import org.openbaton.vnfm.juju.utils.NetworkServiceMutation;
+import org.openbaton.vnfm.juju.utils.ReplicaGroup;
+import org.openbaton.vnfm.juju.utils.StateStore;
+import org.openbaton.vnfm.juju.utils.TypedJsonAdapter;
+import org.openbaton.vnfm.juju.utils.VnfState;
+import org.openbaton.vnfm.juju.utils.Workspace;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
-
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.ListenableFutureTask;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
+import java.security.GeneralSecurityException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by tbr on 24.08.16.
  */
 public class JujuVnfm extends AbstractVnfmSpringAmqp {
 
+  // has to be changed whenever the CharmBuilder produces different charms for the same input
+  private static final String CHARM_FORMAT_VERSION = "2";
+
+  // types of the messages exchanged between the replicas
+  private static final String FORWARDED_MESSAGE = "nfv-message";
+  private static final String HANDOFF_PENDING = "handoff-pending";
+  private static final String HANDOFF = "handoff";
+  private static final Type NS_IDS_TYPE = new TypeToken<List<String>>() {}.getType();
+  private static final Type MUTATIONS_TYPE =
+      new TypeToken<List<NetworkServiceMutation>>() {}.getType();
+
   private Map<String, NetworkService> networkServiceMap;
 
   private Set<PosixFilePermission> permissions;
 
+  // used for the requests to Juju that do not concern a model of a network service
+  private JujuClient jujuClient;
+
+  // used for the network services that are not placed in a model of their own
+  private JujuModel defaultModel;
+
+  // <network service id, model> of the network services placed in a model of their own
+  private Map<String, JujuModel> models;
+
+  // comma separated controllers; if set, every network service is deployed into a model of its own
+  // on the controller with the fewest models, otherwise everything goes to the current model
+  @Value("${vnfm.juju.controllers:}")
+  private String jujuControllers;
+
+  // null if the network services are not placed in models of their own
+  private ControllerPool controllerPool;
+
+  // contains the charm directories of the network services while they are deployed
+  private Workspace workspace;
+
+  @Value("${vnfm.workspace.path:/tmp/openbaton/juju}")
+  private String workspacePath;
+
+  // if enabled, the requests to the models of the API controller go over pooled connections to the
+  // Juju API instead of the juju executable, which remains the fallback
+  @Value("${vnfm.juju.api.enabled:false}")
+  private boolean jujuApiEnabled;
+
+  @Value("${vnfm.juju.api.endpoint:}")
+  private String jujuApiEndpoint;
+
+  @Value("${vnfm.juju.api.controller:}")
+  private String jujuApiController;
+
+  // the model of the network services that are not placed in a model of their own
+  @Value("${vnfm.juju.api.model:default}")
+  private String jujuApiModel;
+
+  @Value("${vnfm.juju.api.user:admin}")
+  private String jujuApiUser;
+
+  @Value("${vnfm.juju.api.password:}")
+  private String jujuApiPassword;
+
+  @Value("${vnfm.juju.api.ca-cert:}")
+  private String jujuApiCaCert;
+
+  @Value("${vnfm.juju.api.pool-size:4}")
+  private int jujuApiPoolSize;
+
+  // in seconds
+  @Value("${vnfm.juju.api.timeout:120}")
+  private long jujuApiTimeout;
+
+  // null if the Juju API is not used
+  private ApiConnectionPool apiConnectionPool;
+
+  // the juju and git executables; a name is looked up in the PATH of the VNFM
+  @Value("${vnfm.juju.binary:juju}")
+  private String jujuBinary;
+
+  @Value("${vnfm.git.binary:git}")
+  private String gitBinary;
+
+  // timers of the deployment phases and gauges, exposed over JMX and HTTP
+  private MetricRegistry metrics;
+  private AtomicInteger runningDeployments = new AtomicInteger();
+
+  // port of the local HTTP server that serves the metrics; 0 disables the server
+  @Value("${vnfm.metrics.port:9180}")
+  private int metricsPort;
+
+  @Value("${vnfm.metrics.address:127.0.0.1}")
+  private String metricsAddress;
+
+  // refreshes the juju status of the models
+  private ScheduledExecutorService statusScheduler;
+
+  // time in seconds between two refreshes of the juju status; 0 disables the periodic refresh
+  @Value("${vnfm.status.interval:30}")
+  private long statusInterval;
+
+  // executes the batches of the scale and release batchers of the models
+  private ScheduledExecutorService batchScheduler;
+
+  // time in milliseconds that scale requests of a VNF are collected before juju is executed
+  @Value("${vnfm.scale.window:2000}")
+  private long scaleWindow;
+
+  // time in milliseconds that the VNFs of a network service are collected before they are removed,
+  // unless the last VNF of the network service is released earlier
+  @Value("${vnfm.release.window:5000}")
+  private long releaseWindow;
+
+  @Value("${vnfm.heal.resolve-attempts:3}")
+  private int healResolveAttempts;
+
+  // time in seconds to wait after the first juju resolved, doubled after each further attempt
+  @Value("${vnfm.heal.backoff:5}")
+  private long healBackoff;
+
+  // maximum number of units of one VNF that are healed at the same time
+  @Value("${vnfm.heal.parallelism:1}")
+  private int healParallelism;
+
+  // executes the juju and git commands
+  private CommandExecutor commandExecutor;
+
+  @Value("${vnfm.command.threads:16}")
+  private int commandThreads;
+
+  @Value("${vnfm.command.queue-size:200}")
+  private int commandQueueSize;
+
+  // in seconds
+  @Value("${vnfm.command.timeout:900}")
+  private long commandTimeout;
+
+  // number of characters of the output that are kept for error messages
+  @Value("${vnfm.command.output-size:16384}")
+  private int commandOutputSize;
+
+  // serializes the messages of each network service
+  private MessageDispatcher dispatcher;
+  private ExecutorService dispatcherExecutor;
+
+  @Value("${vnfm.dispatcher.threads:30}")
+  private int dispatcherThreads;
+
+  // partitions the network services between the replicas of the VNFM; null if disabled
+  private ReplicaGroup replicaGroup;
+  private ScheduledExecutorService replicaScheduler;
+
+  // <replica, <network service id, handoff>> of the network services that other replicas are
+  // handing over; their mailboxes are held until the state arrived
+  private Map<String, Map<String, SettableListenableFuture<Void>>> incomingHandoffs;
+
+  // network services whose state is about to be sent to another replica
+  private Set<String> outgoingHandoffs;
+
+  // <network service id, arrival> of the network services that this replica owns without knowing
+  // them; their mailboxes are held until the state arrived or for three heartbeats. The arrival is
+  // kept after giving up, so that the following messages of the network service do not wait again
+  private Map<String, SettableListenableFuture<Void>> awaitedNetworkServices;
+
+  // writes and reads the JSON payloads of the messages exchanged between the replicas; only the
+  // NFVO messages and mutations known here are read
+  private Gson replicaGson;
+
+  @Autowired private ConnectionFactory connectionFactory;
+
+  @Value("${vnfm.replicas.enabled:false}")
+  private boolean replicasEnabled;
+
+  // unique id of this replica; a random one is chosen if empty
+  @Value("${vnfm.replicas.id:}")
+  private String replicaId;
+
+  @Value("${vnfm.replicas.exchange:juju-vnfm.replicas}")
+  private String replicasExchange;
+
+  // time in seconds between two heartbeats; a replica is considered gone after missing three
+  @Value("${vnfm.replicas.heartbeat:5}")
+  private long replicasHeartbeat;
+
+  @Value("${vnfm.replicas.virtual-nodes:160}")
+  private int replicasVirtualNodes;
+
+  // runs the charm creation, deployment and relation steps of the network services and removes the
+  // machines of released ones
+  private ExecutorService deployExecutor;
+
+  // coordinates the deployments of whole network services and waits for scale requests; its
+  // threads mostly wait for the steps running on the deployExecutor or the scaleScheduler
+  private ExecutorService networkServiceDeployExecutor;
+
+  @Value("${vnfm.deploy.parallelism:8}")
+  private int deployParallelism;
+
+  // 'charms' deploys every charm on its own, 'bundle' deploys the whole network service at once
+  @Value("${vnfm.deploy.mode:charms}")
+  private String deployMode;
+
+  // mirrors of the script repositories; null if the cache is disabled
+  private GitRepositoryCache gitRepositoryCache;
+
+  @Value("${vnfm.git-cache.enabled:true}")
+  private boolean gitCacheEnabled;
+
+  @Value("${vnfm.git-cache.path:/var/cache/openbaton/juju/git}")
+  private String gitCachePath;
+
+  // in MB
+  @Value("${vnfm.git-cache.max-size:1024}")
+  private long gitCacheMaxSize;
+
+  // built charms; null if the cache is disabled
+  private CharmCache charmCache;
+
+  @Value("${vnfm.charm-cache.enabled:true}")
+  private boolean charmCacheEnabled;
+
+  @Value("${vnfm.charm-cache.path:/var/cache/openbaton/juju/charms}")
+  private String charmCachePath;
+
+  // in MB
+  @Value("${vnfm.charm-cache.max-size:512}")
+  private long charmCacheMaxSize;
+
+  // persists the network services across restarts; null if disabled
+  private StateStore stateStore;
+
+  @Value("${vnfm.state.enabled:true}")
+  private boolean stateEnabled;
+
+  @Value("${vnfm.state.path:/var/lib/openbaton/juju/state}")
+  private String statePath;
+
+  // minimum number of journal records after which a snapshot is written; the journal has to grow
+  // to half the size of the last snapshot as well
+  @Value("${vnfm.state.snapshot-interval:1000}")
+  private int stateSnapshotInterval;
+
+  @Value("${vnfm.state.sync:false}")
+  private boolean stateSync;
+
   @Value("${vnfm.script-path:/opt/openbaton/scripts}")
   private String scriptPath;
 
@@ -101,15 +395,654 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
     permissions.add(PosixFilePermission.OWNER_WRITE);
   }
 
+  @PostConstruct
+  private void initialize() {
+    metrics = new MetricRegistry("org.openbaton.vnfm.juju", "juju_vnfm_");
+    if (replicasEnabled && replicaId.isEmpty()) replicaId = UUID.randomUUID().toString();
+    // replicas sharing the workspace path must not sweep the leased directories of each other
+    workspace =
+        new Workspace(
+            replicasEnabled ? new File(workspacePath, replicaId) : new File(workspacePath));
+    commandExecutor =
+        new CommandExecutor(commandThreads, commandQueueSize, commandTimeout, commandOutputSize);
+    commandExecutor.registerMBean("org.openbaton.vnfm.juju:type=CommandExecutor");
+    CliJujuClient cliJujuClient = new CliJujuClient(commandExecutor);
+    cliJujuClient.setJujuBinary(jujuBinary);
+    jujuClient = cliJujuClient;
+    if (jujuApiEnabled) jujuClient = createApiClient(cliJujuClient);
+    List<String> controllers = new ArrayList<>();
+    for (String controller : jujuControllers.split(",")) {
+      if (!controller.trim().isEmpty()) controllers.add(controller.trim());
+    }
+    if (!controllers.isEmpty()) controllerPool = new ControllerPool(controllers);
+    // one thread per controller, so that the status refreshes of many models do not lag behind
+    statusScheduler = Executors.newScheduledThreadPool(Math.max(1, controllers.size()));
+    batchScheduler = Executors.newScheduledThreadPool(deployParallelism);
+    dispatcherExecutor = Executors.newFixedThreadPool(dispatcherThreads);
+    dispatcher = new MessageDispatcher(dispatcherExecutor);
+    deployExecutor = Executors.newFixedThreadPool(deployParallelism);
+    models = new HashMap<>();
+    defaultModel = createModel(null);
+    // with a controller pool nothing is deployed into the current model, so it is not watched
+    if (controllerPool == null && statusInterval > 0) defaultModel.getStatusWatcher().start();
+    networkServiceDeployExecutor = Executors.newCachedThreadPool();
+    if (gitCacheEnabled) {
+      gitRepositoryCache =
+          new GitRepositoryCache(
+              new File(gitCachePath), gitCacheMaxSize * 1024 * 1024, commandExecutor);
+      gitRepositoryCache.setGitBinary(gitBinary);
+    }
+    if (charmCacheEnabled)
+      charmCache = new CharmCache(new File(charmCachePath), charmCacheMaxSize * 1024 * 1024);
+    if (stateEnabled) {
+      stateStore = new StateStore(new File(statePath), stateSnapshotInterval, stateSync);
+      try {
+        stateStore.recover(networkServiceMap);
+      } catch (IOException e) {
+        log.error("Could not recover the network services, they will not be persisted", e);
+        stateStore = null;
+      }
+    }
+    for (NetworkService networkService : networkServiceMap.values()) adoptModel(networkService);
+    registerGauges();
+    if (replicasEnabled) startReplicaGroup();
+    if (metricsPort > 0) {
+      try {
+        metrics.startHttpServer(metricsAddress, metricsPort);
+      } catch (IOException e) {
+        log.error("Could not start the metrics server on port " + metricsPort, e);
+      }
+    }
+  }
+
+  /**
+   * Create the client that talks to the Juju API of the configured controller. The requests it
+   * cannot handle are passed to the fallback client.
+   *
+   * @param fallback
+   * @return the API client or the fallback if the API configuration is invalid
+   */
+  private JujuClient createApiClient(JujuClient fallback) {
+    try {
+      URI endpoint = new URI(jujuApiEndpoint);
+      SSLContext sslContext =
+          jujuApiCaCert.isEmpty()
+              ? SSLContext.getDefault()
+              : ApiConnectionPool.createSslContext(new File(jujuApiCaCert));
+      apiConnectionPool =
+          new ApiConnectionPool(
+              endpoint,
+              jujuApiUser,
+              jujuApiPassword,
+              sslContext,
+              jujuApiPoolSize,
+              jujuApiTimeout * 1000);
+    } catch (URISyntaxException | IOException | GeneralSecurityException e) {
+      log.error("Could not set up the Juju API client, using the juju executable only", e);
+      return fallback;
+    }
+    log.info("Using the Juju API of controller " + jujuApiController + " at " + jujuApiEndpoint);
+    if (jujuApiModel.isEmpty())
+      return new ApiJujuClient(apiConnectionPool, jujuApiController, null, fallback);
+    // the deployments that go over the juju executable must end up in the same model as the
+    // requests that go over the API, whatever the current model of the executable is
+    return new ApiJujuClient(
+        apiConnectionPool,
+        jujuApiController,
+        jujuApiModel,
+        fallback.forModel(jujuApiController + ":" + jujuApiModel));
+  }
+
+  private void registerGauges() {
+    metrics.gauge(
+        "network-services",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            synchronized (JujuVnfm.this) {
+              return networkServiceMap.size();
+            }
+          }
+        });
+    metrics.gauge(
+        "deployments.running",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return runningDeployments.get();
+          }
+        });
+    metrics.gauge(
+        "dispatcher.mailboxes",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return dispatcher.getActiveMailboxes();
+          }
+        });
+    metrics.gauge(
+        "models",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            synchronized (models) {
+              return models.size();
+            }
+          }
+        });
+    metrics.gauge(
+        "commands.queued",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return commandExecutor.getQueueDepth();
+          }
+        });
+    metrics.gauge(
+        "commands.running",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return commandExecutor.getActiveCommands();
+          }
+        });
+  }
+
+  @PreDestroy
+  private void tearDown() {
+    if (replicaGroup != null) {
+      // queues the handoffs of all network services to the remaining replicas
+      replicaGroup.stop();
+      replicaScheduler.shutdown();
+    }
+    dispatcherExecutor.shutdown();
+    if (replicaGroup != null) {
+      try {
+        dispatcherExecutor.awaitTermination(3 * replicasHeartbeat, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    deployExecutor.shutdown();
+    networkServiceDeployExecutor.shutdown();
+    statusScheduler.shutdown();
+    batchScheduler.shutdown();
+    commandExecutor.shutdown();
+    if (apiConnectionPool != null) apiConnectionPool.close();
+    if (stateStore != null) stateStore.close();
+    metrics.shutdown();
+    workspace.shutdown();
+  }
+
+  /**
+   * Hand the message over to the mailbox of its network service. Messages of the same network
+   * service are handled in the order they arrive, messages of different network services are
+   * handled in parallel. If the network service is owned by another replica, the message is
+   * forwarded to it instead.
+   *
+   * @param message
+   * @throws NotFoundException
+   * @throws BadFormatException
+   */
   @Override
-  protected synchronized void onAction(NFVMessage message)
-      throws NotFoundException, BadFormatException {
+  protected void onAction(final NFVMessage message) throws NotFoundException, BadFormatException {
+    route(message);
+  }
+
+  /**
+   * Dispatch a message if this replica owns its network service, otherwise forward it to the owner.
+   *
+   * @param message
+   */
+  private void route(NFVMessage message) {
+    String nsrId = getNsrId(message);
+    if (replicaGroup != null) {
+      String owner = replicaGroup.getOwner(nsrId);
+      if (owner != null && !owner.equals(replicaGroup.getId())) {
+        log.debug(
+            "Forwarding "
+                + message.getAction()
+                + " of network service "
+                + nsrId
+                + " to replica "
+                + owner);
+        try {
+          replicaGroup.send(
+              owner, FORWARDED_MESSAGE, replicaGson.toJson(message, NFVMessage.class));
+          return;
+        } catch (AmqpException | JsonParseException e) {
+          log.error("Could not forward the message to replica " + owner + ", handling it here", e);
+        }
+      }
+    }
+    dispatch(nsrId, message);
+  }
+
+  /**
+   * Add a message to the mailbox of its network service. With replicas enabled, a message that
+   * needs the state of a network service this replica does not know waits for it, see
+   * awaitNetworkService.
+   *
+   * @param nsrId
+   * @param message
+   */
+  private void dispatch(final String nsrId, final NFVMessage message) {
+    final Runnable handle =
+        new Runnable() {
+          @Override
+          public void run() {
+            long start = System.nanoTime();
+            try {
+              handleMessage(message);
+            } finally {
+              metrics.timer("message." + message.getAction()).stop(start);
+            }
+          }
+        };
+    if (replicaGroup == null) {
+      dispatcher.dispatch(nsrId, handle);
+      return;
+    }
+    dispatcher.dispatch(
+        nsrId,
+        new Runnable() {
+          @Override
+          public void run() {
+            if (lacksState(message)) awaitNetworkService(nsrId, handle);
+            else handle.run();
+          }
+        });
+  }
+
+  /**
+   * Returns true if the passed message needs the state of a VNF that this replica does not know.
+   * RELEASE_RESOURCES does not need it, it removes what it can.
+   *
+   * @param message
+   * @return
+   */
+  private boolean lacksState(NFVMessage message) {
+    VirtualNetworkFunctionRecord vnfr;
+    switch (message.getAction()) {
+      case MODIFY:
+        vnfr = ((OrVnfmGenericMessage) message).getVnfr();
+        break;
+      case START:
+        vnfr = ((OrVnfmStartStopMessage) message).getVirtualNetworkFunctionRecord();
+        break;
+      case SCALE_OUT:
+      case SCALE_IN:
+        vnfr = ((OrVnfmScalingMessage) message).getVirtualNetworkFunctionRecord();
+        break;
+      case HEAL:
+        vnfr = ((OrVnfmHealVNFRequestMessage) message).getVirtualNetworkFunctionRecord();
+        break;
+      default:
+        return false;
+    }
+    return !isInstantiated(vnfr);
+  }
+
+  /**
+   * Hold the mailbox of a network service that this replica owns without knowing it, e.g. because a
+   * message was forwarded to it before the previous owner announced the handoff. The passed message
+   * handler is executed once the state arrived or after three heartbeats, before the following
+   * messages of the network service. If the network service was already given up, the handler is
+   * executed right away.
+   *
+   * @param nsId
+   * @param handle
+   */
+  private void awaitNetworkService(final String nsId, Runnable handle) {
+    SettableListenableFuture<Void> arrival;
+    synchronized (awaitedNetworkServices) {
+      arrival = awaitedNetworkServices.get(nsId);
+      if (arrival == null) {
+        arrival = new SettableListenableFuture<>();
+        awaitedNetworkServices.put(nsId, arrival);
+        final SettableListenableFuture<Void> timeout = arrival;
+        replicaScheduler.schedule(
+            new Runnable() {
+              @Override
+              public void run() {
+                if (timeout.set(null))
+                  log.warn("The state of network service " + nsId + " did not arrive");
+              }
+            },
+            3 * replicasHeartbeat,
+            TimeUnit.SECONDS);
+        log.info("Holding the messages of network service " + nsId + " until its state arrived");
+      }
+    }
+    if (arrival.isDone()) handle.run();
+    else dispatcher.holdUntil(arrival, handle);
+  }
+
+  /**
+   * Release the mailbox of a network service whose state arrived or that was removed.
+   *
+   * @param nsId
+   */
+  private void stopAwaitingNetworkService(String nsId) {
+    if (awaitedNetworkServices == null) return;
+    SettableListenableFuture<Void> arrival;
+    synchronized (awaitedNetworkServices) {
+      arrival = awaitedNetworkServices.remove(nsId);
+    }
+    if (arrival != null) arrival.set(null);
+  }
+
+  /**
+   * Join the other replicas of the VNFM. Until their heartbeats arrive, this replica handles all
+   * network services.
+   */
+  private void startReplicaGroup() {
+    incomingHandoffs = new HashMap<>();
+    outgoingHandoffs = new HashSet<>();
+    awaitedNetworkServices = new HashMap<>();
+    replicaGson =
+        new GsonBuilder()
+            .registerTypeHierarchyAdapter(
+                NFVMessage.class,
+                new TypedJsonAdapter<>(
+                    Arrays.<Class<? extends NFVMessage>>asList(
+                        OrVnfmInstantiateMessage.class,
+                        OrVnfmGenericMessage.class,
+                        OrVnfmStartStopMessage.class,
+                        OrVnfmScalingMessage.class,
+                        OrVnfmHealVNFRequestMessage.class)))
+            .registerTypeHierarchyAdapter(
+                NetworkServiceMutation.class, NetworkServiceMutation.jsonAdapter())
+            .create();
+    replicaScheduler = Executors.newSingleThreadScheduledExecutor();
+    replicaGroup =
+        new ReplicaGroup(
+            connectionFactory,
+            replicasExchange,
+            replicaId,
+            replicasHeartbeat,
+            replicasVirtualNodes,
+            replicaScheduler);
+    replicaGroup.start(
+        new ReplicaGroup.Listener() {
+          @Override
+          public void membersChanged(HashRing ring) {
+            rebalance(ring);
+          }
+
+          @Override
+          public void received(String sender, String type, String payload) {
+            onReplicaMessage(sender, type, payload);
+          }
+        });
+    metrics.gauge(
+        "replicas",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return replicaGroup.getRing().getMembers().size();
+          }
+        });
+  }
+
+  /**
+   * Handle a message of another replica. Forwarded NFVO messages are routed again, so that they
+   * reach the owner even if the sender did not know about a change of the group yet. Payloads that
+   * cannot be read as the type of their message are ignored.
+   *
+   * @param sender
+   * @param type
+   * @param payload
+   */
+  private void onReplicaMessage(String sender, String type, String payload) {
+    try {
+      if (FORWARDED_MESSAGE.equals(type)) route(replicaGson.fromJson(payload, NFVMessage.class));
+      else if (HANDOFF_PENDING.equals(type)) {
+        List<String> nsIds = replicaGson.fromJson(payload, NS_IDS_TYPE);
+        for (String nsId : nsIds) awaitHandoff(sender, nsId);
+      } else if (HANDOFF.equals(type)) {
+        List<NetworkServiceMutation> mutations = replicaGson.fromJson(payload, MUTATIONS_TYPE);
+        takeOver(sender, mutations);
+      } else log.warn("Ignoring message of unknown type " + type + " from replica " + sender);
+    } catch (JsonParseException e) {
+      log.error("Ignoring unreadable message of type " + type + " from replica " + sender, e);
+    }
+  }
+
+  /**
+   * Hand the network services over that are owned by another replica after the group changed. The
+   * handoffs expected from replicas that left are given up after three heartbeats, which leaves a
+   * replica that left on shutdown the time to send its network services.
+   *
+   * @param ring
+   */
+  private void rebalance(HashRing ring) {
+    synchronized (incomingHandoffs) {
+      for (String replica : incomingHandoffs.keySet()) {
+        if (!ring.getMembers().contains(replica)) scheduleGiveUpHandoffs(replica);
+      }
+    }
+    List<String> moved = new ArrayList<>();
+    synchronized (this) {
+      for (String nsId : networkServiceMap.keySet()) {
+        String owner = ring.getOwner(nsId);
+        if (owner != null && !owner.equals(replicaId)) moved.add(nsId);
+      }
+    }
+    handOff(moved, ring);
+  }
+
+  /**
+   * Hand network services over to their owners. The owners are told right away, so that they hold
+   * the mailboxes of the network services until the state arrived. The state itself is sent by a
+   * task in the mailbox of each network service, so that the messages already queued here are
+   * handled first.
+   *
+   * @param nsIds
+   * @param ring
+   */
+  private void handOff(Collection<String> nsIds, HashRing ring) {
+    Map<String, ArrayList<String>> nsIdsByOwner = new HashMap<>();
+    synchronized (this) {
+      for (String nsId : nsIds) {
+        String owner = ring.getOwner(nsId);
+        if (owner == null || owner.equals(replicaId) || !outgoingHandoffs.add(nsId)) continue;
+        if (!nsIdsByOwner.containsKey(owner)) nsIdsByOwner.put(owner, new ArrayList<String>());
+        nsIdsByOwner.get(owner).add(nsId);
+      }
+    }
+    for (Map.Entry<String, ArrayList<String>> entry : nsIdsByOwner.entrySet()) {
+      final String owner = entry.getKey();
+      try {
+        replicaGroup.send(
+            owner, HANDOFF_PENDING, replicaGson.toJson(entry.getValue(), NS_IDS_TYPE));
+      } catch (AmqpException e) {
+        log.error("Could not hand network services over to replica " + owner, e);
+        synchronized (this) {
+          outgoingHandoffs.removeAll(entry.getValue());
+        }
+        continue;
+      }
+      for (final String nsId : entry.getValue()) {
+        dispatcher.dispatch(
+            nsId,
+            new Runnable() {
+              @Override
+              public void run() {
+                sendHandoff(nsId, owner);
+              }
+            });
+      }
+    }
+  }
+
+  /**
+   * Send the state of a network service to another replica and forget it here. The receiver
+   * rebuilds the network service from scratch; if it was removed in the meantime, the receiver
+   * removes it, too.
+   *
+   * @param nsId
+   * @param owner
+   */
+  private void sendHandoff(String nsId, String owner) {
+    ArrayList<NetworkServiceMutation> mutations = new ArrayList<>();
+    mutations.add(new NetworkServiceMutation.Remove(nsId));
+    synchronized (this) {
+      outgoingHandoffs.remove(nsId);
+      NetworkService networkService = networkServiceMap.get(nsId);
+      if (networkService != null) mutations.addAll(NetworkServiceMutation.describe(networkService));
+    }
+    try {
+      replicaGroup.send(owner, HANDOFF, replicaGson.toJson(mutations, MUTATIONS_TYPE));
+    } catch (AmqpException e) {
+      log.error(
+          "Could not hand network service " + nsId + " over to replica " + owner + ", keeping it",
+          e);
+      return;
+    }
+    removeNetworkService(nsId);
+    unregisterModel(nsId);
+    log.info("Handed network service " + nsId + " over to replica " + owner);
+  }
+
+  /**
+   * Hold the mailbox of a network service until its state arrived from another replica.
+   *
+   * @param sender
+   * @param nsId
+   */
+  private void awaitHandoff(final String sender, String nsId) {
+    final SettableListenableFuture<Void> handoff = new SettableListenableFuture<>();
+    synchronized (incomingHandoffs) {
+      Map<String, SettableListenableFuture<Void>> handoffs = incomingHandoffs.get(sender);
+      if (handoffs == null) {
+        handoffs = new HashMap<>();
+        incomingHandoffs.put(sender, handoffs);
+      }
+      SettableListenableFuture<Void> previous = handoffs.put(nsId, handoff);
+      if (previous != null) previous.set(null);
+      if (!replicaGroup.getRing().getMembers().contains(sender)) scheduleGiveUpHandoffs(sender);
+    }
+    dispatcher.dispatch(
+        nsId,
+        new Runnable() {
+          @Override
+          public void run() {
+            dispatcher.holdUntil(handoff);
+          }
+        });
+  }
+
+  /**
+   * Take over the state of a network service from another replica and release its mailbox. If the
+   * group changed while the state was on its way, it is handed on to the current owner.
+   *
+   * @param sender
+   * @param mutations
+   */
+  private void takeOver(String sender, List<NetworkServiceMutation> mutations) {
+    String nsId = mutations.get(0).getNsId();
+    SettableListenableFuture<Void> handoff = null;
+    synchronized (incomingHandoffs) {
+      Map<String, SettableListenableFuture<Void>> handoffs = incomingHandoffs.get(sender);
+      if (handoffs != null) {
+        handoff = handoffs.remove(nsId);
+        if (handoffs.isEmpty()) incomingHandoffs.remove(sender);
+      }
+    }
+    NetworkService networkService;
+    try {
+      for (NetworkServiceMutation mutation : mutations) apply(mutation);
+      synchronized (this) {
+        networkService = networkServiceMap.get(nsId);
+      }
+      unregisterModel(nsId);
+      if (networkService != null) {
+        adoptModel(networkService);
+        log.info("Took network service " + nsId + " over from replica " + sender);
+      }
+    } finally {
+      if (handoff != null) handoff.set(null);
+      stopAwaitingNetworkService(nsId);
+    }
+    if (networkService != null) handOff(Collections.singletonList(nsId), replicaGroup.getRing());
+  }
+
+  /**
+   * Give up the handoffs of a replica that left after three heartbeats.
+   *
+   * @param replica
+   */
+  private void scheduleGiveUpHandoffs(final String replica) {
+    replicaScheduler.schedule(
+        new Runnable() {
+          @Override
+          public void run() {
+            giveUpHandoffs(replica);
+          }
+        },
+        3 * replicasHeartbeat,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Release the mailboxes of the network services that a replica which left did not hand over.
+   *
+   * @param replica
+   */
+  private void giveUpHandoffs(String replica) {
+    Map<String, SettableListenableFuture<Void>> handoffs;
+    synchronized (incomingHandoffs) {
+      if (replicaGroup.getRing().getMembers().contains(replica)) return;
+      handoffs = incomingHandoffs.remove(replica);
+    }
+    if (handoffs == null) return;
+    log.warn(
+        "Replica " + replica + " left without handing over network services " + handoffs.keySet());
+    for (SettableListenableFuture<Void> handoff : handoffs.values()) handoff.set(null);
+  }
+
+  /**
+   * Returns the id of the network service that the passed message belongs to.
+   *
+   * @param message
+   * @return the network service id or an empty String if the message is not related to one
+   */
+  private String getNsrId(NFVMessage message) {
+    String id = null;
+    switch (message.getAction()) {
+      case INSTANTIATE:
+        id = ((OrVnfmInstantiateMessage) message).getExtension().get("nsr-id");
+        break;
+      case MODIFY:
+      case RELEASE_RESOURCES:
+        id = ((OrVnfmGenericMessage) message).getVnfr().getParent_ns_id();
+        break;
+      case START:
+        id = ((OrVnfmStartStopMessage) message).getVirtualNetworkFunctionRecord().getParent_ns_id();
+        break;
+      case SCALE_OUT:
+      case SCALE_IN:
+        id = ((OrVnfmScalingMessage) message).getVirtualNetworkFunctionRecord().getParent_ns_id();
+        break;
+      case HEAL:
+        id =
+            ((OrVnfmHealVNFRequestMessage) message)
+                .getVirtualNetworkFunctionRecord()
+                .getParent_ns_id();
+        break;
+    }
+    return id == null ? "" : id;
+  }
+
+  private void handleMessage(NFVMessage message) {
 
     VirtualNetworkFunctionRecord virtualNetworkFunctionRecord = null;
     NFVMessage nfvMessage = null;
     OrVnfmGenericMessage orVnfmGenericMessage = null;
     OrVnfmStartStopMessage orVnfmStartStopMessage = null;
     NetworkService networkService;
+    String nsrId = getNsrId(message);
 
     try {
       switch (message.getAction()) {
@@ -138,13 +1071,19 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
           // if the vnfd specifies a charm from the juju charm store add it to the charms list
           if (vnfd.getVnfPackageLocation().equals("juju charm store")) {
             log.info("Found a VNF from the juju charm store: " + vnfd.getName());
-            networkService.addCharm(vnfd.getName());
+            apply(new NetworkServiceMutation.AddCharm(networkService.getId(), vnfd.getName()));
           }
 
           // add vnfd and vnfpackage to the network service
-          networkService.addVnfd(vnfd);
-          networkService.addVnfPackage(orVnfmInstantiateMessage.getVnfPackage(), vnfd.getName());
-          networkService.setVnfStatus(vnfd.getName(), "instantiated");
+          apply(new NetworkServiceMutation.AddVnfd(networkService.getId(), vnfd));
+          apply(
+              new NetworkServiceMutation.AddVnfPackage(
+                  networkService.getId(),
+                  vnfd.getName(),
+                  orVnfmInstantiateMessage.getVnfPackage()));
+          apply(
+              new NetworkServiceMutation.SetVnfStatus(
+                  networkService.getId(), vnfd.getName(), VnfState.INSTANTIATED));
           //----
 
           if (orVnfmInstantiateMessage.getVnfPackage() != null) {
@@ -178,8 +1117,7 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
           orVnfmGenericMessage = (OrVnfmGenericMessage) message;
           virtualNetworkFunctionRecord = orVnfmGenericMessage.getVnfr();
           VNFRecordDependency vnfrDependency = orVnfmGenericMessage.getVnfrd();
-          nsrId = orVnfmGenericMessage.getVnfr().getParent_ns_id();
-
+          checkInstantiated(virtualNetworkFunctionRecord);
           networkService = getNetworkService(virtualNetworkFunctionRecord.getParent_ns_id());
 
           // fill the dependency map
@@ -200,11 +1138,19 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
             Map<String, Map<String, List<String>>> targetSourceParams = new HashMap<>();
             targetSourceParams.put(virtualNetworkFunctionRecord.getName(), sourceParams);
 
-            networkService.addDependency(
-                virtualNetworkFunctionRecord.getName(), sourceName, parameters);
+            apply(
+                new NetworkServiceMutation.AddDependency(
+                    networkService.getId(),
+                    virtualNetworkFunctionRecord.getName(),
+                    sourceName,
+                    parameters));
           }
 
-          networkService.setVnfStatus(virtualNetworkFunctionRecord.getName(), "modified");
+          apply(
+              new NetworkServiceMutation.SetVnfStatus(
+                  networkService.getId(),
+                  virtualNetworkFunctionRecord.getName(),
+                  VnfState.MODIFIED));
 
           nfvMessage =
               VnfmUtils.getNfvMessage(
@@ -226,11 +1172,17 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
                   + ((OrVnfmStartStopMessage) message).getVnfrd());
           orVnfmStartStopMessage = (OrVnfmStartStopMessage) message;
           virtualNetworkFunctionRecord = orVnfmStartStopMessage.getVirtualNetworkFunctionRecord();
-          nsrId = orVnfmStartStopMessage.getVirtualNetworkFunctionRecord().getParent_ns_id();
 
+          checkInstantiated(virtualNetworkFunctionRecord);
           networkService = getNetworkService(virtualNetworkFunctionRecord.getParent_ns_id());
-          networkService.setVnfStatus(virtualNetworkFunctionRecord.getName(), "started");
-          networkService.addVnfr(virtualNetworkFunctionRecord);
+          apply(
+              new NetworkServiceMutation.SetVnfStatus(
+                  networkService.getId(),
+                  virtualNetworkFunctionRecord.getName(),
+                  VnfState.STARTED));
+          apply(
+              new NetworkServiceMutation.AddVnfr(
+                  networkService.getId(), virtualNetworkFunctionRecord));
 
           log.info(
               "After start of "
@@ -239,13 +1191,106 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
                   + networkService.toString());
 
           if (networkService.isReadyToDeploy()) {
-            deployNetworkService(networkService);
+            // the START reply of the last VNFR is sent once the deployment finished; the
+            // following messages of the network service wait for it as well
+            final VirtualNetworkFunctionRecord lastVnfr = virtualNetworkFunctionRecord;
+            final String deployedNsrId = nsrId;
+            ListenableFuture<Void> deployment = deployNetworkServiceAsync(networkService);
+            deployment.addCallback(
+                new ListenableFutureCallback<Void>() {
+                  @Override
+                  public void onSuccess(Void result) {
+                    try {
+                      sendToNfvo(
+                          deployedNsrId, VnfmUtils.getNfvMessage(Action.START, start(lastVnfr)));
+                    } catch (Exception e) {
+                      sendError(e, lastVnfr, deployedNsrId);
+                    }
+                  }
+
+                  @Override
+                  public void onFailure(Throwable t) {
+                    sendError(
+                        t instanceof Exception ? (Exception) t : new Exception(t),
+                        lastVnfr,
+                        deployedNsrId);
+                  }
+                });
+            dispatcher.holdUntil(deployment);
+            break;
+          } else {
+            log.info(
+                "Network service "
+                    + networkService.getId()
+                    + " is waiting for "
+                    + networkService.getPendingVnfs().size()
+                    + " VNFs to start: "
+                    + networkService.getPendingVnfs());
           }
 
           nfvMessage =
               VnfmUtils.getNfvMessage(
                   Action.START, start(orVnfmStartStopMessage.getVirtualNetworkFunctionRecord()));
           break;
+        case SCALE_OUT:
+        case SCALE_IN:
+          OrVnfmScalingMessage orVnfmScalingMessage = (OrVnfmScalingMessage) message;
+          log.info(
+              "Received NFVO Message: "
+                  + message.getAction()
+                  + " for VNFR "
+                  + orVnfmScalingMessage.getVirtualNetworkFunctionRecord().getName());
+          virtualNetworkFunctionRecord = orVnfmScalingMessage.getVirtualNetworkFunctionRecord();
+          checkInstantiated(virtualNetworkFunctionRecord);
+          final Action scaleInOrOut = message.getAction();
+          final VirtualNetworkFunctionRecord scaledVnfr = virtualNetworkFunctionRecord;
+          final VNFComponent component =
+              orVnfmScalingMessage.getVnfcInstance() != null
+                  ? orVnfmScalingMessage.getVnfcInstance()
+                  : orVnfmScalingMessage.getComponent();
+          final VNFRecordDependency dependency = orVnfmScalingMessage.getDependency();
+          // the mailbox is not held while waiting for the scaling, so that the following scale
+          // requests of the network service can join the same batch
+          replyAsync(
+              new Callable<NFVMessage>() {
+                @Override
+                public NFVMessage call() throws Exception {
+                  return VnfmUtils.getNfvMessage(
+                      Action.SCALED, scale(scaleInOrOut, scaledVnfr, component, null, dependency));
+                }
+              },
+              virtualNetworkFunctionRecord,
+              nsrId);
+          break;
+        case HEAL:
+          final OrVnfmHealVNFRequestMessage orVnfmHealMessage =
+              (OrVnfmHealVNFRequestMessage) message;
+          log.info(
+              "Received NFVO Message: "
+                  + message.getAction()
+                  + " for VNFR "
+                  + orVnfmHealMessage.getVirtualNetworkFunctionRecord().getName()
+                  + " with cause: "
+                  + orVnfmHealMessage.getCause());
+          virtualNetworkFunctionRecord = orVnfmHealMessage.getVirtualNetworkFunctionRecord();
+          checkInstantiated(virtualNetworkFunctionRecord);
+          // healing waits between its attempts, which should not delay the other messages of the
+          // network service
+          replyAsync(
+              new Callable<NFVMessage>() {
+                @Override
+                public NFVMessage call() throws Exception {
+                  return VnfmUtils.getNfvMessage(
+                      Action.HEAL,
+                      heal(
+                          orVnfmHealMessage.getVirtualNetworkFunctionRecord(),
+                          orVnfmHealMessage.getVnfcInstance(),
+                          orVnfmHealMessage.getCause()));
+                }
+              },
+              virtualNetworkFunctionRecord,
+              nsrId);
+          break;
         case RELEASE_RESOURCES:
           log.info(
               "Received NFVO Message: "
@@ -254,881 +1299,506 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
                   + ((OrVnfmGenericMessage) message).getVnfr().getName());
 
           orVnfmGenericMessage = (OrVnfmGenericMessage) message;
-          VirtualNetworkFunctionRecord vnfr = orVnfmGenericMessage.getVnfr();
-          stopCharm(vnfr.getParent_ns_id(), vnfr.getName());
-          networkServiceMap.remove(vnfr.getParent_ns_id());
-
-          nsrId = orVnfmGenericMessage.getVnfr().getParent_ns_id();
           virtualNetworkFunctionRecord = orVnfmGenericMessage.getVnfr();
-          nfvMessage =
-              VnfmUtils.getNfvMessage(
-                  Action.RELEASE_RESOURCES, this.terminate(virtualNetworkFunctionRecord));
+          networkService = getNetworkService(virtualNetworkFunctionRecord.getParent_ns_id());
+          apply(
+              new NetworkServiceMutation.SetVnfStatus(
+                  networkService.getId(),
+                  virtualNetworkFunctionRecord.getName(),
+                  VnfState.RELEASED));
+          // the mailbox is not held while waiting for the removal, so that the following
+          // RELEASE_RESOURCES messages of the network service can join the same batch
+          releaseAsync(networkService, virtualNetworkFunctionRecord, nsrId);
           break;
       }
 
       if (nfvMessage != null) {
         log.debug("send to NFVO");
-        vnfmHelper.sendToNfvo(nfvMessage);
+        sendToNfvo(nsrId, nfvMessage);
       }
 
     } catch (Exception e) {
-      log.error("ERROR: ", e);
-      if (e instanceof VnfmSdkException) {
-        VnfmSdkException vnfmSdkException = (VnfmSdkException) e;
-        if (vnfmSdkException.getVnfr() != null) {
-          log.debug("sending VNFR with version: " + vnfmSdkException.getVnfr().getHb_version());
-          vnfmHelper.sendToNfvo(
-              VnfmUtils.getNfvErrorMessage(vnfmSdkException.getVnfr(), vnfmSdkException, nsrId));
-          return;
-        }
-      } else if (e.getCause() instanceof VnfmSdkException) {
-        VnfmSdkException vnfmSdkException = (VnfmSdkException) e.getCause();
-        if (vnfmSdkException.getVnfr() != null) {
-          log.debug("sending VNFR with version: " + vnfmSdkException.getVnfr().getHb_version());
-          vnfmHelper.sendToNfvo(
-              VnfmUtils.getNfvErrorMessage(vnfmSdkException.getVnfr(), vnfmSdkException, nsrId));
-          return;
-        }
-      }
-      vnfmHelper.sendToNfvo(VnfmUtils.getNfvErrorMessage(virtualNetworkFunctionRecord, e, nsrId));
+      sendError(e, virtualNetworkFunctionRecord, nsrId);
     }
   }
 
   /**
-   * Remove a directory.
+   * Remove the application of a VNFR together with the other applications of its network service
+   * that are released within the release window. The RELEASE_RESOURCES reply is sent once the batch
+   * was executed. After the last VNF was removed, the model of the network service is destroyed and
+   * the network service is forgotten.
    *
-   * @param directory
+   * @param networkService
+   * @param virtualNetworkFunctionRecord
+   * @param nsrId
    */
-  public void removeDirectory(File directory) {
-    if (directory.exists() && directory.isDirectory()) {
-      File[] files = directory.listFiles();
-      if (files != null) {
-        for (File file : files) {
-          if (file.isDirectory()) removeDirectory(file);
-          else file.delete();
-        }
-      }
-    }
-    directory.delete();
+  private void releaseAsync(
+      final NetworkService networkService,
+      final VirtualNetworkFunctionRecord virtualNetworkFunctionRecord,
+      final String nsrId) {
+    final boolean last = networkService.isReleased();
+    log.info(
+        "Releasing VNF "
+            + virtualNetworkFunctionRecord.getName()
+            + " of network service "
+            + networkService.getId()
+            + ", "
+            + networkService.getVnfCount(VnfState.RELEASED)
+            + " VNFs released so far");
+    final long start = System.nanoTime();
+    ListenableFuture<Void> release =
+        getModel(networkService.getId())
+            .getReleaseBatcher()
+            .release(networkService.getId(), virtualNetworkFunctionRecord.getName(), last);
+    release.addCallback(
+        new ListenableFutureCallback<Void>() {
+          @Override
+          public void onSuccess(Void result) {
+            metrics.timer("release").stop(start);
+            try {
+              if (last) {
+                destroyModel(networkService.getId());
+                removeNetworkService(networkService.getId());
+              }
+              sendToNfvo(
+                  nsrId,
+                  VnfmUtils.getNfvMessage(
+                      Action.RELEASE_RESOURCES, terminate(virtualNetworkFunctionRecord)));
+            } catch (Exception e) {
+              sendError(e, virtualNetworkFunctionRecord, nsrId);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            metrics.timer("release").stop(start);
+            sendError(
+                t instanceof Exception ? (Exception) t : new Exception(t),
+                virtualNetworkFunctionRecord,
+                nsrId);
+          }
+        });
   }
 
   /**
-   * This method creates a charm based on the received VNFR.
+   * Compute a reply in the background and send it to the NFVO, or an error if computing it failed.
    *
-   * @param vnfr
-   * @param vnfPackage
-   * @throws Exception
+   * @param reply
+   * @param virtualNetworkFunctionRecord sent with the error message
+   * @param nsrId
    */
-  private void createCharm(String nsId, VirtualNetworkFunctionRecord vnfr, VNFPackage vnfPackage)
-      throws Exception {
-    log.info("Create charm for vnfr " + vnfr.getName());
-    (new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName())).mkdirs();
-    (new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks")).mkdirs();
-    File metadataYaml =
-        new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/metadata.yaml");
-    metadataYaml.createNewFile();
-
-    Map<String, Object> data = new HashMap<String, Object>();
-    data.put("name", vnfr.getName());
-    data.put("maintainer", vnfr.getVendor());
-    data.put("subordinate", "false");
-    data.put("summary", "Charm created by Open Baton");
-    data.put("description", "Charm created by Open Baton");
-
-    NetworkService networkService = getNetworkService(nsId);
-    if (networkService.vnfIsTarget(vnfr.getName())) {
-      // create requires section for metadata.yaml
-      Map<String, List<String>> sourceMap = networkService.getSourcesOfVnf(vnfr.getName());
-      Map<String, Map<String, String>> requiresMap = new HashMap<>();
-
-      for (Map.Entry<String, List<String>> sourceParams : sourceMap.entrySet()) {
-        Map<String, String> interfaceMap = new InterfaceMap();
-        for (String param : sourceParams.getValue()) interfaceMap.put("interface", param);
-        requiresMap.put(sourceParams.getKey(), interfaceMap);
-      }
-      data.put("requires", requiresMap);
-    }
-
-    if (networkService.vnfIsSource(vnfr.getName())) {
-      log.info(vnfr.getName() + " is source of a dependency");
-      // create provides section for metadata.yaml
-      Set<String> providesSet = networkService.getProvidesOfVnf(vnfr.getName());
-      Map<String, Map<String, String>> providesMap = new HashMap<>();
-      Map<String, String> interfaceMap = new InterfaceMap();
-      for (String param : providesSet) {
-        interfaceMap.put("interface", param);
-      }
-      providesMap.put(vnfr.getName(), interfaceMap);
-      data.put("provides", providesMap);
-
-      // create relation-joined hooks
-      File relationJoined =
-          new File(
-              "/tmp/openbaton/juju/"
-                  + nsId
-                  + "/"
-                  + vnfr.getName()
-                  + "/hooks/"
-                  + vnfr.getName()
-                  + "-relation-joined");
-      relationJoined.createNewFile();
-
-      String variables =
-          "#!/bin/bash\necho \"`date '+%H-%M-%S'` "
-              + vnfr.getName()
-              + ": execute "
-              + vnfr.getName()
-              + "-relation-joined hook\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfr.getName()
-              + "\n";
-      List<String> virtuaLinks = new LinkedList<>();
-      for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
-        for (VNFComponent vnfc : vdu.getVnfc()) {
-          for (VNFDConnectionPoint cp : vnfc.getConnection_point()) {
-            virtuaLinks.add(cp.getVirtual_link_reference());
+  private void replyAsync(
+      final Callable<NFVMessage> reply,
+      final VirtualNetworkFunctionRecord virtualNetworkFunctionRecord,
+      final String nsrId) {
+    networkServiceDeployExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              sendToNfvo(nsrId, reply.call());
+            } catch (Exception e) {
+              sendError(e, virtualNetworkFunctionRecord, nsrId);
+            }
           }
-        }
-      }
-      for (String vl : virtuaLinks)
-        variables += ("relation-set " + vl + "=`unit-get private-address`\n");
-      // TODO floating ips
-      variables += "relation-set hostname=`hostname`\n";
-
-      for (ConfigurationParameter confParam :
-          vnfr.getConfigurations().getConfigurationParameters()) {
-        variables +=
-            "relation-set "
-                + vnfr.getType()
-                + "_"
-                + confParam.getConfKey()
-                + "="
-                + confParam.getValue()
-                + "\n";
-      }
-
-      variables += "relation-set allRelationParametersAreReady=true\n";
-      variables +=
-          "echo \"`date '+%H-%M-%S'` "
-              + vnfr.getName()
-              + ": finished "
-              + vnfr.getName()
-              + "-relation-joined hook\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfr.getName()
-              + "\n";
-
-      try {
-        Files.write(
-            Paths.get(relationJoined.getAbsolutePath()),
-            variables.getBytes(),
-            StandardOpenOption.APPEND);
-      } catch (IOException e) {
-        log.error("Could not write to relationJoined file");
-      }
-    }
-
-    (new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/" + "scripts/")).mkdirs();
-    if (vnfPackage.getScriptsLink() != null && !vnfPackage.getScriptsLink().equals("")) {
-      downloadGitRepo(nsId, vnfPackage.getScriptsLink(), vnfr.getName());
-    } else {
-      Set<Script> scripts = vnfPackage.getScripts();
-      for (Script script : scripts) {
-        File scriptFile =
-            new File(
-                "/tmp/openbaton/juju/"
-                    + nsId
-                    + "/"
-                    + vnfr.getName()
-                    + "/"
-                    + "scripts/"
-                    + script.getName());
-        if (!scriptFile.exists()) scriptFile.createNewFile();
-        try {
-          Files.write(
-              Paths.get(scriptFile.getAbsolutePath()),
-              script.getPayload(),
-              StandardOpenOption.APPEND);
-        } catch (IOException e) {
-          log.error("Could not write to script file " + script.getName());
-        }
-      }
-    }
-
-    // file containing the environment variable declarations; can be sourced by scripts
-    createEnvironmentVariableFile(nsId, vnfr);
+        });
+  }
 
-    // create install hook to handle the script path if there is no INSTANTIATE lifecycle event
-    boolean installExists = false;
-    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
-      if (le.getEvent().equals(Event.INSTANTIATE)) {
-        installExists = true;
-        break;
-      }
+  /**
+   * Send an error message to the NFVO. If the exception or its cause is a VnfmSdkException
+   * containing a VNFR, that VNFR is sent instead of the passed one.
+   *
+   * @param e
+   * @param virtualNetworkFunctionRecord
+   * @param nsrId
+   */
+  private void sendError(
+      Exception e, VirtualNetworkFunctionRecord virtualNetworkFunctionRecord, String nsrId) {
+    log.error("ERROR: ", e);
+    if (virtualNetworkFunctionRecord != null) {
+      JujuStatus.ApplicationStatus application =
+          getModel(virtualNetworkFunctionRecord.getParent_ns_id())
+              .getStatusWatcher()
+              .getApplicationStatus(virtualNetworkFunctionRecord.getName());
+      if (application != null) log.error("Last known juju status of " + application);
     }
-    if (!installExists) {
-      File file = new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks/install");
-      if (!file.exists()) {
-        file.createNewFile();
-        Files.setPosixFilePermissions(file.toPath(), permissions);
+    if (e instanceof VnfmSdkException) {
+      VnfmSdkException vnfmSdkException = (VnfmSdkException) e;
+      if (vnfmSdkException.getVnfr() != null) {
+        log.debug("sending VNFR with version: " + vnfmSdkException.getVnfr().getHb_version());
+        sendToNfvo(
+            nsrId,
+            VnfmUtils.getNfvErrorMessage(vnfmSdkException.getVnfr(), vnfmSdkException, nsrId));
+        return;
       }
-      String fileContent =
-          "#!/bin/bash\necho \"`date '+%H-%M-%S'` "
-              + vnfr.getName()
-              + ": execute install hook\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfr.getName()
-              + "\nmkdir -p "
-              + scriptPath
-              + "\ncp -r scripts/* "
-              + scriptPath
-              + "\nmkdir -p "
-              + scriptLogPath
-              + "\necho \"`date '+%H-%M-%S'` "
-              + vnfr.getName()
-              + ": finished install hook\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfr.getName()
-              + "\n";
-      try {
-        Files.write(
-            Paths.get(file.getAbsolutePath()), fileContent.getBytes(), StandardOpenOption.APPEND);
-      } catch (IOException e) {
-        log.error("Could not write to install file");
+    } else if (e.getCause() instanceof VnfmSdkException) {
+      VnfmSdkException vnfmSdkException = (VnfmSdkException) e.getCause();
+      if (vnfmSdkException.getVnfr() != null) {
+        log.debug("sending VNFR with version: " + vnfmSdkException.getVnfr().getHb_version());
+        sendToNfvo(
+            nsrId,
+            VnfmUtils.getNfvErrorMessage(vnfmSdkException.getVnfr(), vnfmSdkException, nsrId));
+        return;
       }
     }
+    sendToNfvo(nsrId, VnfmUtils.getNfvErrorMessage(virtualNetworkFunctionRecord, e, nsrId));
+  }
 
-    // didn't use one for loop containing all lifecycle checks to ensure the order of processing
-    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
-      // copy lifecycle scripts into charm TODO remove
-      //      copyLifecycleScripts(le, le.getEvent(), vnfr.getName(), nsId);
+  /**
+   * Send a message of a network service to the NFVO.
+   *
+   * @param nsrId the id of the network service the message belongs to
+   * @param message
+   */
+  protected void sendToNfvo(String nsrId, NFVMessage message) {
+    log.debug("Sending " + message.getAction() + " of network service " + nsrId + " to the NFVO");
+    vnfmHelper.sendToNfvo(message);
+  }
 
-      if (le.getEvent().equals(Event.INSTANTIATE)) {
-        log.debug("Found INSTANTIATE lifecycle event in VNF " + vnfr.getName());
+  /**
+   * Create the components for a model. The status watcher is not started.
+   *
+   * @param name the model in the form controller:model or null for the current model
+   * @return
+   */
+  private JujuModel createModel(String name) {
+    JujuClient client = name == null ? jujuClient : jujuClient.forModel(name);
+    JujuStatusWatcher statusWatcher =
+        new JujuStatusWatcher(client, statusScheduler, statusInterval);
+    return new JujuModel(
+        name,
+        client,
+        statusWatcher,
+        new ScaleBatcher(client, batchScheduler, scaleWindow),
+        new ReleaseBatcher(client, batchScheduler, deployExecutor, releaseWindow),
+        new UnitHealer(
+            client, statusWatcher, healResolveAttempts, healBackoff * 1000, healParallelism));
+  }
 
-        prepareLifecycleScript(
-            "install",
-            nsId,
-            vnfr.getName(),
-            le,
-            "mkdir -p "
-                + scriptPath
-                + "\ncp -r scripts/* "
-                + scriptPath
-                + "\nmkdir -p "
-                + scriptLogPath,
-            "");
-
-        if (!networkService.vnfIsTarget(
-            vnfr.getName())) { // append configure scripts to the install hook
-          File install =
-              new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks/install");
-          File runConfigureScripts =
-              new File(
-                  "/tmp/openbaton/juju/"
-                      + nsId
-                      + "/"
-                      + vnfr.getName()
-                      + "/scripts/runConfigureScripts");
-          if (!runConfigureScripts.exists()) {
-            runConfigureScripts.createNewFile();
-            Files.setPosixFilePermissions(runConfigureScripts.toPath(), permissions);
-          }
-          //TODO
-          String fileContent = "bash runConfigureScripts\n";
-          try {
-            Files.write(
-                Paths.get(install.getAbsolutePath()),
-                fileContent.getBytes(),
-                StandardOpenOption.APPEND);
-          } catch (IOException e) {
-            log.error("Could not write to install file");
-          }
-        }
-      }
+  /**
+   * Create the components for the model of a network service and start watching it.
+   *
+   * @param nsId
+   * @param name the model in the form controller:model
+   * @return
+   */
+  private JujuModel registerModel(String nsId, String name) {
+    JujuModel model = createModel(name);
+    synchronized (models) {
+      models.put(nsId, model);
     }
+    if (statusInterval > 0) model.getStatusWatcher().start();
+    return model;
+  }
 
-    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
-      if (le.getEvent().equals(Event.CONFIGURE)) {
-        log.debug("Found CONFIGURE lifecycle event in VNF " + vnfr.getName());
-        int numberOfConfigureScripts =
-            0; // number of scripts that have to be executed before the start hook may run
-
-        if (!networkService.vnfIsTarget(
-            vnfr.getName())) { // append configure scripts to the install hook
-          File install =
-              new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks/install");
-          File runConfigureScripts =
-              new File(
-                  "/tmp/openbaton/juju/"
-                      + nsId
-                      + "/"
-                      + vnfr.getName()
-                      + "/scripts/runConfigureScripts");
-          if (!install.exists()) {
-            install.createNewFile();
-            Files.setPosixFilePermissions(install.toPath(), permissions);
-            if (!runConfigureScripts.exists()) {
-              runConfigureScripts.createNewFile();
-              Files.setPosixFilePermissions(runConfigureScripts.toPath(), permissions);
-              //TODO
-              String fileContent = "bash runConfigureScripts\n";
-              try {
-                Files.write(
-                    Paths.get(install.getAbsolutePath()),
-                    fileContent.getBytes(),
-                    StandardOpenOption.APPEND);
-              } catch (IOException e) {
-                log.error("Could not write to install file");
-              }
-            }
-          }
-          prepareLifecycleScript("runConfigureScripts", nsId, vnfr.getName(), le);
-
-        } else { // create relation-changed hooks for the configure scripts
-          List<File> relationChangedList = new LinkedList<>();
-          for (String scriptName : le.getLifecycle_events()) {
-            boolean convertToRelationHook = false;
-            for (VirtualNetworkFunctionRecord virtualNetworkFunctionRecord :
-                networkService.getVnfrList()) {
-              if (scriptName.startsWith(virtualNetworkFunctionRecord.getType() + "_")) {
-                // create relation_changed hook
-                File relationChanged =
-                    new File(
-                        "/tmp/openbaton/juju/"
-                            + nsId
-                            + "/"
-                            + vnfr.getName()
-                            + "/hooks/"
-                            + virtualNetworkFunctionRecord.getName()
-                            + "-relation-changed");
-                if (!relationChanged.exists()) {
-                  relationChanged.createNewFile();
-                  try {
-                    Files.write(
-                        Paths.get(relationChanged.getAbsolutePath()),
-                        ("#!/bin/bash\n"
-                                + "if [ -f hooks/finishedRelationChangedHooks/"
-                                + relationChanged.getName()
-                                + " ]; then\n"
-                                + "  echo \"`date '+%H-%M-%S'` "
-                                + vnfr.getName()
-                                + ": "
-                                + relationChanged.getName()
-                                + " hook was already executed. Do not run it again.\" >> "
-                                + scriptLogPath
-                                + "/"
-                                + vnfr.getName()
-                                + "\n"
-                                + "  exit 0\n"
-                                + "fi\n"
-                                + "export allRelationParametersAreReady=`relation-get allRelationParametersAreReady`\nif [ \"$allRelationParametersAreReady\" != \"true\" ]; then\n  echo \"`date '+%H-%M-%S'` "
-                                + vnfr.getName()
-                                + ": The relation parameters are not yet set. Abort "
-                                + virtualNetworkFunctionRecord.getName()
-                                + "-relation-changed hook and try again later.\" >> "
-                                + scriptLogPath
-                                + "/"
-                                + vnfr.getName()
-                                + "\n  exit 0\nfi\n"
-                                + "echo \"`date '+%H-%M-%S'` "
-                                + vnfr.getName()
-                                + ": execute "
-                                + virtualNetworkFunctionRecord.getName()
-                                + "-relation-changed hook"
-                                + "\" >> "
-                                + scriptLogPath
-                                + "/"
-                                + vnfr.getName()
-                                + "\nsource hooks/paramVariables\nsource hooks/relationVariables\n")
-                            .getBytes(),
-                        StandardOpenOption.APPEND);
-                  } catch (IOException e) {
-                    log.error("Could not write to relationChanged file");
-                  }
-                  relationChangedList.add(relationChanged);
-                }
-                try {
-                  Files.write(
-                      Paths.get(relationChanged.getAbsolutePath()),
-                      ("pushd scripts \necho \"`date '+%H-%M-%S'` "
-                              + vnfr.getName()
-                              + ": execute "
-                              + scriptName
-                              + "\" >> "
-                              + scriptLogPath
-                              + "/"
-                              + vnfr.getName()
-                              + "\nbash " // TODO test
-                              + scriptName
-                              + "\necho \"`date '+%H-%M-%S'` "
-                              + vnfr.getName()
-                              + ": finished "
-                              + scriptName
-                              + "\" >> "
-                              + scriptLogPath
-                              + "/"
-                              + vnfr.getName()
-                              + "\npopd \ntouch hooks/finishedConfigureScripts/"
-                              + scriptName
-                              + "\n")
-                          .getBytes(),
-                      StandardOpenOption.APPEND);
-                } catch (IOException e) {
-                  log.error("Could not write to relationChanged file");
-                }
-                convertToRelationHook = true;
-                numberOfConfigureScripts++;
-              }
-            }
-            if (!convertToRelationHook) { // append this configure script to the install hook
-              File install =
-                  new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks/install");
-              File runConfigureScripts =
-                  new File(
-                      "/tmp/openbaton/juju/"
-                          + nsId
-                          + "/"
-                          + vnfr.getName()
-                          + "/scripts/runConfigureScripts");
-              if (!install.exists()) {
-                install.createNewFile();
-                Files.setPosixFilePermissions(install.toPath(), permissions);
-                if (!runConfigureScripts.exists()) {
-                  runConfigureScripts.createNewFile();
-                  Files.setPosixFilePermissions(runConfigureScripts.toPath(), permissions);
-                  //TODO
-                  String fileContent = "bash runConfigureScripts\n";
-                  try {
-                    Files.write(
-                        Paths.get(install.getAbsolutePath()),
-                        fileContent.getBytes(),
-                        StandardOpenOption.APPEND);
-                  } catch (IOException e) {
-                    log.error("Could not write to install file");
-                  }
-                }
-              }
-              if (!runConfigureScripts.exists()) runConfigureScripts.createNewFile();
-              try {
-                Files.write(
-                    Paths.get(runConfigureScripts.getAbsolutePath()),
-                    ("bash " + scriptName + "\n").getBytes(), // TODO test
-                    StandardOpenOption.APPEND);
-              } catch (IOException e) {
-                log.error("Could not write to runConfigureScripts file");
-              }
-            }
-          }
-
-          // add notification that a relation changed hook was run
-          if (relationChangedList != null && !relationChangedList.isEmpty()) {
-            (new File(
-                    "/tmp/openbaton/juju/"
-                        + nsId
-                        + "/"
-                        + vnfr.getName()
-                        + "/hooks/finishedRelationChangedHooks"))
-                .mkdirs();
-            for (File f : relationChangedList) {
-              try {
-                Files.write(
-                    Paths.get(f.getAbsolutePath()),
-                    ("touch hooks/finishedRelationChangedHooks/"
-                            + f.getName()
-                            + "\necho \"`date '+%H-%M-%S'` "
-                            + vnfr.getName()
-                            + ": finished "
-                            + f.getName()
-                            + " hook\" >> "
-                            + scriptLogPath
-                            + "/"
-                            + vnfr.getName()
-                            + "\n")
-                        .getBytes(), // TODO test
-                    StandardOpenOption.APPEND);
-              } catch (IOException e) {
-                log.error("Could not write to " + f.getName() + " file");
-              }
-            }
-          }
+  /**
+   * Start working with the model of a network service that was placed before, e.g. before a restart
+   * or by another replica. Nothing is done if the network service has no model of its own.
+   *
+   * @param networkService
+   */
+  private void adoptModel(NetworkService networkService) {
+    if (networkService.getModel() == null) return;
+    JujuModel model = registerModel(networkService.getId(), networkService.getModel());
+    if (controllerPool != null) controllerPool.add(model.getController());
+  }
 
-          if (numberOfConfigureScripts
-              > 0) { // means we have to create an artificial start script that will run after all the relation-changed hooks finished
-            File startAfterDependencies =
-                new File(
-                    "/tmp/openbaton/juju/"
-                        + nsId
-                        + "/"
-                        + vnfr.getName()
-                        + "/scripts/startAfterDependencies");
-            (new File(
-                    "/tmp/openbaton/juju/"
-                        + nsId
-                        + "/"
-                        + vnfr.getName()
-                        + "/hooks/finishedConfigureScripts"))
-                .mkdirs();
-            startAfterDependencies.createNewFile();
-            for (File f : relationChangedList) {
-              Files.write(
-                  Paths.get(f.getAbsolutePath()),
-                  ("echo \"`date '+%H-%M-%S'` "
-                          + vnfr.getName()
-                          + ": ($(ls -1 hooks/finishedConfigureScripts/ | wc -l)/"
-                          + numberOfConfigureScripts
-                          + ") scripts finished before executing startAfterDependencies.\" >> "
-                          + scriptLogPath
-                          + "/"
-                          + vnfr.getName()
-                          + "\n"
-                          + "if [ $(ls -1 hooks/finishedConfigureScripts/ | wc -l) -eq "
-                          + numberOfConfigureScripts
-                          + " ]; then\necho \"`date '+%H-%M-%S'` "
-                          + vnfr.getName()
-                          + ": Trigger startAfterDependencies\" >> "
-                          + scriptLogPath
-                          + "/"
-                          + vnfr.getName()
-                          + "\nbash hooks/startAfterDependencies; \nfi\n")
-                      .getBytes(),
-                  StandardOpenOption.APPEND);
-            }
-          }
-        }
-      }
+  /**
+   * Stop working with the model of a network service without destroying it.
+   *
+   * @param nsId
+   * @return the model or null if the network service has no model of its own
+   */
+  private JujuModel unregisterModel(String nsId) {
+    JujuModel model;
+    synchronized (models) {
+      model = models.remove(nsId);
     }
+    if (model == null) return null;
+    model.close();
+    if (controllerPool != null) controllerPool.release(model.getController());
+    return model;
+  }
 
-    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
-      if (le.getEvent().equals(Event.START)) {
-        log.debug("Found START lifecycle event in VNF " + vnfr.getName());
-
-        if (networkService.vnfIsTarget(vnfr.getName())) {
-          log.info(vnfr.getName() + " is target of a dependency");
-          prepareLifecycleScript("startAfterDependencies", nsId, vnfr.getName(), le);
-        } else {
-          // charm is not target of a relation, you can map the Open Baton start lifecycle to the Juju start hook
-          prepareLifecycleScript("start", nsId, vnfr.getName(), le);
-        }
-      }
+  /**
+   * Returns the model of a network service.
+   *
+   * @param nsId
+   * @return the model of its own or the default model if it has none
+   */
+  private JujuModel getModel(String nsId) {
+    synchronized (models) {
+      JujuModel model = models.get(nsId);
+      return model == null ? defaultModel : model;
     }
+  }
 
-    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
-
-      if (le.getEvent().equals(Event.TERMINATE)) {
-        log.debug("Found TERMINATE lifecycle event in VNF " + vnfr.getName());
-        prepareLifecycleScript("stop", nsId, vnfr.getName(), le);
-      }
+  /**
+   * Create a model of its own for a network service on the controller with the fewest models.
+   * Nothing is done if no controllers are configured or the network service has a model already.
+   *
+   * @param networkService
+   * @throws VnfmSdkException if the model could not be created
+   */
+  private void placeModel(NetworkService networkService) throws VnfmSdkException {
+    if (controllerPool == null || networkService.getModel() != null) return;
+    String controller = controllerPool.acquire();
+    // juju model names may only contain lower case letters, digits and hyphens
+    String model =
+        "openbaton-" + networkService.getId().toLowerCase().replaceAll("[^a-z0-9-]", "-");
+    long start = System.nanoTime();
+    try {
+      jujuClient.addModel(controller, model);
+    } catch (JujuException e) {
+      controllerPool.release(controller);
+      throw new VnfmSdkException(
+          "Could not create model "
+              + model
+              + " on controller "
+              + controller
+              + ": "
+              + e.getMessage(),
+          e);
+    } finally {
+      metrics.timer("add-model").stop(start);
     }
-
-    // actually write to the metadata.yaml file
-    DumperOptions options = new DumperOptions();
-    options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-    Yaml yaml = new Yaml(options);
-    FileWriter writer = new FileWriter(metadataYaml.getAbsolutePath());
-    yaml.dump(data, writer);
+    log.info(
+        "Created model "
+            + model
+            + " on controller "
+            + controller
+            + " for network service "
+            + networkService.getId());
+    apply(new NetworkServiceMutation.SetModel(networkService.getId(), controller + ":" + model));
+    registerModel(networkService.getId(), controller + ":" + model);
   }
 
   /**
-   * Write the lifecycle scripts into a special directory in the charm so that they can be called by
-   * the charm hooks. TODO
+   * Destroy the model of a network service, if it has one of its own. A failure is only logged
+   * because the applications of the network service were removed already.
    *
-   * @param fileName
    * @param nsId
-   * @param vnfName
-   * @param le
-   * @throws Exception
    */
-  private void prepareLifecycleScript(
-      String fileName, String nsId, String vnfName, LifecycleEvent le) throws Exception {
-    File file = new File("/tmp/openbaton/juju/" + nsId + "/" + vnfName + "/hooks/" + fileName);
-    if (!file.exists()) {
-      file.createNewFile();
-      Files.setPosixFilePermissions(file.toPath(), permissions);
-    }
-
-    String fileContent =
-        "#!/bin/bash\necho \"`date '+%H-%M-%S'` "
-            + vnfName
-            + ": execute "
-            + fileName
-            + " hook\" >> "
-            + scriptLogPath
-            + "/"
-            + vnfName
-            + "\nsource hooks/paramVariables\n";
-    fileContent += ("cd scripts\n");
-    for (String scriptName : le.getLifecycle_events())
-      fileContent +=
-          ("echo \"`date '+%H-%M-%S'` "
-              + vnfName
-              + ": execute "
-              + scriptName
-              + "\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfName
-              + "\nbash "
-              + scriptName
-              + "\necho \"`date '+%H-%M-%S'` "
-              + vnfName
-              + ": finished "
-              + scriptName
-              + "\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfName
-              + "\n");
-    fileContent +=
-        "echo \"`date '+%H-%M-%S'` "
-            + vnfName
-            + ": finished "
-            + fileName
-            + " hook\" >> "
-            + scriptLogPath
-            + "/"
-            + vnfName
-            + "\n";
+  private void destroyModel(String nsId) {
+    JujuModel model = unregisterModel(nsId);
+    if (model == null) return;
+    long start = System.nanoTime();
     try {
-      Files.write(
-          Paths.get(file.getAbsolutePath()), fileContent.getBytes(), StandardOpenOption.APPEND);
-    } catch (IOException e) {
-      log.error("Could not write to " + fileName + " file");
-    }
-  }
-
-  private void prepareLifecycleScript(
-      String fileName,
-      String nsId,
-      String vnfName,
-      LifecycleEvent le,
-      String preamble,
-      String postamble)
-      throws IOException {
-    File file = new File("/tmp/openbaton/juju/" + nsId + "/" + vnfName + "/hooks/" + fileName);
-    if (!file.exists()) {
-      file.createNewFile();
-      Files.setPosixFilePermissions(file.toPath(), permissions);
-    }
-
-    String fileContent =
-        "#!/bin/bash\n"
-            + preamble
-            + "\necho \"`date '+%H-%M-%S'` "
-            + vnfName
-            + ": execute "
-            + fileName
-            + " hook\" >> "
-            + scriptLogPath
-            + "/"
-            + vnfName
-            + "\nsource hooks/paramVariables\n";
-    fileContent += ("cd scripts\n");
-    for (String scriptName : le.getLifecycle_events())
-      fileContent +=
-          ("echo \"`date '+%H-%M-%S'` "
-              + vnfName
-              + ": execute "
-              + scriptName
-              + "\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfName
-              + "\nbash "
-              + scriptName
-              + "\necho \"`date '+%H-%M-%S'` "
-              + vnfName
-              + ": finished "
-              + scriptName
-              + "\" >> "
-              + scriptLogPath
-              + "/"
-              + vnfName);
-    fileContent +=
-        postamble
-            + "\necho \"`date '+%H-%M-%S'` "
-            + vnfName
-            + ": finished "
-            + fileName
-            + " hook\" >> "
-            + scriptLogPath
-            + "/"
-            + vnfName
-            + "\n";
-    try {
-      Files.write(
-          Paths.get(file.getAbsolutePath()), fileContent.getBytes(), StandardOpenOption.APPEND);
-    } catch (IOException e) {
-      log.error("Could not write to " + fileName + " file");
+      jujuClient.destroyModel(model.getName());
+      log.info("Destroyed model " + model + " of network service " + nsId);
+    } catch (JujuException e) {
+      log.error("Could not destroy model " + model + " of network service " + nsId, e);
+    } finally {
+      metrics.timer("destroy-model").stop(start);
     }
   }
 
   /**
-   * Create the files containing environment variable declarations that can be sourced by the
-   * scripts.
+   * Returns the path of the workspace directory of a network service.
+   *
+   * @param nsId
+   * @return
+   */
+  private String getWorkspacePath(String nsId) {
+    return workspace.getDirectory(nsId).getPath();
+  }
+
+  /**
+   * Remove a directory.
+   *
+   * @param directory
+   */
+  public void removeDirectory(File directory) {
+    FileUtils.removeDirectory(directory);
+  }
+
+  /**
+   * Provide the charm of a VNFR in its charm directory. If an identical charm was built before, it
+   * is taken from the charm cache, otherwise it is created and added to the cache.
    *
    * @param nsId
    * @param vnfr
-   * @throws IOException
+   * @param vnfPackage
+   * @throws Exception
    */
-  private void createEnvironmentVariableFile(String nsId, VirtualNetworkFunctionRecord vnfr)
-      throws IOException {
-    // create a file containing all the variables that should be available in the scripts
-    File paramVariables =
-        new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks/paramVariables");
-    if (!paramVariables.exists()) {
-      paramVariables.createNewFile();
-      Files.setPosixFilePermissions(paramVariables.toPath(), permissions);
-    }
-    try {
-      log.info("Write SCRIPTS_PATH to paramVariables file");
-      Files.write(
-          Paths.get(paramVariables.getAbsolutePath()),
-          ("export SCRIPTS_PATH=" + scriptPath + "\n").getBytes(),
-          StandardOpenOption.APPEND);
-    } catch (IOException e) {
-      log.error("Could not write SCRIPTS_PATH paramVariables file");
-    }
-    File relationVariables =
-        new File("/tmp/openbaton/juju/" + nsId + "/" + vnfr.getName() + "/hooks/relationVariables");
-    if (!relationVariables.exists()) {
-      relationVariables.createNewFile();
-      Files.setPosixFilePermissions(relationVariables.toPath(), permissions);
-    }
-    // begin with the configurations:
-    if (vnfr.getConfigurations() != null) {
-      Configuration configuration = vnfr.getConfigurations();
-      String variables = "";
-      for (ConfigurationParameter parameter : configuration.getConfigurationParameters()) {
-        variables += "export " + parameter.getConfKey() + "=" + parameter.getValue() + "\n";
-      }
+  private void buildCharm(String nsId, VirtualNetworkFunctionRecord vnfr, VNFPackage vnfPackage)
+      throws Exception {
+    // the scripts revision is resolved once, so that the cache key and the checked out scripts
+    // belong to the same commit even if the repository changes in the meantime
+    String scriptsRevision = null;
+    if (gitRepositoryCache != null
+        && vnfPackage.getScriptsLink() != null
+        && !vnfPackage.getScriptsLink().equals("")) {
       try {
-        log.info("Write variables to paramVariables file: " + variables);
-        Files.write(
-            Paths.get(paramVariables.getAbsolutePath()),
-            variables.getBytes(),
-            StandardOpenOption.APPEND);
+        scriptsRevision = gitRepositoryCache.getRevision(vnfPackage.getScriptsLink());
       } catch (IOException e) {
-        log.error("Could not write configuration variables to paramVariables file");
+        log.error("Could not fetch git repository " + vnfPackage.getScriptsLink(), e);
       }
+    }
+    String key = null;
+    if (charmCache != null)
+      key = getCharmKey(getNetworkService(nsId), vnfr, vnfPackage, scriptsRevision);
+    File charmDirectory = new File(getWorkspacePath(nsId) + "/" + vnfr.getName());
+    if (key != null && charmCache.restore(key, charmDirectory)) {
+      log.info("Took the charm for vnfr " + vnfr.getName() + " from the charm cache");
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      createCharm(nsId, vnfr, vnfPackage, scriptsRevision);
+    } finally {
+      metrics.timer("create-charm").stop(start);
+    }
+    if (key != null) {
       try {
-        log.info("Write variables to relationVariables file: " + variables);
-        Files.write(
-            Paths.get(relationVariables.getAbsolutePath()),
-            variables.getBytes(),
-            StandardOpenOption.APPEND);
+        charmCache.store(key, charmDirectory);
       } catch (IOException e) {
-        log.error("Could not write configuration variables to relationVariables file");
+        log.warn("Could not add the charm for vnfr " + vnfr.getName() + " to the charm cache", e);
       }
     }
+  }
 
-    // now the out-of-the-box variables <netname>, <netname>_floatingIp and hostname of the VNFD itself
-    String variables = "";
-    List<String> virtualLinks = new LinkedList<>();
-    for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
-      for (VNFComponent vnfc : vdu.getVnfc()) {
-        for (VNFDConnectionPoint cp : vnfc.getConnection_point()) {
-          virtualLinks.add(cp.getVirtual_link_reference());
-        }
+  /**
+   * Compute the charm cache key of a VNFR. It covers everything createCharm reads, in the order it
+   * reads it.
+   *
+   * @param networkService
+   * @param vnfr
+   * @param vnfPackage
+   * @param scriptsRevision the commit of the scripts repository; null if it is not known
+   * @return the key or null if the charm cannot be cached
+   */
+  private String getCharmKey(
+      NetworkService networkService,
+      VirtualNetworkFunctionRecord vnfr,
+      VNFPackage vnfPackage,
+      String scriptsRevision) {
+    CharmCache.Key key = charmCache.newKey();
+    key.add(CHARM_FORMAT_VERSION).add(scriptPath).add(scriptLogPath);
+    key.add(vnfr.getName()).add(vnfr.getVendor()).add(vnfr.getType());
+    addVirtualLinks(key, vnfr);
+    addConfigurations(key, vnfr);
+    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
+      key.add(le.getEvent().name());
+      for (String script : le.getLifecycle_events()) key.add(script);
+    }
+
+    // the dependencies and the other VNFs of the network service
+    key.add("requires");
+    if (networkService.vnfIsTarget(vnfr.getName())) {
+      for (Map.Entry<String, List<String>> sourceParams :
+          networkService.getSourcesOfVnf(vnfr.getName()).entrySet()) {
+        key.add(sourceParams.getKey());
+        for (String param : sourceParams.getValue()) key.add(param);
       }
     }
-    for (String vl : virtualLinks) variables += ("export " + vl + "=`unit-get private-address`\n");
-    // TODO floating ips
-    variables += "export hostname=`hostname`\n";
-    try {
-      log.info("Write variables to paramVariables file: " + variables);
-      Files.write(
-          Paths.get(paramVariables.getAbsolutePath()),
-          variables.getBytes(),
-          StandardOpenOption.APPEND);
-    } catch (IOException e) {
-      log.error("Could not write out-of-the-box variables to paramVariables file");
+    for (String sourceVnfName : networkService.getSourcesNames(vnfr.getName())) {
+      VirtualNetworkFunctionRecord sourceVnfr = networkService.getVnfrByName(sourceVnfName);
+      key.add(sourceVnfName).add(sourceVnfr.getType());
+      addVirtualLinks(key, sourceVnfr);
+      addConfigurations(key, sourceVnfr);
+    }
+    key.add("provides");
+    if (networkService.vnfIsSource(vnfr.getName())) {
+      for (String param : networkService.getProvidesOfVnf(vnfr.getName())) key.add(param);
     }
+    key.add("vnfrs");
+    for (VirtualNetworkFunctionRecord virtualNetworkFunctionRecord : networkService.getVnfrList())
+      key.add(virtualNetworkFunctionRecord.getName()).add(virtualNetworkFunctionRecord.getType());
 
-    // and now the out-of-the-box variables <netname>, <netname>_floatingIp and hostname of the other VNFDs
-    variables = "";
-    for (String sourceVnfName : getNetworkService(nsId).getSourcesNames(vnfr.getName())) {
-      VirtualNetworkFunctionRecord sourceVnfr =
-          getNetworkService(nsId).getVnfrByName(sourceVnfName);
+    // the scripts
+    if (vnfPackage.getScriptsLink() != null && !vnfPackage.getScriptsLink().equals("")) {
+      // only a revision resolved by the git cache identifies the scripts
+      if (scriptsRevision == null) return null;
+      key.add("scriptsLink").add(vnfPackage.getScriptsLink()).add(scriptsRevision);
+    } else {
+      key.add("scripts");
+      for (Script script : vnfPackage.getScripts())
+        key.add(script.getName()).add(script.getPayload());
+    }
+    return key.getHash();
+  }
 
-      List<String> virtuaLinks = new LinkedList<>();
-      for (VirtualDeploymentUnit vdu : sourceVnfr.getVdu()) {
-        for (VNFComponent vnfc : vdu.getVnfc()) {
-          for (VNFDConnectionPoint cp : vnfc.getConnection_point()) {
-            virtuaLinks.add(cp.getVirtual_link_reference());
-          }
+  private void addVirtualLinks(CharmCache.Key key, VirtualNetworkFunctionRecord vnfr) {
+    key.add("virtualLinks");
+    for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
+      for (VNFComponent vnfc : vdu.getVnfc()) {
+        for (VNFDConnectionPoint cp : vnfc.getConnection_point()) {
+          key.add(cp.getVirtual_link_reference());
         }
       }
+    }
+  }
 
-      for (String vl : virtuaLinks)
-        variables += ("export " + sourceVnfr.getType() + "_" + vl + "=`relation-get " + vl + "`\n");
-      // TODO floating ips
-      variables += "export " + sourceVnfr.getType() + "_" + "hostname=`relation-get hostname`\n";
-
-      for (ConfigurationParameter confParam :
-          sourceVnfr.getConfigurations().getConfigurationParameters()) {
-        variables +=
-            "export "
-                + sourceVnfr.getType()
-                + "_"
-                + confParam.getConfKey()
-                + "=`relation-get "
-                + sourceVnfr.getType()
-                + "_"
-                + confParam.getConfKey()
-                + "`\n";
-      }
+  private void addConfigurations(CharmCache.Key key, VirtualNetworkFunctionRecord vnfr) {
+    key.add("configurations");
+    if (vnfr.getConfigurations() == null) return;
+    for (ConfigurationParameter confParam : vnfr.getConfigurations().getConfigurationParameters()) {
+      key.add(confParam.getConfKey()).add(confParam.getValue());
+    }
+  }
 
-      try {
-        log.info("Write variables to relationVariables file: " + variables);
-        Files.write(
-            Paths.get(relationVariables.getAbsolutePath()),
-            variables.getBytes(),
-            StandardOpenOption.APPEND);
-      } catch (IOException e) {
-        log.error("Could not write configuration variables to relationVariables file");
-      }
+  /**
+   * This method creates a charm based on the received VNFR. The charm is assembled in memory by a
+   * CharmBuilder and written into its directory together with the scripts from git at the end.
+   *
+   * @param vnfr
+   * @param vnfPackage
+   * @param scriptsRevision the commit of the scripts repository to check out; null to check out the
+   *     latest one
+   * @throws Exception
+   */
+  private void createCharm(
+      String nsId, VirtualNetworkFunctionRecord vnfr, VNFPackage vnfPackage, String scriptsRevision)
+      throws Exception {
+    log.info("Create charm for vnfr " + vnfr.getName());
+    File charmDirectory = new File(getWorkspacePath(nsId) + "/" + vnfr.getName());
+    NetworkService networkService = getNetworkService(nsId);
+    Charm charm =
+        new CharmBuilder(scriptPath, scriptLogPath, permissions)
+            .build(networkService, vnfr, vnfPackage);
+    String vnfName = vnfr.getName();
+    boolean scriptsFromGit =
+        vnfPackage.getScriptsLink() != null && !vnfPackage.getScriptsLink().equals("");
+
+    // the git repository has to be fetched into the still empty scripts directory
+    (new File(charmDirectory, "scripts")).mkdirs();
+    if (scriptsFromGit) {
+      long start = System.nanoTime();
+      downloadGitRepo(nsId, vnfPackage.getScriptsLink(), scriptsRevision, vnfName);
+      metrics.timer("download-git-repo").stop(start);
     }
+    charm.writeTo(charmDirectory);
   }
 
   /**
    * Download the git repository containing the scripts for the VNFD.
    *
    * @param scriptsLink
+   * @param revision the commit to check out if the git cache is used; null to fetch the latest one
    * @param vnfdName
    */
-  private void downloadGitRepo(String nsId, String scriptsLink, String vnfdName) {
+  private void downloadGitRepo(String nsId, String scriptsLink, String revision, String vnfdName) {
     log.info("Start fetching git repository from " + scriptsLink + " for VNFD " + vnfdName);
-    ProcessBuilder pb =
-        new ProcessBuilder(
-            "/bin/bash",
-            "-c",
-            "cd /tmp/openbaton/juju/"
-                + nsId
-                + "/"
-                + vnfdName
-                + "/scripts"
-                + " && git clone "
-                + scriptsLink
-                + " .");
-    Process execute = null;
-    int exitStatus = -1;
-    try {
-      execute = pb.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
-      exitStatus = execute.waitFor();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
+    if (gitRepositoryCache != null) {
+      File destination = new File(getWorkspacePath(nsId) + "/" + vnfdName + "/scripts");
+      try {
+        if (revision != null) gitRepositoryCache.checkout(scriptsLink, revision, destination);
+        else gitRepositoryCache.checkout(scriptsLink, destination);
+        log.info("Successfully fetched git repository");
+      } catch (IOException e) {
+        log.error("Could not fetch git repository", e);
+      }
+      return;
     }
-    if (exitStatus == 0) {
+    try {
+      commandExecutor.execute(
+          gitBinary, "clone", scriptsLink, getWorkspacePath(nsId) + "/" + vnfdName + "/scripts");
       log.info("Successfully fetched git repository");
-      (new File("/tmp/openbaton/juju/" + nsId + "/" + vnfdName + "/scripts/.git")).delete();
-    } else log.error("Could not fetch git repository");
+      (new File(getWorkspacePath(nsId) + "/" + vnfdName + "/scripts/.git")).delete();
+    } catch (CommandException e) {
+      log.error("Could not fetch git repository", e);
+    }
   }
 
   /**
@@ -1144,14 +1814,14 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
       throws Exception {
     log.info("Copy scripts for lifecycle event " + event.name());
 
-    File scriptsFolder = new File("/tmp/openbaton/juju/" + nsId + "/scripts/" + vnfdName);
+    File scriptsFolder = new File(getWorkspacePath(nsId) + "/scripts/" + vnfdName);
     File[] listOfFiles = scriptsFolder.listFiles();
     if (listOfFiles.length > 1)
       throw new Exception(
-          "There is more than one folder in /tmp/openbaton/juju/scripts/" + vnfdName);
+          "There is more than one folder in " + getWorkspacePath(nsId) + "/scripts/" + vnfdName);
     else if (listOfFiles.length < 1)
       throw new Exception(
-          "No script folder found in /tmp/openbaton/juju/" + nsId + "/scripts/" + vnfdName);
+          "No script folder found in " + getWorkspacePath(nsId) + "/scripts/" + vnfdName);
 
     String gitFolderPath = "";
 
@@ -1166,11 +1836,10 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
     log.info("Found git folder " + gitFolderPath);
 
     String dirName = event.name().toLowerCase() + "Scripts";
-    File scriptDir = new File("/tmp/openbaton/juju/" + nsId + "/" + vnfdName + "/hooks/" + dirName);
+    File scriptDir = new File(getWorkspacePath(nsId) + "/" + vnfdName + "/hooks/" + dirName);
     if (!scriptDir.exists())
       (new File(
-              "/tmp/openbaton/juju/"
-                  + nsId
+              getWorkspacePath(nsId)
                   + "/"
                   + vnfdName
                   + "/hooks/"
@@ -1181,49 +1850,222 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
     for (String script : le.getLifecycle_events()) {
       Files.copy(
           Paths.get(gitFolderPath + "/" + script),
-          Paths.get(
-              "/tmp/openbaton/juju/" + nsId + "/" + vnfdName + "/hooks/" + dirName + "/" + script),
+          Paths.get(getWorkspacePath(nsId) + "/" + vnfdName + "/hooks/" + dirName + "/" + script),
           StandardCopyOption.COPY_ATTRIBUTES);
     }
   }
 
+  /**
+   * Deploy a NetworkService in the background.
+   *
+   * @param networkService
+   * @return a future that completes when the deployment finished or failed
+   */
+  private ListenableFuture<Void> deployNetworkServiceAsync(final NetworkService networkService) {
+    ListenableFutureTask<Void> deployment =
+        new ListenableFutureTask<>(
+            new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                long start = System.nanoTime();
+                runningDeployments.incrementAndGet();
+                workspace.acquire(networkService.getId());
+                try {
+                  placeModel(networkService);
+                  deployNetworkService(networkService);
+                } finally {
+                  workspace.release(networkService.getId());
+                  runningDeployments.decrementAndGet();
+                  metrics.timer("deploy-network-service").stop(start);
+                }
+                try {
+                  getModel(networkService.getId()).getStatusWatcher().refresh();
+                } catch (JujuException e) {
+                  log.warn("Could not refresh the juju status: " + e.getMessage());
+                }
+                return null;
+              }
+            });
+    networkServiceDeployExecutor.execute(deployment);
+    return deployment;
+  }
+
   /**
    * Deploy a NetworkService. That means create the charm directories, deploy them, add charm
    * relations corresponding to the dependencies and remove the created directory again.
    *
+   * <p>The charms are created and deployed in parallel on the deploy executor. A relation is added
+   * as soon as both of its charms are deployed, so independent VNFs never wait for each other. If
+   * one of the steps fails, no further steps are started and the first failure is thrown after the
+   * running steps finished.
+   *
    * @param networkService
    * @throws Exception
    */
-  private void deployNetworkService(NetworkService networkService) throws Exception {
+  private void deployNetworkService(final NetworkService networkService) throws Exception {
+    if (deployMode.equals("bundle")) {
+      deployNetworkServiceAsBundle(networkService);
+      return;
+    }
     log.info("Deploy the NetworkService with id " + networkService.getId());
-    // create charms
-    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
-      // if the vnfr should come from the charm store, you don't need to create a charm
-      if (!networkService.getCharms().contains(vnfr.getName()))
-        createCharm(networkService.getId(), vnfr, networkService.getVnfPackage(vnfr.getName()));
+    CompletionService<String> completionService = new ExecutorCompletionService<>(deployExecutor);
+    int runningTasks = 0;
+
+    // create and deploy charms; the tasks return the name of the deployed VNF
+    Set<String> vnfNames = new HashSet<>();
+    for (final VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      vnfNames.add(vnfr.getName());
+      completionService.submit(
+          new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+              deployVnf(networkService, vnfr);
+              return vnfr.getName();
+            }
+          });
+      runningTasks++;
     }
-    // deploy charms
+
+    // relations that still wait for their charms; <source, target>
+    List<String[]> pendingRelations = new LinkedList<>();
     for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
-      if (networkService.getCharms().contains(vnfr.getName())) {
-        deployCharmFromCharmStore(vnfr.getName());
-      } else {
-        int numUnits = 0;
-        for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
-          numUnits += vdu.getVnfc().size();
+      if (networkService.vnfIsTarget(vnfr.getName())) {
+        for (String source : networkService.getSourcesNames(vnfr.getName())) {
+          pendingRelations.add(new String[] {source, vnfr.getName()});
         }
-        deployCharm(vnfr.getParent_ns_id(), vnfr.getName(), numUnits);
       }
     }
-    // set relations
-    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
-      if (networkService.vnfIsTarget(vnfr.getName())) {
-        for (String source : networkService.getSourcesNames(vnfr.getName())) {
-          addRelation(source, vnfr.getName());
+
+    // set relations as soon as both sides are deployed; the tasks return null
+    Set<String> deployedVnfs = new HashSet<>();
+    Throwable failure = null;
+    while (runningTasks > 0) {
+      Future<String> finishedTask = completionService.take();
+      runningTasks--;
+      String deployedVnf;
+      try {
+        deployedVnf = finishedTask.get();
+      } catch (ExecutionException e) {
+        if (failure == null) failure = e.getCause();
+        continue;
+      }
+      if (deployedVnf == null) continue;
+      deployedVnfs.add(deployedVnf);
+      if (failure != null) continue;
+
+      Iterator<String[]> iterator = pendingRelations.iterator();
+      while (iterator.hasNext()) {
+        final String[] relation = iterator.next();
+        if ((deployedVnfs.contains(relation[0]) || !vnfNames.contains(relation[0]))
+            && (deployedVnfs.contains(relation[1]) || !vnfNames.contains(relation[1]))) {
+          iterator.remove();
+          completionService.submit(
+              new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                  long start = System.nanoTime();
+                  try {
+                    addRelation(networkService.getId(), relation[0], relation[1]);
+                  } finally {
+                    metrics.timer("add-relation").stop(start);
+                  }
+                  return null;
+                }
+              });
+          runningTasks++;
         }
       }
     }
 
-    removeDirectory(new File("/tmp/openbaton/juju/" + networkService.getId()));
+    if (failure instanceof Exception) throw (Exception) failure;
+    else if (failure != null) throw (Error) failure;
+  }
+
+  /**
+   * Deploy a NetworkService as one Juju bundle. The charms are created in parallel, then a bundle
+   * containing all the applications and relations of the NetworkService is written and deployed
+   * with a single juju deploy command.
+   *
+   * @param networkService
+   * @throws Exception
+   */
+  private void deployNetworkServiceAsBundle(final NetworkService networkService) throws Exception {
+    log.info("Deploy the NetworkService with id " + networkService.getId() + " as bundle");
+    List<Callable<Void>> createCharmTasks = new LinkedList<>();
+    for (final VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      // if the vnfr should come from the charm store, you don't need to create a charm
+      if (!networkService.getCharms().contains(vnfr.getName())) {
+        createCharmTasks.add(
+            new Callable<Void>() {
+              @Override
+              public Void call() throws Exception {
+                buildCharm(
+                    networkService.getId(), vnfr, networkService.getVnfPackage(vnfr.getName()));
+                return null;
+              }
+            });
+      }
+    }
+    for (Future<Void> future : deployExecutor.invokeAll(createCharmTasks)) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+        throw (Error) e.getCause();
+      }
+    }
+    createBundle(networkService);
+    long start = System.nanoTime();
+    try {
+      deployBundle(networkService.getId());
+    } finally {
+      metrics.timer("deploy-bundle").stop(start);
+    }
+  }
+
+  /**
+   * Write the bundle.yaml file of a NetworkService. It contains one application per VNF with its
+   * number of units and the relations corresponding to the dependencies.
+   *
+   * @param networkService
+   * @throws IOException
+   */
+  private void createBundle(NetworkService networkService) throws IOException {
+    String bundle =
+        new BundleBuilder(series).build(networkService, getWorkspacePath(networkService.getId()));
+    try (FileWriter writer =
+        new FileWriter(getWorkspacePath(networkService.getId()) + "/bundle.yaml")) {
+      writer.write(bundle);
+    }
+  }
+
+  /**
+   * Create the charm of a VNF and deploy it. If the VNF should come from the charm store, no charm
+   * is created.
+   *
+   * @param networkService
+   * @param vnfr
+   * @throws Exception
+   */
+  private void deployVnf(NetworkService networkService, VirtualNetworkFunctionRecord vnfr)
+      throws Exception {
+    if (networkService.getCharms().contains(vnfr.getName())) {
+      long start = System.nanoTime();
+      try {
+        deployCharmFromCharmStore(networkService.getId(), vnfr.getName());
+      } finally {
+        metrics.timer("deploy-charm-from-charm-store").stop(start);
+      }
+    } else {
+      buildCharm(networkService.getId(), vnfr, networkService.getVnfPackage(vnfr.getName()));
+      int numUnits = BundleBuilder.getNumberOfUnits(networkService, vnfr);
+      long start = System.nanoTime();
+      try {
+        deployCharm(vnfr.getParent_ns_id(), vnfr.getName(), numUnits);
+      } finally {
+        metrics.timer("deploy-charm").stop(start);
+      }
+    }
   }
 
   /**
@@ -1235,143 +2077,115 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
    * @throws VnfmSdkException
    */
   private void deployCharm(String nsId, String vnfr, int numberOfUnits) throws VnfmSdkException {
-    ProcessBuilder pb;
-    Process execute = null;
-    int exitStatus = -1;
-
-    //        bootstrapJuju();
     log.debug(
-        "juju deploy /tmp/openbaton/juju/"
-            + nsId
+        "juju deploy "
+            + getWorkspacePath(nsId)
             + "/"
             + vnfr
             + " -n "
             + numberOfUnits
             + " --series="
             + series
-            + "; juju expose");
-    pb =
-        new ProcessBuilder(
-            "/bin/bash",
-            "-c",
-            "juju deploy /tmp/openbaton/juju/"
-                + nsId
-                + "/"
-                + vnfr
-                + " -n "
-                + numberOfUnits
-                + " --series="
-                + series
-                + "; juju expose "
-                + vnfr);
+            + "; juju expose "
+            + vnfr);
+    JujuClient client = getModel(nsId).getClient();
     try {
-      execute = pb.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
-      exitStatus = execute.waitFor();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-    if (exitStatus == 0) {
-      log.info("Successfully deployed " + numberOfUnits + " units of vnfr " + vnfr);
-    } else {
-      log.error("Could not deploy vnfr " + vnfr);
-      throw new VnfmSdkException("Could not deploy vnfr " + vnfr);
+      client.deploy(getWorkspacePath(nsId) + "/" + vnfr, numberOfUnits, series);
+      client.expose(vnfr);
+    } catch (JujuException e) {
+      log.error("Could not deploy vnfr " + vnfr, e);
+      throw new VnfmSdkException("Could not deploy vnfr " + vnfr + ": " + e.getMessage(), e);
     }
+    log.info("Successfully deployed " + numberOfUnits + " units of vnfr " + vnfr);
   }
 
   /**
-   * Deploys a charm from the charm store. The passed name is the name of the charm.
+   * Deploy the bundle created for the passed NetworkService.
    *
-   * @param charmName
+   * @param nsId
    * @throws VnfmSdkException
    */
-  private void deployCharmFromCharmStore(String charmName) throws VnfmSdkException {
-    ProcessBuilder pb;
-    Process execute = null;
-    int exitStatus = -1;
-    log.debug("juju deploy " + charmName);
-    pb =
-        new ProcessBuilder(
-            "/bin/bash", "-c", "juju deploy " + charmName + "; juju expose " + charmName);
+  private void deployBundle(String nsId) throws VnfmSdkException {
+    log.debug("juju deploy " + getWorkspacePath(nsId) + "/bundle.yaml");
     try {
-      execute = pb.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
-      exitStatus = execute.waitFor();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-    if (exitStatus == 0) {
-      log.info("Successfully deployed vnf " + charmName + " from the juju charm store");
-    } else {
-      log.error("Could not deploy vnf " + charmName + " from the juju charm store");
+      getModel(nsId).getClient().deployBundle(getWorkspacePath(nsId) + "/bundle.yaml");
+    } catch (JujuException e) {
+      log.error("Could not deploy the bundle of network service " + nsId, e);
       throw new VnfmSdkException(
-          "Could not deploy vnf " + charmName + " from the juju charm store");
+          "Could not deploy the bundle of network service " + nsId + ": " + e.getMessage(), e);
     }
+    log.info("Successfully deployed the bundle of network service " + nsId);
   }
 
   /**
-   * Stop the charm and delete the created instance. This will be triggered by a RELEASE_RESOURCES
-   * message.
+   * Deploys a charm from the charm store. The passed name is the name of the charm.
    *
    * @param nsId
-   * @param vnfName
+   * @param charmName
    * @throws VnfmSdkException
    */
-  private void stopCharm(String nsId, String vnfName) throws VnfmSdkException {
-    ProcessBuilder pb;
-    Process execute = null;
-    int exitStatus = -1;
-    log.debug("juju remove-application " + vnfName);
-    pb = new ProcessBuilder("/bin/bash", "-c", "juju remove-application " + vnfName);
+  private void deployCharmFromCharmStore(String nsId, String charmName) throws VnfmSdkException {
+    log.debug("juju deploy " + charmName);
+    JujuClient client = getModel(nsId).getClient();
     try {
-      execute = pb.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
-      exitStatus = execute.waitFor();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-    if (exitStatus == 0) {
-      log.info("Stopped charm for VNF " + vnfName);
-    } else {
-      log.error("Could not stop VNF " + vnfName);
-      throw new VnfmSdkException("Could not stop VNF " + vnfName);
+      client.deployFromCharmStore(charmName);
+      client.expose(charmName);
+    } catch (JujuException e) {
+      log.error("Could not deploy vnf " + charmName + " from the juju charm store", e);
+      throw new VnfmSdkException(
+          "Could not deploy vnf " + charmName + " from the juju charm store: " + e.getMessage(), e);
     }
+    log.info("Successfully deployed vnf " + charmName + " from the juju charm store");
   }
 
   /**
    * Add a relation between two charms.
    *
+   * @param nsId
    * @param source
    * @param target
    * @throws VnfmSdkException
    */
-  private void addRelation(String source, String target) throws VnfmSdkException {
-    ProcessBuilder pb;
-    Process execute = null;
-    int exitStatus = -1;
-    pb =
-        new ProcessBuilder(
-            "/bin/bash",
-            "-c",
-            "juju add-relation " + target + ":" + source + " " + source + ":" + source);
+  private void addRelation(String nsId, String source, String target) throws VnfmSdkException {
     try {
-      execute = pb.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
-      exitStatus = execute.waitFor();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-    if (exitStatus == 0) {
-      log.info("Added relation between source " + source + " and target " + target);
-    } else {
-      log.error("Could not add relation between source " + source + " and target " + target);
+      getModel(nsId).getClient().addRelation(target + ":" + source, source + ":" + source);
+    } catch (JujuException e) {
+      log.error("Could not add relation between source " + source + " and target " + target, e);
       throw new VnfmSdkException(
-          "Could not add relation between source " + source + " and target " + target);
+          "Could not add relation between source "
+              + source
+              + " and target "
+              + target
+              + ": "
+              + e.getMessage(),
+          e);
     }
+    log.info("Added relation between source " + source + " and target " + target);
+  }
+
+  /**
+   * With replicas enabled, make sure that a VNFR was instantiated by this replica. A replica that
+   * became the owner of a network service without receiving its state, e.g. because the previous
+   * owner left without handing it over, must not act on the remaining messages of the network
+   * service, since it would deploy only a part of it. Without replicas every message is accepted.
+   *
+   * @param vnfr
+   * @throws VnfmSdkException if replicas are enabled and the VNFR is unknown
+   */
+  private void checkInstantiated(VirtualNetworkFunctionRecord vnfr) throws VnfmSdkException {
+    if (replicaGroup != null && !isInstantiated(vnfr))
+      throw new VnfmSdkException(
+          "VNFR "
+              + vnfr.getName()
+              + " of network service "
+              + vnfr.getParent_ns_id()
+              + " was not instantiated by this replica, its state is unknown",
+          vnfr);
+  }
+
+  private synchronized boolean isInstantiated(VirtualNetworkFunctionRecord vnfr) {
+    NetworkService networkService = networkServiceMap.get(vnfr.getParent_ns_id());
+    return networkService != null && networkService.getVnfStatusMap().containsKey(vnfr.getName());
   }
 
   /**
@@ -1391,6 +2205,41 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
     }
   }
 
+  /**
+   * Remove a NetworkService object from the networkServiceMap.
+   *
+   * @param id
+   */
+  private synchronized void removeNetworkService(String id) {
+    apply(new NetworkServiceMutation.Remove(id));
+    stopAwaitingNetworkService(id);
+  }
+
+  /**
+   * Apply a mutation to its network service and append it to the journal of the state store. A
+   * snapshot is taken if enough mutations were journaled since the last one. Only the mutations
+   * describing the network services are collected while holding the lock, the state store
+   * serializes and writes them in the background.
+   *
+   * @param mutation
+   */
+  private synchronized void apply(NetworkServiceMutation mutation) {
+    if (mutation.removesNetworkService()) networkServiceMap.remove(mutation.getNsId());
+    else mutation.apply(getNetworkService(mutation.getNsId()));
+    if (stateStore == null) return;
+    try {
+      stateStore.append(mutation);
+      if (stateStore.isSnapshotDue()) {
+        List<NetworkServiceMutation> snapshot = new ArrayList<>();
+        for (NetworkService networkService : networkServiceMap.values())
+          snapshot.addAll(NetworkServiceMutation.describe(networkService));
+        stateStore.snapshot(snapshot);
+      }
+    } catch (IOException e) {
+      log.error("Could not persist the change of network service " + mutation.getNsId(), e);
+    }
+  }
+
   @Override
   public VirtualNetworkFunctionRecord instantiate(
       VirtualNetworkFunctionRecord virtualNetworkFunctionRecord,
@@ -1400,18 +2249,131 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
     return virtualNetworkFunctionRecord;
   }
 
+  /**
+   * Update the status of all the VNFRs of the known network services from the cached juju status.
+   * The changes are applied as mutations, so they are journaled and do not interfere with VNFRs
+   * being replaced at the same time.
+   */
   @Override
-  public void query() {}
+  public void query() {
+    List<VirtualNetworkFunctionRecord> vnfrs = new ArrayList<>();
+    synchronized (this) {
+      // copied under the lock, the lists change when a VNFR is replaced
+      for (NetworkService networkService : networkServiceMap.values())
+        vnfrs.addAll(networkService.getVnfrList());
+    }
+    for (VirtualNetworkFunctionRecord vnfr : vnfrs) {
+      NetworkServiceMutation.UpdateVnfrStatus update = getStatusUpdate(vnfr);
+      if (update != null) applyStatusUpdate(update);
+    }
+  }
+
+  /**
+   * Apply a status update to the stored VNFR if the network service and the VNFR are still known
+   * and the update changes anything.
+   *
+   * @param update
+   */
+  private synchronized void applyStatusUpdate(NetworkServiceMutation.UpdateVnfrStatus update) {
+    NetworkService networkService = networkServiceMap.get(update.getNsId());
+    if (networkService == null) return;
+    VirtualNetworkFunctionRecord vnfr = networkService.getVnfrById(update.getVnfrId());
+    if (vnfr != null && update.changes(vnfr)) apply(update);
+  }
+
+  /**
+   * Update the status of a VNFR that is not stored, like one passed by the NFVO, and the states of
+   * its VNFC instances from the cached juju status.
+   *
+   * @param vnfr
+   */
+  private void updateStatus(VirtualNetworkFunctionRecord vnfr) {
+    NetworkServiceMutation.UpdateVnfrStatus update = getStatusUpdate(vnfr);
+    if (update != null) update.applyTo(vnfr);
+  }
+
+  /**
+   * Create the status update of a VNFR from the cached juju status. VNFC instances are matched with
+   * the units by their vc_id.
+   *
+   * @param vnfr
+   * @return the update or null if Juju does not know the application yet
+   */
+  private NetworkServiceMutation.UpdateVnfrStatus getStatusUpdate(
+      VirtualNetworkFunctionRecord vnfr) {
+    JujuStatus.ApplicationStatus application =
+        getModel(vnfr.getParent_ns_id()).getStatusWatcher().getApplicationStatus(vnfr.getName());
+    if (application == null) return null;
+    Status status = null;
+    if (application.hasError()) status = Status.ERROR;
+    else if (application.isActive()) status = Status.ACTIVE;
+    Map<String, String> unitStates = new HashMap<>();
+    for (JujuStatus.UnitStatus unit : application.getUnits().values()) {
+      if (unit.hasError()) unitStates.put(unit.getName(), "ERROR");
+      else if (unit.isActive()) unitStates.put(unit.getName(), "ACTIVE");
+      else unitStates.put(unit.getName(), "INACTIVE");
+    }
+    return new NetworkServiceMutation.UpdateVnfrStatus(
+        vnfr.getParent_ns_id(), vnfr.getId(), status, unitStates);
+  }
 
   @Override
   public void checkInstantiationFeasibility() {}
 
+  /**
+   * Heal the unit of a VNFC instance. The unit is taken from the vc_id of the instance; if it does
+   * not name a unit, the first failed unit of the VNF's application is healed. If the unit had to
+   * be replaced, the VNFC instance of the unit is changed to refer to the new unit.
+   *
+   * @param virtualNetworkFunctionRecord
+   * @param component
+   * @param cause
+   * @return
+   * @throws Exception
+   */
   @Override
   public VirtualNetworkFunctionRecord heal(
       VirtualNetworkFunctionRecord virtualNetworkFunctionRecord,
       VNFCInstance component,
       String cause)
       throws Exception {
+    String application = virtualNetworkFunctionRecord.getName();
+    JujuModel model = getModel(virtualNetworkFunctionRecord.getParent_ns_id());
+    String unit = component == null ? null : component.getVc_id();
+    if (unit == null || !unit.startsWith(application + "/")) {
+      unit = null;
+      JujuStatus.ApplicationStatus status =
+          model.getStatusWatcher().getApplicationStatus(application);
+      if (status != null) {
+        for (JujuStatus.UnitStatus unitStatus : status.getUnits().values()) {
+          if (unitStatus.hasError()) {
+            unit = unitStatus.getName();
+            break;
+          }
+        }
+      }
+      if (unit == null)
+        throw new VnfmSdkException("Could not find a failed unit of vnfr " + application);
+    }
+    log.info("Healing unit " + unit + " of vnfr " + application + " because of: " + cause);
+    String healedUnit;
+    try {
+      healedUnit = model.getUnitHealer().heal(unit);
+    } catch (JujuException e) {
+      throw new VnfmSdkException("Could not heal unit " + unit + ": " + e.getMessage(), e);
+    }
+    JujuStatus.ApplicationStatus status =
+        model.getStatusWatcher().getApplicationStatus(application);
+    if (!unit.equals(healedUnit) && status != null && status.getUnits().containsKey(healedUnit)) {
+      for (VirtualDeploymentUnit vdu : virtualNetworkFunctionRecord.getVdu()) {
+        for (VNFCInstance vnfcInstance : vdu.getVnfc_instance()) {
+          if (unit.equals(vnfcInstance.getVc_id()))
+            setUnit(vnfcInstance, status.getUnits().get(healedUnit));
+        }
+      }
+    }
+    updateStatus(virtualNetworkFunctionRecord);
+    replaceVnfr(virtualNetworkFunctionRecord);
     return virtualNetworkFunctionRecord;
   }
 
@@ -1449,6 +2411,7 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
   @Override
   public VirtualNetworkFunctionRecord start(
       VirtualNetworkFunctionRecord virtualNetworkFunctionRecord) throws Exception {
+    updateStatus(virtualNetworkFunctionRecord);
     return virtualNetworkFunctionRecord;
   }
 
@@ -1495,9 +2458,118 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
       Object scripts,
       VNFRecordDependency dependency)
       throws Exception {
+    String application = virtualNetworkFunctionRecord.getName();
+    JujuModel model = getModel(virtualNetworkFunctionRecord.getParent_ns_id());
+    ListenableFuture<Void> request;
+    if (scaleInOrOut == Action.SCALE_OUT) {
+      request = model.getScaleBatcher().addUnit(application);
+    } else {
+      // only remove a specific unit if the component refers to one, otherwise the batcher chooses
+      String unit = null;
+      if (component instanceof VNFCInstance) {
+        String vcId = ((VNFCInstance) component).getVc_id();
+        if (vcId != null && vcId.startsWith(application + "/")) unit = vcId;
+      }
+      request = model.getScaleBatcher().removeUnit(application, unit);
+    }
+    try {
+      request.get();
+    } catch (ExecutionException e) {
+      throw new VnfmSdkException(
+          "Could not scale vnfr " + application + ": " + e.getCause().getMessage(), e.getCause());
+    }
+    log.info("Scaled vnfr " + application + " (" + scaleInOrOut + ")");
+
+    JujuStatus status;
+    try {
+      status = model.getStatusWatcher().refresh();
+    } catch (JujuException e) {
+      log.warn("Could not refresh the juju status after scaling " + application, e);
+      return virtualNetworkFunctionRecord;
+    }
+    updateVnfcInstances(
+        virtualNetworkFunctionRecord, component, status.getApplication(application));
+    updateStatus(virtualNetworkFunctionRecord);
+
+    replaceVnfr(virtualNetworkFunctionRecord);
     return virtualNetworkFunctionRecord;
   }
 
+  /**
+   * Replace the stored VNFR of a network service by the passed one, if the network service is
+   * known.
+   *
+   * @param vnfr
+   */
+  private synchronized void replaceVnfr(VirtualNetworkFunctionRecord vnfr) {
+    if (networkServiceMap.containsKey(vnfr.getParent_ns_id()))
+      apply(new NetworkServiceMutation.ReplaceVnfr(vnfr.getParent_ns_id(), vnfr));
+  }
+
+  /**
+   * Bring the VNFC instances of a VNFR in line with the units of its application. VNFC instances
+   * whose vc_id names a unit that does not exist anymore are removed. Units without VNFC instance
+   * get a new one in the VDU of the passed component, or in the first VDU if it is not found.
+   *
+   * @param vnfr
+   * @param component
+   * @param application
+   */
+  private void updateVnfcInstances(
+      VirtualNetworkFunctionRecord vnfr,
+      VNFComponent component,
+      JujuStatus.ApplicationStatus application) {
+    if (application == null) return;
+    Set<String> unitsWithInstance = new HashSet<>();
+    VirtualDeploymentUnit componentVdu = null;
+    for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
+      if (componentVdu == null) componentVdu = vdu;
+      if (component != null && component.getId() != null) {
+        for (VNFComponent vnfc : vdu.getVnfc())
+          if (component.getId().equals(vnfc.getId())) componentVdu = vdu;
+        for (VNFComponent vnfc : vdu.getVnfc_instance())
+          if (component.getId().equals(vnfc.getId())) componentVdu = vdu;
+      }
+      Iterator<VNFCInstance> iterator = vdu.getVnfc_instance().iterator();
+      while (iterator.hasNext()) {
+        VNFCInstance vnfcInstance = iterator.next();
+        String unit = vnfcInstance.getVc_id();
+        if (unit == null || !unit.startsWith(application.getName() + "/")) continue;
+        if (application.getUnits().containsKey(unit)) unitsWithInstance.add(unit);
+        else iterator.remove();
+      }
+    }
+    if (componentVdu == null) return;
+    for (JujuStatus.UnitStatus unit : application.getUnits().values()) {
+      if (unitsWithInstance.contains(unit.getName())) continue;
+      VNFCInstance vnfcInstance = new VNFCInstance();
+      if (!componentVdu.getVnfc().isEmpty())
+        vnfcInstance.setVnfComponent(componentVdu.getVnfc().iterator().next());
+      setUnit(vnfcInstance, unit);
+      componentVdu.getVnfc_instance().add(vnfcInstance);
+    }
+  }
+
+  /**
+   * Let a VNFC instance refer to a unit. The unit name becomes its vc_id and, with the slash
+   * replaced, its hostname.
+   *
+   * @param vnfcInstance
+   * @param unit
+   */
+  private void setUnit(VNFCInstance vnfcInstance, JujuStatus.UnitStatus unit) {
+    vnfcInstance.setVc_id(unit.getName());
+    vnfcInstance.setHostname(unit.getName().replace('/', '-'));
+    Set<Ip> ips = new HashSet<>();
+    if (unit.getPublicAddress() != null) {
+      Ip ip = new Ip();
+      ip.setNetName("public");
+      ip.setIp(unit.getPublicAddress());
+      ips.add(ip);
+    }
+    vnfcInstance.setIps(ips);
+  }
+
   @Override
   public void NotifyChange() {}
 
@@ -1505,6 +2577,10 @@ public class JujuVnfm extends AbstractVnfmSpringAmqp {
     SpringApplication.run(JujuVnfm.class, args);
   }
 
+  public JujuClient getJujuClient() {
+    return jujuClient;
+  }
+
   public void setScriptPath(String scriptPath) {
     this.scriptPath = scriptPath;
   }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.handshake.ServerHandshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A websocket connection to the Juju API of a controller or of a model. Requests are matched with
+ * their responses by the request id, so several threads can send requests over the same connection
+ * at the same time.
+ *
+ * <p>An IOException means that a request could not be sent, so it was certainly not executed by
+ * Juju. A JujuException means that Juju rejected the request or that its outcome is unknown, e.g.
+ * because the connection was closed before the response arrived.
+ */
+public class ApiConnection {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private URI uri;
+  // in milliseconds
+  private long timeout;
+  private WebSocketClient socket;
+  private CountDownLatch opened = new CountDownLatch(1);
+  private volatile boolean closed = false;
+
+  private AtomicInteger requestIds = new AtomicInteger();
+  // <request id, response>
+  private Map<Integer, SettableListenableFuture<JsonObject>> pendingRequests =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param uri the websocket URI, e.g. wss://10.0.0.2:17070/model/uuid/api
+   * @param factory creates the TLS channels for wss URIs; null for plain ws URIs
+   * @param timeout the time in milliseconds to wait for the connection and for every response
+   */
+  public ApiConnection(URI uri, WebSocketClient.WebSocketClientFactory factory, long timeout) {
+    this.uri = uri;
+    this.timeout = timeout;
+    this.socket =
+        new WebSocketClient(uri, new Draft_17()) {
+          @Override
+          public void onOpen(ServerHandshake handshake) {
+            opened.countDown();
+          }
+
+          @Override
+          public void onMessage(String message) {
+            received(message);
+          }
+
+          @Override
+          public void onClose(int code, String reason, boolean remote) {
+            closed(reason);
+          }
+
+          @Override
+          public void onError(Exception e) {
+            log.debug("Error on the Juju API connection " + ApiConnection.this.uri, e);
+            // the connection could not be established, e.g. because it was refused
+            if (opened.getCount() > 0) closed(e.getMessage());
+          }
+        };
+    if (factory != null) socket.setWebSocketFactory(factory);
+  }
+
+  /**
+   * Open the connection and wait until it is established.
+   *
+   * @throws IOException if the connection could not be established within the timeout
+   */
+  public void open() throws IOException {
+    socket.connect();
+    try {
+      if (!opened.await(timeout, TimeUnit.MILLISECONDS)) {
+        close();
+        throw new IOException("Could not connect to " + uri + " within " + timeout + " ms");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new IOException("Interrupted while connecting to " + uri, e);
+    }
+    if (closed) throw new IOException("Could not connect to " + uri);
+  }
+
+  /**
+   * Log in with the passed credentials. Has to be done before any other request.
+   *
+   * @param user the name of the Juju user
+   * @param password
+   * @throws IOException if the login was refused
+   */
+  public void login(String user, String password) throws IOException {
+    JsonObject params = new JsonObject();
+    params.addProperty("auth-tag", "user-" + user);
+    params.addProperty("credentials", password);
+    params.addProperty("nonce", "");
+    try {
+      call("Admin", 3, "Login", params);
+    } catch (JujuException e) {
+      throw new IOException("Could not log in to " + uri + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Send a request and wait for its response.
+   *
+   * @param facade the API facade, e.g. Application
+   * @param version the version of the facade
+   * @param request the name of the request
+   * @param params
+   * @return the response object
+   * @throws IOException if the request could not be sent
+   * @throws JujuException if Juju returned an error or did not respond in time
+   */
+  public JsonObject call(String facade, int version, String request, JsonObject params)
+      throws IOException, JujuException {
+    int requestId = requestIds.incrementAndGet();
+    JsonObject message = new JsonObject();
+    message.addProperty("request-id", requestId);
+    message.addProperty("type", facade);
+    message.addProperty("version", version);
+    message.addProperty("request", request);
+    message.add("params", params);
+
+    SettableListenableFuture<JsonObject> response = new SettableListenableFuture<>();
+    pendingRequests.put(requestId, response);
+    try {
+      if (closed) throw new IOException("The connection to " + uri + " is closed");
+      try {
+        socket.send(message.toString());
+      } catch (RuntimeException e) {
+        // NotYetConnectedException or WebsocketNotConnectedException
+        throw new IOException("Could not send the request to " + uri, e);
+      }
+      try {
+        return response.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (ExecutionException e) {
+        throw (JujuException) e.getCause();
+      } catch (TimeoutException e) {
+        throw new JujuException(
+            facade + "." + request + " was not answered within " + timeout + " ms");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new JujuException("Interrupted while waiting for " + facade + "." + request);
+      }
+    } finally {
+      pendingRequests.remove(requestId);
+    }
+  }
+
+  private void received(String message) {
+    JsonObject frame;
+    try {
+      frame = new JsonParser().parse(message).getAsJsonObject();
+    } catch (JsonParseException | IllegalStateException e) {
+      log.warn("Ignoring an invalid message from " + uri + ": " + message);
+      return;
+    }
+    JsonElement requestId = frame.get("request-id");
+    if (requestId == null) return;
+    SettableListenableFuture<JsonObject> response = pendingRequests.get(requestId.getAsInt());
+    if (response == null) return;
+    JsonElement error = frame.get("error");
+    if (error != null && error.isJsonPrimitive() && !error.getAsString().isEmpty()) {
+      response.setException(new JujuException(error.getAsString()));
+    } else if (frame.get("response") != null && frame.get("response").isJsonObject()) {
+      response.set(frame.getAsJsonObject("response"));
+    } else {
+      response.set(new JsonObject());
+    }
+  }
+
+  private void closed(String reason) {
+    closed = true;
+    opened.countDown();
+    for (SettableListenableFuture<JsonObject> response : pendingRequests.values()) {
+      response.setException(
+          new JujuException("The connection to " + uri + " was closed: " + reason));
+    }
+  }
+
+  /**
+   * Returns the number of requests that wait for their response.
+   *
+   * @return
+   */
+  public int getPendingRequests() {
+    return pendingRequests.size();
+  }
+
+  public boolean isOpen() {
+    return !closed && opened.getCount() == 0;
+  }
+
+  public void close() {
+    closed = true;
+    socket.close();
+  }
+
+  @Override
+  public String toString() {
+    return uri.toString();
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.java_websocket.client.DefaultSSLWebSocketClientFactory;
+import org.java_websocket.client.WebSocketClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps logged in connections to the Juju API of one controller, so that a request does not pay for
+ * the connection setup and the login. Every model gets up to size connections, which are opened
+ * when the existing ones are busy and reopened after they were closed. The model UUIDs, which the
+ * API addresses the models by, are looked up once over a connection to the controller.
+ */
+public class ApiConnectionPool {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  // the path of the controller connection in the connection map
+  private static final String CONTROLLER = "";
+
+  private URI endpoint;
+  private String user;
+  private String password;
+  private int size;
+  // in milliseconds
+  private long timeout;
+
+  // creates the TLS channels; null if the endpoint does not use TLS
+  private WebSocketClient.WebSocketClientFactory socketFactory;
+  private ExecutorService sslExecutor;
+
+  // <model name, model uuid>
+  private Map<String, String> modelUuids = new HashMap<>();
+  // <model uuid or CONTROLLER, connections>
+  private Map<String, List<ApiConnection>> connections = new HashMap<>();
+  // <model uuid or CONTROLLER, number of connections that are being opened>
+  private Map<String, Integer> opening = new HashMap<>();
+  private boolean closed = false;
+
+  /**
+   * @param endpoint the address of the controller in the form wss://host:port
+   * @param user the Juju user
+   * @param password
+   * @param sslContext used for wss endpoints; has to trust the CA certificate of the controller
+   * @param size the maximum number of connections per model
+   * @param timeout the time in milliseconds to wait for a connection or a response
+   */
+  public ApiConnectionPool(
+      URI endpoint, String user, String password, SSLContext sslContext, int size, long timeout) {
+    this.endpoint = endpoint;
+    this.user = user;
+    this.password = password;
+    this.size = size;
+    this.timeout = timeout;
+    if ("wss".equals(endpoint.getScheme())) {
+      sslExecutor = Executors.newCachedThreadPool();
+      socketFactory = new DefaultSSLWebSocketClientFactory(sslContext, sslExecutor);
+    }
+  }
+
+  /**
+   * Create an SSLContext that trusts the certificates in the passed PEM file, e.g. the CA
+   * certificate of a Juju controller.
+   *
+   * @param caCertificate
+   * @return
+   * @throws IOException
+   * @throws GeneralSecurityException
+   */
+  public static SSLContext createSslContext(File caCertificate)
+      throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    try (InputStream in = new FileInputStream(caCertificate)) {
+      int i = 0;
+      for (Certificate certificate :
+          CertificateFactory.getInstance("X.509").generateCertificates(in))
+        keyStore.setCertificateEntry("juju-ca-" + i++, certificate);
+    }
+    TrustManagerFactory trustManagerFactory =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init(keyStore);
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(null, trustManagerFactory.getTrustManagers(), null);
+    return sslContext;
+  }
+
+  /**
+   * Returns a logged in connection to a model of the controller. An idle connection is preferred,
+   * if all are busy and the pool is not full yet, a new one is opened.
+   *
+   * @param model the name of the model
+   * @return
+   * @throws IOException if the model does not exist or no connection could be established
+   */
+  public ApiConnection get(String model) throws IOException {
+    return getConnection(getModelUuid(model));
+  }
+
+  /**
+   * Close the connections to a model and forget its UUID, e.g. after the model was destroyed.
+   *
+   * @param model the name of the model
+   */
+  public void remove(String model) {
+    List<ApiConnection> removed;
+    synchronized (this) {
+      String uuid = modelUuids.remove(model);
+      if (uuid == null) return;
+      removed = connections.remove(uuid);
+    }
+    if (removed != null) for (ApiConnection connection : removed) connection.close();
+  }
+
+  /** Close all connections. Following requests fail. */
+  public void close() {
+    List<ApiConnection> open = new LinkedList<>();
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      for (List<ApiConnection> modelConnections : connections.values())
+        open.addAll(modelConnections);
+      connections.clear();
+    }
+    for (ApiConnection connection : open) connection.close();
+    if (sslExecutor != null) sslExecutor.shutdown();
+  }
+
+  private String getModelUuid(String model) throws IOException {
+    synchronized (this) {
+      if (modelUuids.containsKey(model)) return modelUuids.get(model);
+    }
+    JsonObject params = new JsonObject();
+    params.addProperty("tag", "user-" + user);
+    JsonObject response;
+    try {
+      response = getConnection(CONTROLLER).call("ModelManager", 2, "ListModels", params);
+    } catch (JujuException e) {
+      throw new IOException("Could not list the models: " + e.getMessage(), e);
+    }
+    String uuid = null;
+    JsonElement userModels = response.get("user-models");
+    if (userModels != null && userModels.isJsonArray()) {
+      for (JsonElement userModel : (JsonArray) userModels) {
+        JsonObject modelInfo = userModel.getAsJsonObject().getAsJsonObject("model");
+        if (modelInfo != null && model.equals(modelInfo.get("name").getAsString()))
+          uuid = modelInfo.get("uuid").getAsString();
+      }
+    }
+    if (uuid == null) throw new IOException("The model " + model + " does not exist");
+    synchronized (this) {
+      modelUuids.put(model, uuid);
+    }
+    return uuid;
+  }
+
+  private ApiConnection getConnection(String uuid) throws IOException {
+    synchronized (this) {
+      while (true) {
+        if (closed) throw new IOException("The Juju API connections are closed");
+        List<ApiConnection> modelConnections = connections.get(uuid);
+        if (modelConnections == null) {
+          modelConnections = new ArrayList<>();
+          connections.put(uuid, modelConnections);
+        }
+        ApiConnection leastBusy = null;
+        Iterator<ApiConnection> iterator = modelConnections.iterator();
+        while (iterator.hasNext()) {
+          ApiConnection connection = iterator.next();
+          if (!connection.isOpen()) {
+            iterator.remove();
+          } else if (leastBusy == null
+              || connection.getPendingRequests() < leastBusy.getPendingRequests()) {
+            leastBusy = connection;
+          }
+        }
+        if (leastBusy != null && leastBusy.getPendingRequests() == 0) return leastBusy;
+        int opening = this.opening.containsKey(uuid) ? this.opening.get(uuid) : 0;
+        if (modelConnections.size() + opening < size) {
+          this.opening.put(uuid, opening + 1);
+          break;
+        }
+        if (leastBusy != null) return leastBusy;
+        // all connections of the model are being opened, wait for one of them
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for a connection", e);
+        }
+      }
+    }
+
+    // opened outside of the lock, so that a slow controller does not block the other models
+    URI uri = endpoint.resolve(uuid.equals(CONTROLLER) ? "/api" : "/model/" + uuid + "/api");
+    ApiConnection connection = new ApiConnection(uri, socketFactory, timeout);
+    try {
+      connection.open();
+      connection.login(user, password);
+    } catch (IOException e) {
+      connection.close();
+      synchronized (this) {
+        opened(uuid);
+      }
+      throw e;
+    }
+    log.debug("Opened a Juju API connection to " + uri);
+    synchronized (this) {
+      opened(uuid);
+      List<ApiConnection> modelConnections = connections.get(uuid);
+      if (closed || modelConnections == null) {
+        connection.close();
+        throw new IOException("The connections to " + uri + " were closed");
+      }
+      modelConnections.add(connection);
+    }
+    return connection;
+  }
+
+  /**
+   * Count down the connections that are being opened to a model and wake up the threads waiting for
+   * them. Has to be called while holding the lock of the pool.
+   *
+   * @param uuid
+   */
+  private void opened(String uuid) {
+    Integer opening = this.opening.get(uuid);
+    if (opening == null || opening <= 1) this.opening.remove(uuid);
+    else this.opening.put(uuid, opening - 1);
+    notifyAll();
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * JujuClient implementation that sends the requests over pooled connections to the Juju API instead
+ * of starting the juju executable, which logs in to the controller again for every command.
+ * Deploying charms and bundles and managing models needs the charm upload and the bundle logic of
+ * the juju client, so these requests are passed to the fallback client. The fallback is also used
+ * if the API cannot be reached, as well as for the models of other controllers.
+ */
+public class ApiJujuClient implements JujuClient {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private static final int APPLICATION_VERSION = 1;
+  private static final int CLIENT_VERSION = 1;
+
+  private ApiConnectionPool pool;
+  // the name of the controller the pool is connected to
+  private String controller;
+  // the name of the model of this client; null to pass all requests to the fallback
+  private String model;
+  private JujuClient fallback;
+
+  /**
+   * @param pool the connections to the controller
+   * @param controller the name of the controller
+   * @param model the name of the model the requests go to; null to use the fallback client only
+   * @param fallback the client used for the requests the API client does not handle
+   */
+  public ApiJujuClient(
+      ApiConnectionPool pool, String controller, String model, JujuClient fallback) {
+    this.pool = pool;
+    this.controller = controller;
+    this.model = model;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public void deploy(String charmPath, int numberOfUnits, String series) throws JujuException {
+    fallback.deploy(charmPath, numberOfUnits, series);
+  }
+
+  @Override
+  public void deployFromCharmStore(String charmName) throws JujuException {
+    fallback.deployFromCharmStore(charmName);
+  }
+
+  @Override
+  public void deployBundle(String bundlePath) throws JujuException {
+    fallback.deployBundle(bundlePath);
+  }
+
+  @Override
+  public void expose(String application) throws JujuException {
+    JsonObject params = new JsonObject();
+    params.addProperty("application", application);
+    try {
+      call("Application", APPLICATION_VERSION, "Expose", params);
+    } catch (IOException e) {
+      unavailable(e);
+      fallback.expose(application);
+    }
+  }
+
+  @Override
+  public void removeApplications(List<String> applications) throws JujuException {
+    // the API removes one application per request; if the API fails in between, only the
+    // remaining applications are passed to the fallback
+    for (int i = 0; i < applications.size(); i++) {
+      JsonObject params = new JsonObject();
+      params.addProperty("application", applications.get(i));
+      try {
+        call("Application", APPLICATION_VERSION, "Destroy", params);
+      } catch (IOException e) {
+        unavailable(e);
+        fallback.removeApplications(applications.subList(i, applications.size()));
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void removeMachine(String machine) throws JujuException {
+    JsonObject params = new JsonObject();
+    params.add("machine-names", toArray(Collections.singletonList(machine)));
+    params.addProperty("force", true);
+    try {
+      call("Client", CLIENT_VERSION, "DestroyMachines", params);
+    } catch (IOException e) {
+      unavailable(e);
+      fallback.removeMachine(machine);
+    }
+  }
+
+  @Override
+  public void addUnits(String application, int numberOfUnits) throws JujuException {
+    JsonObject params = new JsonObject();
+    params.addProperty("application", application);
+    params.addProperty("num-units", numberOfUnits);
+    try {
+      call("Application", APPLICATION_VERSION, "AddUnits", params);
+    } catch (IOException e) {
+      unavailable(e);
+      fallback.addUnits(application, numberOfUnits);
+    }
+  }
+
+  @Override
+  public void removeUnits(List<String> units) throws JujuException {
+    JsonObject params = new JsonObject();
+    params.add("unit-names", toArray(units));
+    try {
+      call("Application", APPLICATION_VERSION, "DestroyUnits", params);
+    } catch (IOException e) {
+      unavailable(e);
+      fallback.removeUnits(units);
+    }
+  }
+
+  @Override
+  public void resolved(String unit) throws JujuException {
+    JsonObject params = new JsonObject();
+    params.addProperty("unit-name", unit);
+    params.addProperty("retry", true);
+    try {
+      call("Client", CLIENT_VERSION, "Resolved", params);
+    } catch (IOException e) {
+      unavailable(e);
+      fallback.resolved(unit);
+    }
+  }
+
+  @Override
+  public void addRelation(String endpoint1, String endpoint2) throws JujuException {
+    JsonObject params = new JsonObject();
+    params.add("endpoints", toArray(Arrays.asList(endpoint1, endpoint2)));
+    try {
+      call("Application", APPLICATION_VERSION, "AddRelation", params);
+    } catch (IOException e) {
+      unavailable(e);
+      fallback.addRelation(endpoint1, endpoint2);
+    }
+  }
+
+  @Override
+  public JujuStatus getStatus() throws JujuException {
+    JsonObject params = new JsonObject();
+    params.add("patterns", new JsonArray());
+    JsonObject response;
+    try {
+      response = call("Client", CLIENT_VERSION, "FullStatus", params);
+    } catch (IOException e) {
+      unavailable(e);
+      return fallback.getStatus();
+    }
+    try {
+      return JujuStatus.parse(new StringReader(response.toString()));
+    } catch (IOException e) {
+      throw new JujuException("Could not read the juju status: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void addModel(String controller, String model) throws JujuException {
+    fallback.addModel(controller, model);
+  }
+
+  @Override
+  public void destroyModel(String model) throws JujuException {
+    fallback.destroyModel(model);
+    String[] controllerAndModel = model.split(":", 2);
+    if (controllerAndModel.length == 2 && controllerAndModel[0].equals(controller))
+      pool.remove(controllerAndModel[1]);
+  }
+
+  @Override
+  public JujuClient forModel(String model) {
+    String[] controllerAndModel = model.split(":", 2);
+    if (controllerAndModel.length == 2 && controllerAndModel[0].equals(controller))
+      return new ApiJujuClient(pool, controller, controllerAndModel[1], fallback.forModel(model));
+    return fallback.forModel(model);
+  }
+
+  /**
+   * Send a request to the model of this client and check the response for errors.
+   *
+   * @param facade
+   * @param version
+   * @param request
+   * @param params
+   * @return the response
+   * @throws IOException if the request could not be sent; it was not executed then
+   * @throws JujuException if Juju returned an error or the outcome of the request is unknown
+   */
+  private JsonObject call(String facade, int version, String request, JsonObject params)
+      throws IOException, JujuException {
+    if (model == null) throw new IOException("No model of the Juju API selected");
+    JsonObject response = pool.get(model).call(facade, version, request, params);
+    // some requests report errors in the response, bulk requests per entity in a results list
+    checkError(response.get("error"), facade + "." + request);
+    JsonElement results = response.get("results");
+    if (results != null && results.isJsonArray()) {
+      for (JsonElement result : (JsonArray) results) {
+        if (result.isJsonObject())
+          checkError(result.getAsJsonObject().get("error"), facade + "." + request);
+      }
+    }
+    return response;
+  }
+
+  private void checkError(JsonElement error, String request) throws JujuException {
+    if (error == null || !error.isJsonObject()) return;
+    JsonElement message = error.getAsJsonObject().get("message");
+    if (message != null && !message.getAsString().isEmpty())
+      throw new JujuException(request + " failed: " + message.getAsString());
+  }
+
+  private void unavailable(IOException e) {
+    if (model != null)
+      log.warn("Juju API not available, falling back to the juju client: " + e.getMessage());
+  }
+
+  private static JsonArray toArray(List<String> values) {
+    JsonArray array = new JsonArray();
+    for (String value : values) array.add(new JsonPrimitive(value));
+    return array;
+  }
+
+  public String getController() {
+    return controller;
+  }
+
+  public String getModel() {
+    return model;
+  }
+}
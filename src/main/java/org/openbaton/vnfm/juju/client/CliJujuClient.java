@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import org.openbaton.vnfm.juju.utils.CommandException;
+import org.openbaton.vnfm.juju.utils.CommandExecutor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * JujuClient implementation that executes the juju command line client. The juju executable is
+ * started directly, without a shell in between, by the passed CommandExecutor.
+ */
+public class CliJujuClient implements JujuClient {
+
+  private String jujuBinary;
+  private CommandExecutor commandExecutor;
+  // the model in the form controller:model; null for the current model of the juju client
+  private String model;
+
+  public CliJujuClient(CommandExecutor commandExecutor) {
+    this.jujuBinary = "juju";
+    this.commandExecutor = commandExecutor;
+  }
+
+  @Override
+  public void deploy(String charmPath, int numberOfUnits, String series) throws JujuException {
+    execute("deploy", charmPath, "-n", String.valueOf(numberOfUnits), "--series=" + series);
+  }
+
+  @Override
+  public void deployFromCharmStore(String charmName) throws JujuException {
+    execute("deploy", charmName);
+  }
+
+  @Override
+  public void deployBundle(String bundlePath) throws JujuException {
+    execute("deploy", bundlePath);
+  }
+
+  @Override
+  public void expose(String application) throws JujuException {
+    execute("expose", application);
+  }
+
+  @Override
+  public void removeApplications(List<String> applications) throws JujuException {
+    List<String> arguments = new LinkedList<>();
+    arguments.add("remove-application");
+    arguments.addAll(applications);
+    execute(arguments.toArray(new String[arguments.size()]));
+  }
+
+  @Override
+  public void removeMachine(String machine) throws JujuException {
+    execute("remove-machine", "--force", machine);
+  }
+
+  @Override
+  public void addUnits(String application, int numberOfUnits) throws JujuException {
+    execute("add-unit", application, "-n", String.valueOf(numberOfUnits));
+  }
+
+  @Override
+  public void removeUnits(List<String> units) throws JujuException {
+    List<String> arguments = new LinkedList<>();
+    arguments.add("remove-unit");
+    arguments.addAll(units);
+    execute(arguments.toArray(new String[arguments.size()]));
+  }
+
+  @Override
+  public void resolved(String unit) throws JujuException {
+    execute("resolved", unit);
+  }
+
+  @Override
+  public void addRelation(String endpoint1, String endpoint2) throws JujuException {
+    execute("add-relation", endpoint1, endpoint2);
+  }
+
+  @Override
+  public JujuStatus getStatus() throws JujuException {
+    // the status of a big model does not fit into the output buffer, so it is written into a file
+    // and parsed from there
+    File statusFile = null;
+    try {
+      statusFile = File.createTempFile("juju-status", ".json");
+      execute("status", "--format=json", "-o", statusFile.getAbsolutePath());
+      try (Reader reader = new InputStreamReader(new FileInputStream(statusFile), "UTF-8")) {
+        return JujuStatus.parse(reader);
+      }
+    } catch (IOException e) {
+      throw new JujuException("Could not read the juju status: " + e.getMessage(), e);
+    } finally {
+      if (statusFile != null) statusFile.delete();
+    }
+  }
+
+  @Override
+  public void addModel(String controller, String model) throws JujuException {
+    executeOnController("add-model", model, "-c", controller, "--no-switch");
+  }
+
+  @Override
+  public void destroyModel(String model) throws JujuException {
+    executeOnController("destroy-model", "-y", model);
+  }
+
+  @Override
+  public JujuClient forModel(String model) {
+    CliJujuClient client = new CliJujuClient(commandExecutor);
+    client.jujuBinary = jujuBinary;
+    client.model = model;
+    return client;
+  }
+
+  /**
+   * Execute a juju command in the model of this client and wait for it to finish.
+   *
+   * @param arguments the arguments passed to the juju executable, starting with the command
+   * @return the last part of the output of the command
+   * @throws JujuException if the command could not be executed, timed out or returned a non-zero
+   *     exit status; the message contains the last part of the output
+   */
+  private String execute(String... arguments) throws JujuException {
+    if (model == null) return executeOnController(arguments);
+    List<String> argumentList = new LinkedList<>(Arrays.asList(arguments));
+    argumentList.add(1, "-m");
+    argumentList.add(2, model);
+    return executeOnController(argumentList.toArray(new String[argumentList.size()]));
+  }
+
+  /**
+   * Execute a juju command without selecting a model and wait for it to finish.
+   *
+   * @param arguments the arguments passed to the juju executable
+   * @return the last part of the output of the command
+   * @throws JujuException
+   */
+  private String executeOnController(String... arguments) throws JujuException {
+    List<String> command = new LinkedList<>();
+    command.add(jujuBinary);
+    command.addAll(Arrays.asList(arguments));
+    try {
+      return commandExecutor.execute(command, null);
+    } catch (CommandException e) {
+      throw new JujuException(e.getMessage(), e);
+    }
+  }
+
+  public String getJujuBinary() {
+    return jujuBinary;
+  }
+
+  public void setJujuBinary(String jujuBinary) {
+    this.jujuBinary = jujuBinary;
+  }
+
+  public String getModel() {
+    return model;
+  }
+}
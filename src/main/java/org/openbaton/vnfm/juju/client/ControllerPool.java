@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import java.util.*;
+
+/**
+ * Keeps track of the number of models the Juju VNFM created on each of its controllers, so that a
+ * new model can be placed on the controller with the fewest of them.
+ */
+public class ControllerPool {
+
+  // <controller, number of models>; in the configured order so that ties go to the first one
+  private Map<String, Integer> models;
+
+  public ControllerPool(Collection<String> controllers) {
+    if (controllers.isEmpty())
+      throw new IllegalArgumentException("At least one controller is needed");
+    this.models = new LinkedHashMap<>();
+    for (String controller : controllers) models.put(controller, 0);
+  }
+
+  /**
+   * Choose the controller with the fewest models and count a new model on it.
+   *
+   * @return the controller
+   */
+  public synchronized String acquire() {
+    String chosen = null;
+    for (Map.Entry<String, Integer> entry : models.entrySet()) {
+      if (chosen == null || entry.getValue() < models.get(chosen)) chosen = entry.getKey();
+    }
+    models.put(chosen, models.get(chosen) + 1);
+    return chosen;
+  }
+
+  /**
+   * Count an existing model on a controller, e.g. one that was recovered after a restart. Models of
+   * controllers that are not part of the pool anymore are ignored.
+   *
+   * @param controller
+   */
+  public synchronized void add(String controller) {
+    if (models.containsKey(controller)) models.put(controller, models.get(controller) + 1);
+  }
+
+  /**
+   * Stop counting a model on a controller because it was destroyed.
+   *
+   * @param controller
+   */
+  public synchronized void release(String controller) {
+    Integer count = models.get(controller);
+    if (count != null && count > 0) models.put(controller, count - 1);
+  }
+
+  /**
+   * Returns the number of models per controller.
+   *
+   * @return a copy of the counts
+   */
+  public synchronized Map<String, Integer> getModels() {
+    return new LinkedHashMap<>(models);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import java.util.List;
+
+/**
+ * The operations that the Juju VNFM needs from Juju. Implementations decide how the requests reach
+ * the Juju controller.
+ */
+public interface JujuClient {
+
+  /**
+   * Deploy a charm from a local directory.
+   *
+   * @param charmPath the directory of the charm
+   * @param numberOfUnits
+   * @param series the Ubuntu series of the machines
+   * @throws JujuException
+   */
+  void deploy(String charmPath, int numberOfUnits, String series) throws JujuException;
+
+  /**
+   * Deploy a charm from the Juju charm store.
+   *
+   * @param charmName
+   * @throws JujuException
+   */
+  void deployFromCharmStore(String charmName) throws JujuException;
+
+  /**
+   * Deploy a bundle file.
+   *
+   * @param bundlePath
+   * @throws JujuException
+   */
+  void deployBundle(String bundlePath) throws JujuException;
+
+  /**
+   * Make an application accessible from the public network.
+   *
+   * @param application
+   * @throws JujuException
+   */
+  void expose(String application) throws JujuException;
+
+  /**
+   * Remove applications together with their units.
+   *
+   * @param applications
+   * @throws JujuException
+   */
+  void removeApplications(List<String> applications) throws JujuException;
+
+  /**
+   * Remove a machine even if units are still assigned to it.
+   *
+   * @param machine the machine id
+   * @throws JujuException
+   */
+  void removeMachine(String machine) throws JujuException;
+
+  /**
+   * Add units to an application.
+   *
+   * @param application
+   * @param numberOfUnits
+   * @throws JujuException
+   */
+  void addUnits(String application, int numberOfUnits) throws JujuException;
+
+  /**
+   * Remove units together with their machines.
+   *
+   * @param units the unit names in the form application/number
+   * @throws JujuException
+   */
+  void removeUnits(List<String> units) throws JujuException;
+
+  /**
+   * Mark the failed hook of a unit as resolved and let Juju run it again.
+   *
+   * @param unit the unit name in the form application/number
+   * @throws JujuException
+   */
+  void resolved(String unit) throws JujuException;
+
+  /**
+   * Add a relation between two application endpoints.
+   *
+   * @param endpoint1 the endpoint in the form application:relation
+   * @param endpoint2 the endpoint in the form application:relation
+   * @throws JujuException
+   */
+  void addRelation(String endpoint1, String endpoint2) throws JujuException;
+
+  /**
+   * Fetch the state of the applications and units of the model.
+   *
+   * @return
+   * @throws JujuException
+   */
+  JujuStatus getStatus() throws JujuException;
+
+  /**
+   * Create a model on a controller. The current model of the client is not changed.
+   *
+   * @param controller
+   * @param model the name of the new model
+   * @throws JujuException
+   */
+  void addModel(String controller, String model) throws JujuException;
+
+  /**
+   * Destroy a model together with its applications and machines.
+   *
+   * @param model the model in the form controller:model
+   * @throws JujuException
+   */
+  void destroyModel(String model) throws JujuException;
+
+  /**
+   * Returns a client whose requests go to the passed model instead of the model of this client.
+   *
+   * @param model the model in the form controller:model
+   * @return
+   */
+  JujuClient forModel(String model);
+}
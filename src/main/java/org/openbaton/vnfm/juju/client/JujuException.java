@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+/**
+ * Thrown by a JujuClient if a request to Juju could not be executed successfully.
+ */
+public class JujuException extends Exception {
+
+  public JujuException(String message) {
+    super(message);
+  }
+
+  public JujuException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
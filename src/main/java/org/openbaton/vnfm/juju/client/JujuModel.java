@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+/**
+ * Everything the Juju VNFM uses to work with one Juju model: the client whose requests go to the
+ * model, the watcher of its status and the batchers and the healer that execute their commands
+ * through that client. Application names only have to be unique within a model, so the batchers of
+ * different models never mix up their requests.
+ */
+public class JujuModel {
+
+  // in the form controller:model; null for the current model of the juju client
+  private String name;
+  private JujuClient client;
+  private JujuStatusWatcher statusWatcher;
+  private ScaleBatcher scaleBatcher;
+  private ReleaseBatcher releaseBatcher;
+  private UnitHealer unitHealer;
+
+  public JujuModel(
+      String name,
+      JujuClient client,
+      JujuStatusWatcher statusWatcher,
+      ScaleBatcher scaleBatcher,
+      ReleaseBatcher releaseBatcher,
+      UnitHealer unitHealer) {
+    this.name = name;
+    this.client = client;
+    this.statusWatcher = statusWatcher;
+    this.scaleBatcher = scaleBatcher;
+    this.releaseBatcher = releaseBatcher;
+    this.unitHealer = unitHealer;
+  }
+
+  /**
+   * Returns the controller of the model.
+   *
+   * @return the controller or null if this is the current model of the juju client
+   */
+  public String getController() {
+    if (name == null) return null;
+    return name.substring(0, name.indexOf(':'));
+  }
+
+  /** Stop watching the model. */
+  public void close() {
+    statusWatcher.stop();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public JujuClient getClient() {
+    return client;
+  }
+
+  public JujuStatusWatcher getStatusWatcher() {
+    return statusWatcher;
+  }
+
+  public ScaleBatcher getScaleBatcher() {
+    return scaleBatcher;
+  }
+
+  public ReleaseBatcher getReleaseBatcher() {
+    return releaseBatcher;
+  }
+
+  public UnitHealer getUnitHealer() {
+    return unitHealer;
+  }
+
+  @Override
+  public String toString() {
+    return name == null ? "current model" : name;
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * The state of the applications and units of a Juju model as reported by juju status. Instances are
+ * immutable, a newer state is represented by a new instance.
+ */
+public class JujuStatus {
+
+  public static final JujuStatus EMPTY =
+      new JujuStatus(Collections.<String, ApplicationStatus>emptyMap());
+
+  // <application name, status>
+  private Map<String, ApplicationStatus> applications;
+
+  public JujuStatus(Map<String, ApplicationStatus> applications) {
+    this.applications = Collections.unmodifiableMap(applications);
+  }
+
+  /**
+   * Returns the status of an application.
+   *
+   * @param name
+   * @return the status or null if the model does not contain the application
+   */
+  public ApplicationStatus getApplication(String name) {
+    return applications.get(name);
+  }
+
+  public Map<String, ApplicationStatus> getApplications() {
+    return applications;
+  }
+
+  /**
+   * Parse the output of juju status --format=json. The document is read as a stream and everything
+   * apart from the application and unit states is skipped without being built in memory. Both the
+   * Juju 2 names (applications, application-status, juju-status) and the Juju 1 names (services,
+   * service-status, agent-status) are understood, as well as the response of the FullStatus API
+   * request (status, agent-status, with status and info instead of current and message).
+   *
+   * @param in
+   * @return
+   * @throws IOException if the document could not be parsed
+   */
+  public static JujuStatus parse(Reader in) throws IOException {
+    Map<String, ApplicationStatus> applications = new HashMap<>();
+    JsonReader reader = new JsonReader(in);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ((name.equals("applications") || name.equals("services"))
+          && reader.peek() == JsonToken.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String application = reader.nextName();
+          applications.put(application, parseApplication(reader, application));
+        }
+        reader.endObject();
+      } else reader.skipValue();
+    }
+    reader.endObject();
+    return new JujuStatus(applications);
+  }
+
+  private static ApplicationStatus parseApplication(JsonReader reader, String name)
+      throws IOException {
+    String[] status = {null, null};
+    Map<String, UnitStatus> units = new HashMap<>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      if (key.equals("application-status")
+          || key.equals("service-status")
+          || key.equals("status")) {
+        status = parseStatus(reader);
+      } else if (key.equals("units") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String unit = reader.nextName();
+          units.put(unit, parseUnit(reader, unit));
+        }
+        reader.endObject();
+      } else reader.skipValue();
+    }
+    reader.endObject();
+    return new ApplicationStatus(name, status[0], status[1], units);
+  }
+
+  private static UnitStatus parseUnit(JsonReader reader, String name) throws IOException {
+    String[] workloadStatus = {null, null};
+    String agentStatus = null;
+    String machine = null;
+    String publicAddress = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      if (key.equals("workload-status")) {
+        workloadStatus = parseStatus(reader);
+      } else if (key.equals("juju-status") || key.equals("agent-status")) {
+        agentStatus = parseStatus(reader)[0];
+      } else if (key.equals("machine") && reader.peek() == JsonToken.STRING) {
+        machine = reader.nextString();
+      } else if (key.equals("public-address") && reader.peek() == JsonToken.STRING) {
+        publicAddress = reader.nextString();
+      } else reader.skipValue();
+    }
+    reader.endObject();
+    return new UnitStatus(
+        name, workloadStatus[0], workloadStatus[1], agentStatus, machine, publicAddress);
+  }
+
+  /**
+   * Parse a status object.
+   *
+   * @param reader
+   * @return the current status and the message, both may be null
+   * @throws IOException
+   */
+  private static String[] parseStatus(JsonReader reader) throws IOException {
+    String[] status = {null, null};
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return status;
+    }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      if ((key.equals("current") || key.equals("status")) && reader.peek() == JsonToken.STRING)
+        status[0] = reader.nextString();
+      else if ((key.equals("message") || key.equals("info")) && reader.peek() == JsonToken.STRING)
+        status[1] = reader.nextString();
+      else reader.skipValue();
+    }
+    reader.endObject();
+    return status;
+  }
+
+  public static class ApplicationStatus {
+
+    private String name;
+    private String status;
+    private String message;
+    // <unit name, status>
+    private Map<String, UnitStatus> units;
+
+    public ApplicationStatus(
+        String name, String status, String message, Map<String, UnitStatus> units) {
+      this.name = name;
+      this.status = status;
+      this.message = message;
+      this.units = Collections.unmodifiableMap(units);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    public Map<String, UnitStatus> getUnits() {
+      return units;
+    }
+
+    /**
+     * Returns true if the application or one of its units is in state error or blocked.
+     *
+     * @return
+     */
+    public boolean hasError() {
+      if ("error".equals(status) || "blocked".equals(status)) return true;
+      for (UnitStatus unit : units.values()) if (unit.hasError()) return true;
+      return false;
+    }
+
+    /**
+     * Returns true if the application has units and all of them are active.
+     *
+     * @return
+     */
+    public boolean isActive() {
+      if (units.isEmpty()) return false;
+      for (UnitStatus unit : units.values()) if (!unit.isActive()) return false;
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return name
+          + ": "
+          + status
+          + (message == null ? "" : " (" + message + ")")
+          + " "
+          + units.values();
+    }
+  }
+
+  public static class UnitStatus {
+
+    private String name;
+    private String workloadStatus;
+    private String workloadMessage;
+    private String agentStatus;
+    private String machine;
+    private String publicAddress;
+
+    public UnitStatus(
+        String name,
+        String workloadStatus,
+        String workloadMessage,
+        String agentStatus,
+        String machine,
+        String publicAddress) {
+      this.name = name;
+      this.workloadStatus = workloadStatus;
+      this.workloadMessage = workloadMessage;
+      this.agentStatus = agentStatus;
+      this.machine = machine;
+      this.publicAddress = publicAddress;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getWorkloadStatus() {
+      return workloadStatus;
+    }
+
+    public String getWorkloadMessage() {
+      return workloadMessage;
+    }
+
+    public String getAgentStatus() {
+      return agentStatus;
+    }
+
+    public String getMachine() {
+      return machine;
+    }
+
+    public String getPublicAddress() {
+      return publicAddress;
+    }
+
+    /**
+     * Returns true if the workload or the agent of the unit is in state error or blocked.
+     *
+     * @return
+     */
+    public boolean hasError() {
+      return "error".equals(workloadStatus)
+          || "blocked".equals(workloadStatus)
+          || "error".equals(agentStatus);
+    }
+
+    /**
+     * Returns true if the workload of the unit is active. The charms of the Juju VNFM do not set a
+     * workload status, so their units stay in state unknown; such a unit counts as active once its
+     * agent is idle, i.e. it ran all its hooks without an error.
+     *
+     * @return
+     */
+    public boolean isActive() {
+      if ("active".equals(workloadStatus)) return true;
+      return "unknown".equals(workloadStatus) && "idle".equals(agentStatus) && !hasError();
+    }
+
+    @Override
+    public String toString() {
+      return name
+          + ": "
+          + workloadStatus
+          + "/"
+          + agentStatus
+          + (workloadMessage == null ? "" : " (" + workloadMessage + ")");
+    }
+  }
+}
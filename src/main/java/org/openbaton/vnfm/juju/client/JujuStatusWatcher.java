@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the status of a Juju model in the background and keeps the latest one, so that status
+ * requests for single VNFs are answered from memory instead of executing juju for each of them.
+ */
+public class JujuStatusWatcher {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private JujuClient jujuClient;
+  private ScheduledExecutorService scheduler;
+  // in seconds
+  private long interval;
+
+  // the periodic refresh; null if it was not started
+  private ScheduledFuture<?> refreshes;
+
+  private volatile JujuStatus status = JujuStatus.EMPTY;
+  private volatile long lastUpdate = 0;
+
+  /**
+   * @param jujuClient the client of the watched model
+   * @param scheduler executes the periodic refreshes
+   * @param interval the time in seconds between two refreshes
+   */
+  public JujuStatusWatcher(
+      JujuClient jujuClient, ScheduledExecutorService scheduler, long interval) {
+    this.jujuClient = jujuClient;
+    this.scheduler = scheduler;
+    this.interval = interval;
+  }
+
+  /** Start refreshing the status periodically. */
+  public synchronized void start() {
+    if (refreshes != null) return;
+    refreshes =
+        scheduler.scheduleWithFixedDelay(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  refresh();
+                } catch (JujuException e) {
+                  log.warn("Could not refresh the juju status: " + e.getMessage());
+                }
+              }
+            },
+            0,
+            interval,
+            TimeUnit.SECONDS);
+  }
+
+  /** Stop refreshing the status periodically. A running refresh is not interrupted. */
+  public synchronized void stop() {
+    if (refreshes != null) refreshes.cancel(false);
+    refreshes = null;
+  }
+
+  /**
+   * Fetch the status now. Concurrent calls are executed one after the other.
+   *
+   * @return the new status
+   * @throws JujuException
+   */
+  public synchronized JujuStatus refresh() throws JujuException {
+    status = jujuClient.getStatus();
+    lastUpdate = System.currentTimeMillis();
+    return status;
+  }
+
+  /**
+   * Returns the latest status without contacting Juju.
+   *
+   * @return the status or an empty status if it was not fetched yet
+   */
+  public JujuStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns the latest status of an application without contacting Juju.
+   *
+   * @param application
+   * @return the status or null if it is not known
+   */
+  public JujuStatus.ApplicationStatus getApplicationStatus(String application) {
+    return status.getApplication(application);
+  }
+
+  /**
+   * Returns the time of the last successful refresh.
+   *
+   * @return milliseconds since the epoch or 0 if the status was not fetched yet
+   */
+  public long getLastUpdate() {
+    return lastUpdate;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the applications of a network service that should be removed and removes them with a
+ * single juju remove-application. A batch is executed when the last application of the network
+ * service was added or when its window ends, whichever comes first. The machines of the removed
+ * applications are removed afterwards in parallel.
+ */
+public class ReleaseBatcher {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private JujuClient jujuClient;
+  private ScheduledExecutorService scheduler;
+  private ExecutorService cleanupExecutor;
+  // in milliseconds
+  private long window;
+
+  // <network service id, batch>
+  private Map<String, Batch> batches;
+
+  /**
+   * @param jujuClient
+   * @param scheduler executes the batches; its threads wait for the juju commands
+   * @param cleanupExecutor removes the machines in parallel
+   * @param window the time in milliseconds that applications are collected before they are removed
+   */
+  public ReleaseBatcher(
+      JujuClient jujuClient,
+      ScheduledExecutorService scheduler,
+      ExecutorService cleanupExecutor,
+      long window) {
+    this.jujuClient = jujuClient;
+    this.scheduler = scheduler;
+    this.cleanupExecutor = cleanupExecutor;
+    this.window = window;
+    this.batches = new HashMap<>();
+  }
+
+  /**
+   * Request the removal of an application.
+   *
+   * @param key the id of the network service the application belongs to
+   * @param application
+   * @param last true if no more applications of the network service will follow, so that the batch
+   *     is executed right away
+   * @return a future that completes when the batch containing the application was executed
+   */
+  public synchronized ListenableFuture<Void> release(
+      final String key, String application, boolean last) {
+    Batch batch = batches.get(key);
+    if (batch == null) {
+      batch = new Batch();
+      batches.put(key, batch);
+      final Batch scheduledBatch = batch;
+      scheduler.schedule(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (close(key, scheduledBatch)) execute(scheduledBatch);
+            }
+          },
+          window,
+          TimeUnit.MILLISECONDS);
+    }
+    batch.applications.add(application);
+    if (last) {
+      final Batch lastBatch = batch;
+      batches.remove(key);
+      scheduler.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              execute(lastBatch);
+            }
+          });
+    }
+    return batch.result;
+  }
+
+  /**
+   * Remove the batch from the open batches unless it was closed already.
+   *
+   * @param key
+   * @param batch
+   * @return true if the batch was still open
+   */
+  private synchronized boolean close(String key, Batch batch) {
+    if (batches.get(key) != batch) return false;
+    batches.remove(key);
+    return true;
+  }
+
+  /**
+   * Remove the applications of a batch and their machines. Applications that Juju does not know are
+   * skipped, for example because the network service was never deployed.
+   *
+   * @param batch
+   */
+  private void execute(Batch batch) {
+    List<String> applications = new ArrayList<>(batch.applications);
+    try {
+      Set<String> machines = Collections.emptySet();
+      try {
+        JujuStatus status = jujuClient.getStatus();
+        applications.retainAll(status.getApplications().keySet());
+        if (applications.size() < batch.applications.size())
+          log.info("Juju does not know some of the applications " + batch.applications);
+        machines = getMachines(status, applications);
+      } catch (JujuException e) {
+        log.warn("Could not fetch the machines of " + applications + ": " + e.getMessage());
+      }
+      if (!applications.isEmpty()) {
+        log.info("Removing applications " + applications);
+        jujuClient.removeApplications(applications);
+      }
+      removeMachines(machines);
+      batch.result.set(null);
+    } catch (JujuException e) {
+      log.error("Could not remove applications " + applications, e);
+      batch.result.setException(e);
+    } catch (RuntimeException e) {
+      batch.result.setException(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the machines that only host units of the passed applications.
+   *
+   * @param status
+   * @param applications
+   * @return the machine ids
+   */
+  private static Set<String> getMachines(JujuStatus status, Collection<String> applications) {
+    Set<String> machines = new HashSet<>();
+    Set<String> sharedMachines = new HashSet<>();
+    for (JujuStatus.ApplicationStatus application : status.getApplications().values()) {
+      Set<String> target = applications.contains(application.getName()) ? machines : sharedMachines;
+      for (JujuStatus.UnitStatus unit : application.getUnits().values()) {
+        if (unit.getMachine() != null) target.add(unit.getMachine());
+      }
+    }
+    machines.removeAll(sharedMachines);
+    return machines;
+  }
+
+  /**
+   * Remove machines in parallel and wait for all of them. A machine that cannot be removed is only
+   * logged, since the applications themselves are removed already.
+   *
+   * @param machines
+   */
+  private void removeMachines(Set<String> machines) {
+    List<Future<?>> removals = new ArrayList<>();
+    for (final String machine : machines) {
+      removals.add(
+          cleanupExecutor.submit(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    jujuClient.removeMachine(machine);
+                  } catch (JujuException e) {
+                    log.warn("Could not remove machine " + machine + ": " + e.getMessage());
+                  }
+                }
+              }));
+    }
+    for (Future<?> removal : removals) {
+      try {
+        removal.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        log.warn("Could not remove a machine", e.getCause());
+      }
+    }
+    if (!machines.isEmpty()) log.info("Removed machines " + machines);
+  }
+
+  private static class Batch {
+
+    private Set<String> applications = new LinkedHashSet<>();
+    private SettableListenableFuture<Void> result = new SettableListenableFuture<>();
+  }
+}
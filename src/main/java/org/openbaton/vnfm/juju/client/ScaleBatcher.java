@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the scale requests of an application for a short window and executes them together, so
+ * that a burst of scale outs results in a single juju add-unit -n k and a burst of scale ins in a
+ * single juju remove-unit. Scale outs and scale ins of unspecified units within the same window
+ * cancel each other out, only the remainder is executed. The window starts with the first request
+ * of an application.
+ */
+public class ScaleBatcher {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private JujuClient jujuClient;
+  private ScheduledExecutorService scheduler;
+  // in milliseconds
+  private long window;
+
+  // <application, batch>; a batch exists from the first request of its window until it is executed
+  private Map<String, Batch> batches;
+
+  /**
+   * @param jujuClient
+   * @param scheduler executes the batches; its threads wait for the juju commands
+   * @param window the time in milliseconds that requests are collected before they are executed
+   */
+  public ScaleBatcher(JujuClient jujuClient, ScheduledExecutorService scheduler, long window) {
+    this.jujuClient = jujuClient;
+    this.scheduler = scheduler;
+    this.window = window;
+    this.batches = new HashMap<>();
+  }
+
+  /**
+   * Request one more unit of an application.
+   *
+   * @param application
+   * @return a future that completes when the batch containing the request was executed
+   */
+  public synchronized ListenableFuture<Void> addUnit(String application) {
+    Batch batch = getBatch(application);
+    batch.addedUnits++;
+    return batch.result;
+  }
+
+  /**
+   * Request the removal of a unit of an application. If no unit is passed, the units with the
+   * highest numbers that are not removed explicitly are chosen when the batch is executed.
+   *
+   * @param application
+   * @param unit the unit name in the form application/number or null
+   * @return a future that completes when the batch containing the request was executed
+   */
+  public synchronized ListenableFuture<Void> removeUnit(String application, String unit) {
+    Batch batch = getBatch(application);
+    if (unit == null) batch.anyRemovedUnits++;
+    else batch.removedUnits.add(unit);
+    return batch.result;
+  }
+
+  /**
+   * Returns the open batch of an application. If there is none, a new one is created and scheduled
+   * for execution at the end of the window.
+   *
+   * @param application
+   * @return
+   */
+  private Batch getBatch(final String application) {
+    Batch batch = batches.get(application);
+    if (batch == null) {
+      batch = new Batch();
+      batches.put(application, batch);
+      scheduler.schedule(
+          new Runnable() {
+            @Override
+            public void run() {
+              execute(application);
+            }
+          },
+          window,
+          TimeUnit.MILLISECONDS);
+    }
+    return batch;
+  }
+
+  /**
+   * Close the batch of an application and execute it. Added units are netted against the removals
+   * of unspecified units first; units that were named explicitly are always removed. Units are
+   * removed before new ones are added so that units chosen for removal are never the ones just
+   * added. All the requests of the batch fail if one of the commands fails.
+   *
+   * @param application
+   */
+  private void execute(String application) {
+    Batch batch;
+    synchronized (this) {
+      batch = batches.remove(application);
+    }
+    int cancelled = Math.min(batch.addedUnits, batch.anyRemovedUnits);
+    if (cancelled > 0) {
+      log.debug("Scale outs and ins of " + cancelled + " units of " + application + " cancel out");
+      batch.addedUnits -= cancelled;
+      batch.anyRemovedUnits -= cancelled;
+    }
+    try {
+      List<String> units = new ArrayList<>(batch.removedUnits);
+      if (batch.anyRemovedUnits > 0)
+        units.addAll(chooseUnits(application, batch.removedUnits, batch.anyRemovedUnits));
+      if (!units.isEmpty()) {
+        log.info("Removing " + units.size() + " units of " + application + ": " + units);
+        jujuClient.removeUnits(units);
+      }
+      if (batch.addedUnits > 0) {
+        log.info("Adding " + batch.addedUnits + " units to " + application);
+        jujuClient.addUnits(application, batch.addedUnits);
+      }
+      batch.result.set(null);
+    } catch (JujuException e) {
+      log.error("Could not scale " + application, e);
+      batch.result.setException(e);
+    } catch (RuntimeException e) {
+      batch.result.setException(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Choose units of an application for removal, starting with the highest unit number.
+   *
+   * @param application
+   * @param excluded units that are removed anyway
+   * @param count the number of units to choose
+   * @return
+   * @throws JujuException if the application does not have enough units
+   */
+  private List<String> chooseUnits(String application, Set<String> excluded, int count)
+      throws JujuException {
+    JujuStatus.ApplicationStatus status = jujuClient.getStatus().getApplication(application);
+    List<String> candidates = new ArrayList<>();
+    if (status != null) {
+      for (String unit : status.getUnits().keySet()) {
+        if (!excluded.contains(unit)) candidates.add(unit);
+      }
+    }
+    if (candidates.size() < count)
+      throw new JujuException(
+          "Cannot remove "
+              + count
+              + " units of "
+              + application
+              + ", only "
+              + candidates.size()
+              + " are left");
+    Collections.sort(
+        candidates,
+        new Comparator<String>() {
+          @Override
+          public int compare(String unit1, String unit2) {
+            return Integer.compare(getUnitNumber(unit2), getUnitNumber(unit1));
+          }
+        });
+    return candidates.subList(0, count);
+  }
+
+  private static int getUnitNumber(String unit) {
+    try {
+      return Integer.parseInt(unit.substring(unit.lastIndexOf('/') + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static class Batch {
+
+    private int addedUnits;
+    private int anyRemovedUnits;
+    private Set<String> removedUnits = new LinkedHashSet<>();
+    private SettableListenableFuture<Void> result = new SettableListenableFuture<>();
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Repairs single failed units. A unit whose hook failed is first retried with juju resolved,
+ * waiting twice as long after each attempt. If the unit is still in error afterwards, or its
+ * failure cannot be resolved, a new unit is added to the application and the failed one is removed.
+ * The number of units that are healed at the same time is limited per application.
+ */
+public class UnitHealer {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private JujuClient jujuClient;
+  private JujuStatusWatcher statusWatcher;
+  private int resolveAttempts;
+  // in milliseconds
+  private long initialBackoff;
+  private int parallelism;
+
+  // <application, permits>
+  private Map<String, Semaphore> permits;
+
+  /**
+   * @param jujuClient
+   * @param statusWatcher is refreshed to check the state of the healed units
+   * @param resolveAttempts the number of juju resolved attempts before the unit is replaced
+   * @param initialBackoff the time in milliseconds to wait after the first juju resolved
+   * @param parallelism the number of units per application that may be healed at the same time
+   */
+  public UnitHealer(
+      JujuClient jujuClient,
+      JujuStatusWatcher statusWatcher,
+      int resolveAttempts,
+      long initialBackoff,
+      int parallelism) {
+    this.jujuClient = jujuClient;
+    this.statusWatcher = statusWatcher;
+    this.resolveAttempts = resolveAttempts;
+    this.initialBackoff = initialBackoff;
+    this.parallelism = parallelism;
+    this.permits = new HashMap<>();
+  }
+
+  /**
+   * Heal a unit. Blocks until the unit is healthy again or was replaced, and while other units of
+   * the same application are healed if the parallelism is exhausted.
+   *
+   * @param unit the unit name in the form application/number
+   * @return the name of the healed unit or of its replacement; null if the replacement does not
+   *     show up in the juju status yet
+   * @throws JujuException if the unit does not exist or a juju command failed
+   * @throws InterruptedException
+   */
+  public String heal(String unit) throws JujuException, InterruptedException {
+    String application = unit.substring(0, unit.lastIndexOf('/'));
+    Semaphore applicationPermits = getPermits(application);
+    applicationPermits.acquire();
+    try {
+      JujuStatus.UnitStatus status = getUnitStatus(application, unit);
+      long backoff = initialBackoff;
+      for (int attempt = 1; attempt <= resolveAttempts && hookFailed(status); attempt++) {
+        log.info(
+            "Retrying the failed hook of unit "
+                + unit
+                + " ("
+                + attempt
+                + "/"
+                + resolveAttempts
+                + ")");
+        jujuClient.resolved(unit);
+        Thread.sleep(backoff);
+        backoff *= 2;
+        status = getUnitStatus(application, unit);
+      }
+      if (!status.hasError()) {
+        log.info("Unit " + unit + " recovered: " + status);
+        return unit;
+      }
+      return replace(application, unit);
+    } finally {
+      applicationPermits.release();
+    }
+  }
+
+  /**
+   * Add a new unit to the application and remove the failed one afterwards, so that the application
+   * does not lose capacity in the meantime.
+   *
+   * @param application
+   * @param unit
+   * @return the name of the new unit or null if it does not show up in the juju status yet
+   * @throws JujuException
+   */
+  private String replace(String application, String unit) throws JujuException {
+    log.info("Replacing unit " + unit);
+    Set<String> previousUnits =
+        new HashSet<>(statusWatcher.getApplicationStatus(application).getUnits().keySet());
+    jujuClient.addUnits(application, 1);
+    String replacement = null;
+    JujuStatus.ApplicationStatus status = statusWatcher.refresh().getApplication(application);
+    if (status != null) {
+      for (String newUnit : status.getUnits().keySet()) {
+        if (!previousUnits.contains(newUnit)) replacement = newUnit;
+      }
+    }
+    jujuClient.removeUnits(Collections.singletonList(unit));
+    statusWatcher.refresh();
+    log.info("Replaced unit " + unit + " by " + replacement);
+    return replacement;
+  }
+
+  private JujuStatus.UnitStatus getUnitStatus(String application, String unit)
+      throws JujuException {
+    JujuStatus.ApplicationStatus status = statusWatcher.refresh().getApplication(application);
+    JujuStatus.UnitStatus unitStatus = status == null ? null : status.getUnits().get(unit);
+    if (unitStatus == null) throw new JujuException("Unit " + unit + " does not exist");
+    return unitStatus;
+  }
+
+  /**
+   * Returns true if the unit is in error because of a failed hook, which juju resolved can retry.
+   *
+   * @param status
+   * @return
+   */
+  private static boolean hookFailed(JujuStatus.UnitStatus status) {
+    return "error".equals(status.getAgentStatus()) || "error".equals(status.getWorkloadStatus());
+  }
+
+  private synchronized Semaphore getPermits(String application) {
+    Semaphore applicationPermits = permits.get(application);
+    if (applicationPermits == null) {
+      applicationPermits = new Semaphore(parallelism, true);
+      permits.put(application, applicationPermits);
+    }
+    return applicationPermits;
+  }
+}
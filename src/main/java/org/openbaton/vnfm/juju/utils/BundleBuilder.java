@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.descriptor.VirtualDeploymentUnit;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.util.*;
+
+/**
+ * Assembles the bundle.yaml of a network service. The bundle contains one application per VNF and
+ * the relations corresponding to the dependencies, so that deploying it results in the same
+ * applications, units and relations as deploying the charms one by one.
+ */
+public class BundleBuilder {
+
+  // a charm from the charm store is deployed with a plain juju deploy, which creates one unit
+  public static final int CHARM_STORE_UNITS = 1;
+
+  private String series;
+
+  /** @param series the series of the machines the charms are deployed on */
+  public BundleBuilder(String series) {
+    this.series = series;
+  }
+
+  /**
+   * Returns the number of units a VNF is deployed with. That is one unit per VNFC of a charm
+   * created by the VNFM and one unit for a charm from the charm store.
+   *
+   * @param networkService
+   * @param vnfr
+   * @return
+   */
+  public static int getNumberOfUnits(
+      NetworkService networkService, VirtualNetworkFunctionRecord vnfr) {
+    if (networkService.getCharms().contains(vnfr.getName())) return CHARM_STORE_UNITS;
+    int numUnits = 0;
+    for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
+      numUnits += vdu.getVnfc().size();
+    }
+    return numUnits;
+  }
+
+  /**
+   * Build the bundle of the passed network service.
+   *
+   * @param networkService
+   * @param charmDirectory the directory containing the charms created for the network service
+   * @return the content of the bundle.yaml file
+   */
+  public String build(NetworkService networkService, String charmDirectory) {
+    Map<String, Object> applications = new LinkedHashMap<>();
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      Map<String, Object> application = new LinkedHashMap<>();
+      if (networkService.getCharms().contains(vnfr.getName())) {
+        application.put("charm", vnfr.getName());
+      } else {
+        application.put("charm", charmDirectory + "/" + vnfr.getName());
+      }
+      application.put("num_units", getNumberOfUnits(networkService, vnfr));
+      application.put("expose", true);
+      applications.put(vnfr.getName(), application);
+    }
+
+    List<List<String>> relations = new LinkedList<>();
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      if (networkService.vnfIsTarget(vnfr.getName())) {
+        for (String source : networkService.getSourcesNames(vnfr.getName())) {
+          relations.add(Arrays.asList(vnfr.getName() + ":" + source, source + ":" + source));
+        }
+      }
+    }
+
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("series", series);
+    data.put("applications", applications);
+    data.put("relations", relations);
+
+    DumperOptions options = new DumperOptions();
+    options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+    return new Yaml(options).dump(data);
+  }
+}
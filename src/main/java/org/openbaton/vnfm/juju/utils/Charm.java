@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.*;
+
+/**
+ * In-memory representation of a charm directory. The hooks, scripts and metadata of a charm are
+ * assembled in this tree first and written to disk in one pass afterwards, so that the same files
+ * are not reopened for every line that is added to them. Paths are relative to the charm directory.
+ */
+public class Charm {
+
+  private Set<String> directories;
+  // <path, file>
+  private Map<String, CharmFile> files;
+
+  public Charm() {
+    this.directories = new LinkedHashSet<>();
+    this.files = new LinkedHashMap<>();
+  }
+
+  /**
+   * Returns true if the passed file was already created.
+   *
+   * @param path
+   * @return
+   */
+  public boolean exists(String path) {
+    return files.containsKey(path);
+  }
+
+  /**
+   * Create an empty file if it does not exist yet.
+   *
+   * @param path
+   * @return the file
+   */
+  public CharmFile createFile(String path) {
+    CharmFile file = files.get(path);
+    if (file == null) {
+      file = new CharmFile();
+      files.put(path, file);
+    }
+    return file;
+  }
+
+  /**
+   * Append content to a file. The file is created if it does not exist yet.
+   *
+   * @param path
+   * @param content
+   */
+  public void append(String path, String content) {
+    createFile(path).append(content);
+  }
+
+  /**
+   * Append bytes to a file. The file is created if it does not exist yet.
+   *
+   * @param path
+   * @param content
+   */
+  public void append(String path, byte[] content) {
+    createFile(path).append(content);
+  }
+
+  /**
+   * Set the permissions that a file will be written with.
+   *
+   * @param path
+   * @param permissions
+   */
+  public void setPermissions(String path, Set<PosixFilePermission> permissions) {
+    createFile(path).permissions = permissions;
+  }
+
+  /**
+   * Add a directory to the charm. Directories containing files do not have to be added.
+   *
+   * @param path
+   */
+  public void addDirectory(String path) {
+    directories.add(path);
+  }
+
+  /**
+   * Write the charm into the passed directory.
+   *
+   * @param charmDirectory
+   * @throws IOException
+   */
+  public void writeTo(File charmDirectory) throws IOException {
+    charmDirectory.mkdirs();
+    for (String directory : directories) new File(charmDirectory, directory).mkdirs();
+    for (Map.Entry<String, CharmFile> entry : files.entrySet()) {
+      File file = new File(charmDirectory, entry.getKey());
+      file.getParentFile().mkdirs();
+      entry.getValue().writeTo(file);
+      if (entry.getValue().permissions != null)
+        Files.setPosixFilePermissions(file.toPath(), entry.getValue().permissions);
+    }
+  }
+
+  /**
+   * A file of the charm. Text is collected as characters and only encoded as UTF-8 once bytes are
+   * appended or the charm is written, so hook templates can be rendered directly into the file.
+   */
+  public static class CharmFile implements Appendable {
+
+    private ByteBuffer content;
+    private StringBuilder text;
+    private CharsetEncoder encoder;
+    private Set<PosixFilePermission> permissions;
+
+    private CharmFile() {
+      this.content = ByteBuffer.allocate(256);
+      this.text = new StringBuilder();
+    }
+
+    @Override
+    public CharmFile append(CharSequence csq) {
+      text.append(csq);
+      return this;
+    }
+
+    @Override
+    public CharmFile append(CharSequence csq, int start, int end) {
+      text.append(csq, start, end);
+      return this;
+    }
+
+    @Override
+    public CharmFile append(char c) {
+      text.append(c);
+      return this;
+    }
+
+    public CharmFile append(byte[] bytes) {
+      encodeText();
+      ensureCapacity(bytes.length);
+      content.put(bytes);
+      return this;
+    }
+
+    private void writeTo(File file) throws IOException {
+      encodeText();
+      ByteBuffer buffer = content.duplicate();
+      buffer.flip();
+      try (FileChannel channel =
+          FileChannel.open(
+              file.toPath(),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) channel.write(buffer);
+      }
+    }
+
+    private void encodeText() {
+      if (text.length() == 0) return;
+      if (encoder == null)
+        // replace unpaired surrogates like String.getBytes does instead of failing
+        encoder =
+            StandardCharsets.UTF_8
+                .newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      else encoder.reset();
+      CharBuffer chars = CharBuffer.wrap(text);
+      ensureCapacity(text.length());
+      while (encoder.encode(chars, content, true).isOverflow())
+        ensureCapacity((int) (chars.remaining() * encoder.maxBytesPerChar()));
+      encoder.flush(content);
+      text.setLength(0);
+    }
+
+    private void ensureCapacity(int length) {
+      if (content.remaining() >= length) return;
+      ByteBuffer larger =
+          ByteBuffer.allocate(Math.max(content.capacity() * 2, content.position() + length));
+      content.flip();
+      larger.put(content);
+      content = larger;
+    }
+  }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.common.Event;
+import org.openbaton.catalogue.mano.common.LifecycleEvent;
+import org.openbaton.catalogue.mano.descriptor.VNFComponent;
+import org.openbaton.catalogue.mano.descriptor.VNFDConnectionPoint;
+import org.openbaton.catalogue.mano.descriptor.VirtualDeploymentUnit;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openbaton.catalogue.nfvo.ConfigurationParameter;
+import org.openbaton.catalogue.nfvo.Script;
+import org.openbaton.catalogue.nfvo.VNFPackage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.*;
+
+/**
+ * Assembles the charm of a VNF in memory: the metadata, the hooks for the lifecycle events and
+ * relations, the variable files and the scripts contained in the VNF package. Scripts that come
+ * from a git repository are not part of the built charm. The builder has no further dependencies on
+ * the VNFM, so charms can be built from catalogue objects alone.
+ */
+public class CharmBuilder {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private String scriptPath;
+  private String scriptLogPath;
+  private Set<PosixFilePermission> permissions;
+
+  /**
+   * @param scriptPath the directory the scripts are located in on the deployed machines
+   * @param scriptLogPath the log file the hooks write to on the deployed machines
+   * @param permissions the permissions of the executable files
+   */
+  public CharmBuilder(
+      String scriptPath, String scriptLogPath, Set<PosixFilePermission> permissions) {
+    this.scriptPath = scriptPath;
+    this.scriptLogPath = scriptLogPath;
+    this.permissions = permissions;
+  }
+
+  /**
+   * Build the charm of a VNFR of the passed network service.
+   *
+   * @param networkService
+   * @param vnfr
+   * @param vnfPackage
+   * @return the charm, which still has to be written to its directory
+   * @throws IOException
+   */
+  public Charm build(
+      NetworkService networkService, VirtualNetworkFunctionRecord vnfr, VNFPackage vnfPackage)
+      throws IOException {
+    Charm charm = new Charm();
+    charm.addDirectory("hooks");
+    String vnfName = vnfr.getName();
+
+    Map<String, Object> data = new HashMap<String, Object>();
+    data.put("name", vnfName);
+    data.put("maintainer", vnfr.getVendor());
+    data.put("subordinate", "false");
+    data.put("summary", "Charm created by Open Baton");
+    data.put("description", "Charm created by Open Baton");
+
+    if (networkService.vnfIsTarget(vnfName)) {
+      // create requires section for metadata.yaml
+      Map<String, List<String>> sourceMap = networkService.getSourcesOfVnf(vnfName);
+      Map<String, Map<String, String>> requiresMap = new HashMap<>();
+
+      for (Map.Entry<String, List<String>> sourceParams : sourceMap.entrySet()) {
+        Map<String, String> interfaceMap = new InterfaceMap();
+        for (String param : sourceParams.getValue()) interfaceMap.put("interface", param);
+        requiresMap.put(sourceParams.getKey(), interfaceMap);
+      }
+      data.put("requires", requiresMap);
+    }
+
+    if (networkService.vnfIsSource(vnfName)) {
+      log.info(vnfName + " is source of a dependency");
+      // create provides section for metadata.yaml
+      Set<String> providesSet = networkService.getProvidesOfVnf(vnfName);
+      Map<String, Map<String, String>> providesMap = new HashMap<>();
+      Map<String, String> interfaceMap = new InterfaceMap();
+      for (String param : providesSet) {
+        interfaceMap.put("interface", param);
+      }
+      providesMap.put(vnfName, interfaceMap);
+      data.put("provides", providesMap);
+
+      // create relation-joined hooks
+      Charm.CharmFile relationJoined = charm.createFile("hooks/" + vnfName + "-relation-joined");
+      HookTemplates.RELATION_JOINED_HEADER.render(relationJoined, vnfName, scriptLogPath);
+      for (String vl : getVirtualLinks(vnfr))
+        HookTemplates.RELATION_SET_ADDRESS.render(relationJoined, vl);
+      // TODO floating ips
+      relationJoined.append("relation-set hostname=`hostname`\n");
+
+      for (ConfigurationParameter confParam :
+          vnfr.getConfigurations().getConfigurationParameters()) {
+        HookTemplates.RELATION_SET_PARAMETER.render(
+            relationJoined, vnfr.getType(), confParam.getConfKey(), confParam.getValue());
+      }
+      HookTemplates.RELATION_JOINED_FOOTER.render(relationJoined, vnfName, scriptLogPath);
+    }
+
+    charm.addDirectory("scripts");
+    boolean scriptsFromGit =
+        vnfPackage.getScriptsLink() != null && !vnfPackage.getScriptsLink().equals("");
+    if (!scriptsFromGit) {
+      for (Script script : vnfPackage.getScripts()) {
+        charm.append("scripts/" + script.getName(), script.getPayload());
+      }
+    }
+
+    // file containing the environment variable declarations; can be sourced by scripts
+    createEnvironmentVariableFile(charm, networkService, vnfr);
+
+    // create install hook to handle the script path if there is no INSTANTIATE lifecycle event
+    boolean installExists = false;
+    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
+      if (le.getEvent().equals(Event.INSTANTIATE)) {
+        installExists = true;
+        break;
+      }
+    }
+    if (!installExists) {
+      HookTemplates.INSTALL.render(
+          createExecutable(charm, "hooks/install"), vnfName, scriptLogPath, scriptPath);
+    }
+
+    // didn't use one for loop containing all lifecycle checks to ensure the order of processing
+    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
+      if (le.getEvent().equals(Event.INSTANTIATE)) {
+        log.debug("Found INSTANTIATE lifecycle event in VNF " + vnfName);
+
+        prepareInstallScript(charm, vnfName, le);
+
+        if (!networkService.vnfIsTarget(vnfName)) { // append configure scripts to the install hook
+          createExecutable(charm, "scripts/runConfigureScripts");
+          //TODO
+          charm.append("hooks/install", "bash runConfigureScripts\n");
+        }
+      }
+    }
+
+    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
+      if (le.getEvent().equals(Event.CONFIGURE)) {
+        log.debug("Found CONFIGURE lifecycle event in VNF " + vnfName);
+        int numberOfConfigureScripts =
+            0; // number of scripts that have to be executed before the start hook may run
+
+        if (!networkService.vnfIsTarget(vnfName)) { // append configure scripts to the install hook
+          prepareInstallForConfigureScripts(charm);
+          prepareLifecycleScript(charm, "runConfigureScripts", vnfName, le);
+
+        } else { // create relation-changed hooks for the configure scripts
+          List<String> relationChangedList = new LinkedList<>();
+          for (String scriptName : le.getLifecycle_events()) {
+            boolean convertToRelationHook = false;
+            for (VirtualNetworkFunctionRecord virtualNetworkFunctionRecord :
+                networkService.getVnfrList()) {
+              if (scriptName.startsWith(virtualNetworkFunctionRecord.getType() + "_")) {
+                // create relation_changed hook
+                String relationChanged =
+                    virtualNetworkFunctionRecord.getName() + "-relation-changed";
+                if (!charm.exists("hooks/" + relationChanged)) {
+                  HookTemplates.RELATION_CHANGED_HEADER.render(
+                      charm.createFile("hooks/" + relationChanged),
+                      vnfName,
+                      scriptLogPath,
+                      relationChanged,
+                      virtualNetworkFunctionRecord.getName());
+                  relationChangedList.add(relationChanged);
+                }
+                // TODO test
+                HookTemplates.RELATION_CHANGED_SCRIPT.render(
+                    charm.createFile("hooks/" + relationChanged),
+                    vnfName,
+                    scriptLogPath,
+                    scriptName);
+                convertToRelationHook = true;
+                numberOfConfigureScripts++;
+              }
+            }
+            if (!convertToRelationHook) { // append this configure script to the install hook
+              prepareInstallForConfigureScripts(charm);
+              charm.append("scripts/runConfigureScripts", "bash " + scriptName + "\n"); // TODO test
+            }
+          }
+
+          // add notification that a relation changed hook was run
+          if (!relationChangedList.isEmpty()) {
+            charm.addDirectory("hooks/finishedRelationChangedHooks");
+            for (String relationChanged : relationChangedList) {
+              // TODO test
+              HookTemplates.RELATION_CHANGED_FINISHED.render(
+                  charm.createFile("hooks/" + relationChanged),
+                  vnfName,
+                  scriptLogPath,
+                  relationChanged);
+            }
+          }
+
+          if (numberOfConfigureScripts
+              > 0) { // means we have to create an artificial start script that will run after all the relation-changed hooks finished
+            charm.addDirectory("hooks/finishedConfigureScripts");
+            charm.createFile("scripts/startAfterDependencies");
+            for (String relationChanged : relationChangedList) {
+              HookTemplates.RELATION_CHANGED_TRIGGER.render(
+                  charm.createFile("hooks/" + relationChanged),
+                  vnfName,
+                  scriptLogPath,
+                  String.valueOf(numberOfConfigureScripts));
+            }
+          }
+        }
+      }
+    }
+
+    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
+      if (le.getEvent().equals(Event.START)) {
+        log.debug("Found START lifecycle event in VNF " + vnfName);
+
+        if (networkService.vnfIsTarget(vnfName)) {
+          log.info(vnfName + " is target of a dependency");
+          prepareLifecycleScript(charm, "startAfterDependencies", vnfName, le);
+        } else {
+          // charm is not target of a relation, you can map the Open Baton start lifecycle to the Juju start hook
+          prepareLifecycleScript(charm, "start", vnfName, le);
+        }
+      }
+    }
+
+    for (LifecycleEvent le : vnfr.getLifecycle_event()) {
+
+      if (le.getEvent().equals(Event.TERMINATE)) {
+        log.debug("Found TERMINATE lifecycle event in VNF " + vnfName);
+        prepareLifecycleScript(charm, "stop", vnfName, le);
+      }
+    }
+
+    // the metadata.yaml file
+    charm.append("metadata.yaml", dumpMetadata(data));
+    return charm;
+  }
+
+  /**
+   * Write the content of the metadata.yaml file. The InterfaceMaps it contains are written with
+   * duplicate interface keys.
+   *
+   * @param data
+   * @return
+   */
+  static String dumpMetadata(Map<String, Object> data) {
+    DumperOptions options = new DumperOptions();
+    options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+    Yaml yaml = new Yaml(new CharmRepresenter(), options);
+    return yaml.dump(data);
+  }
+
+  /**
+   * Returns the virtual link references of all the connection points of the passed VNFR.
+   *
+   * @param vnfr
+   * @return
+   */
+  private List<String> getVirtualLinks(VirtualNetworkFunctionRecord vnfr) {
+    List<String> virtualLinks = new LinkedList<>();
+    for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
+      for (VNFComponent vnfc : vdu.getVnfc()) {
+        for (VNFDConnectionPoint cp : vnfc.getConnection_point()) {
+          virtualLinks.add(cp.getVirtual_link_reference());
+        }
+      }
+    }
+    return virtualLinks;
+  }
+
+  /**
+   * Create an empty executable file in the charm if it does not exist yet.
+   *
+   * @param charm
+   * @param path
+   * @return the file
+   */
+  private Charm.CharmFile createExecutable(Charm charm, String path) {
+    if (!charm.exists(path)) {
+      charm.createFile(path);
+      charm.setPermissions(path, permissions);
+    }
+    return charm.createFile(path);
+  }
+
+  /**
+   * Create the install hook in case it does not exist yet and let it run the runConfigureScripts
+   * script.
+   *
+   * @param charm
+   */
+  private void prepareInstallForConfigureScripts(Charm charm) {
+    if (!charm.exists("hooks/install")) {
+      createExecutable(charm, "hooks/install");
+      if (!charm.exists("scripts/runConfigureScripts")) {
+        createExecutable(charm, "scripts/runConfigureScripts");
+        //TODO
+        charm.append("hooks/install", "bash runConfigureScripts\n");
+      }
+    }
+  }
+
+  /**
+   * Write the lifecycle scripts into a special directory in the charm so that they can be called by
+   * the charm hooks. TODO
+   *
+   * @param charm
+   * @param fileName
+   * @param vnfName
+   * @param le
+   */
+  void prepareLifecycleScript(Charm charm, String fileName, String vnfName, LifecycleEvent le)
+      throws IOException {
+    Charm.CharmFile hook = createExecutable(charm, "hooks/" + fileName);
+
+    HookTemplates.LIFECYCLE_HOOK_HEADER.render(hook, vnfName, scriptLogPath, fileName);
+    for (String scriptName : le.getLifecycle_events()) {
+      HookTemplates.LIFECYCLE_SCRIPT.render(hook, vnfName, scriptLogPath, scriptName);
+      hook.append('\n');
+    }
+    HookTemplates.LIFECYCLE_HOOK_FOOTER.render(hook, vnfName, scriptLogPath, fileName);
+  }
+
+  /**
+   * Write the install hook of the INSTANTIATE lifecycle event, which copies the scripts to the
+   * script path before running them.
+   *
+   * @param charm
+   * @param vnfName
+   * @param le
+   */
+  private void prepareInstallScript(Charm charm, String vnfName, LifecycleEvent le)
+      throws IOException {
+    Charm.CharmFile hook = createExecutable(charm, "hooks/install");
+
+    HookTemplates.INSTALL_HOOK_HEADER.render(hook, vnfName, scriptLogPath, scriptPath);
+    for (String scriptName : le.getLifecycle_events())
+      HookTemplates.LIFECYCLE_SCRIPT.render(hook, vnfName, scriptLogPath, scriptName);
+    hook.append('\n');
+    HookTemplates.LIFECYCLE_HOOK_FOOTER.render(hook, vnfName, scriptLogPath, "install");
+  }
+
+  /**
+   * Create the files containing environment variable declarations that can be sourced by the
+   * scripts.
+   *
+   * @param charm
+   * @param networkService
+   * @param vnfr
+   */
+  void createEnvironmentVariableFile(
+      Charm charm, NetworkService networkService, VirtualNetworkFunctionRecord vnfr)
+      throws IOException {
+    // create a file containing all the variables that should be available in the scripts
+    Charm.CharmFile paramVariables = createExecutable(charm, "hooks/paramVariables");
+    log.debug("Write SCRIPTS_PATH to paramVariables file");
+    HookTemplates.EXPORT.render(paramVariables, "SCRIPTS_PATH", scriptPath);
+    Charm.CharmFile relationVariables = createExecutable(charm, "hooks/relationVariables");
+    // begin with the configurations:
+    if (vnfr.getConfigurations() != null) {
+      log.debug("Write configurations to paramVariables and relationVariables file");
+      for (ConfigurationParameter parameter :
+          vnfr.getConfigurations().getConfigurationParameters()) {
+        HookTemplates.EXPORT.render(paramVariables, parameter.getConfKey(), parameter.getValue());
+        HookTemplates.EXPORT.render(
+            relationVariables, parameter.getConfKey(), parameter.getValue());
+      }
+    }
+
+    // now the out-of-the-box variables <netname>, <netname>_floatingIp and hostname of the VNFD itself
+    log.debug("Write virtual links and hostname to paramVariables file");
+    for (String vl : getVirtualLinks(vnfr)) HookTemplates.EXPORT_ADDRESS.render(paramVariables, vl);
+    // TODO floating ips
+    paramVariables.append("export hostname=`hostname`\n");
+
+    // and now the out-of-the-box variables <netname>, <netname>_floatingIp and hostname of the other VNFDs
+    // the variables of the previous sources are written again for every source
+    StringBuilder variables = new StringBuilder();
+    for (String sourceVnfName : networkService.getSourcesNames(vnfr.getName())) {
+      VirtualNetworkFunctionRecord sourceVnfr = networkService.getVnfrByName(sourceVnfName);
+
+      for (String vl : getVirtualLinks(sourceVnfr))
+        HookTemplates.EXPORT_RELATION_VALUE.render(variables, sourceVnfr.getType(), vl);
+      // TODO floating ips
+      HookTemplates.EXPORT_RELATION_VALUE.render(variables, sourceVnfr.getType(), "hostname");
+
+      for (ConfigurationParameter confParam :
+          sourceVnfr.getConfigurations().getConfigurationParameters()) {
+        HookTemplates.EXPORT_RELATION_PARAMETER.render(
+            variables, sourceVnfr.getType(), confParam.getConfKey());
+      }
+
+      log.debug("Write variables of " + sourceVnfName + " to relationVariables file");
+      relationVariables.append(variables);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Stores built charm directories under a hash of everything that went into building them. If a
+ * charm with the same inputs is needed again, the cached directory is hard linked into the charm
+ * location instead of building the charm again. If the cached charms together get bigger than the
+ * configured maximum size, the least recently used ones are removed.
+ */
+public class CharmCache {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private File cacheDirectory;
+  private long maxSize;
+
+  // <key, size in bytes>
+  private Map<String, Long> sizes;
+
+  /**
+   * @param cacheDirectory the directory containing the cached charms
+   * @param maxSize the maximum size of all cached charms in bytes
+   */
+  public CharmCache(File cacheDirectory, long maxSize) {
+    this.cacheDirectory = cacheDirectory;
+    this.maxSize = maxSize;
+    this.sizes = new HashMap<>();
+    cacheDirectory.mkdirs();
+    File[] charms = cacheDirectory.listFiles();
+    if (charms != null) {
+      for (File charm : charms) {
+        if (charm.getName().endsWith(".tmp")) FileUtils.removeDirectory(charm);
+        else if (charm.isDirectory()) sizes.put(charm.getName(), FileUtils.getSize(charm));
+      }
+    }
+  }
+
+  /**
+   * Returns a new Key that collects the inputs of a charm build.
+   *
+   * @return
+   */
+  public Key newKey() {
+    return new Key();
+  }
+
+  /**
+   * Link the cached charm with the passed key into the charm directory.
+   *
+   * @param key
+   * @param charmDirectory
+   * @return true if the charm was found in the cache
+   * @throws IOException
+   */
+  public synchronized boolean restore(String key, File charmDirectory) throws IOException {
+    File charm = new File(cacheDirectory, key);
+    if (!charm.isDirectory()) return false;
+    FileUtils.linkDirectory(charm, charmDirectory);
+    charm.setLastModified(System.currentTimeMillis());
+    return true;
+  }
+
+  /**
+   * Add a built charm to the cache. The files of the charm directory must not be modified
+   * afterwards.
+   *
+   * @param key
+   * @param charmDirectory
+   * @throws IOException
+   */
+  public void store(String key, File charmDirectory) throws IOException {
+    File tmpCharm = new File(cacheDirectory, key + "-" + UUID.randomUUID() + ".tmp");
+    try {
+      FileUtils.linkDirectory(charmDirectory, tmpCharm);
+      synchronized (this) {
+        File charm = new File(cacheDirectory, key);
+        if (!charm.exists() && tmpCharm.renameTo(charm)) {
+          sizes.put(key, FileUtils.getSize(charm));
+          evict();
+        }
+      }
+    } finally {
+      FileUtils.removeDirectory(tmpCharm);
+    }
+  }
+
+  /**
+   * Remove the least recently used charms until the cache is not bigger than the maximum size
+   * anymore.
+   */
+  private synchronized void evict() {
+    long size = 0;
+    List<File> charms = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+      charms.add(new File(cacheDirectory, entry.getKey()));
+      size += entry.getValue();
+    }
+    if (size <= maxSize) return;
+
+    Collections.sort(
+        charms,
+        new Comparator<File>() {
+          @Override
+          public int compare(File f1, File f2) {
+            return Long.compare(f1.lastModified(), f2.lastModified());
+          }
+        });
+    for (File charm : charms) {
+      if (size <= maxSize) break;
+      log.info("Remove the charm " + charm.getName() + " from the cache");
+      FileUtils.removeDirectory(charm);
+      size -= sizes.remove(charm.getName());
+    }
+  }
+
+  /**
+   * Collects the inputs of a charm build into a SHA-256 hash. Every value is terminated so that
+   * different sequences of values cannot produce the same input.
+   */
+  public static class Key {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MessageDigest digest;
+
+    private Key() {
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    public Key add(String value) {
+      if (value == null) digest.update((byte) 1);
+      else {
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+      }
+      return this;
+    }
+
+    public Key add(byte[] value) {
+      if (value == null) return add((String) null);
+      add(String.valueOf(value.length));
+      digest.update(value);
+      return this;
+    }
+
+    /**
+     * Returns the hash of the collected values. The Key must not be used afterwards.
+     *
+     * @return
+     */
+    public String getHash() {
+      StringBuilder hash = new StringBuilder();
+      for (byte b : digest.digest()) hash.append(String.format("%02x", b));
+      return hash.toString();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.yaml.snakeyaml.DumperOptions.FlowStyle;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.representer.Represent;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.util.*;
+
+/**
+ * Representer for the metadata.yaml of a charm. An InterfaceMap is written as one mapping that
+ * contains a key once for every value stored for it, which produces the duplicate interface keys
+ * Juju expects, without going through the generic Map representation.
+ */
+public class CharmRepresenter extends Representer {
+
+  public CharmRepresenter() {
+    this.representers.put(InterfaceMap.class, new RepresentInterfaceMap());
+  }
+
+  private class RepresentInterfaceMap implements Represent {
+
+    @Override
+    public Node representData(Object data) {
+      InterfaceMap interfaceMap = (InterfaceMap) data;
+      List<NodeTuple> tuples = new ArrayList<>(interfaceMap.size());
+      boolean bestStyle = true;
+      for (String key : interfaceMap.keySet()) {
+        for (String value : interfaceMap.getAll(key)) {
+          // every tuple needs its own key node, a shared node would be written as an alias
+          Node keyNode = CharmRepresenter.this.representData(key);
+          Node valueNode = CharmRepresenter.this.representData(value);
+          tuples.add(new NodeTuple(keyNode, valueNode));
+          if (!(valueNode instanceof ScalarNode)) bestStyle = false;
+        }
+      }
+      MappingNode node = new MappingNode(Tag.MAP, tuples, null);
+      if (defaultFlowStyle != FlowStyle.AUTO) node.setFlowStyle(defaultFlowStyle.getStyleBoolean());
+      else node.setFlowStyle(bestStyle);
+      return node;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the CommandExecutor if a command could not be executed, timed out or returned a
+ * non-zero exit status. The message contains the last part of the command's output.
+ */
+public class CommandException extends IOException {
+
+  private String output;
+
+  public CommandException(String message, String output) {
+    super(output == null || output.isEmpty() ? message : message + ". Output:\n" + output);
+    this.output = output;
+  }
+
+  public CommandException(String message, String output, Throwable cause) {
+    this(message, output);
+    initCause(cause);
+  }
+
+  /**
+   * Returns the last part of the output of the command.
+   *
+   * @return the output or null if the command was not started
+   */
+  public String getOutput() {
+    return output;
+  }
+}
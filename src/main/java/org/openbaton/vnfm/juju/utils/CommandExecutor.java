@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the external commands of the VNFM, like juju and git, on a bounded pool of worker
+ * threads. A command whose process does not finish within the timeout is cancelled and the process
+ * is destroyed. The timeout starts when the process is spawned, so the time a command waits for a
+ * free thread does not count against it. The output of a command is not inherited by the VNFM
+ * anymore but logged on debug level, and its last part is kept in a ring buffer so that it can be
+ * attached to the error if the command fails. The number of waiting commands and the latencies are
+ * exposed as an MXBean.
+ */
+public class CommandExecutor implements CommandExecutorMXBean {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private ThreadPoolExecutor executor;
+  private long timeout;
+  private int outputSize;
+
+  private AtomicLong executedCommands = new AtomicLong();
+  private AtomicLong failedCommands = new AtomicLong();
+  private AtomicLong timedOutCommands = new AtomicLong();
+  private AtomicLong rejectedCommands = new AtomicLong();
+  private AtomicLong totalLatency = new AtomicLong();
+  private AtomicLong maxLatency = new AtomicLong();
+  private AtomicLong totalQueueWait = new AtomicLong();
+  private AtomicLong maxQueueWait = new AtomicLong();
+
+  private ObjectName objectName;
+
+  /**
+   * @param threads the maximum number of commands running at the same time
+   * @param queueSize the maximum number of commands waiting for a free thread
+   * @param timeout the time in seconds after which the process of a command is destroyed
+   * @param outputSize the number of characters of the output that are kept for the error message
+   */
+  public CommandExecutor(int threads, int queueSize, long timeout, int outputSize) {
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize));
+    this.timeout = timeout;
+    this.outputSize = outputSize;
+  }
+
+  /**
+   * Execute a command and wait for it to finish.
+   *
+   * @param command the executable and its arguments
+   * @return the last part of the output of the command
+   * @throws CommandException if the command could not be executed, timed out or returned a non-zero
+   *     exit status
+   */
+  public String execute(String... command) throws CommandException {
+    return execute(Arrays.asList(command), null);
+  }
+
+  /**
+   * Execute a command and wait for it to finish.
+   *
+   * @param command the executable and its arguments
+   * @param environment additional environment variables of the process or null
+   * @return the last part of the output of the command
+   * @throws CommandException if the command could not be executed, timed out or returned a non-zero
+   *     exit status
+   */
+  public String execute(List<String> command, Map<String, String> environment)
+      throws CommandException {
+    CommandTask task = new CommandTask(command, environment);
+    Future<Integer> future;
+    try {
+      future = executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      rejectedCommands.incrementAndGet();
+      throw new CommandException("Too many commands are waiting, rejected " + command, null, e);
+    }
+    try {
+      // wait for a free thread without a timeout, the queue is bounded
+      task.started.await();
+      long remaining = TimeUnit.SECONDS.toNanos(timeout) - (System.nanoTime() - task.startTime);
+      int exitStatus = future.get(remaining, TimeUnit.NANOSECONDS);
+      if (exitStatus != 0) {
+        failedCommands.incrementAndGet();
+        throw new CommandException(
+            command + " returned with exit status " + exitStatus, task.output.toString());
+      }
+      return task.output.toString();
+    } catch (TimeoutException e) {
+      timedOutCommands.incrementAndGet();
+      task.cancel();
+      future.cancel(true);
+      throw new CommandException(
+          command + " did not finish within " + timeout + " seconds", task.output.toString(), e);
+    } catch (InterruptedException e) {
+      task.cancel();
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new CommandException(
+          "Interrupted while executing " + command, task.output.toString(), e);
+    } catch (ExecutionException e) {
+      failedCommands.incrementAndGet();
+      throw new CommandException(
+          "Could not execute " + command + ": " + e.getCause().getMessage(),
+          task.output.toString(),
+          e.getCause());
+    } finally {
+      if (task.started.getCount() == 0) {
+        executedCommands.incrementAndGet();
+        record(System.nanoTime() - task.startTime, totalLatency, maxLatency);
+        record(task.startTime - task.submitTime, totalQueueWait, maxQueueWait);
+      }
+    }
+  }
+
+  private void record(long value, AtomicLong total, AtomicLong max) {
+    total.addAndGet(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) current = max.get();
+  }
+
+  /**
+   * Register this executor at the platform MBean server.
+   *
+   * @param name the object name
+   */
+  public void registerMBean(String name) {
+    try {
+      objectName = new ObjectName(name);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    } catch (JMException e) {
+      log.warn("Could not register the MBean " + name, e);
+      objectName = null;
+    }
+  }
+
+  /** Stop accepting commands and unregister the MBean. Running commands are not interrupted. */
+  public void shutdown() {
+    executor.shutdown();
+    if (objectName != null) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException e) {
+        log.warn("Could not unregister the MBean " + objectName, e);
+      }
+    }
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  @Override
+  public int getActiveCommands() {
+    return executor.getActiveCount();
+  }
+
+  @Override
+  public long getExecutedCommands() {
+    return executedCommands.get();
+  }
+
+  @Override
+  public long getFailedCommands() {
+    return failedCommands.get();
+  }
+
+  @Override
+  public long getTimedOutCommands() {
+    return timedOutCommands.get();
+  }
+
+  @Override
+  public long getRejectedCommands() {
+    return rejectedCommands.get();
+  }
+
+  @Override
+  public long getAverageLatencyMillis() {
+    long executed = executedCommands.get();
+    if (executed == 0) return 0;
+    return TimeUnit.NANOSECONDS.toMillis(totalLatency.get() / executed);
+  }
+
+  @Override
+  public long getMaxLatencyMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxLatency.get());
+  }
+
+  @Override
+  public long getAverageQueueWaitMillis() {
+    long executed = executedCommands.get();
+    if (executed == 0) return 0;
+    return TimeUnit.NANOSECONDS.toMillis(totalQueueWait.get() / executed);
+  }
+
+  @Override
+  public long getMaxQueueWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxQueueWait.get());
+  }
+
+  private class CommandTask implements Callable<Integer> {
+
+    private List<String> command;
+    private Map<String, String> environment;
+    private OutputBuffer output;
+    private Process process;
+    private boolean cancelled;
+    private long submitTime;
+    // set before started is counted down, when the worker spawns the process
+    private volatile long startTime;
+    private CountDownLatch started = new CountDownLatch(1);
+
+    private CommandTask(List<String> command, Map<String, String> environment) {
+      this.command = command;
+      this.environment = environment;
+      this.output = new OutputBuffer(outputSize);
+      this.submitTime = System.nanoTime();
+    }
+
+    @Override
+    public Integer call() throws Exception {
+      ProcessBuilder pb = new ProcessBuilder(command).redirectErrorStream(true);
+      if (environment != null) pb.environment().putAll(environment);
+      Process process;
+      try {
+        startTime = System.nanoTime();
+        process = pb.start();
+      } finally {
+        started.countDown();
+      }
+      synchronized (this) {
+        this.process = process;
+        if (cancelled) process.destroy();
+      }
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          log.debug(command.get(0) + ": " + line);
+          output.append(line);
+        }
+      }
+      return process.waitFor();
+    }
+
+    /** Destroy the process of the command, now or as soon as it is started. */
+    private synchronized void cancel() {
+      cancelled = true;
+      if (process != null) process.destroy();
+    }
+  }
+
+  /** Keeps the last lines of an output up to a fixed number of characters. */
+  private static class OutputBuffer {
+
+    private char[] buffer;
+    // position of the oldest character
+    private int start = 0;
+    private int length = 0;
+
+    private OutputBuffer(int size) {
+      this.buffer = new char[size];
+    }
+
+    private synchronized void append(String line) {
+      for (int i = 0; i < line.length(); i++) append(line.charAt(i));
+      append('\n');
+    }
+
+    private void append(char c) {
+      if (buffer.length == 0) return;
+      buffer[(start + length) % buffer.length] = c;
+      if (length < buffer.length) length++;
+      else start = (start + 1) % buffer.length;
+    }
+
+    @Override
+    public synchronized String toString() {
+      StringBuilder text = new StringBuilder(length);
+      for (int i = 0; i < length; i++) text.append(buffer[(start + i) % buffer.length]);
+      return text.toString();
+    }
+  }
+}
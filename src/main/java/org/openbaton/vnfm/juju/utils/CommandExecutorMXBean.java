@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+/**
+ * Management interface of the CommandExecutor. Latencies are measured from the start of the process
+ * of a command until it finished. The time a command waited in the queue for a free thread is
+ * reported separately as queue wait.
+ */
+public interface CommandExecutorMXBean {
+
+  int getQueueDepth();
+
+  int getActiveCommands();
+
+  long getExecutedCommands();
+
+  long getFailedCommands();
+
+  long getTimedOutCommands();
+
+  long getRejectedCommands();
+
+  long getAverageLatencyMillis();
+
+  long getMaxLatencyMillis();
+
+  long getAverageQueueWaitMillis();
+
+  long getMaxQueueWaitMillis();
+}
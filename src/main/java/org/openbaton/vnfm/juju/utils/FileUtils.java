@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Helper methods for working with the directories created by the Juju VNFM.
+ */
+public class FileUtils {
+
+  /**
+   * Remove a directory with all its content.
+   *
+   * @param directory
+   */
+  public static void removeDirectory(File directory) {
+    if (directory.exists() && directory.isDirectory()) {
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (file.isDirectory()) removeDirectory(file);
+          else file.delete();
+        }
+      }
+    }
+    directory.delete();
+  }
+
+  /**
+   * Returns the size of a file or the summed up size of all files in a directory.
+   *
+   * @param file
+   * @return the size in bytes
+   */
+  public static long getSize(File file) {
+    if (!file.isDirectory()) return file.length();
+    long size = 0;
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) size += getSize(f);
+    }
+    return size;
+  }
+
+  /**
+   * Recreate a directory tree at another location. Files are hard linked if possible, otherwise
+   * they are copied together with their attributes. The linked files must not be modified
+   * afterwards since the changes would be visible in both trees.
+   *
+   * @param source
+   * @param destination
+   * @throws IOException
+   */
+  public static void linkDirectory(File source, File destination) throws IOException {
+    destination.mkdirs();
+    File[] files = source.listFiles();
+    if (files == null) throw new IOException("Could not list the files of " + source);
+    for (File file : files) {
+      File target = new File(destination, file.getName());
+      if (file.isDirectory()) {
+        linkDirectory(file, target);
+      } else {
+        try {
+          Files.createLink(target.toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+          Files.copy(
+              file.toPath(),
+              target.toPath(),
+              StandardCopyOption.COPY_ATTRIBUTES,
+              StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a bare mirror of every git repository that was used as scripts link of a VNF package.
+ * Mirrors are created with the first request for a repository and afterwards only fetched
+ * incrementally. The scripts are checked out of the mirror into the charm directory, so the
+ * repository is not cloned again for every deployment. If the mirrors together get bigger than the
+ * configured maximum size, the least recently used ones are removed.
+ */
+public class GitRepositoryCache {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private File cacheDirectory;
+  private long maxSize;
+  private CommandExecutor commandExecutor;
+  private String gitBinary = "git";
+
+  // <mirror directory name, lock>; a mirror is only used by one thread at a time
+  private Map<String, ReentrantLock> locks;
+  // <mirror directory name, size in bytes>
+  private Map<String, Long> sizes;
+
+  /**
+   * @param cacheDirectory the directory containing the mirrors
+   * @param maxSize the maximum size of all mirrors in bytes
+   * @param commandExecutor used to execute the git commands
+   */
+  public GitRepositoryCache(File cacheDirectory, long maxSize, CommandExecutor commandExecutor) {
+    this.cacheDirectory = cacheDirectory;
+    this.maxSize = maxSize;
+    this.commandExecutor = commandExecutor;
+    this.locks = new HashMap<>();
+    this.sizes = new HashMap<>();
+    cacheDirectory.mkdirs();
+    File[] mirrors = cacheDirectory.listFiles();
+    if (mirrors != null) {
+      for (File mirror : mirrors) {
+        if (mirror.getName().endsWith(".tmp")) FileUtils.removeDirectory(mirror);
+        else if (mirror.isDirectory()) sizes.put(mirror.getName(), FileUtils.getSize(mirror));
+      }
+    }
+  }
+
+  /**
+   * Check out the default branch of the passed repository into the destination directory. The
+   * mirror of the repository is created or updated before.
+   *
+   * @param scriptsLink the url of the git repository
+   * @param destination the directory into which the files are checked out
+   * @return the id of the commit that was checked out
+   * @throws IOException if the repository could not be fetched or checked out
+   */
+  public String checkout(String scriptsLink, File destination) throws IOException {
+    String revision = getRevision(scriptsLink);
+    checkout(scriptsLink, revision, destination);
+    return revision;
+  }
+
+  /**
+   * Check out a commit of the passed repository into the destination directory. The mirror is not
+   * fetched again, so the commit has to be resolved by getRevision before. Only if the mirror was
+   * evicted in the meantime, it is created again.
+   *
+   * @param scriptsLink the url of the git repository
+   * @param revision the id of the commit
+   * @param destination the directory into which the files are checked out
+   * @throws IOException if the mirror could not be created or the commit could not be checked out
+   */
+  public void checkout(String scriptsLink, String revision, File destination) throws IOException {
+    String name = getMirrorName(scriptsLink);
+    File mirror = new File(cacheDirectory, name);
+    ReentrantLock lock = getLock(name);
+    lock.lock();
+    try {
+      if (mirror.isDirectory()) mirror.setLastModified(System.currentTimeMillis());
+      else update(scriptsLink, mirror);
+
+      // use a separate index file so that the mirror itself is not modified by the checkout; git
+      // creates the file itself and refuses to use an empty one
+      File index = File.createTempFile("index", null);
+      index.delete();
+      try {
+        destination.mkdirs();
+        git(
+            index,
+            "--git-dir=" + mirror.getAbsolutePath(),
+            "--work-tree=" + destination.getAbsolutePath(),
+            "checkout",
+            "-f",
+            revision,
+            "--",
+            ".");
+      } finally {
+        index.delete();
+      }
+      synchronized (this) {
+        sizes.put(name, FileUtils.getSize(mirror));
+      }
+    } finally {
+      lock.unlock();
+    }
+    evict();
+  }
+
+  /**
+   * Update the mirror of the passed repository and return the commit its default branch points to.
+   *
+   * @param scriptsLink the url of the git repository
+   * @return the commit id
+   * @throws IOException if the repository could not be fetched
+   */
+  public String getRevision(String scriptsLink) throws IOException {
+    String name = getMirrorName(scriptsLink);
+    File mirror = new File(cacheDirectory, name);
+    ReentrantLock lock = getLock(name);
+    lock.lock();
+    try {
+      update(scriptsLink, mirror);
+      String revision = git(null, "--git-dir=" + mirror.getAbsolutePath(), "rev-parse", "HEAD");
+      if (revision.trim().isEmpty())
+        throw new IOException("Could not resolve the revision of " + scriptsLink);
+      return revision.trim();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Create the mirror of a repository or fetch the latest changes if it exists already.
+   *
+   * @param scriptsLink
+   * @param mirror
+   * @throws IOException
+   */
+  private void update(String scriptsLink, File mirror) throws IOException {
+    if (mirror.isDirectory()) {
+      log.debug("Update the mirror of " + scriptsLink);
+      git(null, "--git-dir=" + mirror.getAbsolutePath(), "remote", "update", "--prune");
+    } else {
+      log.debug("Create a mirror of " + scriptsLink);
+      File tmpMirror = new File(cacheDirectory, mirror.getName() + ".tmp");
+      FileUtils.removeDirectory(tmpMirror);
+      git(null, "clone", "--mirror", scriptsLink, tmpMirror.getAbsolutePath());
+      if (!tmpMirror.renameTo(mirror)) {
+        FileUtils.removeDirectory(tmpMirror);
+        throw new IOException("Could not move the mirror of " + scriptsLink + " into the cache");
+      }
+    }
+    mirror.setLastModified(System.currentTimeMillis());
+  }
+
+  /**
+   * Remove the least recently used mirrors until the cache is not bigger than the maximum size
+   * anymore. Mirrors that are in use at the moment are skipped.
+   */
+  private void evict() {
+    List<File> mirrors = new ArrayList<>();
+    long size = 0;
+    synchronized (this) {
+      for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+        mirrors.add(new File(cacheDirectory, entry.getKey()));
+        size += entry.getValue();
+      }
+    }
+    if (size <= maxSize) return;
+
+    Collections.sort(
+        mirrors,
+        new Comparator<File>() {
+          @Override
+          public int compare(File f1, File f2) {
+            return Long.compare(f1.lastModified(), f2.lastModified());
+          }
+        });
+    for (File mirror : mirrors) {
+      if (size <= maxSize) break;
+      ReentrantLock lock = getLock(mirror.getName());
+      if (!lock.tryLock()) continue;
+      try {
+        log.info("Remove the git mirror " + mirror.getName() + " from the cache");
+        FileUtils.removeDirectory(mirror);
+        synchronized (this) {
+          Long mirrorSize = sizes.remove(mirror.getName());
+          if (mirrorSize != null) size -= mirrorSize;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private synchronized ReentrantLock getLock(String name) {
+    ReentrantLock lock = locks.get(name);
+    if (lock == null) {
+      lock = new ReentrantLock();
+      locks.put(name, lock);
+    }
+    return lock;
+  }
+
+  /**
+   * Execute a git command and wait for it to finish.
+   *
+   * @param index the index file git should use or null for the default one
+   * @param arguments
+   * @return the last part of the output of the command
+   * @throws IOException if the command failed
+   */
+  private String git(File index, String... arguments) throws IOException {
+    List<String> command = new LinkedList<>();
+    command.add(gitBinary);
+    command.addAll(Arrays.asList(arguments));
+    Map<String, String> environment = null;
+    if (index != null)
+      environment = Collections.singletonMap("GIT_INDEX_FILE", index.getAbsolutePath());
+    return commandExecutor.execute(command, environment);
+  }
+
+  /**
+   * Returns the name of the mirror directory of a repository, which is the SHA-1 hash of its url.
+   *
+   * @param scriptsLink
+   * @return
+   */
+  private String getMirrorName(String scriptsLink) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-1").digest(scriptsLink.getBytes("UTF-8"));
+      StringBuilder name = new StringBuilder();
+      for (byte b : hash) name.append(String.format("%02x", b));
+      return name.toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public String getGitBinary() {
+    return gitBinary;
+  }
+
+  public void setGitBinary(String gitBinary) {
+    this.gitBinary = gitBinary;
+  }
+}
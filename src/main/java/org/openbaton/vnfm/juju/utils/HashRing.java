@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Consistent hash ring that assigns keys to members. Every member is placed on the ring several
+ * times, so that the keys are spread evenly and a joining or leaving member only moves the keys of
+ * its own share of the ring. Instances are immutable; a changed membership needs a new ring.
+ */
+public class HashRing {
+
+  private List<String> members;
+  // <position on the ring, member>
+  private TreeMap<Long, String> ring;
+
+  /**
+   * @param members
+   * @param virtualNodes the number of positions of each member on the ring
+   */
+  public HashRing(Collection<String> members, int virtualNodes) {
+    this.members = new ArrayList<>(new TreeSet<>(members));
+    this.ring = new TreeMap<>();
+    for (String member : this.members) {
+      for (int i = 0; i < virtualNodes; i++) ring.put(hash(member + "#" + i), member);
+    }
+  }
+
+  /**
+   * Returns the member that owns a key, i.e. the first member at or after the position of the key.
+   *
+   * @param key
+   * @return the member or null if the ring is empty
+   */
+  public String getOwner(String key) {
+    if (ring.isEmpty()) return null;
+    Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+    return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+  }
+
+  /**
+   * Returns the members in their natural order.
+   *
+   * @return an unmodifiable view of the members
+   */
+  public List<String> getMembers() {
+    return Collections.unmodifiableList(members);
+  }
+
+  /**
+   * Position of a string on the ring: the first 8 bytes of its MD5 digest.
+   *
+   * @param value
+   * @return
+   */
+  private static long hash(String value) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+      long hash = 0;
+      for (int i = 0; i < 8; i++) hash = (hash << 8) | (digest[i] & 0xff);
+      return hash;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported", e);
+    }
+  }
+}
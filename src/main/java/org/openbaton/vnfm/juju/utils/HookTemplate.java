@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A text template with ${name} placeholders. The template is parsed once into its literal parts and
+ * the positions of the placeholders, rendering then appends the parts and the passed values
+ * directly to the output without building intermediate Strings.
+ */
+public class HookTemplate {
+
+  private String[] literals;
+  // index of the value that follows the literal at the same position
+  private int[] variables;
+
+  private HookTemplate(String[] literals, int[] variables) {
+    this.literals = literals;
+    this.variables = variables;
+  }
+
+  /**
+   * Parse a template.
+   *
+   * @param template the template text
+   * @param names the names of the placeholders, in the order in which their values are passed to
+   *     render
+   * @return the compiled template
+   * @throws IllegalArgumentException if the template contains an unknown or unterminated
+   *     placeholder
+   */
+  public static HookTemplate compile(String template, String... names) {
+    List<String> nameList = Arrays.asList(names);
+    List<String> literals = new ArrayList<>();
+    List<Integer> variables = new ArrayList<>();
+    int position = 0;
+    int start;
+    while ((start = template.indexOf("${", position)) != -1) {
+      int end = template.indexOf('}', start);
+      if (end == -1) throw new IllegalArgumentException("Unterminated placeholder in " + template);
+      int index = nameList.indexOf(template.substring(start + 2, end));
+      if (index == -1)
+        throw new IllegalArgumentException(
+            "Unknown placeholder " + template.substring(start, end + 1) + " in " + template);
+      literals.add(template.substring(position, start));
+      variables.add(index);
+      position = end + 1;
+    }
+    literals.add(template.substring(position));
+
+    int[] variableArray = new int[variables.size()];
+    for (int i = 0; i < variableArray.length; i++) variableArray[i] = variables.get(i);
+    return new HookTemplate(literals.toArray(new String[literals.size()]), variableArray);
+  }
+
+  /**
+   * Append the template to the output, replacing the placeholders by the passed values.
+   *
+   * @param out
+   * @param values the values in the order of the names passed to compile
+   * @throws IOException
+   */
+  public void render(Appendable out, String... values) throws IOException {
+    for (int i = 0; i < variables.length; i++) {
+      out.append(literals[i]);
+      out.append(values[variables[i]]);
+    }
+    out.append(literals[variables.length]);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+/**
+ * The compiled templates of the hooks and variable files that the Juju VNFM writes into a charm.
+ * The placeholders vnf, log and scripts stand for the VNF name, the script log path and the script
+ * path.
+ */
+public final class HookTemplates {
+
+  private static final String LOG_PREFIX = "echo \"`date '+%H-%M-%S'` ${vnf}: ";
+  private static final String LOG_SUFFIX = "\" >> ${log}/${vnf}\n";
+
+  public static final HookTemplate RELATION_JOINED_HEADER =
+      HookTemplate.compile(
+          "#!/bin/bash\n" + LOG_PREFIX + "execute ${vnf}-relation-joined hook" + LOG_SUFFIX,
+          "vnf",
+          "log");
+
+  public static final HookTemplate RELATION_SET_ADDRESS =
+      HookTemplate.compile("relation-set ${vl}=`unit-get private-address`\n", "vl");
+
+  public static final HookTemplate RELATION_SET_PARAMETER =
+      HookTemplate.compile("relation-set ${type}_${key}=${value}\n", "type", "key", "value");
+
+  public static final HookTemplate RELATION_JOINED_FOOTER =
+      HookTemplate.compile(
+          "relation-set allRelationParametersAreReady=true\n"
+              + LOG_PREFIX
+              + "finished ${vnf}-relation-joined hook"
+              + LOG_SUFFIX,
+          "vnf",
+          "log");
+
+  public static final HookTemplate INSTALL =
+      HookTemplate.compile(
+          "#!/bin/bash\n"
+              + LOG_PREFIX
+              + "execute install hook"
+              + LOG_SUFFIX
+              + "mkdir -p ${scripts}\ncp -r scripts/* ${scripts}\nmkdir -p ${log}\n"
+              + LOG_PREFIX
+              + "finished install hook"
+              + LOG_SUFFIX,
+          "vnf",
+          "log",
+          "scripts");
+
+  public static final HookTemplate LIFECYCLE_HOOK_HEADER =
+      HookTemplate.compile(
+          "#!/bin/bash\n"
+              + LOG_PREFIX
+              + "execute ${hook} hook"
+              + LOG_SUFFIX
+              + "source hooks/paramVariables\ncd scripts\n",
+          "vnf",
+          "log",
+          "hook");
+
+  // the install hook of the INSTANTIATE lifecycle event copies the scripts before running them
+  public static final HookTemplate INSTALL_HOOK_HEADER =
+      HookTemplate.compile(
+          "#!/bin/bash\nmkdir -p ${scripts}\ncp -r scripts/* ${scripts}\nmkdir -p ${log}\n"
+              + LOG_PREFIX
+              + "execute install hook"
+              + LOG_SUFFIX
+              + "source hooks/paramVariables\ncd scripts\n",
+          "vnf",
+          "log",
+          "scripts");
+
+  // without the final line break
+  public static final HookTemplate LIFECYCLE_SCRIPT =
+      HookTemplate.compile(
+          LOG_PREFIX
+              + "execute ${script}"
+              + LOG_SUFFIX
+              + "bash ${script}\n"
+              + LOG_PREFIX
+              + "finished ${script}\" >> ${log}/${vnf}",
+          "vnf",
+          "log",
+          "script");
+
+  public static final HookTemplate LIFECYCLE_HOOK_FOOTER =
+      HookTemplate.compile(LOG_PREFIX + "finished ${hook} hook" + LOG_SUFFIX, "vnf", "log", "hook");
+
+  public static final HookTemplate RELATION_CHANGED_HEADER =
+      HookTemplate.compile(
+          "#!/bin/bash\n"
+              + "if [ -f hooks/finishedRelationChangedHooks/${hook} ]; then\n  "
+              + LOG_PREFIX
+              + "${hook} hook was already executed. Do not run it again."
+              + LOG_SUFFIX
+              + "  exit 0\n"
+              + "fi\n"
+              + "export allRelationParametersAreReady=`relation-get allRelationParametersAreReady`\n"
+              + "if [ \"$allRelationParametersAreReady\" != \"true\" ]; then\n  "
+              + LOG_PREFIX
+              + "The relation parameters are not yet set. Abort ${source}-relation-changed hook and try again later."
+              + LOG_SUFFIX
+              + "  exit 0\nfi\n"
+              + LOG_PREFIX
+              + "execute ${source}-relation-changed hook"
+              + LOG_SUFFIX
+              + "source hooks/paramVariables\nsource hooks/relationVariables\n",
+          "vnf",
+          "log",
+          "hook",
+          "source");
+
+  public static final HookTemplate RELATION_CHANGED_SCRIPT =
+      HookTemplate.compile(
+          "pushd scripts \n"
+              + LOG_PREFIX
+              + "execute ${script}"
+              + LOG_SUFFIX
+              + "bash ${script}\n"
+              + LOG_PREFIX
+              + "finished ${script}"
+              + LOG_SUFFIX
+              + "popd \ntouch hooks/finishedConfigureScripts/${script}\n",
+          "vnf",
+          "log",
+          "script");
+
+  public static final HookTemplate RELATION_CHANGED_FINISHED =
+      HookTemplate.compile(
+          "touch hooks/finishedRelationChangedHooks/${hook}\n"
+              + LOG_PREFIX
+              + "finished ${hook} hook"
+              + LOG_SUFFIX,
+          "vnf",
+          "log",
+          "hook");
+
+  public static final HookTemplate RELATION_CHANGED_TRIGGER =
+      HookTemplate.compile(
+          LOG_PREFIX
+              + "($(ls -1 hooks/finishedConfigureScripts/ | wc -l)/${count}) scripts finished before executing startAfterDependencies."
+              + LOG_SUFFIX
+              + "if [ $(ls -1 hooks/finishedConfigureScripts/ | wc -l) -eq ${count} ]; then\n"
+              + LOG_PREFIX
+              + "Trigger startAfterDependencies"
+              + LOG_SUFFIX
+              + "bash hooks/startAfterDependencies; \nfi\n",
+          "vnf",
+          "log",
+          "count");
+
+  public static final HookTemplate EXPORT =
+      HookTemplate.compile("export ${name}=${value}\n", "name", "value");
+
+  public static final HookTemplate EXPORT_ADDRESS =
+      HookTemplate.compile("export ${vl}=`unit-get private-address`\n", "vl");
+
+  public static final HookTemplate EXPORT_RELATION_VALUE =
+      HookTemplate.compile("export ${type}_${name}=`relation-get ${name}`\n", "type", "name");
+
+  public static final HookTemplate EXPORT_RELATION_PARAMETER =
+      HookTemplate.compile("export ${type}_${key}=`relation-get ${type}_${key}`\n", "type", "key");
+
+  private HookTemplates() {}
+}
@@ -22,22 +22,23 @@ import java.util.*;
  * The purpose of this class is to help writing the charm's metadata file. This file may contain a
  * map with duplicate keys. This implementation of the Map interface works as a Map that can store
  * duplicate keys. Key and value are determined to be Strings. Some typical map methods are not
- * available and marked as deprecated.
+ * available and marked as deprecated. Entries are kept in insertion order and a key value pair that
+ * is already contained is not added again. The size is maintained on every put and the views
+ * iterate over the stored values without copying them.
  */
 public class InterfaceMap implements Map<String, String> {
 
-  private Map<String, List<String>> internalMap = new HashMap<>();
+  private Map<String, List<String>> internalMap = new LinkedHashMap<>();
+  private int size = 0;
 
   @Override
   public int size() {
-    int size = 0;
-    for (List<String> values : internalMap.values()) size += values.size();
     return size;
   }
 
   @Override
   public boolean isEmpty() {
-    return internalMap.isEmpty();
+    return size == 0;
   }
 
   @Override
@@ -59,14 +60,27 @@ public class InterfaceMap implements Map<String, String> {
     return null;
   }
 
+  /**
+   * Returns all the values stored for the passed key.
+   *
+   * @param key
+   * @return the values in insertion order or an empty list
+   */
+  public List<String> getAll(String key) {
+    List<String> values = internalMap.get(key);
+    if (values == null) return Collections.emptyList();
+    return Collections.unmodifiableList(values);
+  }
+
   @Override
-  public synchronized String put(String s, String s2) {
-    if (internalMap.containsKey(s)) internalMap.get(s).add(s2);
-    else {
-      List<String> values = new LinkedList<>();
-      values.add(s2);
+  public String put(String s, String s2) {
+    List<String> values = internalMap.get(s);
+    if (values == null) {
+      values = new ArrayList<>(2);
       internalMap.put(s, values);
-    }
+    } else if (values.contains(s2)) return s2;
+    values.add(s2);
+    size++;
     return s2;
   }
 
@@ -86,25 +100,80 @@ public class InterfaceMap implements Map<String, String> {
 
   @Override
   public Set<String> keySet() {
-    return internalMap.keySet();
+    return Collections.unmodifiableSet(internalMap.keySet());
   }
 
   @Override
   public Collection<String> values() {
-    Collection<String> valueList = new LinkedList<>();
-    for (List<String> values : internalMap.values()) {
-      valueList.addAll(values);
-    }
-    return valueList;
+    return new AbstractCollection<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return new EntryIterator<String>() {
+          @Override
+          protected String next(String key, String value) {
+            return value;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
   }
 
   @Override
   public Set<Entry<String, String>> entrySet() {
-    Set<Entry<String, String>> entries = new HashSet<>();
-    for (Entry<String, List<String>> entry : internalMap.entrySet()) {
-      for (String value : entry.getValue())
-        entries.add(new AbstractMap.SimpleEntry<String, String>(entry.getKey(), value));
+    return new AbstractSet<Entry<String, String>>() {
+      @Override
+      public Iterator<Entry<String, String>> iterator() {
+        return new EntryIterator<Entry<String, String>>() {
+          @Override
+          protected Entry<String, String> next(String key, String value) {
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /** Iterates over all the key value pairs of the map in insertion order. */
+  private abstract class EntryIterator<T> implements Iterator<T> {
+
+    private Iterator<Entry<String, List<String>>> keys = internalMap.entrySet().iterator();
+    private String key;
+    private List<String> values = Collections.emptyList();
+    private int index = 0;
+
+    @Override
+    public boolean hasNext() {
+      while (index >= values.size()) {
+        if (!keys.hasNext()) return false;
+        Entry<String, List<String>> entry = keys.next();
+        key = entry.getKey();
+        values = entry.getValue();
+        index = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      return next(key, values.get(index++));
     }
-    return entries;
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    protected abstract T next(String key, String value);
   }
 }
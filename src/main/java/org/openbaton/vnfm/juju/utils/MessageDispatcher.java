@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Dispatches tasks into one mailbox per key. The tasks of one mailbox are executed one after the
+ * other in the order they were dispatched, while the mailboxes themselves are processed in parallel
+ * by the passed executor. The JujuVnfm uses the network service id as key so that the messages of
+ * one network service are handled in order without blocking the other network services. A task can
+ * hold its mailbox until an asynchronous operation finished, so that the following tasks of the
+ * same key still wait for it without a thread being blocked in the meantime.
+ */
+public class MessageDispatcher {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private Executor executor;
+
+  // <key, mailbox>; a mailbox only exists as long as it contains tasks or is held
+  private Map<String, Mailbox> mailboxes;
+
+  // the mailbox whose task is executed by the current thread
+  private ThreadLocal<Mailbox> currentMailbox = new ThreadLocal<>();
+
+  public MessageDispatcher(Executor executor) {
+    this.executor = executor;
+    this.mailboxes = new HashMap<>();
+  }
+
+  /**
+   * Add a task to the mailbox of the passed key. If the mailbox is not processed at the moment, it
+   * is handed over to the executor.
+   *
+   * @param key
+   * @param task
+   */
+  public synchronized void dispatch(String key, Runnable task) {
+    Mailbox mailbox = mailboxes.get(key);
+    if (mailbox == null) {
+      mailbox = new Mailbox(key);
+      mailboxes.put(key, mailbox);
+    }
+    mailbox.tasks.add(task);
+    if (!mailbox.scheduled && mailbox.holds == 0) schedule(mailbox);
+  }
+
+  /**
+   * Do not execute further tasks of the current mailbox until the passed future completed,
+   * successfully or not. Has to be called by a dispatched task. Callbacks that are added to the
+   * future before calling this method are run before the next task of the mailbox.
+   *
+   * @param future
+   */
+  public void holdUntil(ListenableFuture<?> future) {
+    holdUntil(future, null);
+  }
+
+  /**
+   * Do not execute further tasks of the current mailbox until the passed future completed,
+   * successfully or not, and then execute the passed task before the tasks that were dispatched in
+   * the meantime. Has to be called by a dispatched task.
+   *
+   * @param future
+   * @param next the task to execute next or null
+   */
+  public void holdUntil(ListenableFuture<?> future, final Runnable next) {
+    final Mailbox mailbox = currentMailbox.get();
+    if (mailbox == null)
+      throw new IllegalStateException("holdUntil can only be called by a dispatched task");
+    synchronized (this) {
+      mailbox.holds++;
+    }
+    future.addCallback(
+        new ListenableFutureCallback<Object>() {
+          @Override
+          public void onSuccess(Object result) {
+            release(mailbox, next);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            release(mailbox, next);
+          }
+        });
+  }
+
+  /**
+   * Returns the number of mailboxes that still contain tasks.
+   *
+   * @return
+   */
+  public synchronized int getActiveMailboxes() {
+    return mailboxes.size();
+  }
+
+  /**
+   * Take the next task of the passed mailbox. If the mailbox is empty it is removed.
+   *
+   * @param mailbox
+   * @return the next task or null if the mailbox is empty or held
+   */
+  private synchronized Runnable next(Mailbox mailbox) {
+    if (mailbox.holds > 0) {
+      mailbox.scheduled = false;
+      return null;
+    }
+    Runnable task = mailbox.tasks.poll();
+    if (task == null) {
+      mailbox.scheduled = false;
+      mailboxes.remove(mailbox.key);
+    }
+    return task;
+  }
+
+  /**
+   * Release one hold of the passed mailbox. If it was the last one, the mailbox is handed over to
+   * the executor again or removed if it is empty.
+   *
+   * @param mailbox
+   * @param next a task to put at the head of the mailbox or null
+   */
+  private synchronized void release(Mailbox mailbox, Runnable next) {
+    if (next != null) mailbox.tasks.addFirst(next);
+    mailbox.holds--;
+    if (mailbox.holds > 0 || mailbox.scheduled) return;
+    if (mailbox.tasks.isEmpty()) {
+      mailboxes.remove(mailbox.key);
+    } else {
+      schedule(mailbox);
+    }
+  }
+
+  /**
+   * Hand the passed mailbox over to the executor. If the executor rejects it, e.g. because it is
+   * already shut down, the tasks of the mailbox are dropped and the mailbox is removed, so that a
+   * later dispatch for the same key does not wait forever for a mailbox that never runs.
+   *
+   * @param mailbox
+   */
+  private void schedule(Mailbox mailbox) {
+    mailbox.scheduled = true;
+    try {
+      executor.execute(mailbox);
+    } catch (RejectedExecutionException e) {
+      mailbox.scheduled = false;
+      mailboxes.remove(mailbox.key);
+      log.error(
+          "Dropped "
+              + mailbox.tasks.size()
+              + " task(s) of mailbox "
+              + mailbox.key
+              + " because the executor rejected it: "
+              + e.getMessage());
+      mailbox.tasks.clear();
+    }
+  }
+
+  private class Mailbox implements Runnable {
+
+    private String key;
+    private Deque<Runnable> tasks;
+    private boolean scheduled;
+    // number of futures the mailbox waits for before executing the next task
+    private int holds;
+
+    private Mailbox(String key) {
+      this.key = key;
+      this.tasks = new LinkedList<>();
+      this.scheduled = false;
+      this.holds = 0;
+    }
+
+    @Override
+    public void run() {
+      currentMailbox.set(this);
+      try {
+        Runnable task;
+        while ((task = next(this)) != null) {
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            log.error("Task of mailbox " + key + " failed", e);
+          }
+        }
+      } finally {
+        currentMailbox.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the timers and gauges of the VNFM. Every metric is registered as an MXBean in the passed
+ * JMX domain as soon as it is created. If an HTTP server is started, all metrics can also be
+ * fetched from its /metrics path in the Prometheus text format.
+ */
+public class MetricRegistry {
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private String domain;
+  private String prefix;
+
+  private ConcurrentMap<String, Timer> timers;
+  private ConcurrentMap<String, Gauge> gauges;
+  private List<ObjectName> objectNames;
+
+  private HttpServer httpServer;
+
+  /**
+   * @param domain the JMX domain of the MXBeans or null to not register them
+   * @param prefix prepended to the metric names in the HTTP output
+   */
+  public MetricRegistry(String domain, String prefix) {
+    this.domain = domain;
+    this.prefix = prefix;
+    this.timers = new ConcurrentHashMap<>();
+    this.gauges = new ConcurrentHashMap<>();
+    this.objectNames = new ArrayList<>();
+  }
+
+  /**
+   * Returns the timer with the passed name and creates it if it does not exist yet.
+   *
+   * @param name
+   * @return
+   */
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    if (timer != null) return timer;
+    Timer newTimer = new Timer();
+    timer = timers.putIfAbsent(name, newTimer);
+    if (timer != null) return timer;
+    register("Timer", name, newTimer);
+    return newTimer;
+  }
+
+  /**
+   * Add a gauge. A gauge with the same name is replaced in the HTTP output but not in JMX.
+   *
+   * @param name
+   * @param gauge
+   */
+  public void gauge(String name, final Gauge gauge) {
+    if (gauges.put(name, gauge) != null) return;
+    register(
+        "Gauge",
+        name,
+        new GaugeMXBean() {
+          @Override
+          public long getValue() {
+            return gauge.getValue();
+          }
+        });
+  }
+
+  private synchronized void register(String type, String name, Object mbean) {
+    if (domain == null) return;
+    try {
+      ObjectName objectName =
+          new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+      objectNames.add(objectName);
+    } catch (JMException e) {
+      log.warn("Could not register the MBean of " + name, e);
+    }
+  }
+
+  /**
+   * Serve the metrics on the /metrics path of a local HTTP server.
+   *
+   * @param address the address to bind to
+   * @param port
+   * @throws IOException
+   */
+  public synchronized void startHttpServer(String address, int port) throws IOException {
+    httpServer = HttpServer.create(new InetSocketAddress(address, port), 0);
+    httpServer.createContext(
+        "/metrics",
+        new HttpHandler() {
+          @Override
+          public void handle(HttpExchange exchange) throws IOException {
+            StringBuilder body = new StringBuilder();
+            write(body);
+            byte[] bytes = body.toString().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(bytes);
+            }
+          }
+        });
+    httpServer.start();
+    log.info("Serving metrics on http://" + address + ":" + port + "/metrics");
+  }
+
+  /**
+   * Write all metrics in the Prometheus text format. Timers are written as histograms in seconds.
+   *
+   * @param out
+   */
+  public void write(StringBuilder out) {
+    for (Map.Entry<String, Timer> entry : new TreeMap<>(timers).entrySet()) {
+      String name = getMetricName(entry.getKey()) + "_seconds";
+      Timer timer = entry.getValue();
+      out.append("# TYPE ").append(name).append(" histogram\n");
+      long[] counts = timer.getBucketCounts();
+      long cumulative = 0;
+      for (int i = 0; i < counts.length; i++) {
+        cumulative += counts[i];
+        String bound =
+            i < Timer.BUCKETS.length ? String.valueOf(Timer.BUCKETS[i] / 1000.0) : "+Inf";
+        out.append(name).append("_bucket{le=\"").append(bound).append("\"} ");
+        out.append(cumulative).append('\n');
+      }
+      out.append(name).append("_sum ").append(timer.getTotalMillis() / 1000).append('\n');
+      out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+    for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+      String name = getMetricName(entry.getKey());
+      out.append("# TYPE ").append(name).append(" gauge\n");
+      out.append(name).append(' ').append(entry.getValue().getValue()).append('\n');
+    }
+  }
+
+  /** Stop the HTTP server and unregister the MXBeans. */
+  public synchronized void shutdown() {
+    if (httpServer != null) httpServer.stop(0);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName objectName : objectNames) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException e) {
+        log.warn("Could not unregister the MBean " + objectName, e);
+      }
+    }
+    objectNames.clear();
+  }
+
+  private String getMetricName(String name) {
+    return (prefix + name).toLowerCase().replaceAll("[^a-z0-9_]", "_");
+  }
+
+  /** A value that is read whenever the metrics are requested. */
+  public interface Gauge {
+
+    long getValue();
+  }
+
+  /** Management interface of a Gauge. */
+  public interface GaugeMXBean {
+
+    long getValue();
+  }
+}
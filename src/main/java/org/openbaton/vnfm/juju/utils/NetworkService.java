@@ -33,39 +33,79 @@ import java.util.*;
 public class NetworkService {
 
   private String id;
+  // the VNFDs and VNFRs in the order they were added, indexed by id and by name
   private List<VirtualNetworkFunctionDescriptor> vnfdList;
+  private Map<String, VirtualNetworkFunctionDescriptor> vnfdById;
+  private Map<String, VirtualNetworkFunctionDescriptor> vnfdByName;
   private List<VirtualNetworkFunctionRecord> vnfrList;
+  private Map<String, VirtualNetworkFunctionRecord> vnfrById;
+  private Map<String, VirtualNetworkFunctionRecord> vnfrByName;
   private Map<String, VNFPackage> vnfPackageMap;
   // <target-vnf-name, <source-vnf-name, <parameters>>
   private Map<String, Map<String, List<String>>> dependencies;
+  // reverse index of the dependencies: <source-vnf-name, <target-vnf-name, <parameters>>
+  private Map<String, Map<String, List<String>>> targets;
   private boolean environmentDeployed;
 
-  private Map<String, String> vnfStatusMap;
+  private Map<String, VnfState> vnfStatusMap;
+  // number of VNFs per state, indexed by the ordinal of the state
+  private int[] vnfStateCounts;
+  // VNFs that are not started yet
+  private Set<String> pendingVnfs;
 
   // list of charm names that will be deployed using the juju charm-store
   private List<String> charms;
 
+  // the Juju model of the network service in the form controller:model; null if it is deployed
+  // into the current model of the juju client
+  private String model;
+
   public NetworkService() {
-    this.vnfdList = new LinkedList<>();
-    this.vnfrList = new LinkedList<>();
+    this.vnfdList = new ArrayList<>();
+    this.vnfdById = new HashMap<>();
+    this.vnfdByName = new HashMap<>();
+    this.vnfrList = new ArrayList<>();
+    this.vnfrById = new HashMap<>();
+    this.vnfrByName = new HashMap<>();
     this.vnfPackageMap = new HashMap<>();
     this.dependencies = new HashMap<>();
+    this.targets = new HashMap<>();
     this.vnfStatusMap = new HashMap<>();
+    this.vnfStateCounts = new int[VnfState.values().length];
+    this.pendingVnfs = new LinkedHashSet<>();
     this.charms = new LinkedList<>();
   }
 
+  /**
+   * Returns the VNFD with the passed name. If several VNFDs have the same name, the first one added
+   * is returned.
+   *
+   * @param name
+   * @return the VNFD or null
+   */
   public VirtualNetworkFunctionDescriptor getVnfdByName(String name) {
-    for (VirtualNetworkFunctionDescriptor vnfd : vnfdList) {
-      if (vnfd.getName().equals(name)) return vnfd;
-    }
-    return null;
+    return vnfdByName.get(name);
   }
 
+  /**
+   * Returns the VNFR with the passed name. If several VNFRs have the same name, the first one added
+   * is returned.
+   *
+   * @param name
+   * @return the VNFR or null
+   */
   public VirtualNetworkFunctionRecord getVnfrByName(String name) {
-    for (VirtualNetworkFunctionRecord vnfr : vnfrList) {
-      if (vnfr.getName().equals(name)) return vnfr;
-    }
-    return null;
+    return vnfrByName.get(name);
+  }
+
+  /**
+   * Returns the VNFR with the passed id.
+   *
+   * @param id
+   * @return the VNFR or null
+   */
+  public VirtualNetworkFunctionRecord getVnfrById(String id) {
+    return vnfrById.get(id);
   }
 
   public VNFPackage getVnfPackageByName(String name) {
@@ -88,38 +128,114 @@ public class NetworkService {
     return paramList;
   }
 
+  /**
+   * Add a VNFD if no VNFD with the same id was added before.
+   *
+   * @param vnfd
+   */
   public void addVnfd(VirtualNetworkFunctionDescriptor vnfd) {
-    for (VirtualNetworkFunctionDescriptor vnfdAlreadyPresent : vnfdList) {
-      if (vnfdAlreadyPresent.getId().equals(vnfd.getId())) {
-        return;
-      }
-    }
+    if (vnfdById.containsKey(vnfd.getId())) return;
+    vnfdById.put(vnfd.getId(), vnfd);
+    if (!vnfdByName.containsKey(vnfd.getName())) vnfdByName.put(vnfd.getName(), vnfd);
     vnfdList.add(vnfd);
   }
 
+  /**
+   * Add a VNFR if no VNFR with the same id was added before.
+   *
+   * @param vnfr
+   */
   public void addVnfr(VirtualNetworkFunctionRecord vnfr) {
-    for (VirtualNetworkFunctionRecord vnfrAlreadyPresent : vnfrList) {
-      if (vnfrAlreadyPresent.getId().equals(vnfr.getId())) {
+    if (vnfrById.containsKey(vnfr.getId())) return;
+    vnfrById.put(vnfr.getId(), vnfr);
+    if (!vnfrByName.containsKey(vnfr.getName())) vnfrByName.put(vnfr.getName(), vnfr);
+    vnfrList.add(vnfr);
+  }
+
+  /**
+   * Replace the VNFR that has the same id as the passed one. Does nothing if there is no such VNFR.
+   * The replacement keeps the position of the previous VNFR, so if its name changed, the name
+   * lookups of the previous and of the new name still return the first VNFR added with that name.
+   *
+   * @param vnfr
+   */
+  public void replaceVnfr(VirtualNetworkFunctionRecord vnfr) {
+    VirtualNetworkFunctionRecord previous = vnfrById.put(vnfr.getId(), vnfr);
+    if (previous == null) {
+      vnfrById.remove(vnfr.getId());
+      return;
+    }
+    for (int i = 0; i < vnfrList.size(); i++) {
+      if (vnfrList.get(i) == previous) vnfrList.set(i, vnfr);
+    }
+    indexVnfrName(previous.getName());
+    indexVnfrName(vnfr.getName());
+  }
+
+  /**
+   * Point the name lookup of a name to the first VNFR in the list with that name.
+   *
+   * @param name
+   */
+  private void indexVnfrName(String name) {
+    for (VirtualNetworkFunctionRecord vnfr : vnfrList) {
+      if (name == null ? vnfr.getName() == null : name.equals(vnfr.getName())) {
+        vnfrByName.put(name, vnfr);
         return;
       }
     }
-    vnfrList.add(vnfr);
+    vnfrByName.remove(name);
   }
 
-  public void setVnfStatus(String vnf, String status) {
-    vnfStatusMap.put(vnf, status);
+  /**
+   * Set the state of a VNF and update the state counters and the pending VNFs.
+   *
+   * @param vnf
+   * @param status
+   */
+  public void setVnfStatus(String vnf, VnfState status) {
+    VnfState previous = vnfStatusMap.put(vnf, status);
+    if (previous != null) vnfStateCounts[previous.ordinal()]--;
+    vnfStateCounts[status.ordinal()]++;
+    if (status == VnfState.STARTED) pendingVnfs.remove(vnf);
+    else pendingVnfs.add(vnf);
   }
 
   /**
-   * Returns true if all the VNFs in this NetworkService are in state 'started'.
+   * Returns true if all the VNFs in this NetworkService are in state STARTED.
    *
    * @return
    */
   public boolean isReadyToDeploy() {
-    for (Map.Entry status : vnfStatusMap.entrySet()) {
-      if (!status.getValue().equals("started")) return false;
-    }
-    return true;
+    return pendingVnfs.isEmpty();
+  }
+
+  /**
+   * Returns true if all the VNFs in this NetworkService are in state RELEASED.
+   *
+   * @return
+   */
+  public boolean isReleased() {
+    return vnfStateCounts[VnfState.RELEASED.ordinal()] == vnfStatusMap.size();
+  }
+
+  /**
+   * Returns the names of the VNFs that are not started yet, in the order they were first seen.
+   *
+   * @return
+   */
+  public Set<String> getPendingVnfs() {
+    return Collections.unmodifiableSet(pendingVnfs);
+  }
+
+  /**
+   * Returns the number of VNFs in the passed state.
+   *
+   * @param state
+   * @return
+   */
+  public int getVnfCount(VnfState state) {
+    return vnfStateCounts[state.ordinal()];
   }
 
   /**
@@ -141,11 +257,7 @@ public class NetworkService {
    * @return
    */
   public boolean vnfIsSource(String vnfName) {
-    for (Map.Entry<String, Map<String, List<String>>> entry : dependencies.entrySet()) {
-      if (entry.getValue().containsKey(vnfName)) return true;
-    }
-
-    return false;
+    return targets.containsKey(vnfName);
   }
 
   /**
@@ -178,17 +290,9 @@ public class NetworkService {
    * @param name
    */
   public Map<String, List<String>> getTargetsOfVnf(String name) {
-    Map<String, List<String>> targets = new HashMap<>();
-    for (Map.Entry<String, Map<String, List<String>>> targetSourceParams :
-        dependencies.entrySet()) {
-      for (Map.Entry<String, List<String>> sourceParams :
-          targetSourceParams.getValue().entrySet()) {
-        if (sourceParams.getKey().equals(name)) {
-          targets.put(targetSourceParams.getKey(), sourceParams.getValue());
-        }
-      }
-    }
-    return targets;
+    Map<String, List<String>> targetParams = targets.get(name);
+    if (targetParams == null) return new HashMap<>();
+    return new HashMap<>(targetParams);
   }
 
   /**
@@ -198,9 +302,9 @@ public class NetworkService {
    * @return
    */
   public String getVnfTypeForName(String vnfName) {
-    for (VirtualNetworkFunctionRecord vnfr : vnfrList)
-      if (vnfr.getName().equals(vnfName)) return vnfr.getType();
-    return "";
+    VirtualNetworkFunctionRecord vnfr = vnfrByName.get(vnfName);
+    if (vnfr == null) return "";
+    return vnfr.getType();
   }
 
   /**
@@ -211,12 +315,9 @@ public class NetworkService {
    */
   public Set<String> getProvidesOfVnf(String vnfName) {
     Set<String> params = new HashSet<>();
-    for (Map.Entry<String, Map<String, List<String>>> entry : dependencies.entrySet()) {
-      if (entry.getValue().containsKey(vnfName)) {
-        String target = entry.getKey();
-        params.addAll(entry.getValue().get(vnfName));
-      }
-    }
+    Map<String, List<String>> targetParams = targets.get(vnfName);
+    if (targetParams == null) return params;
+    for (List<String> parameters : targetParams.values()) params.addAll(parameters);
     return params;
   }
 
@@ -238,12 +339,20 @@ public class NetworkService {
     charms.add(charm);
   }
 
+  /**
+   * Returns the VNFDs in the order they were added. Use addVnfd or setVnfdList to change them.
+   *
+   * @return an unmodifiable view of the VNFDs
+   */
   public List<VirtualNetworkFunctionDescriptor> getVnfdList() {
-    return vnfdList;
+    return Collections.unmodifiableList(vnfdList);
   }
 
   public void setVnfdList(List<VirtualNetworkFunctionDescriptor> vnfdList) {
-    this.vnfdList = vnfdList;
+    this.vnfdList = new ArrayList<>();
+    this.vnfdById = new HashMap<>();
+    this.vnfdByName = new HashMap<>();
+    for (VirtualNetworkFunctionDescriptor vnfd : vnfdList) addVnfd(vnfd);
   }
 
   public Map<String, VNFPackage> getVnfPackageMap() {
@@ -254,12 +363,26 @@ public class NetworkService {
     this.vnfPackageMap = vnfPackageMap;
   }
 
+  /**
+   * Returns the dependencies as target -> source -> parameters. Use addDependency or
+   * setDependencies to change them, otherwise the reverse index gets out of sync.
+   *
+   * @return
+   */
   public Map<String, Map<String, List<String>>> getDependencies() {
     return dependencies;
   }
 
   public void setDependencies(Map<String, Map<String, List<String>>> dependencies) {
     this.dependencies = dependencies;
+    this.targets = new HashMap<>();
+    for (Map.Entry<String, Map<String, List<String>>> targetSourceParams :
+        dependencies.entrySet()) {
+      for (Map.Entry<String, List<String>> sourceParams :
+          targetSourceParams.getValue().entrySet()) {
+        addTarget(sourceParams.getKey(), targetSourceParams.getKey(), sourceParams.getValue());
+      }
+    }
   }
 
   public String getId() {
@@ -278,20 +401,47 @@ public class NetworkService {
     this.environmentDeployed = environmentDeployed;
   }
 
-  public Map<String, String> getVnfStatusMap() {
-    return vnfStatusMap;
+  /**
+   * Returns the states of the VNFs. Use setVnfStatus to change them.
+   *
+   * @return an unmodifiable view of the states
+   */
+  public Map<String, VnfState> getVnfStatusMap() {
+    return Collections.unmodifiableMap(vnfStatusMap);
   }
 
-  public void setVnfStatusMap(Map<String, String> vnfStatusMap) {
-    this.vnfStatusMap = vnfStatusMap;
+  public void setVnfStatusMap(Map<String, VnfState> vnfStatusMap) {
+    this.vnfStatusMap = new HashMap<>();
+    this.vnfStateCounts = new int[VnfState.values().length];
+    this.pendingVnfs = new LinkedHashSet<>();
+    for (Map.Entry<String, VnfState> entry : vnfStatusMap.entrySet())
+      setVnfStatus(entry.getKey(), entry.getValue());
   }
 
+  /**
+   * Add a dependency to the dependencies and to their reverse index. An existing dependency between
+   * the same VNFs is replaced.
+   *
+   * @param target
+   * @param sourceName
+   * @param parameters
+   */
   public void addDependency(String target, String sourceName, List<String> parameters) {
     Map<String, List<String>> sourceParams = new HashMap<>();
     sourceParams.put(sourceName, parameters);
     if (dependencies.containsKey(target)) {
       dependencies.get(target).put(sourceName, parameters);
     } else dependencies.put(target, sourceParams);
+    addTarget(sourceName, target, parameters);
+  }
+
+  private void addTarget(String source, String target, List<String> parameters) {
+    Map<String, List<String>> targetParams = targets.get(source);
+    if (targetParams == null) {
+      targetParams = new HashMap<>();
+      targets.put(source, targetParams);
+    }
+    targetParams.put(target, parameters);
   }
 
   @Override
@@ -306,12 +456,20 @@ public class NetworkService {
         + vnfdList;
   }
 
+  /**
+   * Returns the VNFRs in the order they were added. Use addVnfr or setVnfrList to change them.
+   *
+   * @return an unmodifiable view of the VNFRs
+   */
   public List<VirtualNetworkFunctionRecord> getVnfrList() {
-    return vnfrList;
+    return Collections.unmodifiableList(vnfrList);
   }
 
   public void setVnfrList(List<VirtualNetworkFunctionRecord> vnfrList) {
-    this.vnfrList = vnfrList;
+    this.vnfrList = new ArrayList<>();
+    this.vnfrById = new HashMap<>();
+    this.vnfrByName = new HashMap<>();
+    for (VirtualNetworkFunctionRecord vnfr : vnfrList) addVnfr(vnfr);
   }
 
   public List<String> getCharms() {
@@ -321,4 +479,12 @@ public class NetworkService {
   public void setCharms(List<String> charms) {
     this.charms = charms;
   }
+
+  public String getModel() {
+    return model;
+  }
+
+  public void setModel(String model) {
+    this.model = model;
+  }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.descriptor.VirtualDeploymentUnit;
+import org.openbaton.catalogue.mano.descriptor.VirtualNetworkFunctionDescriptor;
+import org.openbaton.catalogue.mano.record.Status;
+import org.openbaton.catalogue.mano.record.VNFCInstance;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openbaton.catalogue.nfvo.VNFPackage;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A change of a NetworkService. All the changes the JujuVnfm makes to its network services are
+ * applied through mutations, so that they can be written to the journal of the StateStore and
+ * replayed after a restart. Network services handed over to other replicas are sent as mutations in
+ * JSON, see jsonAdapter.
+ */
+public abstract class NetworkServiceMutation implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private String nsId;
+
+  protected NetworkServiceMutation(String nsId) {
+    this.nsId = nsId;
+  }
+
+  public String getNsId() {
+    return nsId;
+  }
+
+  /**
+   * Apply the change to the passed network service.
+   *
+   * @param networkService
+   */
+  public abstract void apply(NetworkService networkService);
+
+  /**
+   * Returns true if the mutation removes the whole network service instead of changing it.
+   *
+   * @return
+   */
+  public boolean removesNetworkService() {
+    return false;
+  }
+
+  /**
+   * Returns the mutations that rebuild the passed network service from scratch.
+   *
+   * @param networkService
+   * @return
+   */
+  public static List<NetworkServiceMutation> describe(NetworkService networkService) {
+    String nsId = networkService.getId();
+    List<NetworkServiceMutation> mutations = new ArrayList<>();
+    for (VirtualNetworkFunctionDescriptor vnfd : networkService.getVnfdList())
+      mutations.add(new AddVnfd(nsId, vnfd));
+    for (Map.Entry<String, VNFPackage> entry : networkService.getVnfPackageMap().entrySet())
+      mutations.add(new AddVnfPackage(nsId, entry.getKey(), entry.getValue()));
+    for (String charm : networkService.getCharms()) mutations.add(new AddCharm(nsId, charm));
+    for (Map.Entry<String, Map<String, List<String>>> targetSourceParams :
+        networkService.getDependencies().entrySet()) {
+      for (Map.Entry<String, List<String>> sourceParams :
+          targetSourceParams.getValue().entrySet()) {
+        mutations.add(
+            new AddDependency(
+                nsId, targetSourceParams.getKey(), sourceParams.getKey(), sourceParams.getValue()));
+      }
+    }
+    for (Map.Entry<String, VnfState> entry : networkService.getVnfStatusMap().entrySet())
+      mutations.add(new SetVnfStatus(nsId, entry.getKey(), entry.getValue()));
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList())
+      mutations.add(new AddVnfr(nsId, vnfr));
+    if (networkService.getModel() != null)
+      mutations.add(new SetModel(nsId, networkService.getModel()));
+    return mutations;
+  }
+
+  /**
+   * Returns the Gson adapter that writes the mutations together with their class and only reads the
+   * mutations defined here.
+   *
+   * @return
+   */
+  public static TypedJsonAdapter<NetworkServiceMutation> jsonAdapter() {
+    return new TypedJsonAdapter<>(
+        Arrays.<Class<? extends NetworkServiceMutation>>asList(
+            AddVnfd.class,
+            AddVnfPackage.class,
+            AddCharm.class,
+            AddDependency.class,
+            SetVnfStatus.class,
+            AddVnfr.class,
+            ReplaceVnfr.class,
+            UpdateVnfrStatus.class,
+            SetModel.class,
+            Remove.class));
+  }
+
+  public static class AddVnfd extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private VirtualNetworkFunctionDescriptor vnfd;
+
+    public AddVnfd(String nsId, VirtualNetworkFunctionDescriptor vnfd) {
+      super(nsId);
+      this.vnfd = vnfd;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.addVnfd(vnfd);
+    }
+  }
+
+  public static class AddVnfPackage extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private String vnfName;
+    private VNFPackage vnfPackage;
+
+    public AddVnfPackage(String nsId, String vnfName, VNFPackage vnfPackage) {
+      super(nsId);
+      this.vnfName = vnfName;
+      this.vnfPackage = vnfPackage;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.addVnfPackage(vnfPackage, vnfName);
+    }
+  }
+
+  public static class AddCharm extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private String charm;
+
+    public AddCharm(String nsId, String charm) {
+      super(nsId);
+      this.charm = charm;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.addCharm(charm);
+    }
+  }
+
+  public static class AddDependency extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private String target;
+    private String source;
+    private List<String> parameters;
+
+    public AddDependency(String nsId, String target, String source, List<String> parameters) {
+      super(nsId);
+      this.target = target;
+      this.source = source;
+      this.parameters = new ArrayList<>(parameters);
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.addDependency(target, source, parameters);
+    }
+  }
+
+  public static class SetVnfStatus extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private String vnfName;
+    private VnfState state;
+
+    public SetVnfStatus(String nsId, String vnfName, VnfState state) {
+      super(nsId);
+      this.vnfName = vnfName;
+      this.state = state;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.setVnfStatus(vnfName, state);
+    }
+  }
+
+  public static class AddVnfr extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private VirtualNetworkFunctionRecord vnfr;
+
+    public AddVnfr(String nsId, VirtualNetworkFunctionRecord vnfr) {
+      super(nsId);
+      this.vnfr = vnfr;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.addVnfr(vnfr);
+    }
+  }
+
+  public static class ReplaceVnfr extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private VirtualNetworkFunctionRecord vnfr;
+
+    public ReplaceVnfr(String nsId, VirtualNetworkFunctionRecord vnfr) {
+      super(nsId);
+      this.vnfr = vnfr;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.replaceVnfr(vnfr);
+    }
+  }
+
+  /**
+   * Sets the status of a VNFR and the states of its VNFC instances, which are matched by their
+   * vc_id. The VNFR is found by its id, so the change also reaches a VNFR that was replaced since
+   * the mutation was created.
+   */
+  public static class UpdateVnfrStatus extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private String vnfrId;
+    // null keeps the current status
+    private Status status;
+    // <vc_id, state>
+    private Map<String, String> vnfcInstanceStates;
+
+    public UpdateVnfrStatus(
+        String nsId, String vnfrId, Status status, Map<String, String> vnfcInstanceStates) {
+      super(nsId);
+      this.vnfrId = vnfrId;
+      this.status = status;
+      this.vnfcInstanceStates = new HashMap<>(vnfcInstanceStates);
+    }
+
+    public String getVnfrId() {
+      return vnfrId;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      VirtualNetworkFunctionRecord vnfr = networkService.getVnfrById(vnfrId);
+      if (vnfr != null) applyTo(vnfr);
+    }
+
+    /**
+     * Apply the change to the passed VNFR.
+     *
+     * @param vnfr
+     */
+    public void applyTo(VirtualNetworkFunctionRecord vnfr) {
+      if (status != null) vnfr.setStatus(status);
+      for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
+        for (VNFCInstance vnfcInstance : vdu.getVnfc_instance()) {
+          String state = vnfcInstanceStates.get(vnfcInstance.getVc_id());
+          if (state != null) vnfcInstance.setState(state);
+        }
+      }
+    }
+
+    /**
+     * Returns true if applying the mutation would change the passed VNFR.
+     *
+     * @param vnfr
+     * @return
+     */
+    public boolean changes(VirtualNetworkFunctionRecord vnfr) {
+      if (status != null && status != vnfr.getStatus()) return true;
+      for (VirtualDeploymentUnit vdu : vnfr.getVdu()) {
+        for (VNFCInstance vnfcInstance : vdu.getVnfc_instance()) {
+          String state = vnfcInstanceStates.get(vnfcInstance.getVc_id());
+          if (state != null && !state.equals(vnfcInstance.getState())) return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  public static class SetModel extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    private String model;
+
+    public SetModel(String nsId, String model) {
+      super(nsId);
+      this.model = model;
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {
+      networkService.setModel(model);
+    }
+  }
+
+  public static class Remove extends NetworkServiceMutation {
+
+    private static final long serialVersionUID = 1L;
+
+    public Remove(String nsId) {
+      super(nsId);
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {}
+
+    @Override
+    public boolean removesNetworkService() {
+      return true;
+    }
+  }
+}
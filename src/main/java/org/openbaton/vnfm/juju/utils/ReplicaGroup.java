@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import com.google.gson.JsonPrimitive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Membership of the replicas of the Juju VNFM that consume from the same AMQP endpoint. Every
+ * replica has a queue of its own that is bound to a fanout exchange. The replicas publish
+ * heartbeats on the exchange and consider a replica gone after they missed three of its heartbeats
+ * or when it announced that it leaves. The members are placed on a consistent hash ring, so that
+ * every key has one owner as long as the replicas agree on the members. The queues of the replicas
+ * are also used to send messages to single replicas. The payloads of the messages are JSON
+ * documents, which the receiver parses into the types it expects instead of deserializing whatever
+ * classes a message names.
+ */
+public class ReplicaGroup {
+
+  /** Receives the membership changes and the messages sent to this replica. */
+  public interface Listener {
+
+    /**
+     * Called after replicas joined or left. The calls are made one after the other.
+     *
+     * @param ring the ring of the current members
+     */
+    void membersChanged(HashRing ring);
+
+    /**
+     * Called for every message sent to this replica, one after the other in the order they arrive.
+     *
+     * @param sender the id of the sending replica
+     * @param type
+     * @param payload the JSON payload
+     */
+    void received(String sender, String type, String payload);
+  }
+
+  private static final String HEARTBEAT = "heartbeat";
+  private static final String LEAVE = "leave";
+  private static final String TYPE_HEADER = "x-replica-message-type";
+  private static final String SENDER_HEADER = "x-replica-id";
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private ConnectionFactory connectionFactory;
+  private String exchange;
+  private String id;
+  // in seconds
+  private long interval;
+  private int virtualNodes;
+  private ScheduledExecutorService scheduler;
+
+  private RabbitAdmin admin;
+  private RabbitTemplate template;
+  private SimpleMessageListenerContainer container;
+  private Listener listener;
+
+  // <replica, time of its last heartbeat in milliseconds>; does not contain this replica
+  private Map<String, Long> lastHeartbeats = new HashMap<>();
+  private volatile HashRing ring;
+  private volatile boolean running;
+
+  /**
+   * @param connectionFactory
+   * @param exchange the name of the fanout exchange; the queues of the replicas are named after it
+   * @param id the id of this replica, unique within the group
+   * @param interval the time in seconds between two heartbeats
+   * @param virtualNodes the number of positions of each replica on the ring
+   * @param scheduler sends the heartbeats
+   */
+  public ReplicaGroup(
+      ConnectionFactory connectionFactory,
+      String exchange,
+      String id,
+      long interval,
+      int virtualNodes,
+      ScheduledExecutorService scheduler) {
+    this.connectionFactory = connectionFactory;
+    this.exchange = exchange;
+    this.id = id;
+    this.interval = interval;
+    this.virtualNodes = virtualNodes;
+    this.scheduler = scheduler;
+    this.ring = new HashRing(Collections.singleton(id), virtualNodes);
+  }
+
+  /**
+   * Join the group. Until the heartbeats of the other replicas arrive, this replica owns all keys.
+   *
+   * @param listener
+   */
+  public void start(Listener listener) {
+    this.listener = listener;
+    running = true;
+    admin = new RabbitAdmin(connectionFactory);
+    template = new RabbitTemplate(connectionFactory);
+    declare();
+    // the queue is deleted with the last consumer, so it has to be declared again on reconnects
+    connectionFactory.addConnectionListener(
+        new ConnectionListener() {
+          @Override
+          public void onCreate(Connection connection) {
+            if (running) declare();
+          }
+
+          @Override
+          public void onClose(Connection connection) {}
+        });
+    container = new SimpleMessageListenerContainer(connectionFactory);
+    container.setQueueNames(getQueueName(id));
+    container.setMessageListener(
+        new MessageListener() {
+          @Override
+          public void onMessage(Message message) {
+            handle(message);
+          }
+        });
+    container.start();
+    scheduler.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (!running) return;
+            try {
+              publish(HEARTBEAT);
+            } catch (AmqpException e) {
+              log.warn("Could not send the heartbeat of replica " + id + ": " + e.getMessage());
+            }
+            expire();
+          }
+        },
+        0,
+        interval,
+        TimeUnit.SECONDS);
+    log.info("Replica " + id + " joined the group of exchange " + exchange);
+  }
+
+  /**
+   * Leave the group. The listener is called with the ring of the remaining replicas first, so that
+   * the keys of this replica can be handed over, then the other replicas are told. Messages sent to
+   * this replica afterwards are not received anymore.
+   */
+  public void stop() {
+    if (!running) return;
+    running = false;
+    synchronized (this) {
+      ring = new HashRing(lastHeartbeats.keySet(), virtualNodes);
+      listener.membersChanged(ring);
+    }
+    try {
+      publish(LEAVE);
+    } catch (AmqpException e) {
+      log.warn("Could not announce that replica " + id + " leaves: " + e.getMessage());
+    }
+    container.stop();
+  }
+
+  /**
+   * Send a message to a single replica.
+   *
+   * @param replica
+   * @param type
+   * @param payload a JSON document
+   * @throws AmqpException
+   */
+  public void send(String replica, String type, String payload) throws AmqpException {
+    template.send("", getQueueName(replica), toMessage(type, payload));
+  }
+
+  /**
+   * Returns the replica that owns a key according to the current members.
+   *
+   * @param key
+   * @return the id of the replica or null if this replica left and no other one is known
+   */
+  public String getOwner(String key) {
+    return ring.getOwner(key);
+  }
+
+  public HashRing getRing() {
+    return ring;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  private void declare() {
+    FanoutExchange fanoutExchange = new FanoutExchange(exchange, false, false);
+    Queue queue = new Queue(getQueueName(id), false, false, true);
+    admin.declareExchange(fanoutExchange);
+    admin.declareQueue(queue);
+    admin.declareBinding(BindingBuilder.bind(queue).to(fanoutExchange));
+  }
+
+  private String getQueueName(String replica) {
+    return exchange + "." + replica;
+  }
+
+  private void publish(String type) throws AmqpException {
+    template.send(exchange, "", toMessage(type, new JsonPrimitive(id).toString()));
+  }
+
+  private Message toMessage(String type, String payload) {
+    MessageProperties properties = new MessageProperties();
+    properties.setHeader(TYPE_HEADER, type);
+    properties.setHeader(SENDER_HEADER, id);
+    properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    properties.setContentEncoding(StandardCharsets.UTF_8.name());
+    return new Message(payload.getBytes(StandardCharsets.UTF_8), properties);
+  }
+
+  private void handle(Message message) {
+    Object type = message.getMessageProperties().getHeaders().get(TYPE_HEADER);
+    Object sender = message.getMessageProperties().getHeaders().get(SENDER_HEADER);
+    if (type == null || sender == null) {
+      log.warn("Ignoring a message without type or sender on the queue of replica " + id);
+      return;
+    }
+    if (HEARTBEAT.equals(type.toString())) heartbeat(sender.toString());
+    else if (LEAVE.equals(type.toString())) leave(sender.toString());
+    else {
+      listener.received(
+          sender.toString(),
+          type.toString(),
+          new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+  }
+
+  private synchronized void heartbeat(String sender) {
+    if (sender.equals(id) || !running) return;
+    if (lastHeartbeats.put(sender, System.currentTimeMillis()) != null) return;
+    log.info("Replica " + sender + " joined");
+    update();
+    // let the new replica know about this one right away instead of after the next interval
+    try {
+      publish(HEARTBEAT);
+    } catch (AmqpException e) {
+      log.warn("Could not send the heartbeat of replica " + id + ": " + e.getMessage());
+    }
+  }
+
+  private synchronized void leave(String sender) {
+    if (!running || lastHeartbeats.remove(sender) == null) return;
+    log.info("Replica " + sender + " left");
+    update();
+  }
+
+  private synchronized void expire() {
+    long deadline = System.currentTimeMillis() - 3 * interval * 1000;
+    boolean changed = false;
+    Iterator<Map.Entry<String, Long>> iterator = lastHeartbeats.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      if (entry.getValue() < deadline) {
+        log.warn("Replica " + entry.getKey() + " missed its heartbeats and is considered gone");
+        iterator.remove();
+        changed = true;
+      }
+    }
+    if (changed && running) update();
+  }
+
+  private void update() {
+    Set<String> members = new HashSet<>(lastHeartbeats.keySet());
+    members.add(id);
+    ring = new HashRing(members, virtualNodes);
+    log.info("Replicas of the group: " + ring.getMembers());
+    listener.membersChanged(ring);
+  }
+}
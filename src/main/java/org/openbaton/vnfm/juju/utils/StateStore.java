@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the network services of the VNFM so that they survive a restart. Every mutation is
+ * appended to a journal. After a configurable number of records, and once the journals have grown
+ * to half the size of the last snapshot, a new snapshot is written, which contains the mutations
+ * rebuilding the current network services, and the journals it covers are deleted. Tying the
+ * snapshots to the size of the state keeps a large state from being rewritten every few records. On
+ * startup the snapshot and the newer journals are replayed.
+ *
+ * <p>Records consist of a marker, their length, a CRC32 checksum and the serialized mutation. In a
+ * snapshot, the mutations of a network service share one record, so that the descriptions of their
+ * classes are read once per network service instead of once per mutation. A damaged record is
+ * skipped by searching for the marker of the next record, so the intact records behind it are still
+ * replayed, and an incomplete record at the end of a journal, for example after a crash during a
+ * write, is ignored. If an append fails, the journal is truncated to the end of the last complete
+ * record or, if that fails as well, a new journal is started.
+ */
+public class StateStore {
+
+  private static final String SNAPSHOT = "snapshot";
+  private static final String JOURNAL_PREFIX = "journal-";
+  private static final int RECORD_MARKER = 0x4f42534d;
+  // marker, length and checksum
+  private static final int HEADER_SIZE = 16;
+  // larger lengths can only be the result of a damaged record
+  private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+  // share of the size of the last snapshot that the journals must reach before the next one
+  private static final double SNAPSHOT_GROWTH = 0.5;
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private File directory;
+  private int snapshotInterval;
+  private boolean sync;
+
+  private long generation;
+  private FileOutputStream journal;
+  // the length of the journal up to the end of the last complete record
+  private long journalLength;
+  private int recordsSinceSnapshot;
+  // the size of the journals written since the last snapshot
+  private long bytesSinceSnapshot;
+  // the size of the last snapshot; set by the snapshot writer once it is written
+  private volatile long snapshotLength;
+  // snapshots are serialized and written here, outside the lock of the caller
+  private ExecutorService snapshotWriter;
+
+  /**
+   * @param directory the directory containing the snapshot and the journals
+   * @param snapshotInterval the minimum number of journal records after which a snapshot should be
+   *     written
+   * @param sync if true every record is forced to the disk before append returns
+   */
+  public StateStore(File directory, int snapshotInterval, boolean sync) {
+    this.directory = directory;
+    this.snapshotInterval = snapshotInterval;
+    this.sync = sync;
+    this.snapshotWriter = Executors.newSingleThreadExecutor();
+  }
+
+  /**
+   * Replay the snapshot and the journals into the passed map and open a new journal.
+   *
+   * @param networkServices the map that is filled with the recovered network services
+   * @throws IOException if the directory could not be read or the new journal not be opened
+   */
+  public synchronized void recover(Map<String, NetworkService> networkServices) throws IOException {
+    long start = System.currentTimeMillis();
+    directory.mkdirs();
+    long covered = -1;
+    int snapshotRecords = 0;
+    int journalRecords = 0;
+    long journalBytes = 0;
+    File snapshot = new File(directory, SNAPSHOT);
+    if (snapshot.isFile()) {
+      ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(snapshot.toPath()));
+      covered = data.getLong();
+      snapshotRecords = replay(data, snapshot, networkServices);
+      snapshotLength = data.limit();
+    }
+
+    long lastGeneration = covered;
+    for (long journalGeneration : getJournalGenerations()) {
+      File journal = getJournal(journalGeneration);
+      if (journalGeneration <= covered) {
+        journal.delete();
+        continue;
+      }
+      ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(journal.toPath()));
+      journalRecords += replay(data, journal, networkServices);
+      journalBytes += data.limit();
+      lastGeneration = journalGeneration;
+    }
+
+    generation = lastGeneration + 1;
+    openJournal();
+    // the snapshot records do not count, otherwise a large state would be rewritten right away
+    recordsSinceSnapshot = journalRecords;
+    bytesSinceSnapshot = journalBytes;
+    log.info(
+        "Recovered "
+            + networkServices.size()
+            + " network services from "
+            + snapshotRecords
+            + " snapshot and "
+            + journalRecords
+            + " journal mutations in "
+            + (System.currentTimeMillis() - start)
+            + " ms");
+  }
+
+  /**
+   * Append a mutation to the journal. If the mutation could not be written completely, the journal
+   * is cut back to the last complete record before the exception is thrown.
+   *
+   * @param mutation
+   * @throws IOException
+   */
+  public synchronized void append(NetworkServiceMutation mutation) throws IOException {
+    byte[] record = encode(mutation);
+    try {
+      journal.write(record);
+      if (sync) journal.getFD().sync();
+    } catch (IOException e) {
+      discardIncompleteRecord(e);
+      throw e;
+    }
+    journalLength += record.length;
+    recordsSinceSnapshot++;
+    bytesSinceSnapshot += record.length;
+  }
+
+  /**
+   * Returns true if enough records were appended since the last snapshot and the journals grew to
+   * half the size of the last snapshot.
+   *
+   * @return
+   */
+  public synchronized boolean isSnapshotDue() {
+    return recordsSinceSnapshot >= snapshotInterval
+        && bytesSinceSnapshot >= SNAPSHOT_GROWTH * snapshotLength;
+  }
+
+  /**
+   * Start a new journal and write a snapshot consisting of the passed mutations in the background.
+   * The journals up to the current one are deleted once the snapshot is written. The mutations have
+   * to be taken from the network services while they do not change, but they are only serialized
+   * afterwards. Changes that the referenced objects undergo in the meantime are journaled in the
+   * new journal and replayed on top of the snapshot.
+   *
+   * @param mutations the mutations rebuilding all network services
+   * @throws IOException if the new journal could not be opened
+   */
+  public synchronized void snapshot(final List<NetworkServiceMutation> mutations)
+      throws IOException {
+    final long covered = generation;
+    journal.close();
+    generation++;
+    openJournal();
+    recordsSinceSnapshot = 0;
+    bytesSinceSnapshot = 0;
+    snapshotWriter.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              writeSnapshot(covered, mutations);
+            } catch (IOException e) {
+              log.error("Could not write the snapshot, keeping the journals", e);
+            }
+          }
+        });
+  }
+
+  /** Wait for a pending snapshot and close the journal. */
+  public synchronized void close() {
+    snapshotWriter.shutdown();
+    try {
+      if (!snapshotWriter.awaitTermination(1, TimeUnit.MINUTES))
+        log.warn("The snapshot was not written within a minute");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (journal == null) return;
+    try {
+      journal.close();
+    } catch (IOException e) {
+      log.warn("Could not close the journal", e);
+    }
+  }
+
+  private void writeSnapshot(long covered, List<NetworkServiceMutation> mutations)
+      throws IOException {
+    File tmpSnapshot = new File(directory, SNAPSHOT + ".tmp");
+    long length;
+    try (FileOutputStream file = new FileOutputStream(tmpSnapshot)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+      out.writeLong(covered);
+      ArrayList<NetworkServiceMutation> batch = new ArrayList<>();
+      for (NetworkServiceMutation mutation : mutations) {
+        if (!batch.isEmpty() && !batch.get(0).getNsId().equals(mutation.getNsId())) {
+          out.write(encode(batch));
+          batch = new ArrayList<>();
+        }
+        batch.add(mutation);
+      }
+      if (!batch.isEmpty()) out.write(encode(batch));
+      out.flush();
+      file.getFD().sync();
+      length = out.size();
+    }
+    Files.move(
+        tmpSnapshot.toPath(),
+        new File(directory, SNAPSHOT).toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    for (long journalGeneration : getJournalGenerations()) {
+      if (journalGeneration <= covered) getJournal(journalGeneration).delete();
+    }
+    snapshotLength = length;
+    log.debug("Wrote snapshot of " + mutations.size() + " mutations");
+  }
+
+  /**
+   * Remove the part of a record that was written before an append failed. If the journal cannot be
+   * truncated, it is closed and a new one is started, whose records are replayed after the
+   * incomplete record at the end of the old one has been ignored.
+   *
+   * @param cause the exception of the failed append
+   */
+  private void discardIncompleteRecord(IOException cause) {
+    try {
+      journal.getChannel().truncate(journalLength);
+      log.warn("Truncated journal " + generation + " to its last complete record");
+      return;
+    } catch (IOException e) {
+      log.warn("Could not truncate journal " + generation + ", starting a new one", e);
+    }
+    try {
+      journal.close();
+    } catch (IOException e) {
+      log.debug("Could not close journal " + generation, e);
+    }
+    generation++;
+    try {
+      openJournal();
+    } catch (IOException e) {
+      cause.addSuppressed(e);
+    }
+  }
+
+  /**
+   * Apply the records of a snapshot or journal to the passed map. Damaged records are skipped.
+   *
+   * @param data the content of the file, positioned at the first record
+   * @param file only used for log messages
+   * @param networkServices
+   * @return the number of mutations replayed
+   */
+  private int replay(ByteBuffer data, File file, Map<String, NetworkService> networkServices) {
+    int records = 0;
+    while (data.hasRemaining()) {
+      int position = data.position();
+      List<NetworkServiceMutation> mutations;
+      try {
+        mutations = readRecord(data);
+      } catch (CorruptedRecordException e) {
+        int next = findRecordMarker(data, position + 1);
+        if (next == -1) {
+          log.warn(
+              "Ignoring the last "
+                  + (data.limit() - position)
+                  + " bytes of "
+                  + file
+                  + ": "
+                  + e.getMessage());
+          break;
+        }
+        log.warn(
+            "Skipping "
+                + (next - position)
+                + " bytes at offset "
+                + position
+                + " of "
+                + file
+                + ": "
+                + e.getMessage());
+        data.position(next);
+        continue;
+      }
+
+      for (NetworkServiceMutation mutation : mutations) {
+        if (mutation.removesNetworkService()) {
+          networkServices.remove(mutation.getNsId());
+        } else {
+          NetworkService networkService = networkServices.get(mutation.getNsId());
+          if (networkService == null) {
+            networkService = new NetworkService();
+            networkService.setId(mutation.getNsId());
+            networkServices.put(mutation.getNsId(), networkService);
+          }
+          mutation.apply(networkService);
+        }
+        records++;
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Serialize a mutation or a list of mutations into a complete record.
+   *
+   * @param mutation
+   * @return
+   * @throws IOException if the mutation could not be serialized
+   */
+  private byte[] encode(Serializable mutation) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // room for the header, which is filled in once the length and checksum are known
+    bytes.write(new byte[HEADER_SIZE]);
+    try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+      objectOut.writeObject(mutation);
+    }
+    byte[] record = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+    ByteBuffer.wrap(record)
+        .putInt(RECORD_MARKER)
+        .putInt(record.length - HEADER_SIZE)
+        .putLong(crc.getValue());
+    return record;
+  }
+
+  /**
+   * Read the record at the current position and move behind it. The position is undefined if the
+   * record is damaged.
+   *
+   * @param data
+   * @return the mutations of the record
+   * @throws CorruptedRecordException if the record is damaged or incomplete
+   */
+  @SuppressWarnings("unchecked")
+  private List<NetworkServiceMutation> readRecord(ByteBuffer data) throws CorruptedRecordException {
+    if (data.remaining() < HEADER_SIZE) throw new CorruptedRecordException("Incomplete record");
+    if (data.getInt() != RECORD_MARKER) throw new CorruptedRecordException("Missing record marker");
+    int length = data.getInt();
+    if (length < 0 || length > MAX_RECORD_SIZE)
+      throw new CorruptedRecordException("Invalid record length " + length);
+    long checksum = data.getLong();
+    if (data.remaining() < length) throw new CorruptedRecordException("Incomplete record");
+    CRC32 crc = new CRC32();
+    crc.update(data.array(), data.position(), length);
+    if (crc.getValue() != checksum) throw new CorruptedRecordException("Checksum mismatch");
+    try (ObjectInputStream objectIn =
+        new ObjectInputStream(new ByteArrayInputStream(data.array(), data.position(), length))) {
+      data.position(data.position() + length);
+      Object record = objectIn.readObject();
+      if (record instanceof List) {
+        // checks the elements, so that a foreign list is rejected before anything is applied
+        for (Object mutation : (List<?>) record) NetworkServiceMutation.class.cast(mutation);
+        return (List<NetworkServiceMutation>) record;
+      }
+      return Collections.singletonList((NetworkServiceMutation) record);
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      throw new CorruptedRecordException("Unknown record: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the offset of the next record marker at or after the passed offset.
+   *
+   * @param data
+   * @param from
+   * @return the offset or -1 if there is none
+   */
+  private int findRecordMarker(ByteBuffer data, int from) {
+    for (int i = from; i + 4 <= data.limit(); i++) {
+      if (data.getInt(i) == RECORD_MARKER) return i;
+    }
+    return -1;
+  }
+
+  private void openJournal() throws IOException {
+    journal = new FileOutputStream(getJournal(generation), true);
+    journalLength = journal.getChannel().size();
+  }
+
+  private File getJournal(long journalGeneration) {
+    return new File(directory, JOURNAL_PREFIX + journalGeneration);
+  }
+
+  /**
+   * Returns the generations of the journals in the directory in ascending order.
+   *
+   * @return
+   */
+  private List<Long> getJournalGenerations() {
+    List<Long> generations = new ArrayList<>();
+    File[] files = directory.listFiles();
+    if (files == null) return generations;
+    for (File file : files) {
+      if (!file.getName().startsWith(JOURNAL_PREFIX)) continue;
+      try {
+        generations.add(Long.parseLong(file.getName().substring(JOURNAL_PREFIX.length())));
+      } catch (NumberFormatException e) {
+        log.warn("Ignoring unknown file " + file + " in the state directory");
+      }
+    }
+    Collections.sort(generations);
+    return generations;
+  }
+
+  private static class CorruptedRecordException extends IOException {
+
+    private CorruptedRecordException(String message) {
+      super(message);
+    }
+  }
+}
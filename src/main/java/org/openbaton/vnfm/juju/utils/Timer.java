@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the durations of an operation. The durations are counted in a histogram with fixed
+ * buckets, so recording a duration takes constant time and memory no matter how often it is called.
+ */
+public class Timer implements TimerMXBean {
+
+  // upper bounds of the histogram buckets in milliseconds; a last bucket takes the longer durations
+  static final long[] BUCKETS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 30000, 60000, 120000,
+    300000, 600000, 1200000
+  };
+  // the same bounds in nanoseconds, so that a duration is not rounded down before it is compared
+  private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+  static {
+    for (int i = 0; i < BUCKETS.length; i++)
+      BUCKET_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKETS[i]);
+  }
+
+  private AtomicLongArray bucketCounts = new AtomicLongArray(BUCKETS.length + 1);
+  private AtomicLong count = new AtomicLong();
+  private AtomicLong totalNanos = new AtomicLong();
+  private AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Record the duration of one execution.
+   *
+   * @param nanos
+   */
+  public void update(long nanos) {
+    int bucket = 0;
+    while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) bucket++;
+    bucketCounts.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) max = maxNanos.get();
+  }
+
+  /**
+   * Record the time since the passed start.
+   *
+   * @param startNanos a value of System.nanoTime() taken at the start of the execution
+   */
+  public void stop(long startNanos) {
+    update(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Returns the number of durations per bucket. The buckets are not read atomically, so the counts
+   * may be slightly off while durations are recorded.
+   *
+   * @return one count per entry of BUCKETS plus the count of the last bucket
+   */
+  public long[] getBucketCounts() {
+    long[] counts = new long[bucketCounts.length()];
+    for (int i = 0; i < counts.length; i++) counts[i] = bucketCounts.get(i);
+    return counts;
+  }
+
+  public double getTotalMillis() {
+    return totalNanos.get() / 1e6;
+  }
+
+  @Override
+  public long getCount() {
+    return count.get();
+  }
+
+  @Override
+  public double getMeanMillis() {
+    long n = count.get();
+    return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return maxNanos.get() / 1e6;
+  }
+
+  @Override
+  public double get50thPercentileMillis() {
+    return getPercentileMillis(0.5);
+  }
+
+  @Override
+  public double get95thPercentileMillis() {
+    return getPercentileMillis(0.95);
+  }
+
+  @Override
+  public double get99thPercentileMillis() {
+    return getPercentileMillis(0.99);
+  }
+
+  /**
+   * Returns the upper bound of the bucket that contains the passed percentile. Durations beyond the
+   * last bound are reported as the maximum.
+   *
+   * @param percentile between 0 and 1
+   * @return
+   */
+  private double getPercentileMillis(double percentile) {
+    long[] counts = getBucketCounts();
+    long total = 0;
+    for (long bucketCount : counts) total += bucketCount;
+    if (total == 0) return 0;
+    long rank = (long) Math.ceil(percentile * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) return Math.min(BUCKETS[i], getMaxMillis());
+    }
+    return getMaxMillis();
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * Gson adapter for a class hierarchy that writes every object together with the name of its class,
+ * so that it can be read back as the same class. Only the classes the adapter was created with are
+ * written and read; a document naming any other class is rejected, so that it cannot make the
+ * reader instantiate arbitrary classes. The fields of the objects are written by a plain Gson and
+ * are read as their declared types.
+ *
+ * @param <T> the base class of the hierarchy
+ */
+public class TypedJsonAdapter<T> implements JsonSerializer<T>, JsonDeserializer<T> {
+
+  private static final String TYPE = "type";
+  private static final String VALUE = "value";
+
+  private Gson gson = new Gson();
+  // <class name, class>
+  private Map<String, Class<? extends T>> types = new HashMap<>();
+
+  /** @param types the classes that may be written and read */
+  public TypedJsonAdapter(Collection<Class<? extends T>> types) {
+    for (Class<? extends T> type : types) this.types.put(type.getName(), type);
+  }
+
+  @Override
+  public JsonElement serialize(T src, Type typeOfSrc, JsonSerializationContext context) {
+    String name = src.getClass().getName();
+    if (!types.containsKey(name)) throw new JsonParseException("Cannot write class " + name);
+    JsonObject object = new JsonObject();
+    object.addProperty(TYPE, name);
+    object.add(VALUE, gson.toJsonTree(src));
+    return object;
+  }
+
+  @Override
+  public T deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+      throws JsonParseException {
+    if (!json.isJsonObject()) throw new JsonParseException("Expected an object but was " + json);
+    JsonObject object = json.getAsJsonObject();
+    JsonElement name = object.get(TYPE);
+    Class<? extends T> type =
+        name != null && name.isJsonPrimitive() ? types.get(name.getAsString()) : null;
+    if (type == null) throw new JsonParseException("Cannot read class " + name);
+    if (!object.has(VALUE)) throw new JsonParseException("Missing the value of class " + name);
+    return gson.fromJson(object.get(VALUE), type);
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+/**
+ * The states a VNF of a network service passes through before the network service can be deployed
+ * with Juju. A VNF without dependencies skips MODIFIED. A VNF is RELEASED once its resources were
+ * requested to be released.
+ */
+public enum VnfState {
+  INSTANTIATED,
+  MODIFIED,
+  STARTED,
+  RELEASED;
+
+  @Override
+  public String toString() {
+    return name().toLowerCase();
+  }
+}
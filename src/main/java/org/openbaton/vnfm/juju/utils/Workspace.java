@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Manages the directories the charms of the network services are created in. Every network service
+ * gets its own directory below the root, which exists as long as the network service holds a lease
+ * on it. When the last lease is released, the directory is renamed right away and deleted later by
+ * a background thread, together with the other directories released in the meantime. Directories
+ * left behind by a previous run are deleted the same way when the workspace is created.
+ */
+public class Workspace {
+
+  private static final String DELETED_PREFIX = ".deleted-";
+
+  private Logger log = LoggerFactory.getLogger(this.getClass());
+
+  private File root;
+  private ExecutorService cleaner;
+
+  // <network service id, number of leases>
+  private Map<String, Integer> leases;
+  // renamed directories that wait for their deletion
+  private List<File> deletions;
+  private boolean cleanupScheduled;
+  private long deletionCounter;
+
+  /**
+   * Create the root directory if it does not exist and schedule the deletion of everything it
+   * contains.
+   *
+   * @param root
+   */
+  public Workspace(File root) {
+    this.root = root;
+    this.cleaner = Executors.newSingleThreadExecutor();
+    this.leases = new HashMap<>();
+    this.deletions = new ArrayList<>();
+    this.cleanupScheduled = false;
+    this.deletionCounter = 0;
+    root.mkdirs();
+    sweep();
+  }
+
+  /**
+   * Returns the directory of a network service. The directory only exists while it is leased.
+   *
+   * @param nsId
+   * @return
+   */
+  public File getDirectory(String nsId) {
+    return new File(root, nsId);
+  }
+
+  /**
+   * Lease the directory of a network service and create it if it does not exist.
+   *
+   * @param nsId
+   * @return the directory
+   */
+  public synchronized File acquire(String nsId) {
+    Integer count = leases.get(nsId);
+    leases.put(nsId, count == null ? 1 : count + 1);
+    File directory = getDirectory(nsId);
+    directory.mkdirs();
+    return directory;
+  }
+
+  /**
+   * Release a lease on the directory of a network service. If it was the last lease, the directory
+   * is moved out of the way and deleted in the background.
+   *
+   * @param nsId
+   */
+  public synchronized void release(String nsId) {
+    Integer count = leases.get(nsId);
+    if (count == null) return;
+    if (count > 1) {
+      leases.put(nsId, count - 1);
+      return;
+    }
+    leases.remove(nsId);
+    delete(getDirectory(nsId));
+  }
+
+  /** Stop the background thread after the pending deletions are done. */
+  public void shutdown() {
+    cleaner.shutdown();
+  }
+
+  /** Schedule the deletion of everything in the root directory that is not leased. */
+  private synchronized void sweep() {
+    File[] directories = root.listFiles();
+    if (directories == null) return;
+    int orphans = 0;
+    for (File directory : directories) {
+      if (leases.containsKey(directory.getName())) continue;
+      delete(directory);
+      orphans++;
+    }
+    if (orphans > 0) log.info("Deleting " + orphans + " orphaned directories in " + root);
+  }
+
+  /**
+   * Rename a directory so that its name can be used again right away, and add it to the pending
+   * deletions. A directory that cannot be renamed is deleted synchronously.
+   *
+   * @param directory
+   */
+  private void delete(File directory) {
+    if (!directory.exists()) return;
+    File deleted = directory;
+    if (!directory.getName().startsWith(DELETED_PREFIX)) {
+      String suffix = "-" + System.currentTimeMillis() + "-" + deletionCounter++;
+      deleted = new File(root, DELETED_PREFIX + directory.getName() + suffix);
+      if (!directory.renameTo(deleted)) {
+        // the directory cannot be reused before it is gone, so it is deleted right away
+        FileUtils.removeDirectory(directory);
+        return;
+      }
+    }
+    deletions.add(deleted);
+    if (!cleanupScheduled) {
+      cleanupScheduled = true;
+      cleaner.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              cleanup();
+            }
+          });
+    }
+  }
+
+  /** Delete all the pending directories. */
+  private void cleanup() {
+    List<File> batch;
+    synchronized (this) {
+      batch = deletions;
+      deletions = new ArrayList<>();
+      cleanupScheduled = false;
+    }
+    for (File directory : batch) FileUtils.removeDirectory(directory);
+    log.debug("Deleted " + batch.size() + " directories in " + root);
+  }
+}
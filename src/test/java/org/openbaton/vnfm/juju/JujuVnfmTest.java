@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Runs the VNFM against the fake juju and git of the LoadHarness and checks the juju commands it
+ * executes.
+ */
+public class JujuVnfmTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void bundleIsDeployedWithOneCommand() throws Exception {
+    Properties properties = LoadHarness.createEnvironment(folder.getRoot(), "0", "0", "0", "0");
+    properties.setProperty("vnfm.deploy.mode", "bundle");
+    LoadHarness.NetworkServiceLoad load = new LoadHarness.NetworkServiceLoad("ns", 4, null);
+    JujuVnfm vnfm = LoadHarness.startVnfm(Collections.singletonMap("ns", load), properties);
+    try {
+      load.run(vnfm, 60);
+    } finally {
+      LoadHarness.invoke(vnfm, PreDestroy.class);
+    }
+    assertTrue(load.isDeployed());
+
+    List<String> deployments = new ArrayList<>();
+    for (String command :
+        Files.readAllLines(
+            new File(folder.getRoot(), "juju.log").toPath(), StandardCharsets.UTF_8)) {
+      if (command.startsWith("deploy ")) deployments.add(command);
+      assertFalse(command, command.startsWith("expose ") || command.startsWith("add-relation "));
+    }
+    assertEquals(1, deployments.size());
+    assertTrue(deployments.get(0), deployments.get(0).endsWith("/bundle.yaml"));
+  }
+
+  @Test
+  public void unknownNetworkServiceIsReleased() throws Exception {
+    Properties properties = LoadHarness.createEnvironment(folder.getRoot(), "0", "0", "0", "0");
+    LoadHarness.NetworkServiceLoad load = new LoadHarness.NetworkServiceLoad("ns", 2, null);
+    JujuVnfm vnfm = LoadHarness.startVnfm(Collections.singletonMap("ns", load), properties);
+    try {
+      // without replicas, the VNFM removes what it can of network services it does not know
+      assertTrue(load.release(vnfm, 60));
+    } finally {
+      LoadHarness.invoke(vnfm, PreDestroy.class);
+    }
+  }
+}
@@ -0,0 +1,664 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju;
+
+import org.openbaton.catalogue.mano.descriptor.VNFDeploymentFlavour;
+import org.openbaton.catalogue.mano.descriptor.VirtualNetworkFunctionDescriptor;
+import org.openbaton.catalogue.mano.record.VNFRecordDependency;
+import org.openbaton.catalogue.mano.record.VirtualLinkRecord;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openbaton.catalogue.nfvo.Action;
+import org.openbaton.catalogue.nfvo.DependencyParameters;
+import org.openbaton.catalogue.nfvo.VNFPackage;
+import org.openbaton.catalogue.nfvo.VimInstance;
+import org.openbaton.catalogue.nfvo.messages.Interfaces.NFVMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmGenericMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmInstantiateMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmStartStopMessage;
+import org.openbaton.vnfm.juju.utils.FileUtils;
+import org.openbaton.vnfm.juju.utils.NetworkService;
+import org.openbaton.vnfm.juju.utils.TestRecords;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.PropertyPlaceholderHelper;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load harness of the VNFM. It runs the VNFM against a fake juju and git, which add latency and
+ * fail on demand, and replaces the NFVO: for every generated network service it passes the
+ * INSTANTIATE, MODIFY, START and RELEASE_RESOURCES messages to onAction the way the NFVO sends
+ * them, waiting for the replies of one phase before the next one starts. At the end it reports the
+ * throughput, the percentiles of the deploy and release latencies per network service and the
+ * utilization of the VNFM's threads.
+ *
+ * <p>Run with ./gradlew loadTest [-Pload.services=300 ...]. The harness is configured with these
+ * properties:
+ *
+ * <ul>
+ *   <li>load.services: the number of network services, 300 by default
+ *   <li>load.vnfs: the number of VNFs per network service, 5 by default
+ *   <li>load.concurrency: the number of network services that are driven at the same time, 100 by
+ *       default
+ *   <li>load.juju.latency and load.git.latency: the time in milliseconds every fake juju and git
+ *       command takes, 200 and 100 by default
+ *   <li>load.juju.failure-rate and load.git.failure-rate: the share of the juju deployment commands
+ *       and of the git commands that fail, 0 by default
+ *   <li>load.git.share: the share of the network services whose scripts are fetched from git, 0.2
+ *       by default
+ *   <li>load.timeout: the time in seconds a phase of a network service may take, 600 by default
+ * </ul>
+ *
+ * Properties starting with vnfm. override the configuration of the VNFM in application.properties.
+ * The VNFM logs into build/reports/load/vnfm.log.
+ */
+public class LoadHarness {
+
+  private static final String METRICS_DOMAIN = "org.openbaton.vnfm.juju";
+
+  /** The VNFM whose NFVO is replaced by the harness. */
+  static class HarnessVnfm extends JujuVnfm {
+
+    // <network service id, load>
+    private Map<String, NetworkServiceLoad> loads;
+
+    HarnessVnfm(Map<String, NetworkServiceLoad> loads) {
+      this.loads = loads;
+    }
+
+    /** The VNFRs are not created from the VNFDs but taken from the generated network services. */
+    @Override
+    protected VirtualNetworkFunctionRecord createVirtualNetworkFunctionRecord(
+        VirtualNetworkFunctionDescriptor vnfd,
+        String flavourKey,
+        Set<VirtualLinkRecord> virtualLinkRecords,
+        Map<String, String> extension,
+        Map<String, Collection<VimInstance>> vimInstances) {
+      return loads.get(extension.get("nsr-id")).networkService.getVnfrByName(vnfd.getName());
+    }
+
+    @Override
+    protected void sendToNfvo(String nsrId, NFVMessage message) {
+      NetworkServiceLoad load = loads.get(nsrId);
+      if (load != null) load.reply(message.getAction());
+    }
+  }
+
+  /** The messages of a generated network service and the replies the VNFM sent for it. */
+  static class NetworkServiceLoad {
+
+    private NetworkService networkService;
+    private List<NFVMessage> instantiateMessages = new ArrayList<>();
+    private List<NFVMessage> modifyMessages = new ArrayList<>();
+    private List<NFVMessage> startMessages = new ArrayList<>();
+    private List<NFVMessage> releaseMessages = new ArrayList<>();
+
+    private Semaphore replies = new Semaphore(0);
+    private AtomicInteger errors = new AtomicInteger();
+    private boolean timedOut;
+    // in nanoseconds; -1 if the phase failed
+    private long deployLatency = -1;
+    private long releaseLatency = -1;
+
+    /**
+     * @param nsId
+     * @param numberOfVnfs
+     * @param scriptsLink the git repository of the scripts or null to send them in the VNF packages
+     */
+    NetworkServiceLoad(String nsId, int numberOfVnfs, String scriptsLink) {
+      networkService = TestRecords.networkService(nsId, numberOfVnfs);
+      Map<String, String> extension = Collections.singletonMap("nsr-id", nsId);
+      for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+        VirtualNetworkFunctionDescriptor vnfd = new VirtualNetworkFunctionDescriptor();
+        vnfd.setName(vnfr.getName());
+        vnfd.setType(vnfr.getType());
+        vnfd.setVnfPackageLocation("file:///packages/" + vnfr.getName() + ".tar");
+        VNFDeploymentFlavour flavour = new VNFDeploymentFlavour();
+        flavour.setFlavour_key("m1.small");
+        VNFPackage vnfPackage = networkService.getVnfPackage(vnfr.getName());
+        if (scriptsLink != null) vnfPackage.setScriptsLink(scriptsLink);
+        OrVnfmInstantiateMessage instantiate = new OrVnfmInstantiateMessage();
+        instantiate.setAction(Action.INSTANTIATE);
+        instantiate.setVnfd(vnfd);
+        instantiate.setVnfdf(flavour);
+        instantiate.setExtension(extension);
+        instantiate.setVnfPackage(vnfPackage);
+        instantiateMessages.add(instantiate);
+
+        if (networkService.vnfIsTarget(vnfr.getName())) {
+          OrVnfmGenericMessage modify = new OrVnfmGenericMessage(vnfr, Action.MODIFY);
+          modify.setVnfrd(getDependency(vnfr));
+          modifyMessages.add(modify);
+        }
+
+        OrVnfmStartStopMessage start = new OrVnfmStartStopMessage();
+        start.setAction(Action.START);
+        start.setVirtualNetworkFunctionRecord(vnfr);
+        startMessages.add(start);
+
+        releaseMessages.add(new OrVnfmGenericMessage(vnfr, Action.RELEASE_RESOURCES));
+      }
+    }
+
+    /**
+     * Returns the dependency the NFVO sends with the MODIFY message of a target VNFR.
+     *
+     * @param target
+     * @return
+     */
+    private VNFRecordDependency getDependency(VirtualNetworkFunctionRecord target) {
+      Map<String, String> idType = new HashMap<>();
+      Map<String, DependencyParameters> parameters = new HashMap<>();
+      for (String source : networkService.getSourcesNames(target.getName())) {
+        String type = networkService.getVnfrByName(source).getType();
+        idType.put(source, type);
+        Map<String, String> values = new HashMap<>();
+        for (String parameter : networkService.getParameters(source, target.getName()))
+          values.put(parameter, "");
+        DependencyParameters dependencyParameters = new DependencyParameters();
+        dependencyParameters.setParameters(values);
+        parameters.put(type, dependencyParameters);
+      }
+      VNFRecordDependency dependency = new VNFRecordDependency();
+      dependency.setTarget(target.getName());
+      dependency.setIdType(idType);
+      dependency.setParameters(parameters);
+      return dependency;
+    }
+
+    boolean isDeployed() {
+      return deployLatency >= 0;
+    }
+
+    boolean isReleased() {
+      return releaseLatency >= 0;
+    }
+
+    void reply(Action action) {
+      if (action == Action.ERROR) errors.incrementAndGet();
+      replies.release();
+    }
+
+    /**
+     * Deploy and release the network service.
+     *
+     * @param vnfm
+     * @param timeout in seconds per phase
+     * @throws Exception
+     */
+    void run(JujuVnfm vnfm, long timeout) throws Exception {
+      long start = System.nanoTime();
+      if (exchange(vnfm, instantiateMessages, timeout)
+          && exchange(vnfm, modifyMessages, timeout)
+          && exchange(vnfm, startMessages, timeout)) deployLatency = System.nanoTime() - start;
+      // replies that arrive after a timeout would be taken for the replies of the release
+      if (timedOut) return;
+      start = System.nanoTime();
+      if (exchange(vnfm, releaseMessages, timeout)) releaseLatency = System.nanoTime() - start;
+    }
+
+    /**
+     * Release the network service without deploying it first.
+     *
+     * @param vnfm
+     * @param timeout in seconds
+     * @return true if none of the replies was an error
+     * @throws Exception
+     */
+    boolean release(JujuVnfm vnfm, long timeout) throws Exception {
+      return exchange(vnfm, releaseMessages, timeout);
+    }
+
+    /**
+     * Pass messages to the VNFM and wait for one reply per message.
+     *
+     * @param vnfm
+     * @param messages
+     * @param timeout in seconds
+     * @return true if none of the replies was an error
+     * @throws Exception
+     */
+    private boolean exchange(JujuVnfm vnfm, List<NFVMessage> messages, long timeout)
+        throws Exception {
+      int previousErrors = errors.get();
+      for (NFVMessage message : messages) vnfm.onAction(message);
+      if (!replies.tryAcquire(messages.size(), timeout, TimeUnit.SECONDS)) {
+        timedOut = true;
+        return false;
+      }
+      return errors.get() == previousErrors;
+    }
+  }
+
+  /** Samples a gauge of the VNFM while the load runs. */
+  private static class GaugeSampler {
+
+    private ObjectName objectName;
+    private long sum;
+    private long max;
+    private int samples;
+
+    GaugeSampler(String name) throws Exception {
+      this.objectName =
+          new ObjectName(METRICS_DOMAIN + ":type=Gauge,name=" + ObjectName.quote(name));
+    }
+
+    synchronized void sample(MBeanServer server) throws Exception {
+      long value = (Long) server.getAttribute(objectName, "Value");
+      sum += value;
+      max = Math.max(max, value);
+      samples++;
+    }
+
+    synchronized double getMean() {
+      return samples == 0 ? 0 : (double) sum / samples;
+    }
+
+    synchronized long getMax() {
+      return max;
+    }
+  }
+
+  private static String getProperty(String name, String defaultValue) {
+    return System.getProperty(name, defaultValue);
+  }
+
+  /**
+   * Write a fake executable from its template in the load resources.
+   *
+   * @param template
+   * @param file
+   * @param replacements placeholder names and their values
+   * @throws IOException
+   */
+  private static void writeExecutable(String template, File file, String... replacements)
+      throws IOException {
+    String script;
+    try (InputStream in = LoadHarness.class.getResourceAsStream("/load/" + template)) {
+      script = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+    }
+    for (int i = 0; i < replacements.length; i += 2)
+      script = script.replace("@" + replacements[i] + "@", replacements[i + 1]);
+    Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+    file.setExecutable(true);
+  }
+
+  /**
+   * Returns the latency for the fake executables.
+   *
+   * @param millis
+   * @return the latency in seconds as understood by sleep
+   */
+  private static String toSeconds(String millis) {
+    return String.format(Locale.ROOT, "%.3f", Long.parseLong(millis) / 1000.0);
+  }
+
+  private static String toFailures(String rate) {
+    return String.valueOf(Math.round(Double.parseDouble(rate) * 10000));
+  }
+
+  /**
+   * Create a git repository containing the scripts of the generated VNF packages.
+   *
+   * @param directory
+   * @throws Exception
+   */
+  private static void createScriptsRepository(File directory) throws Exception {
+    directory.mkdirs();
+    for (String script : Arrays.asList("install.sh", "start.sh")) {
+      Files.write(
+          new File(directory, script).toPath(),
+          ("#!/bin/bash\necho " + script + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    git(directory, "init", "-q");
+    git(directory, "add", ".");
+    git(directory, "-c", "user.name=load", "-c", "user.email=load@localhost", "commit", "-qm", "1");
+  }
+
+  private static void git(File directory, String... arguments) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(arguments));
+    Process process = new ProcessBuilder(command).directory(directory).inheritIO().start();
+    if (process.waitFor() != 0) throw new IOException("Command failed: " + command);
+  }
+
+  /**
+   * Set the @Value fields of the VNFM from the passed properties or their default values, as Spring
+   * does.
+   *
+   * @param vnfm
+   * @param properties
+   */
+  private static void configure(JujuVnfm vnfm, Properties properties) {
+    PropertyPlaceholderHelper placeholders = new PropertyPlaceholderHelper("${", "}", ":", false);
+    SimpleTypeConverter converter = new SimpleTypeConverter();
+    for (Field field : JujuVnfm.class.getDeclaredFields()) {
+      Value value = field.getAnnotation(Value.class);
+      if (value == null) continue;
+      String resolved = placeholders.replacePlaceholders(value.value(), properties).trim();
+      ReflectionUtils.makeAccessible(field);
+      ReflectionUtils.setField(
+          field, vnfm, converter.convertIfNecessary(resolved, field.getType()));
+    }
+  }
+
+  /**
+   * Write the fake juju and git into the passed directory and return the configuration of a VNFM
+   * using them, based on application.properties. The fake juju appends its commands to juju.log in
+   * the directory.
+   *
+   * @param directory
+   * @param jujuLatency in milliseconds
+   * @param jujuFailureRate
+   * @param gitLatency in milliseconds
+   * @param gitFailureRate
+   * @return
+   * @throws IOException
+   */
+  static Properties createEnvironment(
+      File directory,
+      String jujuLatency,
+      String jujuFailureRate,
+      String gitLatency,
+      String gitFailureRate)
+      throws IOException {
+    File jujuBinary = new File(directory, "juju");
+    writeExecutable(
+        "fake-juju.sh",
+        jujuBinary,
+        "LATENCY",
+        toSeconds(jujuLatency),
+        "FAILURES",
+        toFailures(jujuFailureRate),
+        "STATE",
+        new File(directory, "models").getAbsolutePath(),
+        "LOG",
+        new File(directory, "juju.log").getAbsolutePath());
+    File gitBinary = new File(directory, "git");
+    writeExecutable(
+        "fake-git.sh",
+        gitBinary,
+        "LATENCY",
+        toSeconds(gitLatency),
+        "FAILURES",
+        toFailures(gitFailureRate));
+
+    Properties properties = new Properties();
+    try (InputStream in = LoadHarness.class.getResourceAsStream("/application.properties")) {
+      properties.load(in);
+    }
+    properties.setProperty("vnfm.juju.binary", jujuBinary.getAbsolutePath());
+    properties.setProperty("vnfm.git.binary", gitBinary.getAbsolutePath());
+    properties.setProperty("vnfm.workspace.path", new File(directory, "workspace").getPath());
+    properties.setProperty("vnfm.git-cache.path", new File(directory, "git-cache").getPath());
+    properties.setProperty("vnfm.charm-cache.path", new File(directory, "charm-cache").getPath());
+    properties.setProperty("vnfm.state.path", new File(directory, "state").getPath());
+    properties.setProperty("vnfm.metrics.port", "0");
+    properties.setProperty("vnfm.replicas.enabled", "false");
+    properties.setProperty("vnfm.juju.api.enabled", "false");
+    return properties;
+  }
+
+  /**
+   * Create the VNFM for the passed network services, configure and initialize it.
+   *
+   * @param loads
+   * @param properties
+   * @return
+   */
+  static HarnessVnfm startVnfm(Map<String, NetworkServiceLoad> loads, Properties properties) {
+    HarnessVnfm vnfm = new HarnessVnfm(loads);
+    configure(vnfm, properties);
+    invoke(vnfm, PostConstruct.class);
+    return vnfm;
+  }
+
+  /**
+   * Invoke the lifecycle method of the VNFM that carries the passed annotation.
+   *
+   * @param vnfm
+   * @param annotation PostConstruct or PreDestroy
+   */
+  static void invoke(JujuVnfm vnfm, Class<? extends java.lang.annotation.Annotation> annotation) {
+    for (Method method : JujuVnfm.class.getDeclaredMethods()) {
+      if (method.isAnnotationPresent(annotation)) {
+        ReflectionUtils.makeAccessible(method);
+        ReflectionUtils.invokeMethod(method, vnfm);
+      }
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  /**
+   * Print the percentiles of the passed latencies.
+   *
+   * @param name
+   * @param latencies in nanoseconds
+   */
+  private static void printLatencies(String name, List<Long> latencies) {
+    if (latencies.isEmpty()) {
+      System.out.println(name + " latency: no network service succeeded");
+      return;
+    }
+    Collections.sort(latencies);
+    StringBuilder line = new StringBuilder(name + " latency (ms):");
+    double[] percentiles = {0.5, 0.9, 0.95, 0.99};
+    for (double percentile : percentiles) {
+      int index = (int) Math.ceil(percentile * latencies.size()) - 1;
+      line.append(
+          String.format(
+              Locale.ROOT,
+              " p%d %.0f",
+              Math.round(percentile * 100),
+              toMillis(latencies.get(index))));
+    }
+    line.append(
+        String.format(Locale.ROOT, " max %.0f", toMillis(latencies.get(latencies.size() - 1))));
+    System.out.println(line);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int services = Integer.parseInt(getProperty("load.services", "300"));
+    int vnfs = Integer.parseInt(getProperty("load.vnfs", "5"));
+    int concurrency = Integer.parseInt(getProperty("load.concurrency", "100"));
+    String jujuLatency = getProperty("load.juju.latency", "200");
+    String jujuFailureRate = getProperty("load.juju.failure-rate", "0");
+    String gitLatency = getProperty("load.git.latency", "100");
+    String gitFailureRate = getProperty("load.git.failure-rate", "0");
+    double gitShare = Double.parseDouble(getProperty("load.git.share", "0.2"));
+    final long timeout = Long.parseLong(getProperty("load.timeout", "600"));
+
+    File directory = Files.createTempDirectory("juju-vnfm-load").toFile();
+    Properties properties =
+        createEnvironment(directory, jujuLatency, jujuFailureRate, gitLatency, gitFailureRate);
+    File scriptsRepository = new File(directory, "scripts");
+    if (gitShare > 0) createScriptsRepository(scriptsRepository);
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith("vnfm.")) properties.setProperty(name, System.getProperty(name));
+    }
+
+    final Map<String, NetworkServiceLoad> loads = new LinkedHashMap<>();
+    for (int i = 0; i < services; i++) {
+      boolean fromGit = i % 100 < Math.round(gitShare * 100);
+      String scriptsLink = fromGit ? "file://" + scriptsRepository.getAbsolutePath() : null;
+      String nsId = "ns-" + i;
+      loads.put(nsId, new NetworkServiceLoad(nsId, vnfs, scriptsLink));
+    }
+
+    final HarnessVnfm vnfm = startVnfm(loads, properties);
+
+    System.out.println(
+        "Network services: "
+            + services
+            + " with "
+            + vnfs
+            + " VNFs, "
+            + concurrency
+            + " at a time, "
+            + Math.round(gitShare * 100)
+            + "% with scripts from git");
+    System.out.println(
+        "Fake juju: "
+            + jujuLatency
+            + " ms per command, failure rate "
+            + jujuFailureRate
+            + "; fake git: "
+            + gitLatency
+            + " ms per command, failure rate "
+            + gitFailureRate);
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final List<GaugeSampler> samplers =
+        Arrays.asList(
+            new GaugeSampler("dispatcher.mailboxes"),
+            new GaugeSampler("commands.running"),
+            new GaugeSampler("commands.queued"),
+            new GaugeSampler("deployments.running"));
+    ScheduledExecutorService sampling = Executors.newSingleThreadScheduledExecutor();
+    sampling.scheduleAtFixedRate(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              for (GaugeSampler sampler : samplers) sampler.sample(server);
+            } catch (Exception e) {
+              e.printStackTrace();
+            }
+          }
+        },
+        0,
+        100,
+        TimeUnit.MILLISECONDS);
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    long start = System.nanoTime();
+    ExecutorService drivers = Executors.newFixedThreadPool(concurrency);
+    for (final NetworkServiceLoad load : loads.values()) {
+      drivers.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                load.run(vnfm, timeout);
+              } catch (Exception e) {
+                e.printStackTrace();
+              }
+            }
+          });
+    }
+    drivers.shutdown();
+    drivers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    long duration = System.nanoTime() - start;
+    sampling.shutdown();
+    long cpuTime = 0;
+    for (long id : threads.getAllThreadIds()) cpuTime += Math.max(0, threads.getThreadCpuTime(id));
+
+    List<Long> deployLatencies = new ArrayList<>();
+    List<Long> releaseLatencies = new ArrayList<>();
+    int timedOut = 0;
+    int messages = 0;
+    for (NetworkServiceLoad load : loads.values()) {
+      if (load.isDeployed()) deployLatencies.add(load.deployLatency);
+      if (load.isReleased()) releaseLatencies.add(load.releaseLatency);
+      if (load.timedOut) timedOut++;
+      messages +=
+          load.instantiateMessages.size()
+              + load.modifyMessages.size()
+              + load.startMessages.size()
+              + load.releaseMessages.size();
+    }
+    double seconds = duration / 1e9;
+    System.out.println(String.format(Locale.ROOT, "Duration: %.1f s", seconds));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "Throughput: %.2f network services/s, %.1f messages/s",
+            deployLatencies.size() / seconds,
+            messages / seconds));
+    System.out.println(
+        "Deployed: "
+            + deployLatencies.size()
+            + ", released: "
+            + releaseLatencies.size()
+            + ", failed: "
+            + (services - deployLatencies.size() - timedOut)
+            + ", timed out: "
+            + timedOut);
+    printLatencies("Deploy", deployLatencies);
+    printLatencies("Release", releaseLatencies);
+    int dispatcherThreads = Integer.parseInt(properties.getProperty("vnfm.dispatcher.threads"));
+    int commandThreads = Integer.parseInt(properties.getProperty("vnfm.command.threads", "16"));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "Dispatcher threads: %.0f%% busy on average, %d of %d at most",
+            100 * samplers.get(0).getMean() / dispatcherThreads,
+            samplers.get(0).getMax(),
+            dispatcherThreads));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "Command threads: %.0f%% busy on average, %d of %d at most, %.1f commands queued on average, %d at most",
+            100 * samplers.get(1).getMean() / commandThreads,
+            samplers.get(1).getMax(),
+            commandThreads,
+            samplers.get(2).getMean(),
+            samplers.get(2).getMax()));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "Running deployments: %.1f on average, %d at most",
+            samplers.get(3).getMean(),
+            samplers.get(3).getMax()));
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "CPU: %.0f%% of %d cores, %d threads at most",
+            100 * cpuTime / (double) duration / Runtime.getRuntime().availableProcessors(),
+            Runtime.getRuntime().availableProcessors(),
+            threads.getPeakThreadCount()));
+
+    invoke(vnfm, PreDestroy.class);
+    FileUtils.removeDirectory(directory);
+    System.exit(0);
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ApiJujuClientTest {
+
+  private FakeJujuApiServer server;
+  private ApiConnectionPool pool;
+  private RecordingJujuClient fallback;
+  private ApiJujuClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeJujuApiServer("admin", "secret");
+    server.addModel("default", "mysql", 1, "web", 2);
+    server.addModel("openbaton-ns", "lb", 1);
+    server.startAndWait();
+    pool = new ApiConnectionPool(server.getEndpoint(), "admin", "secret", null, 2, 5000);
+    fallback = new RecordingJujuClient();
+    client = new ApiJujuClient(pool, "ctrl", "default", fallback);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.close();
+    server.stop();
+  }
+
+  @Test
+  public void requestsGoOverTheApi() throws Exception {
+    client.expose("web");
+    client.addUnits("web", 2);
+    client.removeUnits(Arrays.asList("web/0", "web/3"));
+    client.addRelation("web:mysql", "mysql:mysql");
+    client.resolved("mysql/0");
+    client.removeMachine("4");
+    assertEquals(Arrays.asList("web/1", "web/2"), server.getUnits("default", "web"));
+
+    JujuStatus status = client.getStatus();
+    assertEquals(2, status.getApplications().size());
+    JujuStatus.UnitStatus unit = status.getApplication("web").getUnits().get("web/2");
+    assertEquals("active", unit.getWorkloadStatus());
+    assertEquals("ready", unit.getWorkloadMessage());
+    assertEquals("idle", unit.getAgentStatus());
+    assertEquals("2", unit.getMachine());
+    assertEquals("10.0.0.2", unit.getPublicAddress());
+    assertTrue(status.getApplication("web").isActive());
+
+    client.removeApplications(Arrays.asList("web", "mysql"));
+    assertNull(server.getUnits("default", "web"));
+    assertEquals(0, client.getStatus().getApplications().size());
+    assertTrue(fallback.getRequests().toString(), fallback.getRequests().isEmpty());
+  }
+
+  @Test
+  public void deploymentsAndModelsUseTheFallback() throws Exception {
+    client.deploy("/charms/ns/web", 2, "trusty");
+    client.deployFromCharmStore("haproxy");
+    client.deployBundle("/charms/ns/bundle.yaml");
+    client.addModel("ctrl", "openbaton-other");
+    assertEquals(
+        Arrays.asList(
+            "deploy /charms/ns/web -n 2 --series=trusty",
+            "deploy haproxy",
+            "deploy /charms/ns/bundle.yaml",
+            "add-model openbaton-other -c ctrl"),
+        fallback.getRequests());
+    assertTrue(server.getRequests().isEmpty());
+  }
+
+  @Test
+  public void modelsOfTheControllerUseTheApi() throws Exception {
+    JujuClient modelClient = client.forModel("ctrl:openbaton-ns");
+    assertTrue(modelClient instanceof ApiJujuClient);
+    modelClient.addUnits("lb", 1);
+    assertEquals(Arrays.asList("lb/0", "lb/1"), server.getUnits("openbaton-ns", "lb"));
+    assertEquals(Arrays.asList("web/0", "web/1"), server.getUnits("default", "web"));
+
+    // models of other controllers are not reachable over this pool
+    JujuClient otherClient = client.forModel("other:openbaton-ns");
+    otherClient.addUnits("lb", 1);
+    assertEquals(
+        Collections.singletonList("other:openbaton-ns: add-unit lb -n 1"), fallback.getRequests());
+  }
+
+  @Test
+  public void errorsOfTheApiAreReported() throws Exception {
+    try {
+      client.expose("unknown");
+      fail("expected a JujuException");
+    } catch (JujuException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("application \"unknown\" not found"));
+    }
+    // the request reached Juju, so it must not be repeated by the fallback
+    assertTrue(fallback.getRequests().isEmpty());
+  }
+
+  @Test
+  public void connectionsArePooled() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      futures.add(
+          executor.submit(
+              new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                  client.expose("web");
+                  return null;
+                }
+              }));
+    }
+    for (Future<Void> future : futures) future.get();
+    executor.shutdown();
+
+    int exposes = 0;
+    for (String request : server.getRequests()) if (request.equals("Application.Expose")) exposes++;
+    assertEquals(200, exposes);
+    // at most two connections to the controller to look up the model and two to the model
+    assertTrue("logins: " + server.getLogins(), server.getLogins() <= 4);
+    int logins = server.getLogins();
+    for (int i = 0; i < 50; i++) client.expose("web");
+    assertEquals(logins, server.getLogins());
+  }
+
+  @Test
+  public void unreachableApiFallsBackToTheClient() throws Exception {
+    int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    ApiConnectionPool unreachable =
+        new ApiConnectionPool(
+            URI.create("ws://127.0.0.1:" + closedPort), "admin", "secret", null, 2, 5000);
+    try {
+      JujuClient unreachableClient = new ApiJujuClient(unreachable, "ctrl", "default", fallback);
+      unreachableClient.expose("web");
+      unreachableClient.removeApplications(Arrays.asList("web", "mysql"));
+    } finally {
+      unreachable.close();
+    }
+    assertEquals(
+        Arrays.asList("expose web", "remove-application web mysql"), fallback.getRequests());
+  }
+
+  @Test
+  public void refusedLoginFallsBackToTheClient() throws Exception {
+    ApiConnectionPool wrongPassword =
+        new ApiConnectionPool(server.getEndpoint(), "admin", "wrong", null, 2, 5000);
+    try {
+      new ApiJujuClient(wrongPassword, "ctrl", "default", fallback).addUnits("web", 1);
+    } finally {
+      wrongPassword.close();
+    }
+    assertEquals(Collections.singletonList("add-unit web -n 1"), fallback.getRequests());
+    assertEquals(Arrays.asList("web/0", "web/1"), server.getUnits("default", "web"));
+  }
+
+  @Test
+  public void withoutModelEverythingUsesTheFallback() throws Exception {
+    ApiJujuClient noModel = new ApiJujuClient(pool, "ctrl", null, fallback);
+    noModel.expose("web");
+    assertSame(0, server.getConnections());
+    assertEquals(Collections.singletonList("expose web"), fallback.getRequests());
+  }
+
+  @Test
+  public void destroyedModelIsForgotten() throws Exception {
+    JujuClient modelClient = client.forModel("ctrl:openbaton-ns");
+    modelClient.addUnits("lb", 1);
+    client.destroyModel("ctrl:openbaton-ns");
+    assertEquals(
+        Collections.singletonList("destroy-model ctrl:openbaton-ns"), fallback.getRequests());
+    // the model is looked up again
+    modelClient.addUnits("lb", 1);
+    int listModels = 0;
+    for (String request : server.getRequests())
+      if (request.equals("ModelManager.ListModels")) listModels++;
+    assertEquals(2, listModels);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openbaton.vnfm.juju.utils.CommandExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Runs the CliJujuClient against a fake juju executable, which records its arguments instead of
+ * talking to a controller.
+ */
+public class CliJujuClientTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private CommandExecutor commandExecutor;
+  private CliJujuClient client;
+  private File invocations;
+
+  @Before
+  public void setUp() throws IOException {
+    invocations = new File(folder.getRoot(), "invocations");
+    File juju = folder.newFile("juju");
+    String script =
+        "#!/bin/sh\n"
+            + "echo \"$@\" >> "
+            + invocations.getAbsolutePath()
+            + "\n"
+            + "case \" $* \" in *\" broken \"*) echo \"ERROR application not found\"; exit 1;; esac\n";
+    Files.write(juju.toPath(), script.getBytes(StandardCharsets.UTF_8));
+    assertTrue(juju.setExecutable(true));
+    commandExecutor = new CommandExecutor(2, 10, 10000, 4096);
+    client = new CliJujuClient(commandExecutor);
+    client.setJujuBinary(juju.getAbsolutePath());
+  }
+
+  @After
+  public void tearDown() {
+    commandExecutor.shutdown();
+  }
+
+  private List<String> readInvocations() throws IOException {
+    if (!invocations.exists()) return Collections.emptyList();
+    return Files.readAllLines(invocations.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void deployBundle() throws Exception {
+    client.deployBundle("/charms/ns/bundle.yaml");
+    assertEquals(Collections.singletonList("deploy /charms/ns/bundle.yaml"), readInvocations());
+  }
+
+  @Test
+  public void deployCharms() throws Exception {
+    client.deploy("/charms/ns/mysql", 2, "trusty");
+    client.deployFromCharmStore("haproxy");
+    client.expose("mysql");
+    client.addRelation("web:mysql", "mysql:mysql");
+    assertEquals(
+        Arrays.asList(
+            "deploy /charms/ns/mysql -n 2 --series=trusty",
+            "deploy haproxy",
+            "expose mysql",
+            "add-relation web:mysql mysql:mysql"),
+        readInvocations());
+  }
+
+  @Test
+  public void failedCommand() throws Exception {
+    try {
+      client.expose("broken");
+      fail("expected a JujuException");
+    } catch (JujuException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("ERROR application not found"));
+    }
+  }
+
+  @Test
+  public void commandsOfAModelSelectIt() throws Exception {
+    JujuClient modelClient = client.forModel("east:openbaton-ns");
+    modelClient.deploy("/charms/ns/mysql", 1, "trusty");
+    modelClient.removeApplications(Arrays.asList("mysql", "web"));
+    modelClient.resolved("mysql/0");
+    client.expose("mysql");
+    assertEquals(
+        Arrays.asList(
+            "deploy -m east:openbaton-ns /charms/ns/mysql -n 1 --series=trusty",
+            "remove-application -m east:openbaton-ns mysql web",
+            "resolved -m east:openbaton-ns mysql/0",
+            "expose mysql"),
+        readInvocations());
+  }
+
+  @Test
+  public void modelClientKeepsTheJujuBinary() {
+    CliJujuClient modelClient = (CliJujuClient) client.forModel("east:openbaton-ns");
+    assertEquals(client.getJujuBinary(), modelClient.getJujuBinary());
+    assertEquals("east:openbaton-ns", modelClient.getModel());
+    assertEquals(null, client.getModel());
+  }
+
+  @Test
+  public void modelsAreManagedOnTheController() throws Exception {
+    JujuClient modelClient = client.forModel("east:openbaton-ns");
+    modelClient.addModel("east", "openbaton-ns");
+    modelClient.destroyModel("east:openbaton-ns");
+    assertEquals(
+        Arrays.asList(
+            "add-model openbaton-ns -c east --no-switch", "destroy-model -y east:openbaton-ns"),
+        readInvocations());
+  }
+}
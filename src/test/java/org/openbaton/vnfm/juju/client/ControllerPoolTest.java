@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class ControllerPoolTest {
+
+  private Map<String, Integer> models(Object... controllersAndCounts) {
+    Map<String, Integer> models = new LinkedHashMap<>();
+    for (int i = 0; i < controllersAndCounts.length; i += 2)
+      models.put((String) controllersAndCounts[i], (Integer) controllersAndCounts[i + 1]);
+    return models;
+  }
+
+  @Test
+  public void atLeastOneController() {
+    try {
+      new ControllerPool(Collections.<String>emptyList());
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void modelsAreSpreadEvenly() {
+    ControllerPool pool = new ControllerPool(Arrays.asList("a", "b", "c"));
+    List<String> chosen = new ArrayList<>();
+    for (int i = 0; i < 7; i++) chosen.add(pool.acquire());
+    // ties go to the controller configured first
+    assertEquals(Arrays.asList("a", "b", "c", "a", "b", "c", "a"), chosen);
+    assertEquals(models("a", 3, "b", 2, "c", 2), pool.getModels());
+  }
+
+  @Test
+  public void releasedControllerIsChosenAgain() {
+    ControllerPool pool = new ControllerPool(Arrays.asList("a", "b"));
+    pool.acquire();
+    pool.acquire();
+    pool.release("b");
+    assertEquals("b", pool.acquire());
+    assertEquals(models("a", 1, "b", 1), pool.getModels());
+  }
+
+  @Test
+  public void recoveredModelsAreCounted() {
+    ControllerPool pool = new ControllerPool(Arrays.asList("a", "b"));
+    pool.add("a");
+    pool.add("a");
+    // a controller that was removed from the configuration
+    pool.add("old");
+    assertEquals(models("a", 2, "b", 0), pool.getModels());
+    assertEquals("b", pool.acquire());
+    assertEquals("b", pool.acquire());
+    assertEquals("a", pool.acquire());
+  }
+
+  @Test
+  public void countsDoNotGoBelowZero() {
+    ControllerPool pool = new ControllerPool(Arrays.asList("a", "b"));
+    pool.release("a");
+    pool.release("old");
+    assertEquals(models("a", 0, "b", 0), pool.getModels());
+    assertEquals("a", pool.acquire());
+  }
+
+  @Test
+  public void getModelsReturnsACopy() {
+    ControllerPool pool = new ControllerPool(Arrays.asList("a"));
+    pool.getModels().put("a", 10);
+    assertEquals(models("a", 0), pool.getModels());
+  }
+}
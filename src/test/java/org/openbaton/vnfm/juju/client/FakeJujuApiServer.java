@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for the Juju API of a controller. It keeps the applications and units of
+ * its models in memory and understands the requests the ApiJujuClient sends. All requests are
+ * recorded, so that tests can check which of them reached the API.
+ */
+public class FakeJujuApiServer extends WebSocketServer {
+
+  private String user;
+  private String password;
+
+  // <model name, model>
+  private Map<String, Model> models = new ConcurrentHashMap<>();
+  // <connection, requested path>
+  private Map<WebSocket, String> paths = new ConcurrentHashMap<>();
+  private Set<WebSocket> loggedIn =
+      Collections.newSetFromMap(new ConcurrentHashMap<WebSocket, Boolean>());
+  private List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private AtomicInteger connections = new AtomicInteger();
+  private AtomicInteger logins = new AtomicInteger();
+
+  private static class Model {
+    private String uuid = UUID.randomUUID().toString();
+    // <application, unit names>
+    private Map<String, List<String>> applications = new LinkedHashMap<>();
+    private Map<String, Integer> nextUnit = new HashMap<>();
+  }
+
+  public FakeJujuApiServer(String user, String password) {
+    super(new InetSocketAddress("127.0.0.1", 0));
+    this.user = user;
+    this.password = password;
+  }
+
+  /**
+   * Start the server and wait until it accepts connections.
+   *
+   * @throws InterruptedException
+   */
+  public void startAndWait() throws InterruptedException {
+    start();
+    while (getPort() <= 0) Thread.sleep(10);
+  }
+
+  /**
+   * Returns the endpoint the ApiConnectionPool connects to.
+   *
+   * @return
+   */
+  public URI getEndpoint() {
+    return URI.create("ws://127.0.0.1:" + getPort());
+  }
+
+  /**
+   * Add a model with applications that have the passed number of units.
+   *
+   * @param name
+   * @param applications the application names followed by their number of units
+   */
+  public void addModel(String name, Object... applications) {
+    Model model = new Model();
+    for (int i = 0; i < applications.length; i += 2) {
+      String application = (String) applications[i];
+      model.applications.put(application, new ArrayList<String>());
+      model.nextUnit.put(application, 0);
+      addUnits(model, application, (Integer) applications[i + 1]);
+    }
+    models.put(name, model);
+  }
+
+  /**
+   * Returns the units of an application.
+   *
+   * @param model
+   * @param application
+   * @return the unit names or null if the application does not exist
+   */
+  public synchronized List<String> getUnits(String model, String application) {
+    List<String> units = models.get(model).applications.get(application);
+    return units == null ? null : new ArrayList<>(units);
+  }
+
+  /**
+   * Returns the recorded requests in the form Facade.Request.
+   *
+   * @return a copy of the requests
+   */
+  public List<String> getRequests() {
+    synchronized (requests) {
+      return new ArrayList<>(requests);
+    }
+  }
+
+  public int getConnections() {
+    return connections.get();
+  }
+
+  public int getLogins() {
+    return logins.get();
+  }
+
+  @Override
+  public void onOpen(WebSocket conn, ClientHandshake handshake) {
+    connections.incrementAndGet();
+    paths.put(conn, handshake.getResourceDescriptor());
+  }
+
+  @Override
+  public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    paths.remove(conn);
+    loggedIn.remove(conn);
+  }
+
+  @Override
+  public void onError(WebSocket conn, Exception e) {}
+
+  @Override
+  public void onMessage(WebSocket conn, String message) {
+    JsonObject frame = new JsonParser().parse(message).getAsJsonObject();
+    String request = frame.get("type").getAsString() + "." + frame.get("request").getAsString();
+    JsonObject params = frame.getAsJsonObject("params");
+    JsonObject reply = new JsonObject();
+    reply.add("request-id", frame.get("request-id"));
+    try {
+      reply.add("response", handle(conn, request, params));
+    } catch (IllegalArgumentException e) {
+      reply.addProperty("error", e.getMessage());
+      reply.addProperty("error-code", "not found");
+      reply.add("response", new JsonObject());
+    }
+    conn.send(reply.toString());
+  }
+
+  private synchronized JsonObject handle(WebSocket conn, String request, JsonObject params) {
+    String path = paths.get(conn);
+    if (request.equals("Admin.Login")) {
+      if (!params.get("auth-tag").getAsString().equals("user-" + user)
+          || !params.get("credentials").getAsString().equals(password))
+        throw new IllegalArgumentException("invalid entity name or password");
+      logins.incrementAndGet();
+      loggedIn.add(conn);
+      return new JsonObject();
+    }
+    if (!loggedIn.contains(conn)) throw new IllegalArgumentException("not logged in");
+    requests.add(request);
+
+    JsonObject response = new JsonObject();
+    if (request.equals("ModelManager.ListModels")) {
+      JsonArray userModels = new JsonArray();
+      for (Map.Entry<String, Model> entry : models.entrySet()) {
+        JsonObject model = new JsonObject();
+        model.addProperty("name", entry.getKey());
+        model.addProperty("uuid", entry.getValue().uuid);
+        model.addProperty("owner-tag", "user-" + user);
+        JsonObject userModel = new JsonObject();
+        userModel.add("model", model);
+        userModels.add(userModel);
+      }
+      response.add("user-models", userModels);
+      return response;
+    }
+
+    Model model = null;
+    for (Model candidate : models.values())
+      if (path.equals("/model/" + candidate.uuid + "/api")) model = candidate;
+    if (model == null) throw new IllegalArgumentException("unknown model " + path);
+    switch (request) {
+      case "Application.Expose":
+        getApplication(model, params.get("application").getAsString());
+        break;
+      case "Application.AddUnits":
+        String application = params.get("application").getAsString();
+        getApplication(model, application);
+        JsonArray units = new JsonArray();
+        for (String unit : addUnits(model, application, params.get("num-units").getAsInt()))
+          units.add(new JsonPrimitive(unit));
+        response.add("units", units);
+        break;
+      case "Application.DestroyUnits":
+        for (JsonElement unit : params.getAsJsonArray("unit-names")) {
+          String name = unit.getAsString();
+          if (!getApplication(model, name.split("/")[0]).remove(name))
+            throw new IllegalArgumentException("unit \"" + name + "\" not found");
+        }
+        break;
+      case "Application.Destroy":
+        getApplication(model, params.get("application").getAsString());
+        model.applications.remove(params.get("application").getAsString());
+        break;
+      case "Application.AddRelation":
+        for (JsonElement endpoint : params.getAsJsonArray("endpoints"))
+          getApplication(model, endpoint.getAsString().split(":")[0]);
+        break;
+      case "Client.Resolved":
+        String unit = params.get("unit-name").getAsString();
+        if (!getApplication(model, unit.split("/")[0]).contains(unit))
+          throw new IllegalArgumentException("unit \"" + unit + "\" not found");
+        break;
+      case "Client.DestroyMachines":
+        break;
+      case "Client.FullStatus":
+        response.add("applications", fullStatus(model));
+        break;
+      default:
+        throw new IllegalArgumentException("unknown request " + request);
+    }
+    return response;
+  }
+
+  private List<String> getApplication(Model model, String application) {
+    List<String> units = model.applications.get(application);
+    if (units == null)
+      throw new IllegalArgumentException("application \"" + application + "\" not found");
+    return units;
+  }
+
+  private List<String> addUnits(Model model, String application, int numberOfUnits) {
+    List<String> added = new ArrayList<>();
+    for (int i = 0; i < numberOfUnits; i++) {
+      int number = model.nextUnit.get(application);
+      model.nextUnit.put(application, number + 1);
+      added.add(application + "/" + number);
+    }
+    model.applications.get(application).addAll(added);
+    return added;
+  }
+
+  private JsonObject fullStatus(Model model) {
+    JsonObject applications = new JsonObject();
+    for (Map.Entry<String, List<String>> entry : model.applications.entrySet()) {
+      JsonObject units = new JsonObject();
+      for (String unit : entry.getValue()) {
+        JsonObject unitStatus = new JsonObject();
+        unitStatus.add("workload-status", status("active", "ready"));
+        unitStatus.add("agent-status", status("idle", ""));
+        unitStatus.addProperty("machine", unit.split("/")[1]);
+        unitStatus.addProperty("public-address", "10.0.0." + unit.split("/")[1]);
+        units.add(unit, unitStatus);
+      }
+      JsonObject application = new JsonObject();
+      application.addProperty("charm", "local:trusty/" + entry.getKey() + "-0");
+      application.add("status", status("active", ""));
+      application.add("units", units);
+      applications.add(entry.getKey(), application);
+    }
+    return applications;
+  }
+
+  private static JsonObject status(String status, String info) {
+    JsonObject object = new JsonObject();
+    object.addProperty("status", status);
+    object.addProperty("info", info);
+    object.add("data", new JsonObject());
+    return object;
+  }
+}
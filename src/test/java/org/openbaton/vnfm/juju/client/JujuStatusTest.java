@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Parses canned juju status documents from src/test/resources/status. */
+public class JujuStatusTest {
+
+  private JujuStatus parse(String document) throws IOException {
+    try (Reader in =
+        new InputStreamReader(
+            getClass().getResourceAsStream("/status/" + document), StandardCharsets.UTF_8)) {
+      return JujuStatus.parse(in);
+    }
+  }
+
+  @Test
+  public void juju2() throws Exception {
+    JujuStatus status = parse("juju2.json");
+    assertEquals(
+        new HashSet<>(Arrays.asList("mysql", "web", "haproxy", "empty")),
+        status.getApplications().keySet());
+
+    JujuStatus.ApplicationStatus mysql = status.getApplication("mysql");
+    assertEquals("active", mysql.getStatus());
+    assertTrue(mysql.isActive());
+    assertFalse(mysql.hasError());
+    JujuStatus.UnitStatus mysqlUnit = mysql.getUnits().get("mysql/0");
+    assertEquals("mysql/0", mysqlUnit.getName());
+    assertEquals("active", mysqlUnit.getWorkloadStatus());
+    assertEquals("idle", mysqlUnit.getAgentStatus());
+    assertEquals("0", mysqlUnit.getMachine());
+    assertEquals("10.0.0.10", mysqlUnit.getPublicAddress());
+
+    JujuStatus.ApplicationStatus web = status.getApplication("web");
+    assertEquals("hook failed: \"install\"", web.getMessage());
+    assertTrue(web.hasError());
+    assertFalse(web.isActive());
+    assertFalse(web.getUnits().get("web/0").hasError());
+    JujuStatus.UnitStatus failed = web.getUnits().get("web/1");
+    assertTrue(failed.hasError());
+    assertEquals("hook failed: \"install\"", failed.getWorkloadMessage());
+    assertNull(failed.getPublicAddress());
+
+    JujuStatus.ApplicationStatus haproxy = status.getApplication("haproxy");
+    assertFalse(haproxy.hasError());
+    assertFalse(haproxy.isActive());
+    assertEquals("allocating", haproxy.getUnits().get("haproxy/0").getAgentStatus());
+
+    // an application without units is never active
+    assertTrue(status.getApplication("empty").getUnits().isEmpty());
+    assertFalse(status.getApplication("empty").isActive());
+    assertNull(status.getApplication("unknown"));
+  }
+
+  /** The charms of the Juju VNFM do not set a workload status, so Juju reports it as unknown. */
+  @Test
+  public void unknownWorkload() throws Exception {
+    JujuStatus status = parse("unknown-workload.json");
+    JujuStatus.ApplicationStatus mysql = status.getApplication("mysql");
+    assertEquals("unknown", mysql.getUnits().get("mysql/0").getWorkloadStatus());
+    assertTrue(mysql.getUnits().get("mysql/0").isActive());
+    assertTrue(mysql.isActive());
+    assertFalse(mysql.hasError());
+
+    JujuStatus.ApplicationStatus web = status.getApplication("web");
+    assertTrue(web.getUnits().get("web/0").isActive());
+    // still running its hooks
+    assertFalse(web.getUnits().get("web/1").isActive());
+    assertFalse(web.getUnits().get("web/1").hasError());
+    JujuStatus.UnitStatus failed = web.getUnits().get("web/2");
+    assertFalse(failed.isActive());
+    assertTrue(failed.hasError());
+    assertFalse(web.isActive());
+    assertTrue(web.hasError());
+  }
+
+  @Test
+  public void juju1() throws Exception {
+    JujuStatus.ApplicationStatus mysql = parse("juju1.json").getApplication("mysql");
+    assertEquals("blocked", mysql.getStatus());
+    assertEquals("database not configured", mysql.getMessage());
+    assertTrue(mysql.hasError());
+    JujuStatus.UnitStatus unit = mysql.getUnits().get("mysql/0");
+    assertEquals("blocked", unit.getWorkloadStatus());
+    assertEquals("idle", unit.getAgentStatus());
+    assertEquals("10.0.0.20", unit.getPublicAddress());
+  }
+
+  @Test
+  public void fullStatusResponse() throws Exception {
+    JujuStatus.ApplicationStatus mysql = parse("fullstatus.json").getApplication("mysql");
+    assertEquals("maintenance", mysql.getStatus());
+    assertEquals("installing", mysql.getMessage());
+    JujuStatus.UnitStatus unit = mysql.getUnits().get("mysql/0");
+    assertEquals("maintenance", unit.getWorkloadStatus());
+    assertEquals("installing", unit.getWorkloadMessage());
+    assertEquals("error", unit.getAgentStatus());
+    assertTrue(unit.hasError());
+    assertTrue(mysql.hasError());
+  }
+
+  @Test
+  public void emptyModel() throws Exception {
+    assertTrue(
+        JujuStatus.parse(new StringReader("{\"model\": {}, \"applications\": {}}"))
+            .getApplications()
+            .isEmpty());
+    assertTrue(JujuStatus.parse(new StringReader("{}")).getApplications().isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedDocument() throws Exception {
+    JujuStatus.parse(new StringReader("{\"applications\": {\"mysql\": {\"units\": {"));
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import java.util.*;
+
+/**
+ * JujuClient that records the requests in the form of the corresponding juju commands instead of
+ * executing them. The status it returns can be set, requests can be made to fail.
+ */
+public class RecordingJujuClient implements JujuClient {
+
+  private List<String> requests;
+  // the model passed to forModel; null for the client it was created from
+  private String model;
+  private volatile JujuStatus status = JujuStatus.EMPTY;
+  // requests starting with this prefix fail; null if no request fails
+  private volatile String failingRequests;
+
+  public RecordingJujuClient() {
+    this.requests = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  private RecordingJujuClient(List<String> requests, String model) {
+    this.requests = requests;
+    this.model = model;
+  }
+
+  private void record(String request) throws JujuException {
+    requests.add(model == null ? request : model + ": " + request);
+    String failing = failingRequests;
+    if (failing != null && request.startsWith(failing))
+      throw new JujuException("ERROR " + request + " failed");
+  }
+
+  private static String join(List<String> values) {
+    StringBuilder joined = new StringBuilder();
+    for (String value : values) joined.append(joined.length() == 0 ? "" : " ").append(value);
+    return joined.toString();
+  }
+
+  @Override
+  public void deploy(String charmPath, int numberOfUnits, String series) throws JujuException {
+    record("deploy " + charmPath + " -n " + numberOfUnits + " --series=" + series);
+  }
+
+  @Override
+  public void deployFromCharmStore(String charmName) throws JujuException {
+    record("deploy " + charmName);
+  }
+
+  @Override
+  public void deployBundle(String bundlePath) throws JujuException {
+    record("deploy " + bundlePath);
+  }
+
+  @Override
+  public void expose(String application) throws JujuException {
+    record("expose " + application);
+  }
+
+  @Override
+  public void removeApplications(List<String> applications) throws JujuException {
+    record("remove-application " + join(applications));
+  }
+
+  @Override
+  public void removeMachine(String machine) throws JujuException {
+    record("remove-machine --force " + machine);
+  }
+
+  @Override
+  public void addUnits(String application, int numberOfUnits) throws JujuException {
+    record("add-unit " + application + " -n " + numberOfUnits);
+  }
+
+  @Override
+  public void removeUnits(List<String> units) throws JujuException {
+    record("remove-unit " + join(units));
+  }
+
+  @Override
+  public void resolved(String unit) throws JujuException {
+    record("resolved " + unit);
+  }
+
+  @Override
+  public void addRelation(String endpoint1, String endpoint2) throws JujuException {
+    record("add-relation " + endpoint1 + " " + endpoint2);
+  }
+
+  @Override
+  public JujuStatus getStatus() throws JujuException {
+    record("status");
+    return status;
+  }
+
+  @Override
+  public void addModel(String controller, String model) throws JujuException {
+    record("add-model " + model + " -c " + controller);
+  }
+
+  @Override
+  public void destroyModel(String model) throws JujuException {
+    record("destroy-model " + model);
+  }
+
+  @Override
+  public JujuClient forModel(String model) {
+    RecordingJujuClient client = new RecordingJujuClient(requests, model);
+    client.status = status;
+    client.failingRequests = failingRequests;
+    return client;
+  }
+
+  /**
+   * Returns the recorded requests. Requests of clients created by forModel are prefixed with their
+   * model and a colon.
+   *
+   * @return a copy of the requests
+   */
+  public List<String> getRequests() {
+    synchronized (requests) {
+      return new ArrayList<>(requests);
+    }
+  }
+
+  public void clearRequests() {
+    requests.clear();
+  }
+
+  /**
+   * Create a status containing the passed units. The applications are taken from the unit names.
+   *
+   * @param units unit names, optionally followed by a colon and the workload status, which is
+   *     active otherwise, e.g. web/0 or web/1:error
+   * @return
+   */
+  public static JujuStatus status(String... units) {
+    Map<String, Map<String, JujuStatus.UnitStatus>> applicationUnits = new LinkedHashMap<>();
+    for (String unit : units) {
+      String name = unit.contains(":") ? unit.substring(0, unit.indexOf(':')) : unit;
+      String workloadStatus = unit.contains(":") ? unit.substring(unit.indexOf(':') + 1) : "active";
+      String application = name.substring(0, name.indexOf('/'));
+      if (!applicationUnits.containsKey(application))
+        applicationUnits.put(application, new LinkedHashMap<String, JujuStatus.UnitStatus>());
+      applicationUnits
+          .get(application)
+          .put(name, new JujuStatus.UnitStatus(name, workloadStatus, null, "idle", "0", null));
+    }
+    Map<String, JujuStatus.ApplicationStatus> applications = new HashMap<>();
+    for (Map.Entry<String, Map<String, JujuStatus.UnitStatus>> entry : applicationUnits.entrySet())
+      applications.put(
+          entry.getKey(),
+          new JujuStatus.ApplicationStatus(entry.getKey(), "active", null, entry.getValue()));
+    return new JujuStatus(applications);
+  }
+
+  public void setStatus(JujuStatus status) {
+    this.status = status;
+  }
+
+  /**
+   * Let the requests fail whose juju command starts with the passed prefix.
+   *
+   * @param prefix e.g. remove-unit; null to let all requests succeed
+   */
+  public void setFailingRequests(String prefix) {
+    this.failingRequests = prefix;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ReleaseBatcherTest {
+
+  private RecordingJujuClient jujuClient;
+  private ScheduledExecutorService scheduler;
+  private ExecutorService cleanupExecutor;
+
+  @Before
+  public void createClient() {
+    jujuClient = new RecordingJujuClient();
+    // a and b of one network service, c of another one; b shares machine 2 with c
+    jujuClient.setStatus(
+        status(unit("a/0", "0"), unit("a/1", "1"), unit("b/0", "2"), unit("c/0", "2")));
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    cleanupExecutor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void shutdown() {
+    scheduler.shutdownNow();
+    cleanupExecutor.shutdownNow();
+  }
+
+  private static JujuStatus.UnitStatus unit(String name, String machine) {
+    return new JujuStatus.UnitStatus(name, "active", null, "idle", machine, null);
+  }
+
+  private static JujuStatus status(JujuStatus.UnitStatus... units) {
+    Map<String, Map<String, JujuStatus.UnitStatus>> applicationUnits = new HashMap<>();
+    for (JujuStatus.UnitStatus unit : units) {
+      String application = unit.getName().substring(0, unit.getName().indexOf('/'));
+      if (!applicationUnits.containsKey(application))
+        applicationUnits.put(application, new LinkedHashMap<String, JujuStatus.UnitStatus>());
+      applicationUnits.get(application).put(unit.getName(), unit);
+    }
+    Map<String, JujuStatus.ApplicationStatus> applications = new HashMap<>();
+    for (Map.Entry<String, Map<String, JujuStatus.UnitStatus>> entry : applicationUnits.entrySet())
+      applications.put(
+          entry.getKey(),
+          new JujuStatus.ApplicationStatus(entry.getKey(), "active", null, entry.getValue()));
+    return new JujuStatus(applications);
+  }
+
+  private ReleaseBatcher batcher(long window) {
+    return new ReleaseBatcher(jujuClient, scheduler, cleanupExecutor, window);
+  }
+
+  private static void await(ListenableFuture<?>... results) throws Exception {
+    for (ListenableFuture<?> result : results) result.get(5, TimeUnit.SECONDS);
+  }
+
+  /** Returns the requests with the machine removals, which run in parallel, sorted. */
+  private List<String> getRequests() {
+    List<String> requests = jujuClient.getRequests();
+    int firstMachine = 0;
+    while (firstMachine < requests.size()
+        && !requests.get(firstMachine).startsWith("remove-machine")) firstMachine++;
+    Collections.sort(requests.subList(firstMachine, requests.size()));
+    return requests;
+  }
+
+  @Test
+  public void lastApplicationExecutesTheBatch() throws Exception {
+    ReleaseBatcher releaseBatcher = batcher(60000);
+    await(releaseBatcher.release("ns", "a", false), releaseBatcher.release("ns", "b", true));
+    // machine 2 still hosts c
+    assertEquals(
+        Arrays.asList(
+            "status",
+            "remove-application a b",
+            "remove-machine --force 0",
+            "remove-machine --force 1"),
+        getRequests());
+  }
+
+  @Test
+  public void windowEndExecutesTheBatch() throws Exception {
+    ReleaseBatcher releaseBatcher = batcher(100);
+    await(releaseBatcher.release("ns", "a", false), releaseBatcher.release("ns", "b", false));
+    assertEquals("remove-application a b", getRequests().get(1));
+    assertEquals(4, getRequests().size());
+  }
+
+  @Test
+  public void networkServicesAreBatchedSeparately() throws Exception {
+    ReleaseBatcher releaseBatcher = batcher(60000);
+    ListenableFuture<Void> a = releaseBatcher.release("ns1", "a", false);
+    await(releaseBatcher.release("ns2", "c", true));
+    assertTrue(!a.isDone());
+    assertEquals(Arrays.asList("status", "remove-application c"), getRequests());
+
+    jujuClient.clearRequests();
+    await(releaseBatcher.release("ns1", "b", true), a);
+    assertEquals("remove-application a b", getRequests().get(1));
+  }
+
+  @Test
+  public void unknownApplicationsAreSkipped() throws Exception {
+    ReleaseBatcher releaseBatcher = batcher(60000);
+    await(releaseBatcher.release("ns", "a", false), releaseBatcher.release("ns", "x", true));
+    assertEquals("remove-application a", getRequests().get(1));
+
+    jujuClient.clearRequests();
+    await(releaseBatcher.release("ns", "x", true));
+    assertEquals(Arrays.asList("status"), getRequests());
+  }
+
+  @Test
+  public void failedRemovalFailsTheBatch() throws Exception {
+    jujuClient.setFailingRequests("remove-application");
+    ReleaseBatcher releaseBatcher = batcher(60000);
+    ListenableFuture<Void> a = releaseBatcher.release("ns", "a", false);
+    ListenableFuture<Void> b = releaseBatcher.release("ns", "b", true);
+    for (ListenableFuture<Void> result : Arrays.asList(a, b)) {
+      try {
+        result.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof JujuException);
+      }
+    }
+    assertEquals(Arrays.asList("status", "remove-application a b"), getRequests());
+  }
+
+  /** The applications are gone already, so machines that cannot be removed are only logged. */
+  @Test
+  public void failedMachineRemovalIsIgnored() throws Exception {
+    jujuClient.setFailingRequests("remove-machine");
+    ReleaseBatcher releaseBatcher = batcher(60000);
+    await(releaseBatcher.release("ns", "a", true));
+    assertEquals(4, getRequests().size());
+  }
+
+  /** Without the status the applications are removed anyway, but their machines are not known. */
+  @Test
+  public void failedStatusKeepsTheMachines() throws Exception {
+    jujuClient.setFailingRequests("status");
+    ReleaseBatcher releaseBatcher = batcher(60000);
+    await(releaseBatcher.release("ns", "a", true));
+    assertEquals(Arrays.asList("status", "remove-application a"), getRequests());
+  }
+}
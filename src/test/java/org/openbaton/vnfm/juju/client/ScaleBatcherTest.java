@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ScaleBatcherTest {
+
+  private RecordingJujuClient jujuClient;
+  private ScheduledExecutorService scheduler;
+  private ScaleBatcher scaleBatcher;
+
+  @Before
+  public void createBatcher() {
+    jujuClient = new RecordingJujuClient();
+    jujuClient.setStatus(RecordingJujuClient.status("web/0", "web/1", "web/2", "db/0"));
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    scaleBatcher = new ScaleBatcher(jujuClient, scheduler, 200);
+  }
+
+  @After
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private void await(List<ListenableFuture<Void>> results) throws Exception {
+    for (ListenableFuture<Void> result : results) result.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void scaleOutsAreCoalesced() throws Exception {
+    List<ListenableFuture<Void>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) results.add(scaleBatcher.addUnit("web"));
+    results.add(scaleBatcher.addUnit("db"));
+    await(results);
+    assertEquals(
+        new HashSet<>(Arrays.asList("add-unit web -n 3", "add-unit db -n 1")),
+        new HashSet<>(jujuClient.getRequests()));
+  }
+
+  @Test
+  public void scaleInsAreCoalesced() throws Exception {
+    List<ListenableFuture<Void>> results = new ArrayList<>();
+    results.add(scaleBatcher.removeUnit("web", "web/0"));
+    results.add(scaleBatcher.removeUnit("web", null));
+    await(results);
+    // the unit with the highest number is chosen, apart from the one named explicitly
+    assertEquals(Arrays.asList("status", "remove-unit web/0 web/2"), jujuClient.getRequests());
+  }
+
+  @Test
+  public void scaleOutsAndInsCancelOut() throws Exception {
+    List<ListenableFuture<Void>> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) results.add(scaleBatcher.addUnit("web"));
+    for (int i = 0; i < 2; i++) results.add(scaleBatcher.removeUnit("web", null));
+    await(results);
+    assertEquals(Arrays.asList("add-unit web -n 1"), jujuClient.getRequests());
+
+    jujuClient.clearRequests();
+    results.clear();
+    results.add(scaleBatcher.addUnit("web"));
+    results.add(scaleBatcher.removeUnit("web", null));
+    await(results);
+    assertTrue(jujuClient.getRequests().isEmpty());
+  }
+
+  @Test
+  public void namedUnitsAreRemovedAnyway() throws Exception {
+    List<ListenableFuture<Void>> results = new ArrayList<>();
+    results.add(scaleBatcher.addUnit("web"));
+    results.add(scaleBatcher.addUnit("web"));
+    results.add(scaleBatcher.removeUnit("web", "web/1"));
+    results.add(scaleBatcher.removeUnit("web", null));
+    await(results);
+    assertEquals(Arrays.asList("remove-unit web/1", "add-unit web -n 1"), jujuClient.getRequests());
+  }
+
+  @Test
+  public void failureFailsTheWholeBatch() throws Exception {
+    jujuClient.setFailingRequests("add-unit");
+    List<ListenableFuture<Void>> results = new ArrayList<>();
+    results.add(scaleBatcher.addUnit("web"));
+    results.add(scaleBatcher.addUnit("web"));
+    for (ListenableFuture<Void> result : results) {
+      try {
+        result.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof JujuException);
+      }
+    }
+    assertEquals(Arrays.asList("add-unit web -n 2"), jujuClient.getRequests());
+  }
+
+  @Test
+  public void notEnoughUnits() throws Exception {
+    ListenableFuture<Void> result = scaleBatcher.removeUnit("db", null);
+    scaleBatcher.removeUnit("db", null);
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().getMessage().contains("only 1 are left"));
+    }
+    assertEquals(Arrays.asList("status"), jujuClient.getRequests());
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UnitHealerTest {
+
+  /**
+   * Keeps a set of units and their workload status. Units that are resolved become active if they
+   * are in the set of recovering units, added units are active.
+   */
+  private static class HealingJujuClient extends RecordingJujuClient {
+
+    // <unit, workload status>
+    private final Map<String, String> units = new LinkedHashMap<>();
+    private final Set<String> recovering = new HashSet<>();
+    // the time in milliseconds a juju resolved takes
+    private long resolveTime;
+    private final AtomicInteger resolving = new AtomicInteger();
+    private final AtomicInteger maxResolving = new AtomicInteger();
+
+    HealingJujuClient(String... units) {
+      for (String unit : units) {
+        String[] parts = unit.split(":");
+        this.units.put(parts[0], parts.length > 1 ? parts[1] : "active");
+      }
+      updateStatus();
+    }
+
+    private synchronized void updateStatus() {
+      List<String> descriptions = new ArrayList<>();
+      for (Map.Entry<String, String> unit : units.entrySet())
+        descriptions.add(unit.getKey() + ":" + unit.getValue());
+      setStatus(status(descriptions.toArray(new String[descriptions.size()])));
+    }
+
+    @Override
+    public void resolved(String unit) throws JujuException {
+      super.resolved(unit);
+      int current = resolving.incrementAndGet();
+      while (maxResolving.get() < current) maxResolving.compareAndSet(maxResolving.get(), current);
+      try {
+        Thread.sleep(resolveTime);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      resolving.decrementAndGet();
+      synchronized (this) {
+        if (recovering.contains(unit)) units.put(unit, "active");
+      }
+      updateStatus();
+    }
+
+    @Override
+    public void addUnits(String application, int numberOfUnits) throws JujuException {
+      super.addUnits(application, numberOfUnits);
+      synchronized (this) {
+        int next = 0;
+        for (String unit : units.keySet()) {
+          if (unit.startsWith(application + "/"))
+            next = Math.max(next, Integer.parseInt(unit.substring(unit.indexOf('/') + 1)) + 1);
+        }
+        for (int i = 0; i < numberOfUnits; i++) units.put(application + "/" + (next + i), "active");
+      }
+      updateStatus();
+    }
+
+    @Override
+    public void removeUnits(List<String> units) throws JujuException {
+      super.removeUnits(units);
+      synchronized (this) {
+        this.units.keySet().removeAll(units);
+      }
+      updateStatus();
+    }
+  }
+
+  private ScheduledExecutorService scheduler;
+
+  @Before
+  public void createScheduler() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @After
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private UnitHealer healer(JujuClient jujuClient, int parallelism) {
+    return new UnitHealer(
+        jujuClient, new JujuStatusWatcher(jujuClient, scheduler, 60), 2, 1, parallelism);
+  }
+
+  @Test
+  public void recoversAfterResolved() throws Exception {
+    HealingJujuClient jujuClient = new HealingJujuClient("web/0:error", "web/1");
+    jujuClient.recovering.add("web/0");
+    assertEquals("web/0", healer(jujuClient, 1).heal("web/0"));
+    assertEquals(Arrays.asList("status", "resolved web/0", "status"), jujuClient.getRequests());
+  }
+
+  @Test
+  public void replacedAfterTheLastAttempt() throws Exception {
+    HealingJujuClient jujuClient = new HealingJujuClient("web/0:error", "web/1");
+    assertEquals("web/2", healer(jujuClient, 1).heal("web/0"));
+    assertEquals(
+        Arrays.asList(
+            "status",
+            "resolved web/0",
+            "status",
+            "resolved web/0",
+            "status",
+            "add-unit web -n 1",
+            "status",
+            "remove-unit web/0",
+            "status"),
+        jujuClient.getRequests());
+    assertEquals(
+        new HashSet<>(Arrays.asList("web/1", "web/2")),
+        jujuClient.getStatus().getApplication("web").getUnits().keySet());
+  }
+
+  /** A blocked unit did not fail a hook, so juju resolved cannot help. */
+  @Test
+  public void blockedUnitIsReplacedRightAway() throws Exception {
+    HealingJujuClient jujuClient = new HealingJujuClient("web/0:blocked");
+    assertEquals("web/1", healer(jujuClient, 1).heal("web/0"));
+    assertEquals(
+        Arrays.asList("status", "add-unit web -n 1", "status", "remove-unit web/0", "status"),
+        jujuClient.getRequests());
+  }
+
+  @Test
+  public void healthyUnitIsLeftAlone() throws Exception {
+    HealingJujuClient jujuClient = new HealingJujuClient("web/0");
+    assertEquals("web/0", healer(jujuClient, 1).heal("web/0"));
+    assertEquals(Arrays.asList("status"), jujuClient.getRequests());
+  }
+
+  @Test
+  public void unknownUnit() throws Exception {
+    HealingJujuClient jujuClient = new HealingJujuClient("web/0");
+    try {
+      healer(jujuClient, 1).heal("web/7");
+      fail();
+    } catch (JujuException e) {
+      assertEquals("Unit web/7 does not exist", e.getMessage());
+    }
+  }
+
+  private int maxConcurrentResolves(HealingJujuClient jujuClient, int parallelism, String... units)
+      throws Exception {
+    jujuClient.resolveTime = 200;
+    for (String unit : units) jujuClient.recovering.add(unit);
+    final UnitHealer unitHealer = healer(jujuClient, parallelism);
+    ExecutorService callers = Executors.newFixedThreadPool(units.length);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (final String unit : units) {
+        results.add(
+            callers.submit(
+                new Callable<String>() {
+                  @Override
+                  public String call() throws Exception {
+                    return unitHealer.heal(unit);
+                  }
+                }));
+      }
+      for (int i = 0; i < units.length; i++) assertEquals(units[i], results.get(i).get());
+    } finally {
+      callers.shutdown();
+    }
+    return jujuClient.maxResolving.get();
+  }
+
+  @Test
+  public void parallelismIsLimitedPerApplication() throws Exception {
+    assertEquals(
+        1,
+        maxConcurrentResolves(
+            new HealingJujuClient("web/0:error", "web/1:error"), 1, "web/0", "web/1"));
+    assertEquals(
+        2,
+        maxConcurrentResolves(
+            new HealingJujuClient("web/0:error", "web/1:error"), 2, "web/0", "web/1"));
+    // other applications are not held up
+    assertEquals(
+        2,
+        maxConcurrentResolves(
+            new HealingJujuClient("web/0:error", "db/0:error"), 1, "web/0", "db/0"));
+  }
+}
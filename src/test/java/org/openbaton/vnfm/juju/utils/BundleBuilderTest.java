@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.yaml.snakeyaml.Yaml;
+
+import java.util.*;
+
+public class BundleBuilderTest {
+
+  private NetworkService createNetworkService() {
+    NetworkService networkService = new NetworkService();
+    networkService.setId("ns");
+    networkService.addVnfr(TestRecords.vnfr("ns", "mysql", "db", 2, "private"));
+    networkService.addVnfr(TestRecords.vnfr("ns", "web", "www", 3, "private"));
+    // charms from the charm store have no VNFCs the VNFM knows about
+    networkService.addVnfr(TestRecords.vnfr("ns", "haproxy", "lb", 0, "private"));
+    networkService.addCharm("haproxy");
+    networkService.addDependency("web", "mysql", Arrays.asList("password"));
+    networkService.addDependency("haproxy", "web", Arrays.asList("port"));
+    return networkService;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void bundleMatchesCharmsMode() {
+    NetworkService networkService = createNetworkService();
+    String yaml = new BundleBuilder("trusty").build(networkService, "/charms/ns");
+    Map<String, Object> bundle = (Map<String, Object>) new Yaml().load(yaml);
+    assertEquals("trusty", bundle.get("series"));
+
+    // charms mode runs juju deploy <dir> -n <VNFCs> for created charms and a plain juju deploy,
+    // which creates one unit, for charms from the charm store
+    Map<String, Map<String, Object>> applications =
+        (Map<String, Map<String, Object>>) bundle.get("applications");
+    assertEquals(3, applications.size());
+    assertEquals("/charms/ns/mysql", applications.get("mysql").get("charm"));
+    assertEquals(2, applications.get("mysql").get("num_units"));
+    assertEquals("/charms/ns/web", applications.get("web").get("charm"));
+    assertEquals(3, applications.get("web").get("num_units"));
+    assertEquals("haproxy", applications.get("haproxy").get("charm"));
+    assertEquals(1, applications.get("haproxy").get("num_units"));
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      assertEquals(
+          BundleBuilder.getNumberOfUnits(networkService, vnfr),
+          applications.get(vnfr.getName()).get("num_units"));
+      assertEquals(true, applications.get(vnfr.getName()).get("expose"));
+    }
+
+    // charms mode adds the relation <target>:<source> <source>:<source> per dependency
+    List<List<String>> relations = (List<List<String>>) bundle.get("relations");
+    assertEquals(
+        Arrays.asList(
+            Arrays.asList("web:mysql", "mysql:mysql"), Arrays.asList("haproxy:web", "web:web")),
+        relations);
+  }
+
+  @Test
+  public void numberOfUnits() {
+    NetworkService networkService = createNetworkService();
+    assertEquals(
+        2, BundleBuilder.getNumberOfUnits(networkService, networkService.getVnfrByName("mysql")));
+    assertEquals(
+        BundleBuilder.CHARM_STORE_UNITS,
+        BundleBuilder.getNumberOfUnits(networkService, networkService.getVnfrByName("haproxy")));
+  }
+}
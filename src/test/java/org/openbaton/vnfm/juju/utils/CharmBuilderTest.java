@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openbaton.catalogue.mano.common.Event;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openbaton.catalogue.nfvo.Script;
+import org.openbaton.catalogue.nfvo.VNFPackage;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+/**
+ * Compares the charms built by the CharmBuilder with the golden files in src/test/resources/charms.
+ * The golden files were generated by createCharm of the VNFM before the charm generation was moved
+ * into the CharmBuilder, with UTF-8 as the platform encoding. The original generator wrote the
+ * interfaces of a relation in HashSet order, so the entries of metadata.yaml are compared
+ * regardless of their order and all other files byte for byte. charms.txt lists the directories and
+ * files of the charms and whether the files are executable.
+ */
+public class CharmBuilderTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private NetworkService createNetworkService() {
+    NetworkService networkService = new NetworkService();
+    networkService.setId("ns");
+
+    VirtualNetworkFunctionRecord mysql =
+        TestRecords.vnfr("ns", "mysql", "db", 1, "private", "mgmt");
+    // the parameters are written into the hooks as UTF-8
+    TestRecords.addParameter(mysql, "pw", "s\u00e9cret \u2713");
+    TestRecords.addParameter(mysql, "user", "root");
+    TestRecords.addLifecycleEvent(mysql, Event.INSTANTIATE, "install.sh", "setup.sh");
+    TestRecords.addLifecycleEvent(mysql, Event.START, "start.sh");
+    TestRecords.addLifecycleEvent(mysql, Event.TERMINATE, "stop.sh");
+
+    VirtualNetworkFunctionRecord web = TestRecords.vnfr("ns", "web", "www", 1, "private");
+    TestRecords.addParameter(web, "port", "80");
+    TestRecords.addLifecycleEvent(web, Event.INSTANTIATE, "install.sh");
+    TestRecords.addLifecycleEvent(web, Event.CONFIGURE, "db_conf.sh", "local.sh", "db_more.sh");
+    TestRecords.addLifecycleEvent(web, Event.START, "start.sh");
+
+    VirtualNetworkFunctionRecord lb = TestRecords.vnfr("ns", "lb", "lbt", 1, "private", "public");
+    TestRecords.addLifecycleEvent(lb, Event.CONFIGURE, "www_conf.sh", "db_x.sh", "self.sh");
+    TestRecords.addLifecycleEvent(lb, Event.START, "go.sh");
+
+    VirtualNetworkFunctionRecord plain = TestRecords.vnfr("ns", "plain", "pl", 1, "private");
+    TestRecords.addParameter(plain, "k", "v");
+    TestRecords.addLifecycleEvent(plain, Event.CONFIGURE, "c1.sh");
+
+    networkService.addDependency("web", "mysql", Arrays.asList("pw", "user"));
+    networkService.addDependency("lb", "web", Arrays.asList("port"));
+    networkService.addDependency("lb", "mysql", Arrays.asList("pw"));
+    for (VirtualNetworkFunctionRecord vnfr : Arrays.asList(mysql, web, lb, plain)) {
+      networkService.addVnfr(vnfr);
+      VNFPackage vnfPackage = TestRecords.vnfPackage("install.sh");
+      Script binary = new Script();
+      binary.setName("bin.dat");
+      binary.setPayload(new byte[] {0, 1, 2, (byte) 255});
+      vnfPackage.getScripts().add(binary);
+      networkService.addVnfPackage(vnfPackage, vnfr.getName());
+    }
+    return networkService;
+  }
+
+  private void list(File root, String prefix, SortedMap<String, String> entries) {
+    for (File file : root.listFiles()) {
+      String path = prefix + file.getName();
+      if (file.isDirectory()) {
+        entries.put(path + "/", "dir");
+        list(file, path + "/", entries);
+      } else entries.put(path, file.canExecute() ? "executable" : "file");
+    }
+  }
+
+  @Test
+  public void charmsMatchGoldenFiles() throws Exception {
+    NetworkService networkService = createNetworkService();
+    CharmBuilder builder =
+        new CharmBuilder(
+            "/opt/openbaton/scripts",
+            "/var/log/openbaton/scriptsLog",
+            PosixFilePermissions.fromString("rwxrwxrwx"));
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      builder
+          .build(networkService, vnfr, networkService.getVnfPackage(vnfr.getName()))
+          .writeTo(new File(folder.getRoot(), vnfr.getName()));
+    }
+
+    SortedMap<String, String> entries = new TreeMap<>();
+    list(folder.getRoot(), "", entries);
+    StringBuilder tree = new StringBuilder();
+    for (Map.Entry<String, String> entry : entries.entrySet())
+      tree.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+    assertEquals(readResource("charms.txt"), tree.toString());
+
+    for (String path : entries.keySet()) {
+      if (path.endsWith("/")) continue;
+      if (path.endsWith("/metadata.yaml")) {
+        assertEquals(
+            path,
+            sortEntries(readLines(new File(getClass().getResource("/charms/" + path).toURI()))),
+            sortEntries(readLines(new File(folder.getRoot(), path))));
+        continue;
+      }
+      assertArrayEquals(
+          path,
+          readResourceBytes("charms/" + path),
+          Files.readAllBytes(new File(folder.getRoot(), path).toPath()));
+    }
+  }
+
+  private List<String> readLines(File file) throws Exception {
+    return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  private int indentation(String line) {
+    int indentation = 0;
+    while (indentation < line.length() && line.charAt(indentation) == ' ') indentation++;
+    return indentation;
+  }
+
+  /**
+   * Sort the entries of a block style YAML document recursively. An entry is a line together with
+   * the more indented lines following it.
+   *
+   * @param lines
+   * @return the sorted entries
+   */
+  private List<String> sortEntries(List<String> lines) {
+    List<String> entries = new ArrayList<>();
+    int start = 0;
+    while (start < lines.size()) {
+      int end = start + 1;
+      while (end < lines.size() && indentation(lines.get(end)) > indentation(lines.get(start)))
+        end++;
+      StringBuilder entry = new StringBuilder(lines.get(start)).append('\n');
+      for (String child : sortEntries(lines.subList(start + 1, end))) entry.append(child);
+      entries.add(entry.toString());
+      start = end;
+    }
+    Collections.sort(entries);
+    return entries;
+  }
+
+  private byte[] readResourceBytes(String name) throws Exception {
+    return Files.readAllBytes(new File(getClass().getResource("/" + name).toURI()).toPath());
+  }
+
+  private String readResource(String name) throws Exception {
+    return new String(readResourceBytes(name), StandardCharsets.UTF_8);
+  }
+}
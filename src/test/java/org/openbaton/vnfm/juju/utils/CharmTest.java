@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+public class CharmTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void appendsAreWrittenInOrder() throws Exception {
+    Charm charm = new Charm();
+    charm.append("hooks/install", "#!/bin/bash\n");
+    charm.append("metadata.yaml", "name: web\n");
+    charm.createFile("hooks/install").append("echo ").append("install", 0, 4).append('\n');
+    charm.append("hooks/install", "exit 0\n");
+    File charmDirectory = new File(folder.getRoot(), "web");
+    charm.writeTo(charmDirectory);
+
+    assertEquals(
+        "#!/bin/bash\necho inst\nexit 0\n", read(new File(charmDirectory, "hooks/install")));
+    assertEquals("name: web\n", read(new File(charmDirectory, "metadata.yaml")));
+  }
+
+  @Test
+  public void textAndBytesAreInterleaved() throws Exception {
+    Charm charm = new Charm();
+    byte[] payload = {0, (byte) 0xff, 10};
+    charm.append("scripts/install.sh", "before\n");
+    charm.append("scripts/install.sh", payload);
+    charm.append("scripts/install.sh", "after\n");
+    charm.writeTo(folder.getRoot());
+
+    byte[] written = Files.readAllBytes(new File(folder.getRoot(), "scripts/install.sh").toPath());
+    byte[] before = "before\n".getBytes(StandardCharsets.UTF_8);
+    byte[] after = "after\n".getBytes(StandardCharsets.UTF_8);
+    byte[] expected = new byte[before.length + payload.length + after.length];
+    System.arraycopy(before, 0, expected, 0, before.length);
+    System.arraycopy(payload, 0, expected, before.length, payload.length);
+    System.arraycopy(after, 0, expected, before.length + payload.length, after.length);
+    assertArrayEquals(expected, written);
+  }
+
+  @Test
+  public void directoriesAndPermissions() throws Exception {
+    Charm charm = new Charm();
+    Set<PosixFilePermission> executable = PosixFilePermissions.fromString("rwxr-xr-x");
+    charm.addDirectory("scripts");
+    charm.createFile("hooks/start");
+    charm.setPermissions("hooks/start", executable);
+    charm.append("hooks/start", "#!/bin/bash\n");
+    charm.append("README.md", "web");
+    charm.writeTo(folder.getRoot());
+
+    assertTrue(new File(folder.getRoot(), "scripts").isDirectory());
+    File start = new File(folder.getRoot(), "hooks/start");
+    assertEquals(executable, Files.getPosixFilePermissions(start.toPath()));
+    assertEquals("#!/bin/bash\n", read(start));
+    assertFalse(
+        Files.getPosixFilePermissions(new File(folder.getRoot(), "README.md").toPath())
+            .contains(PosixFilePermission.OWNER_EXECUTE));
+  }
+
+  @Test
+  public void existsAndEmptyFiles() throws Exception {
+    Charm charm = new Charm();
+    assertFalse(charm.exists("hooks/stop"));
+    charm.createFile("hooks/stop");
+    assertTrue(charm.exists("hooks/stop"));
+    charm.writeTo(folder.getRoot());
+    assertEquals(0, new File(folder.getRoot(), "hooks/stop").length());
+  }
+}
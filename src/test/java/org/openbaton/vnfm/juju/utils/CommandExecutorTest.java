@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class CommandExecutorTest {
+
+  private CommandExecutor commandExecutor;
+
+  @After
+  public void shutdown() {
+    if (commandExecutor != null) commandExecutor.shutdown();
+  }
+
+  @Test
+  public void outputAndExitStatus() throws Exception {
+    commandExecutor = new CommandExecutor(1, 10, 10, 4096);
+    assertEquals("hello\n", commandExecutor.execute("sh", "-c", "echo hello"));
+    try {
+      commandExecutor.execute("sh", "-c", "echo failed; exit 3");
+      fail();
+    } catch (CommandException e) {
+      assertEquals("failed\n", e.getOutput());
+      assertTrue(e.getMessage().contains("exit status 3"));
+    }
+    assertEquals(2, commandExecutor.getExecutedCommands());
+    assertEquals(1, commandExecutor.getFailedCommands());
+  }
+
+  @Test
+  public void lastPartOfTheOutputIsKept() throws Exception {
+    commandExecutor = new CommandExecutor(1, 10, 10, 8);
+    assertEquals(
+        "o\nthree\n", commandExecutor.execute("sh", "-c", "echo one; echo two; echo three"));
+  }
+
+  @Test
+  public void environment() throws Exception {
+    commandExecutor = new CommandExecutor(1, 10, 10, 4096);
+    assertEquals(
+        "value\n",
+        commandExecutor.execute(
+            Arrays.asList("sh", "-c", "echo $VARIABLE"),
+            Collections.singletonMap("VARIABLE", "value")));
+  }
+
+  @Test
+  public void timedOutProcessIsDestroyed() throws Exception {
+    commandExecutor = new CommandExecutor(1, 10, 1, 4096);
+    long start = System.nanoTime();
+    try {
+      commandExecutor.execute("sleep", "30");
+      fail();
+    } catch (CommandException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    assertEquals(1, commandExecutor.getTimedOutCommands());
+    // the worker is free again once the process is destroyed
+    assertEquals("", commandExecutor.execute("true"));
+  }
+
+  /**
+   * Two commands that each take most of the timeout share a single thread. The second one waits for
+   * the first in the queue and would time out if the queue wait counted against its timeout.
+   */
+  @Test
+  public void timeoutStartsWhenTheProcessIsSpawned() throws Exception {
+    commandExecutor = new CommandExecutor(1, 10, 2, 4096);
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        results.add(
+            callers.submit(
+                new Callable<String>() {
+                  @Override
+                  public String call() throws Exception {
+                    return commandExecutor.execute("sleep", "1.5");
+                  }
+                }));
+      }
+      for (Future<String> result : results) assertEquals("", result.get());
+    } finally {
+      callers.shutdown();
+    }
+    assertEquals(0, commandExecutor.getTimedOutCommands());
+    assertTrue(commandExecutor.getMaxQueueWaitMillis() >= 1000);
+    assertTrue(commandExecutor.getMaxLatencyMillis() < 2000);
+  }
+
+  @Test
+  public void rejectedWhenTheQueueIsFull() throws Exception {
+    commandExecutor = new CommandExecutor(1, 1, 10, 4096);
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      for (int i = 0; i < 2; i++) {
+        callers.submit(
+            new Callable<String>() {
+              @Override
+              public String call() throws Exception {
+                return commandExecutor.execute("sleep", "1");
+              }
+            });
+      }
+      while (commandExecutor.getQueueDepth() == 0) Thread.sleep(10);
+      try {
+        commandExecutor.execute("true");
+        fail();
+      } catch (CommandException e) {
+        assertEquals(null, e.getOutput());
+      }
+      assertEquals(1, commandExecutor.getRejectedCommands());
+    } finally {
+      callers.shutdown();
+      callers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/** Runs the GitRepositoryCache against local repositories that are cloned over file:// urls. */
+public class GitRepositoryCacheTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private CommandExecutor commandExecutor;
+
+  @Before
+  public void setUp() {
+    commandExecutor = new CommandExecutor(2, 10, 60000, 4096);
+  }
+
+  @After
+  public void tearDown() {
+    commandExecutor.shutdown();
+  }
+
+  /**
+   * Create a repository containing the passed file.
+   *
+   * @param name
+   * @param file
+   * @param content
+   * @return the directory of the repository
+   */
+  private File createRepository(String name, String file, String content) throws Exception {
+    File repository = folder.newFolder(name);
+    git(repository, "init", "-q");
+    commit(repository, file, content);
+    return repository;
+  }
+
+  private static String url(File repository) {
+    return "file://" + repository.getAbsolutePath();
+  }
+
+  private String commit(File repository, String file, String content) throws Exception {
+    Files.write(new File(repository, file).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    git(repository, "add", file);
+    git(
+        repository,
+        "-c",
+        "user.name=test",
+        "-c",
+        "user.email=test@openbaton.org",
+        "commit",
+        "-q",
+        "-m",
+        "change " + file);
+    return git(repository, "rev-parse", "HEAD").trim();
+  }
+
+  private String git(File directory, String... arguments) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.add("-C");
+    command.add(directory.getAbsolutePath());
+    command.addAll(Arrays.asList(arguments));
+    return commandExecutor.execute(command, null);
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void checkoutAndUpdate() throws Exception {
+    File repository = createRepository("scripts", "install.sh", "echo install");
+    String url = url(repository);
+    File cacheDirectory = folder.newFolder("cache");
+    GitRepositoryCache cache =
+        new GitRepositoryCache(cacheDirectory, 100 * 1024 * 1024, commandExecutor);
+
+    File first = folder.newFolder("first");
+    cache.checkout(url, first);
+    assertEquals("echo install", read(new File(first, "install.sh")));
+    assertFalse(new File(first, ".git").exists());
+    assertEquals(1, cacheDirectory.list().length);
+
+    // the mirror is fetched before the next checkout
+    String revision = commit(repository, "start.sh", "echo start");
+    assertEquals(revision, cache.getRevision(url));
+    File second = folder.newFolder("second");
+    cache.checkout(url, second);
+    assertEquals("echo start", read(new File(second, "start.sh")));
+    assertEquals(1, cacheDirectory.list().length);
+  }
+
+  @Test
+  public void checkoutOfResolvedRevision() throws Exception {
+    File repository = createRepository("scripts", "install.sh", "echo install");
+    String url = url(repository);
+    GitRepositoryCache cache =
+        new GitRepositoryCache(folder.newFolder("cache"), 100 * 1024 * 1024, commandExecutor);
+    String revision = cache.getRevision(url);
+
+    // a commit pushed after the revision was resolved is neither fetched nor checked out
+    commit(repository, "install.sh", "echo changed");
+    File checkout = folder.newFolder("checkout");
+    cache.checkout(url, revision, checkout);
+    assertEquals("echo install", read(new File(checkout, "install.sh")));
+
+    File latest = folder.newFolder("latest");
+    assertEquals(git(repository, "rev-parse", "HEAD").trim(), cache.checkout(url, latest));
+    assertEquals("echo changed", read(new File(latest, "install.sh")));
+  }
+
+  @Test
+  public void leastRecentlyUsedMirrorIsEvicted() throws Exception {
+    String first = url(createRepository("first", "install.sh", "echo first"));
+    String second = url(createRepository("second", "install.sh", "echo second"));
+    File cacheDirectory = folder.newFolder("cache");
+    new GitRepositoryCache(cacheDirectory, Long.MAX_VALUE, commandExecutor)
+        .checkout(first, folder.newFolder("a"));
+    File firstMirror = cacheDirectory.listFiles()[0];
+    firstMirror.setLastModified(System.currentTimeMillis() - 60000);
+    // there is room for one mirror only
+    GitRepositoryCache cache =
+        new GitRepositoryCache(
+            cacheDirectory, FileUtils.getSize(firstMirror) * 3 / 2, commandExecutor);
+
+    cache.checkout(second, folder.newFolder("b"));
+    assertEquals(1, cacheDirectory.list().length);
+    assertFalse(firstMirror.exists());
+    File secondMirror = cacheDirectory.listFiles()[0];
+    secondMirror.setLastModified(System.currentTimeMillis() - 60000);
+
+    // the evicted repository is mirrored again
+    File checkout = folder.newFolder("c");
+    cache.checkout(first, checkout);
+    assertEquals("echo first", read(new File(checkout, "install.sh")));
+    assertFalse(secondMirror.exists());
+  }
+
+  @Test
+  public void unfinishedMirrorsAreRemoved() throws Exception {
+    File cacheDirectory = folder.newFolder("cache");
+    File unfinished = new File(cacheDirectory, "0123.tmp");
+    assertTrue(new File(unfinished, "objects").mkdirs());
+    new GitRepositoryCache(cacheDirectory, 1024, commandExecutor);
+    assertFalse(unfinished.exists());
+  }
+
+  @Test
+  public void unknownRepository() throws Exception {
+    GitRepositoryCache cache =
+        new GitRepositoryCache(folder.newFolder("cache"), 1024 * 1024, commandExecutor);
+    try {
+      cache.checkout(url(new File(folder.getRoot(), "missing")), folder.newFolder());
+      fail("expected an IOException");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+    }
+    assertEquals(0, new File(folder.getRoot(), "cache").list().length);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class HashRingTest {
+
+  private static final int KEYS = 10000;
+
+  /**
+   * Returns the owner of every key.
+   *
+   * @param ring
+   * @return <key, owner>
+   */
+  private Map<String, String> owners(HashRing ring) {
+    Map<String, String> owners = new HashMap<>();
+    for (int i = 0; i < KEYS; i++) owners.put("ns-" + i, ring.getOwner("ns-" + i));
+    return owners;
+  }
+
+  private Map<String, Integer> count(Map<String, String> owners) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (String owner : owners.values()) {
+      Integer count = counts.get(owner);
+      counts.put(owner, count == null ? 1 : count + 1);
+    }
+    return counts;
+  }
+
+  @Test
+  public void emptyRingHasNoOwner() {
+    HashRing ring = new HashRing(Collections.<String>emptyList(), 160);
+    assertNull(ring.getOwner("ns"));
+    assertTrue(ring.getMembers().isEmpty());
+  }
+
+  @Test
+  public void singleMemberOwnsEverything() {
+    assertEquals(
+        Collections.singletonMap("a", KEYS), count(owners(new HashRing(Arrays.asList("a"), 160))));
+  }
+
+  @Test
+  public void ownersDoNotDependOnTheOrderOfTheMembers() {
+    HashRing ring = new HashRing(Arrays.asList("c", "a", "b", "a"), 160);
+    assertEquals(Arrays.asList("a", "b", "c"), ring.getMembers());
+    assertEquals(owners(new HashRing(Arrays.asList("a", "b", "c"), 160)), owners(ring));
+  }
+
+  @Test
+  public void membersAreUnmodifiable() {
+    try {
+      new HashRing(Arrays.asList("a"), 160).getMembers().add("b");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void keysAreSpreadEvenly() {
+    Map<String, Integer> counts =
+        count(owners(new HashRing(Arrays.asList("a", "b", "c", "d"), 160)));
+    assertEquals(4, counts.size());
+    for (int count : counts.values()) {
+      assertTrue(String.valueOf(counts), count > KEYS / 4 * 0.8 && count < KEYS / 4 * 1.2);
+    }
+  }
+
+  @Test
+  public void joiningMemberOnlyTakesKeys() {
+    Map<String, String> before = owners(new HashRing(Arrays.asList("a", "b", "c"), 160));
+    Map<String, String> after = owners(new HashRing(Arrays.asList("a", "b", "c", "d"), 160));
+    int moved = 0;
+    for (String key : before.keySet()) {
+      if (before.get(key).equals(after.get(key))) continue;
+      // keys only move to the new member, never between the old ones
+      assertEquals("d", after.get(key));
+      moved++;
+    }
+    assertTrue(String.valueOf(moved), moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2);
+  }
+
+  @Test
+  public void leavingMemberOnlyGivesUpItsKeys() {
+    Map<String, String> before = owners(new HashRing(Arrays.asList("a", "b", "c", "d"), 160));
+    Map<String, String> after = owners(new HashRing(Arrays.asList("a", "b", "d"), 160));
+    Map<String, Integer> takenOver = new HashMap<>();
+    for (String key : before.keySet()) {
+      if (before.get(key).equals("c")) {
+        Integer count = takenOver.get(after.get(key));
+        takenOver.put(after.get(key), count == null ? 1 : count + 1);
+      } else assertEquals(before.get(key), after.get(key));
+    }
+    // the keys of the member that left are spread over all the remaining ones
+    assertEquals(new HashSet<>(Arrays.asList("a", "b", "d")), takenOver.keySet());
+  }
+}
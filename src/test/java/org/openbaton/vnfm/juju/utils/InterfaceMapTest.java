@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class InterfaceMapTest {
+
+  private List<String> pairs(InterfaceMap map) {
+    List<String> pairs = new ArrayList<>();
+    for (Map.Entry<String, String> entry : map.entrySet())
+      pairs.add(entry.getKey() + "=" + entry.getValue());
+    return pairs;
+  }
+
+  @Test
+  public void duplicateKeysAreKept() {
+    InterfaceMap map = new InterfaceMap();
+    assertTrue(map.isEmpty());
+    map.put("mysql", "mysql");
+    map.put("web", "http");
+    map.put("mysql", "mysql-root");
+    assertEquals(3, map.size());
+    assertFalse(map.isEmpty());
+    assertEquals(Arrays.asList("mysql", "mysql-root"), map.getAll("mysql"));
+    assertEquals(Collections.emptyList(), map.getAll("lb"));
+    assertTrue(map.containsKey("web"));
+    assertTrue(map.containsValue("mysql-root"));
+    assertFalse(map.containsValue("lb"));
+    // entries are grouped by key, in the order the keys were added
+    assertEquals(Arrays.asList("mysql=mysql", "mysql=mysql-root", "web=http"), pairs(map));
+  }
+
+  @Test
+  public void duplicatePairsAreIgnored() {
+    InterfaceMap map = new InterfaceMap();
+    map.put("mysql", "mysql");
+    map.put("mysql", "mysql");
+    map.put("web", "http");
+    map.put("web", "http");
+    assertEquals(2, map.size());
+    assertEquals(Collections.singletonList("mysql"), map.getAll("mysql"));
+    assertEquals(2, map.entrySet().size());
+    assertEquals(Arrays.asList("mysql=mysql", "web=http"), pairs(map));
+  }
+
+  @Test
+  public void viewsFollowTheMap() {
+    InterfaceMap map = new InterfaceMap();
+    Collection<String> values = map.values();
+    Set<Map.Entry<String, String>> entries = map.entrySet();
+    assertTrue(values.isEmpty());
+    assertFalse(entries.iterator().hasNext());
+
+    map.put("mysql", "mysql");
+    map.put("mysql", "mysql-root");
+    map.put("web", "http");
+    assertEquals(3, values.size());
+    assertEquals(3, entries.size());
+    assertEquals(Arrays.asList("mysql", "mysql-root", "http"), new ArrayList<>(values));
+    assertEquals(
+        new AbstractMap.SimpleImmutableEntry<>("mysql", "mysql-root"),
+        new ArrayList<>(entries).get(1));
+    assertEquals(Arrays.asList("mysql", "web"), new ArrayList<>(map.keySet()));
+  }
+
+  @Test
+  public void viewsAreReadOnly() {
+    InterfaceMap map = new InterfaceMap();
+    map.put("mysql", "mysql");
+    Iterator<String> values = map.values().iterator();
+    values.next();
+    assertFalse(values.hasNext());
+    try {
+      values.remove();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      values.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+    try {
+      map.keySet().remove("mysql");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      map.getAll("mysql").add("other");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+}
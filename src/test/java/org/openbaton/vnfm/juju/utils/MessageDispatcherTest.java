@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class MessageDispatcherTest {
+
+  /** Runs the handed over mailboxes only when asked to, so that the tests control the order. */
+  private static class ManualExecutor implements Executor {
+
+    private Queue<Runnable> queue = new LinkedList<>();
+    private boolean shutdown = false;
+
+    @Override
+    public void execute(Runnable command) {
+      if (shutdown) throw new RejectedExecutionException("executor is shut down");
+      queue.add(command);
+    }
+
+    private void runAll() {
+      Runnable r;
+      while ((r = queue.poll()) != null) r.run();
+    }
+  }
+
+  private static Runnable record(final List<String> log, final String entry) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        log.add(entry);
+      }
+    };
+  }
+
+  @Test
+  public void tasksOfOneKeyRunInOrder() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    MessageDispatcher dispatcher = new MessageDispatcher(executor);
+    final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+    for (int i = 0; i < 100; i++) {
+      dispatcher.dispatch("ns-a", record(log, "a" + i));
+      dispatcher.dispatch("ns-b", record(log, "b" + i));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    List<String> a = new ArrayList<>();
+    List<String> b = new ArrayList<>();
+    for (String entry : log) (entry.startsWith("a") ? a : b).add(entry);
+    for (int i = 0; i < 100; i++) {
+      assertEquals("a" + i, a.get(i));
+      assertEquals("b" + i, b.get(i));
+    }
+    assertEquals(0, dispatcher.getActiveMailboxes());
+  }
+
+  @Test
+  public void holdDelaysFollowingTasks() {
+    ManualExecutor executor = new ManualExecutor();
+    final MessageDispatcher dispatcher = new MessageDispatcher(executor);
+    final List<String> log = new ArrayList<>();
+    final SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+    dispatcher.dispatch(
+        "ns",
+        new Runnable() {
+          @Override
+          public void run() {
+            log.add("first");
+            dispatcher.holdUntil(future);
+          }
+        });
+    dispatcher.dispatch("ns", record(log, "second"));
+    dispatcher.dispatch("other", record(log, "other"));
+    executor.runAll();
+    assertEquals(Arrays.asList("first", "other"), log);
+    assertEquals(1, dispatcher.getActiveMailboxes());
+
+    future.set(null);
+    executor.runAll();
+    assertEquals(Arrays.asList("first", "other", "second"), log);
+    assertEquals(0, dispatcher.getActiveMailboxes());
+  }
+
+  @Test
+  public void taskAfterHoldRunsBeforeFollowingTasks() {
+    ManualExecutor executor = new ManualExecutor();
+    final MessageDispatcher dispatcher = new MessageDispatcher(executor);
+    final List<String> log = new ArrayList<>();
+    final SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+    dispatcher.dispatch(
+        "ns",
+        new Runnable() {
+          @Override
+          public void run() {
+            log.add("first");
+            dispatcher.holdUntil(future, record(log, "retry"));
+          }
+        });
+    dispatcher.dispatch("ns", record(log, "second"));
+    executor.runAll();
+    assertEquals(Collections.singletonList("first"), log);
+
+    future.setException(new IllegalStateException("gave up"));
+    executor.runAll();
+    assertEquals(Arrays.asList("first", "retry", "second"), log);
+    assertEquals(0, dispatcher.getActiveMailboxes());
+  }
+
+  @Test
+  public void rejectedMailboxIsDropped() {
+    ManualExecutor executor = new ManualExecutor();
+    MessageDispatcher dispatcher = new MessageDispatcher(executor);
+    List<String> log = new ArrayList<>();
+    executor.shutdown = true;
+    dispatcher.dispatch("ns", record(log, "dropped"));
+    assertEquals(0, dispatcher.getActiveMailboxes());
+
+    // a later dispatch for the same key is scheduled again instead of waiting for the dead mailbox
+    executor.shutdown = false;
+    dispatcher.dispatch("ns", record(log, "run"));
+    executor.runAll();
+    assertEquals(Collections.singletonList("run"), log);
+    assertEquals(0, dispatcher.getActiveMailboxes());
+  }
+
+  @Test
+  public void rejectedReleaseDropsWaitingTasks() {
+    ManualExecutor executor = new ManualExecutor();
+    final MessageDispatcher dispatcher = new MessageDispatcher(executor);
+    final List<String> log = new ArrayList<>();
+    final SettableListenableFuture<Void> future = new SettableListenableFuture<>();
+    dispatcher.dispatch(
+        "ns",
+        new Runnable() {
+          @Override
+          public void run() {
+            dispatcher.holdUntil(future);
+          }
+        });
+    dispatcher.dispatch("ns", record(log, "waiting"));
+    executor.runAll();
+
+    executor.shutdown = true;
+    future.set(null);
+    assertEquals(0, dispatcher.getActiveMailboxes());
+    assertTrue(log.isEmpty());
+  }
+}
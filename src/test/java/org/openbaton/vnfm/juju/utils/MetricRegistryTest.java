@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class MetricRegistryTest {
+
+  private static final String DOMAIN = "org.openbaton.vnfm.juju.test";
+
+  private MetricRegistry metricRegistry;
+
+  @After
+  public void shutdown() {
+    if (metricRegistry != null) metricRegistry.shutdown();
+  }
+
+  private static String lines(String... lines) {
+    StringBuilder text = new StringBuilder();
+    for (String line : lines) text.append(line).append('\n');
+    return text.toString();
+  }
+
+  @Test
+  public void timersAreCreatedOnce() {
+    metricRegistry = new MetricRegistry(null, "juju_");
+    assertSame(metricRegistry.timer("deploy"), metricRegistry.timer("deploy"));
+  }
+
+  @Test
+  public void prometheusText() {
+    metricRegistry = new MetricRegistry(null, "juju_");
+    metricRegistry.timer("charm.build").update(TimeUnit.MILLISECONDS.toNanos(3));
+    metricRegistry.timer("charm.build").update(TimeUnit.MILLISECONDS.toNanos(1500));
+    metricRegistry.gauge(
+        "Queue Depth",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return 7;
+          }
+        });
+    StringBuilder out = new StringBuilder();
+    metricRegistry.write(out);
+    String text = out.toString();
+
+    assertTrue(text.startsWith("# TYPE juju_charm_build_seconds histogram\n"));
+    assertTrue(
+        text.contains(
+            lines(
+                "juju_charm_build_seconds_bucket{le=\"0.002\"} 0",
+                "juju_charm_build_seconds_bucket{le=\"0.005\"} 1")));
+    assertTrue(
+        text.contains(
+            lines(
+                "juju_charm_build_seconds_bucket{le=\"1.0\"} 1",
+                "juju_charm_build_seconds_bucket{le=\"2.0\"} 2")));
+    assertTrue(
+        text.contains(
+            lines(
+                "juju_charm_build_seconds_bucket{le=\"+Inf\"} 2",
+                "juju_charm_build_seconds_sum 1.503",
+                "juju_charm_build_seconds_count 2")));
+    assertTrue(text.endsWith(lines("# TYPE juju_queue_depth gauge", "juju_queue_depth 7")));
+  }
+
+  @Test
+  public void mxBeansAreRegisteredUntilShutdown() throws Exception {
+    metricRegistry = new MetricRegistry(DOMAIN, "juju_");
+    metricRegistry.timer("deploy").update(TimeUnit.MILLISECONDS.toNanos(10));
+    metricRegistry.gauge(
+        "queue",
+        new MetricRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return 3;
+          }
+        });
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName timer = new ObjectName(DOMAIN + ":type=Timer,name=\"deploy\"");
+    ObjectName gauge = new ObjectName(DOMAIN + ":type=Gauge,name=\"queue\"");
+    assertEquals(1L, server.getAttribute(timer, "Count"));
+    assertEquals(3L, server.getAttribute(gauge, "Value"));
+
+    metricRegistry.shutdown();
+    assertFalse(server.isRegistered(timer));
+    assertFalse(server.isRegistered(gauge));
+  }
+
+  @Test
+  public void httpServer() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    metricRegistry = new MetricRegistry(null, "juju_");
+    metricRegistry.timer("deploy").update(TimeUnit.MILLISECONDS.toNanos(10));
+    metricRegistry.startHttpServer("127.0.0.1", port);
+
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+    assertEquals(200, connection.getResponseCode());
+    assertTrue(connection.getContentType().startsWith("text/plain"));
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (InputStream in = connection.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      for (int n; (n = in.read(buffer)) > 0; ) body.write(buffer, 0, n);
+    }
+    StringBuilder expected = new StringBuilder();
+    metricRegistry.write(expected);
+    assertEquals(expected.toString(), body.toString("UTF-8"));
+  }
+}
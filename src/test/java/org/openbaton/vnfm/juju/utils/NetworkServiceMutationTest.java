@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openbaton.catalogue.mano.record.Status;
+import org.openbaton.catalogue.mano.record.VNFCInstance;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+
+import java.util.*;
+
+public class NetworkServiceMutationTest {
+
+  private VirtualNetworkFunctionRecord vnfr(String... units) {
+    VirtualNetworkFunctionRecord vnfr = TestRecords.vnfr("ns", "web", "www", 0, "private");
+    Set<VNFCInstance> vnfcInstances = new LinkedHashSet<>();
+    for (String unit : units) {
+      VNFCInstance vnfcInstance = new VNFCInstance();
+      vnfcInstance.setVc_id(unit);
+      vnfcInstance.setState("INACTIVE");
+      vnfcInstances.add(vnfcInstance);
+    }
+    vnfr.getVdu().iterator().next().setVnfc_instance(vnfcInstances);
+    return vnfr;
+  }
+
+  private Map<String, String> getStates(VirtualNetworkFunctionRecord vnfr) {
+    Map<String, String> states = new HashMap<>();
+    for (VNFCInstance vnfcInstance : vnfr.getVdu().iterator().next().getVnfc_instance())
+      states.put(vnfcInstance.getVc_id(), vnfcInstance.getState());
+    return states;
+  }
+
+  @Test
+  public void statusUpdateReachesReplacedVnfr() {
+    NetworkService networkService = new NetworkService();
+    networkService.setId("ns");
+    networkService.addVnfr(vnfr("web/0"));
+    VirtualNetworkFunctionRecord replacement = vnfr("web/0", "web/1");
+    networkService.replaceVnfr(replacement);
+
+    Map<String, String> unitStates = new HashMap<>();
+    unitStates.put("web/0", "ACTIVE");
+    unitStates.put("web/1", "ERROR");
+    unitStates.put("web/2", "ACTIVE");
+    NetworkServiceMutation.UpdateVnfrStatus update =
+        new NetworkServiceMutation.UpdateVnfrStatus("ns", "id-web", Status.ERROR, unitStates);
+    assertTrue(update.changes(replacement));
+    update.apply(networkService);
+
+    assertEquals(Status.ERROR, replacement.getStatus());
+    Map<String, String> expected = new HashMap<>();
+    expected.put("web/0", "ACTIVE");
+    expected.put("web/1", "ERROR");
+    assertEquals(expected, getStates(replacement));
+    assertFalse(update.changes(replacement));
+  }
+
+  @Test
+  public void statusIsKeptWithoutUpdate() {
+    VirtualNetworkFunctionRecord vnfr = vnfr("web/0");
+    vnfr.setStatus(Status.ACTIVE);
+    NetworkServiceMutation.UpdateVnfrStatus update =
+        new NetworkServiceMutation.UpdateVnfrStatus(
+            "ns", "id-web", null, Collections.singletonMap("web/0", "INACTIVE"));
+    assertFalse(update.changes(vnfr));
+    update.applyTo(vnfr);
+    assertEquals(Status.ACTIVE, vnfr.getStatus());
+  }
+
+  @Test
+  public void describedNetworkServiceIsRebuilt() {
+    NetworkService networkService = TestRecords.networkService("ns", 5);
+    networkService.setVnfStatus("vnf0", VnfState.STARTED);
+    networkService.setModel("controller:ns");
+    networkService.addCharm("haproxy");
+
+    NetworkService rebuilt = new NetworkService();
+    rebuilt.setId("ns");
+    for (NetworkServiceMutation mutation : NetworkServiceMutation.describe(networkService))
+      mutation.apply(rebuilt);
+    assertEquals(networkService.getVnfrList(), rebuilt.getVnfrList());
+    assertEquals(networkService.getDependencies(), rebuilt.getDependencies());
+    assertEquals(networkService.getVnfStatusMap(), rebuilt.getVnfStatusMap());
+    assertEquals(networkService.getVnfPackageMap(), rebuilt.getVnfPackageMap());
+    assertEquals(networkService.getCharms(), rebuilt.getCharms());
+    assertEquals("controller:ns", rebuilt.getModel());
+  }
+}
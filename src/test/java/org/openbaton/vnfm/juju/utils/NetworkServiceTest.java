@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openbaton.catalogue.mano.descriptor.VirtualNetworkFunctionDescriptor;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+
+import java.util.*;
+
+public class NetworkServiceTest {
+
+  @Test
+  public void dependencyQueries() {
+    NetworkService networkService = new NetworkService();
+    networkService.addDependency("web", "mysql", Arrays.asList("password", "user"));
+    networkService.addDependency("lb", "web", Arrays.asList("port"));
+    networkService.addDependency("lb", "mysql", Arrays.asList("user"));
+
+    assertTrue(networkService.vnfIsSource("mysql"));
+    assertFalse(networkService.vnfIsTarget("mysql"));
+    assertTrue(networkService.vnfIsSource("web"));
+    assertTrue(networkService.vnfIsTarget("web"));
+    assertFalse(networkService.vnfIsSource("lb"));
+    assertTrue(networkService.vnfHasDependencies("lb"));
+    assertFalse(networkService.vnfHasDependencies("plain"));
+
+    Map<String, List<String>> targets = new HashMap<>();
+    targets.put("web", Arrays.asList("password", "user"));
+    targets.put("lb", Arrays.asList("user"));
+    assertEquals(targets, networkService.getTargetsOfVnf("mysql"));
+    assertEquals(Collections.emptyMap(), networkService.getTargetsOfVnf("lb"));
+    assertEquals(
+        new HashSet<>(Arrays.asList("password", "user")), networkService.getProvidesOfVnf("mysql"));
+    assertEquals(Collections.emptySet(), networkService.getProvidesOfVnf("lb"));
+    assertEquals(
+        new HashSet<>(Arrays.asList("web", "mysql")),
+        new HashSet<>(networkService.getSourcesNames("lb")));
+    assertEquals(Arrays.asList("port"), networkService.getParameters("web", "lb"));
+  }
+
+  @Test
+  public void replacedDependency() {
+    NetworkService networkService = new NetworkService();
+    networkService.addDependency("web", "mysql", Arrays.asList("password"));
+    networkService.addDependency("web", "mysql", Arrays.asList("port"));
+    assertEquals(Arrays.asList("port"), networkService.getParameters("mysql", "web"));
+    assertEquals(
+        Collections.singletonMap("web", Arrays.asList("port")),
+        networkService.getTargetsOfVnf("mysql"));
+    assertEquals(Collections.singleton("port"), networkService.getProvidesOfVnf("mysql"));
+  }
+
+  @Test
+  public void setDependenciesRebuildsReverseIndex() {
+    NetworkService networkService = new NetworkService();
+    networkService.addDependency("web", "mysql", Arrays.asList("password"));
+
+    Map<String, Map<String, List<String>>> dependencies = new HashMap<>();
+    dependencies.put("lb", new HashMap<String, List<String>>());
+    dependencies.get("lb").put("web", Arrays.asList("port"));
+    networkService.setDependencies(dependencies);
+
+    assertFalse(networkService.vnfIsSource("mysql"));
+    assertFalse(networkService.vnfIsTarget("web"));
+    assertTrue(networkService.vnfIsSource("web"));
+    assertEquals(Collections.singleton("port"), networkService.getProvidesOfVnf("web"));
+  }
+
+  /** Compare the reverse index with a scan of all dependencies, as it was computed before. */
+  @Test
+  public void reverseIndexMatchesScan() {
+    NetworkService networkService = TestRecords.networkService("ns", 50);
+    Map<String, Map<String, List<String>>> dependencies = networkService.getDependencies();
+    for (VirtualNetworkFunctionRecord vnfr : networkService.getVnfrList()) {
+      String name = vnfr.getName();
+      Map<String, List<String>> targets = new HashMap<>();
+      Set<String> provides = new HashSet<>();
+      for (Map.Entry<String, Map<String, List<String>>> entry : dependencies.entrySet()) {
+        if (entry.getValue().containsKey(name)) {
+          targets.put(entry.getKey(), entry.getValue().get(name));
+          provides.addAll(entry.getValue().get(name));
+        }
+      }
+      assertEquals(name, !targets.isEmpty(), networkService.vnfIsSource(name));
+      assertEquals(name, targets, networkService.getTargetsOfVnf(name));
+      assertEquals(name, provides, networkService.getProvidesOfVnf(name));
+    }
+  }
+
+  private void assertCounts(NetworkService networkService, int... counts) {
+    for (VnfState state : VnfState.values())
+      assertEquals(state.toString(), counts[state.ordinal()], networkService.getVnfCount(state));
+  }
+
+  @Test
+  public void stateTransitions() {
+    NetworkService networkService = new NetworkService();
+    networkService.setVnfStatus("mysql", VnfState.INSTANTIATED);
+    networkService.setVnfStatus("web", VnfState.INSTANTIATED);
+    assertCounts(networkService, 2, 0, 0, 0);
+    assertEquals(Arrays.asList("mysql", "web"), new ArrayList<>(networkService.getPendingVnfs()));
+    assertFalse(networkService.isReadyToDeploy());
+
+    networkService.setVnfStatus("web", VnfState.MODIFIED);
+    networkService.setVnfStatus("mysql", VnfState.STARTED);
+    assertCounts(networkService, 0, 1, 1, 0);
+    assertEquals(Collections.singleton("web"), networkService.getPendingVnfs());
+
+    // setting the same state again does not count the VNF twice
+    networkService.setVnfStatus("mysql", VnfState.STARTED);
+    networkService.setVnfStatus("web", VnfState.MODIFIED);
+    assertCounts(networkService, 0, 1, 1, 0);
+
+    networkService.setVnfStatus("web", VnfState.STARTED);
+    assertCounts(networkService, 0, 0, 2, 0);
+    assertTrue(networkService.getPendingVnfs().isEmpty());
+    assertTrue(networkService.isReadyToDeploy());
+    assertEquals(VnfState.STARTED, networkService.getVnfStatusMap().get("web"));
+  }
+
+  @Test
+  public void releasedVnfsAreCounted() {
+    NetworkService networkService = new NetworkService();
+    networkService.setVnfStatus("mysql", VnfState.STARTED);
+    networkService.setVnfStatus("web", VnfState.STARTED);
+    networkService.setVnfStatus("mysql", VnfState.RELEASED);
+    assertCounts(networkService, 0, 0, 1, 1);
+    assertFalse(networkService.isReleased());
+    networkService.setVnfStatus("mysql", VnfState.RELEASED);
+    assertEquals(1, networkService.getVnfCount(VnfState.RELEASED));
+    assertFalse(networkService.isReleased());
+    networkService.setVnfStatus("web", VnfState.RELEASED);
+    assertCounts(networkService, 0, 0, 0, 2);
+    assertTrue(networkService.isReleased());
+    // a released VNF is not started anymore
+    assertEquals(
+        new HashSet<>(Arrays.asList("mysql", "web")),
+        new HashSet<>(networkService.getPendingVnfs()));
+  }
+
+  @Test
+  public void setVnfStatusMapRebuildsTheCounters() {
+    NetworkService networkService = new NetworkService();
+    networkService.setVnfStatus("old", VnfState.INSTANTIATED);
+    Map<String, VnfState> states = new HashMap<>();
+    states.put("mysql", VnfState.STARTED);
+    states.put("web", VnfState.MODIFIED);
+    states.put("lb", VnfState.RELEASED);
+    networkService.setVnfStatusMap(states);
+    assertEquals(states, networkService.getVnfStatusMap());
+    assertCounts(networkService, 0, 1, 1, 1);
+    assertEquals(
+        new HashSet<>(Arrays.asList("web", "lb")), new HashSet<>(networkService.getPendingVnfs()));
+    // the passed map is copied
+    states.put("mysql", VnfState.RELEASED);
+    assertEquals(VnfState.STARTED, networkService.getVnfStatusMap().get("mysql"));
+  }
+
+  @Test
+  public void emptyNetworkService() {
+    NetworkService networkService = new NetworkService();
+    assertCounts(networkService, 0, 0, 0, 0);
+    assertTrue(networkService.getPendingVnfs().isEmpty());
+    assertTrue(networkService.isReadyToDeploy());
+    assertTrue(networkService.isReleased());
+  }
+
+  private VirtualNetworkFunctionDescriptor vnfd(String id, String name) {
+    VirtualNetworkFunctionDescriptor vnfd = new VirtualNetworkFunctionDescriptor();
+    vnfd.setId(id);
+    vnfd.setName(name);
+    return vnfd;
+  }
+
+  private VirtualNetworkFunctionRecord vnfr(String id, String name) {
+    VirtualNetworkFunctionRecord vnfr = TestRecords.vnfr("ns", name, name, 1);
+    vnfr.setId(id);
+    return vnfr;
+  }
+
+  @Test
+  public void vnfdsAreDeduplicatedById() {
+    NetworkService networkService = new NetworkService();
+    VirtualNetworkFunctionDescriptor mysql = vnfd("1", "mysql");
+    VirtualNetworkFunctionDescriptor web = vnfd("2", "web");
+    networkService.addVnfd(mysql);
+    networkService.addVnfd(web);
+    networkService.addVnfd(vnfd("1", "mysql"));
+    assertEquals(Arrays.asList(mysql, web), networkService.getVnfdList());
+    assertSame(mysql, networkService.getVnfdByName("mysql"));
+    assertNull(networkService.getVnfdByName("lb"));
+  }
+
+  @Test
+  public void setVnfdListRebuildsTheIndex() {
+    NetworkService networkService = new NetworkService();
+    networkService.addVnfd(vnfd("1", "mysql"));
+    VirtualNetworkFunctionDescriptor web = vnfd("2", "web");
+    VirtualNetworkFunctionDescriptor secondWeb = vnfd("3", "web");
+    networkService.setVnfdList(Arrays.asList(web, secondWeb, vnfd("2", "web")));
+    assertEquals(Arrays.asList(web, secondWeb), networkService.getVnfdList());
+    assertNull(networkService.getVnfdByName("mysql"));
+    assertSame(web, networkService.getVnfdByName("web"));
+    // the id of the removed VNFD can be added again
+    networkService.addVnfd(vnfd("1", "mysql"));
+    assertEquals(3, networkService.getVnfdList().size());
+  }
+
+  @Test
+  public void vnfrsAreDeduplicatedById() {
+    NetworkService networkService = new NetworkService();
+    VirtualNetworkFunctionRecord mysql = vnfr("1", "mysql");
+    networkService.addVnfr(mysql);
+    networkService.addVnfr(vnfr("1", "mysql"));
+    assertEquals(Collections.singletonList(mysql), networkService.getVnfrList());
+    assertSame(mysql, networkService.getVnfrById("1"));
+    assertSame(mysql, networkService.getVnfrByName("mysql"));
+    assertEquals("mysql", networkService.getVnfTypeForName("mysql"));
+    assertEquals("", networkService.getVnfTypeForName("lb"));
+  }
+
+  @Test
+  public void firstVnfrWithADuplicateNameIsFound() {
+    NetworkService networkService = new NetworkService();
+    VirtualNetworkFunctionRecord first = vnfr("1", "web");
+    VirtualNetworkFunctionRecord second = vnfr("2", "web");
+    networkService.addVnfr(first);
+    networkService.addVnfr(second);
+    assertSame(first, networkService.getVnfrByName("web"));
+    assertSame(second, networkService.getVnfrById("2"));
+
+    // replacing the second one does not change the name lookup
+    VirtualNetworkFunctionRecord replacedSecond = vnfr("2", "web");
+    networkService.replaceVnfr(replacedSecond);
+    assertSame(first, networkService.getVnfrByName("web"));
+    assertSame(replacedSecond, networkService.getVnfrById("2"));
+
+    VirtualNetworkFunctionRecord replacedFirst = vnfr("1", "web");
+    networkService.replaceVnfr(replacedFirst);
+    assertSame(replacedFirst, networkService.getVnfrByName("web"));
+    assertEquals(Arrays.asList(replacedFirst, replacedSecond), networkService.getVnfrList());
+  }
+
+  @Test
+  public void replacingAMissingVnfrDoesNothing() {
+    NetworkService networkService = new NetworkService();
+    VirtualNetworkFunctionRecord mysql = vnfr("1", "mysql");
+    networkService.addVnfr(mysql);
+    networkService.replaceVnfr(vnfr("2", "web"));
+    assertEquals(Collections.singletonList(mysql), networkService.getVnfrList());
+    assertNull(networkService.getVnfrById("2"));
+    assertNull(networkService.getVnfrByName("web"));
+  }
+
+  @Test
+  public void replacingARenamedVnfr() {
+    NetworkService networkService = new NetworkService();
+    VirtualNetworkFunctionRecord mysql = vnfr("1", "mysql");
+    VirtualNetworkFunctionRecord web = vnfr("2", "web");
+    VirtualNetworkFunctionRecord secondMysql = vnfr("3", "mysql");
+    networkService.addVnfr(mysql);
+    networkService.addVnfr(web);
+    networkService.addVnfr(secondMysql);
+
+    // the name of the first mysql passes on to the second one
+    VirtualNetworkFunctionRecord database = vnfr("1", "database");
+    networkService.replaceVnfr(database);
+    assertSame(database, networkService.getVnfrByName("database"));
+    assertSame(secondMysql, networkService.getVnfrByName("mysql"));
+
+    // a VNFR renamed to the name of one added before it does not take over that name
+    VirtualNetworkFunctionRecord renamedMysql = vnfr("3", "web");
+    networkService.replaceVnfr(renamedMysql);
+    assertSame(web, networkService.getVnfrByName("web"));
+    assertNull(networkService.getVnfrByName("mysql"));
+    assertSame(renamedMysql, networkService.getVnfrById("3"));
+    assertEquals(Arrays.asList(database, web, renamedMysql), networkService.getVnfrList());
+  }
+}
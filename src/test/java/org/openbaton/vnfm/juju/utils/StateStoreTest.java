@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+public class StateStoreTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+
+  @Before
+  public void createDirectory() throws Exception {
+    directory = folder.newFolder("state");
+  }
+
+  private NetworkServiceMutation started(String vnfName) {
+    return new NetworkServiceMutation.SetVnfStatus("ns", vnfName, VnfState.STARTED);
+  }
+
+  private Map<String, NetworkService> recover() throws Exception {
+    Map<String, NetworkService> networkServices = new HashMap<>();
+    StateStore stateStore = new StateStore(directory, 1000, false);
+    stateStore.recover(networkServices);
+    stateStore.close();
+    return networkServices;
+  }
+
+  private Set<String> getVnfs(Map<String, NetworkService> networkServices) {
+    return networkServices.get("ns").getVnfStatusMap().keySet();
+  }
+
+  /**
+   * Append one record per VNF and return the offsets at which the records end.
+   *
+   * @param vnfNames
+   * @return
+   */
+  private List<Long> append(String... vnfNames) throws Exception {
+    StateStore stateStore = new StateStore(directory, 1000, true);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    List<Long> offsets = new ArrayList<>();
+    File journal = getLastJournal();
+    for (String vnfName : vnfNames) {
+      stateStore.append(started(vnfName));
+      offsets.add(journal.length());
+    }
+    stateStore.close();
+    return offsets;
+  }
+
+  private File getLastJournal() {
+    File last = null;
+    for (File file : directory.listFiles()) {
+      if (file.getName().startsWith("journal-")
+          && (last == null || file.getName().compareTo(last.getName()) > 0)) last = file;
+    }
+    return last;
+  }
+
+  private void overwrite(File file, long offset, byte[] bytes) throws Exception {
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.seek(offset);
+      out.write(bytes);
+    }
+  }
+
+  @Test
+  public void changesSurviveRestart() throws Exception {
+    append("vnf0", "vnf1");
+    StateStore stateStore = new StateStore(directory, 1000, false);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    stateStore.append(new NetworkServiceMutation.SetModel("ns", "controller:ns"));
+    stateStore.append(new NetworkServiceMutation.SetModel("other", "controller:other"));
+    stateStore.append(new NetworkServiceMutation.Remove("other"));
+    stateStore.close();
+
+    Map<String, NetworkService> networkServices = recover();
+    assertEquals(Collections.singleton("ns"), networkServices.keySet());
+    assertEquals(new HashSet<>(Arrays.asList("vnf0", "vnf1")), getVnfs(networkServices));
+    assertEquals("controller:ns", networkServices.get("ns").getModel());
+  }
+
+  @Test
+  public void tornTailIsIgnored() throws Exception {
+    List<Long> offsets = append("vnf0", "vnf1", "vnf2");
+    File journal = getLastJournal();
+    try (RandomAccessFile out = new RandomAccessFile(journal, "rw")) {
+      out.setLength(offsets.get(2) - 5);
+    }
+    assertEquals(new HashSet<>(Arrays.asList("vnf0", "vnf1")), getVnfs(recover()));
+
+    // the records of the journals written after the torn one are replayed as well
+    append("vnf3");
+    assertEquals(new HashSet<>(Arrays.asList("vnf0", "vnf1", "vnf3")), getVnfs(recover()));
+  }
+
+  @Test
+  public void damagedRecordIsSkipped() throws Exception {
+    List<Long> offsets = append("vnf0", "vnf1", "vnf2");
+    // damage the serialized mutation of the second record
+    overwrite(getLastJournal(), offsets.get(1) - 10, new byte[] {1, 2, 3});
+    assertEquals(new HashSet<>(Arrays.asList("vnf0", "vnf2")), getVnfs(recover()));
+  }
+
+  @Test
+  public void damagedLengthIsSkipped() throws Exception {
+    List<Long> offsets = append("vnf0", "vnf1", "vnf2", "vnf3");
+    // the length of the second record claims that it extends beyond the end of the journal
+    overwrite(getLastJournal(), offsets.get(0) + 4, new byte[] {0, 0x7f, 0, 0});
+    // the marker of the third record is overwritten
+    overwrite(getLastJournal(), offsets.get(1), new byte[] {0});
+    assertEquals(new HashSet<>(Arrays.asList("vnf0", "vnf3")), getVnfs(recover()));
+  }
+
+  @Test
+  public void snapshotReplacesJournals() throws Exception {
+    StateStore stateStore = new StateStore(directory, 3, false);
+    Map<String, NetworkService> networkServices = new HashMap<>();
+    stateStore.recover(networkServices);
+    NetworkService networkService = new NetworkService();
+    networkService.setId("ns");
+    for (String vnfName : Arrays.asList("vnf0", "vnf1", "vnf2")) {
+      NetworkServiceMutation mutation = started(vnfName);
+      mutation.apply(networkService);
+      stateStore.append(mutation);
+    }
+    assertTrue(stateStore.isSnapshotDue());
+    stateStore.snapshot(NetworkServiceMutation.describe(networkService));
+    assertFalse(stateStore.isSnapshotDue());
+    stateStore.append(started("vnf3"));
+    // waits for the snapshot
+    stateStore.close();
+
+    assertTrue(new File(directory, "snapshot").isFile());
+    assertFalse(new File(directory, "journal-0").exists());
+    assertTrue(new File(directory, "journal-1").exists());
+    assertEquals(new HashSet<>(Arrays.asList("vnf0", "vnf1", "vnf2", "vnf3")), getVnfs(recover()));
+  }
+
+  /**
+   * Write a snapshot of a network service with the passed number of VNFs and return the store,
+   * recovered with the passed snapshot interval.
+   *
+   * @param vnfs
+   * @param snapshotInterval
+   * @return
+   */
+  private StateStore recoverSnapshot(int vnfs, int snapshotInterval) throws Exception {
+    StateStore stateStore = new StateStore(directory, 1, false);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    stateStore.append(started("vnf0"));
+    stateStore.snapshot(NetworkServiceMutation.describe(TestRecords.networkService("ns", vnfs)));
+    stateStore.close();
+    stateStore = new StateStore(directory, snapshotInterval, false);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    return stateStore;
+  }
+
+  @Test
+  public void snapshotRecordsAreNotCountedOnRecovery() throws Exception {
+    StateStore stateStore = recoverSnapshot(20, 3);
+    assertFalse(stateStore.isSnapshotDue());
+    stateStore.append(started("vnf1"));
+    assertFalse(stateStore.isSnapshotDue());
+    stateStore.close();
+  }
+
+  @Test
+  public void snapshotIntervalGrowsWithTheState() throws Exception {
+    StateStore stateStore = recoverSnapshot(50, 1);
+    long snapshotLength = new File(directory, "snapshot").length();
+    File journal = getLastJournal();
+    int appended = 0;
+    while (!stateStore.isSnapshotDue()) {
+      stateStore.append(started("vnf" + appended++));
+      assertTrue(journal.length() < snapshotLength);
+    }
+    // the journal has to reach half the size of the snapshot, not just the interval
+    assertTrue(appended > 1);
+    assertTrue(journal.length() >= snapshotLength / 2);
+    stateStore.close();
+  }
+
+  @Test
+  public void damagedSnapshotRecordOnlyLosesItsNetworkService() throws Exception {
+    StateStore stateStore = new StateStore(directory, 1, false);
+    stateStore.recover(new HashMap<String, NetworkService>());
+    List<NetworkServiceMutation> snapshot = new ArrayList<>();
+    for (String nsId : Arrays.asList("ns0", "ns1", "ns2"))
+      snapshot.addAll(NetworkServiceMutation.describe(TestRecords.networkService(nsId, 3)));
+    stateStore.snapshot(snapshot);
+    stateStore.close();
+
+    // behind the covered generation there is one record of a similar size per network service, so
+    // the middle of the snapshot is in the record of ns1
+    File file = new File(directory, "snapshot");
+    overwrite(file, 8 + (file.length() - 8) / 2, new byte[] {1, 2, 3});
+    Map<String, NetworkService> networkServices = recover();
+    assertEquals(new HashSet<>(Arrays.asList("ns0", "ns2")), networkServices.keySet());
+    assertEquals(3, networkServices.get("ns2").getVnfrList().size());
+  }
+}
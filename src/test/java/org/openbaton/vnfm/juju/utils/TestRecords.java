@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import org.openbaton.catalogue.mano.common.Event;
+import org.openbaton.catalogue.mano.common.LifecycleEvent;
+import org.openbaton.catalogue.mano.descriptor.VNFComponent;
+import org.openbaton.catalogue.mano.descriptor.VNFDConnectionPoint;
+import org.openbaton.catalogue.mano.descriptor.VirtualDeploymentUnit;
+import org.openbaton.catalogue.mano.record.VirtualNetworkFunctionRecord;
+import org.openbaton.catalogue.nfvo.Configuration;
+import org.openbaton.catalogue.nfvo.ConfigurationParameter;
+import org.openbaton.catalogue.nfvo.Script;
+import org.openbaton.catalogue.nfvo.VNFPackage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Creates the catalogue objects and network services used by the tests. */
+public class TestRecords {
+
+  /**
+   * Create a VNFR with one VDU.
+   *
+   * @param nsId the id of the network service the VNFR belongs to
+   * @param name
+   * @param type
+   * @param units the number of VNFCs of the VDU
+   * @param virtualLinks the virtual links every VNFC is connected to
+   * @return
+   */
+  public static VirtualNetworkFunctionRecord vnfr(
+      String nsId, String name, String type, int units, String... virtualLinks) {
+    VirtualNetworkFunctionRecord vnfr = new VirtualNetworkFunctionRecord();
+    vnfr.setId("id-" + name);
+    vnfr.setName(name);
+    vnfr.setType(type);
+    vnfr.setVendor("fokus");
+    vnfr.setParent_ns_id(nsId);
+    VirtualDeploymentUnit vdu = new VirtualDeploymentUnit();
+    Set<VNFComponent> components = new LinkedHashSet<>();
+    for (int i = 0; i < units; i++) {
+      VNFComponent component = new VNFComponent();
+      Set<VNFDConnectionPoint> connectionPoints = new LinkedHashSet<>();
+      for (String virtualLink : virtualLinks) {
+        VNFDConnectionPoint connectionPoint = new VNFDConnectionPoint();
+        connectionPoint.setVirtual_link_reference(virtualLink);
+        connectionPoints.add(connectionPoint);
+      }
+      component.setConnection_point(connectionPoints);
+      components.add(component);
+    }
+    vdu.setVnfc(components);
+    vnfr.setVdu(new LinkedHashSet<>(Collections.singletonList(vdu)));
+    vnfr.setConfigurations(new Configuration());
+    vnfr.setLifecycle_event(new LinkedHashSet<LifecycleEvent>());
+    return vnfr;
+  }
+
+  /**
+   * Add a configuration parameter to a VNFR.
+   *
+   * @param vnfr
+   * @param key
+   * @param value
+   */
+  public static void addParameter(VirtualNetworkFunctionRecord vnfr, String key, String value) {
+    ConfigurationParameter parameter = new ConfigurationParameter();
+    parameter.setConfKey(key);
+    parameter.setValue(value);
+    vnfr.getConfigurations().getConfigurationParameters().add(parameter);
+  }
+
+  /**
+   * Add a lifecycle event with the passed scripts to a VNFR.
+   *
+   * @param vnfr
+   * @param event
+   * @param scripts
+   */
+  public static void addLifecycleEvent(
+      VirtualNetworkFunctionRecord vnfr, Event event, String... scripts) {
+    LifecycleEvent lifecycleEvent = new LifecycleEvent();
+    lifecycleEvent.setEvent(event);
+    lifecycleEvent.setLifecycle_events(new ArrayList<>(Arrays.asList(scripts)));
+    vnfr.getLifecycle_event().add(lifecycleEvent);
+  }
+
+  /**
+   * Create a VNF package containing the passed scripts. The content of a script is its name.
+   *
+   * @param scripts
+   * @return
+   */
+  public static VNFPackage vnfPackage(String... scripts) {
+    VNFPackage vnfPackage = new VNFPackage();
+    Set<Script> scriptSet = new LinkedHashSet<>();
+    for (String name : scripts) {
+      Script script = new Script();
+      script.setName(name);
+      script.setPayload(("#!/bin/bash\necho " + name + "\n").getBytes(StandardCharsets.UTF_8));
+      scriptSet.add(script);
+    }
+    vnfPackage.setScripts(scriptSet);
+    return vnfPackage;
+  }
+
+  /**
+   * Generate a network service of the passed size. Every VNF has three configuration parameters,
+   * INSTANTIATE, CONFIGURE and START lifecycle events and depends on up to two of the VNFs created
+   * before it, so that the dependency graph grows with the number of VNFs.
+   *
+   * @param nsId
+   * @param numberOfVnfs
+   * @return
+   */
+  public static NetworkService networkService(String nsId, int numberOfVnfs) {
+    NetworkService networkService = new NetworkService();
+    networkService.setId(nsId);
+    for (int i = 0; i < numberOfVnfs; i++) {
+      String name = "vnf" + i;
+      VirtualNetworkFunctionRecord vnfr =
+          vnfr(nsId, name, "type" + i, 1 + i % 3, "private", "mgmt");
+      addParameter(vnfr, "port", String.valueOf(8000 + i));
+      addParameter(vnfr, "user", "user" + i);
+      addParameter(vnfr, "password", "secret" + i);
+      addLifecycleEvent(vnfr, Event.INSTANTIATE, "install.sh");
+      List<String> configure = new ArrayList<>();
+      for (int source = Math.max(0, i - 2); source < i; source++) {
+        networkService.addDependency(name, "vnf" + source, Arrays.asList("port", "user"));
+        configure.add("type" + source + "_configure.sh");
+      }
+      addLifecycleEvent(vnfr, Event.CONFIGURE, configure.toArray(new String[configure.size()]));
+      addLifecycleEvent(vnfr, Event.START, "start.sh");
+      networkService.addVnfr(vnfr);
+      networkService.addVnfPackage(vnfPackage("install.sh", "start.sh"), name);
+    }
+    return networkService;
+  }
+}
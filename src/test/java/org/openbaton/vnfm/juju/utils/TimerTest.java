@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TimerTest {
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  @Test
+  public void empty() {
+    Timer timer = new Timer();
+    assertEquals(0, timer.getCount());
+    assertEquals(0, timer.getMeanMillis(), 0);
+    assertEquals(0, timer.getMaxMillis(), 0);
+    assertEquals(0, timer.get99thPercentileMillis(), 0);
+  }
+
+  @Test
+  public void bucketBoundsAreInclusive() {
+    Timer timer = new Timer();
+    timer.update(millis(1));
+    timer.update(millis(2));
+    timer.update(millis(3));
+    timer.update(millis(5000000));
+    long[] expected = new long[Timer.BUCKETS.length + 1];
+    expected[0] = 1;
+    expected[1] = 1;
+    expected[2] = 1;
+    expected[Timer.BUCKETS.length] = 1;
+    assertArrayEquals(expected, timer.getBucketCounts());
+    assertEquals(4, timer.getCount());
+    assertEquals(5000006, timer.getTotalMillis(), 1e-6);
+    assertEquals(5000006 / 4.0, timer.getMeanMillis(), 1e-6);
+    assertEquals(5000000, timer.getMaxMillis(), 1e-6);
+  }
+
+  @Test
+  public void fractionsOfAMillisecondAreNotRoundedDown() {
+    Timer timer = new Timer();
+    timer.update(millis(1));
+    timer.update(millis(1) + 1);
+    timer.update(1900000);
+    timer.update(millis(2) + 1);
+    long[] counts = timer.getBucketCounts();
+    assertEquals(1, counts[0]);
+    assertEquals(2, counts[1]);
+    assertEquals(1, counts[2]);
+  }
+
+  @Test
+  public void percentilesAreBucketBounds() {
+    Timer timer = new Timer();
+    for (int i = 0; i < 90; i++) timer.update(millis(15));
+    for (int i = 0; i < 9; i++) timer.update(millis(150));
+    timer.update(millis(1500));
+    assertEquals(20, timer.get50thPercentileMillis(), 0);
+    assertEquals(200, timer.get95thPercentileMillis(), 0);
+    assertEquals(200, timer.get99thPercentileMillis(), 0);
+
+    timer.update(millis(1500));
+    // the bucket bound of 2000 is above the maximum
+    assertEquals(1500, timer.get99thPercentileMillis(), 0);
+  }
+
+  /** A percentile is never reported above the maximum, also not beyond the last bound. */
+  @Test
+  public void percentilesAreCappedByTheMaximum() {
+    Timer timer = new Timer();
+    timer.update(millis(12));
+    assertEquals(12, timer.get50thPercentileMillis(), 1e-6);
+
+    timer = new Timer();
+    timer.update(millis(3000000));
+    assertEquals(3000000, timer.get99thPercentileMillis(), 1e-6);
+  }
+
+  @Test
+  public void concurrentUpdates() throws Exception {
+    final Timer timer = new Timer();
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    for (int t = 0; t < 4; t++) {
+      final int thread = t;
+      threads.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (int i = 0; i < 10000; i++) timer.update(millis(thread * 100 + i % 100));
+            }
+          });
+    }
+    threads.shutdown();
+    threads.awaitTermination(1, TimeUnit.MINUTES);
+    assertEquals(40000, timer.getCount());
+    long total = 0;
+    for (long count : timer.getBucketCounts()) total += count;
+    assertEquals(40000, total);
+    assertEquals(399, timer.getMaxMillis(), 1e-6);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+import org.openbaton.catalogue.nfvo.Action;
+import org.openbaton.catalogue.nfvo.messages.Interfaces.NFVMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmGenericMessage;
+import org.openbaton.catalogue.nfvo.messages.OrVnfmStartStopMessage;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+public class TypedJsonAdapterTest {
+
+  private static final Type MUTATIONS_TYPE =
+      new TypeToken<List<NetworkServiceMutation>>() {}.getType();
+
+  /** A mutation that the adapter of the NetworkServiceMutations does not know. */
+  private static class UnknownMutation extends NetworkServiceMutation {
+
+    UnknownMutation(String nsId) {
+      super(nsId);
+    }
+
+    @Override
+    public void apply(NetworkService networkService) {}
+  }
+
+  private Gson gson =
+      new GsonBuilder()
+          .registerTypeHierarchyAdapter(
+              NetworkServiceMutation.class, NetworkServiceMutation.jsonAdapter())
+          .registerTypeHierarchyAdapter(
+              NFVMessage.class,
+              new TypedJsonAdapter<>(
+                  Arrays.<Class<? extends NFVMessage>>asList(OrVnfmGenericMessage.class)))
+          .create();
+
+  @Test
+  public void describedNetworkServiceIsRebuiltFromJson() {
+    NetworkService networkService = TestRecords.networkService("ns", 5);
+    networkService.setVnfStatus("vnf0", VnfState.STARTED);
+    networkService.setModel("controller:ns");
+    networkService.addCharm("haproxy");
+    List<NetworkServiceMutation> mutations = new ArrayList<>();
+    mutations.add(new NetworkServiceMutation.Remove("ns"));
+    mutations.addAll(NetworkServiceMutation.describe(networkService));
+
+    List<NetworkServiceMutation> read =
+        gson.fromJson(gson.toJson(mutations, MUTATIONS_TYPE), MUTATIONS_TYPE);
+    assertEquals(mutations.size(), read.size());
+    for (int i = 0; i < mutations.size(); i++)
+      assertEquals(mutations.get(i).getClass(), read.get(i).getClass());
+
+    NetworkService rebuilt = new NetworkService();
+    rebuilt.setId("ns");
+    for (NetworkServiceMutation mutation : read.subList(1, read.size())) mutation.apply(rebuilt);
+    // the catalogue classes do not implement equals
+    Gson plain = new Gson();
+    assertEquals(plain.toJson(networkService.getVnfrList()), plain.toJson(rebuilt.getVnfrList()));
+    assertEquals(networkService.getDependencies(), rebuilt.getDependencies());
+    assertEquals(networkService.getVnfStatusMap(), rebuilt.getVnfStatusMap());
+    assertEquals(
+        plain.toJson(networkService.getVnfPackageMap()), plain.toJson(rebuilt.getVnfPackageMap()));
+    assertEquals(networkService.getCharms(), rebuilt.getCharms());
+    assertEquals("controller:ns", rebuilt.getModel());
+  }
+
+  @Test
+  public void messageIsReadAsItsClass() {
+    NFVMessage message =
+        new OrVnfmGenericMessage(
+            TestRecords.vnfr("ns", "web", "www", 1, "private"), Action.RELEASE_RESOURCES);
+    NFVMessage read = gson.fromJson(gson.toJson(message, NFVMessage.class), NFVMessage.class);
+    assertEquals(OrVnfmGenericMessage.class, read.getClass());
+    assertEquals(Action.RELEASE_RESOURCES, read.getAction());
+    assertEquals("web", ((OrVnfmGenericMessage) read).getVnfr().getName());
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void unknownClassIsNotRead() {
+    gson.fromJson(
+        "[{\"type\": \"java.util.concurrent.ScheduledThreadPoolExecutor\", \"value\": {}}]",
+        MUTATIONS_TYPE);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void classOfAnotherHierarchyIsNotRead() {
+    gson.fromJson(
+        "{\"type\": \"" + NetworkServiceMutation.Remove.class.getName() + "\", \"value\": {}}",
+        NFVMessage.class);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void unknownClassIsNotWritten() {
+    gson.toJson(Collections.singletonList(new UnknownMutation("ns")), MUTATIONS_TYPE);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void unknownMessageIsNotWritten() {
+    gson.toJson(new OrVnfmStartStopMessage(), NFVMessage.class);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 Open Baton (http://www.openbaton.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openbaton.vnfm.juju.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+public class WorkspaceTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File root;
+  private Workspace workspace;
+
+  @Before
+  public void createRoot() throws Exception {
+    root = new File(folder.getRoot(), "workspace");
+  }
+
+  @After
+  public void shutdown() {
+    if (workspace != null) workspace.shutdown();
+  }
+
+  /**
+   * Returns the names in the root directory once the background deletions are done.
+   *
+   * @return
+   */
+  private String[] awaitDeletions() throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (true) {
+      String[] names = root.list();
+      Arrays.sort(names);
+      boolean pending = false;
+      for (String name : names) pending |= name.startsWith(".deleted-");
+      if (!pending) return names;
+      assertTrue("directories are not deleted", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private File createFile(File directory, String name) throws Exception {
+    directory.mkdirs();
+    File file = new File(directory, name);
+    assertTrue(file.createNewFile());
+    return file;
+  }
+
+  @Test
+  public void rootIsCreated() throws Exception {
+    workspace = new Workspace(root);
+    assertTrue(root.isDirectory());
+    assertEquals(new File(root, "ns"), workspace.getDirectory("ns"));
+    assertFalse(workspace.getDirectory("ns").exists());
+  }
+
+  @Test
+  public void sweepDeletesLeftovers() throws Exception {
+    createFile(new File(root, "ns-1/web/hooks"), "install");
+    createFile(new File(root, "ns-2"), "bundle.yaml");
+    // a directory whose deletion was interrupted by the previous run
+    createFile(new File(root, ".deleted-ns-3-1-0"), "bundle.yaml");
+    createFile(root, "stray");
+    workspace = new Workspace(root);
+    assertFalse(new File(root, "ns-1").exists());
+    assertFalse(new File(root, "ns-2").exists());
+    assertArrayEquals(new String[0], awaitDeletions());
+  }
+
+  @Test
+  public void leasedDirectoryIsKeptUntilTheLastRelease() throws Exception {
+    workspace = new Workspace(root);
+    File directory = workspace.acquire("ns");
+    assertEquals(workspace.getDirectory("ns"), directory);
+    assertTrue(directory.isDirectory());
+    createFile(directory, "bundle.yaml");
+    assertEquals(directory, workspace.acquire("ns"));
+
+    workspace.release("ns");
+    assertTrue(new File(directory, "bundle.yaml").exists());
+    workspace.release("ns");
+    assertFalse(directory.exists());
+    assertArrayEquals(new String[0], awaitDeletions());
+  }
+
+  @Test
+  public void releasedDirectoryCanBeAcquiredAgainRightAway() throws Exception {
+    workspace = new Workspace(root);
+    createFile(workspace.acquire("ns"), "bundle.yaml");
+    workspace.release("ns");
+    File directory = workspace.acquire("ns");
+    assertTrue(directory.isDirectory());
+    assertArrayEquals(new String[0], directory.list());
+    assertArrayEquals(new String[] {"ns"}, awaitDeletions());
+  }
+
+  @Test
+  public void releaseWithoutLeaseIsIgnored() throws Exception {
+    workspace = new Workspace(root);
+    File directory = workspace.acquire("ns");
+    workspace.release("other");
+    assertTrue(directory.isDirectory());
+    workspace.release("ns");
+    workspace.release("ns");
+    assertFalse(directory.exists());
+    assertArrayEquals(new String[0], awaitDeletions());
+  }
+
+  @Test
+  public void otherNetworkServicesAreNotAffected() throws Exception {
+    workspace = new Workspace(root);
+    createFile(workspace.acquire("ns-1"), "bundle.yaml");
+    createFile(workspace.acquire("ns-2"), "bundle.yaml");
+    workspace.release("ns-1");
+    assertArrayEquals(new String[] {"ns-2"}, awaitDeletions());
+    assertTrue(new File(root, "ns-2/bundle.yaml").exists());
+  }
+}
@@ -0,0 +1,16 @@
+#!/bin/bash
+#
+# Fake git executable of the load harness. Every command sleeps for the configured latency and fails
+# at the configured rate, otherwise the real git from the PATH is executed. The @...@ placeholders
+# are replaced by the LoadHarness.
+#
+latency=@LATENCY@
+# failures per 10000 commands
+failures=@FAILURES@
+
+sleep $latency
+if [ $((RANDOM % 10000)) -lt $failures ]; then
+  echo "fatal: injected failure of git $1" >&2
+  exit 128
+fi
+exec git "$@"
@@ -0,0 +1,74 @@
+#!/bin/bash
+#
+# Fake juju executable of the load harness. Every command sleeps for the configured latency, deploy,
+# expose and add-relation fail at the configured rate. The deployed applications are kept as files
+# in the state directory, one directory per model, and juju status reports each of them with one
+# active unit on its own machine. Bundles are accepted but their applications are not tracked.
+# Every command is appended to the log without the model. The @...@ placeholders are replaced by
+# the LoadHarness.
+#
+latency=@LATENCY@
+# failures per 10000 commands
+failures=@FAILURES@
+state=@STATE@
+log=@LOG@
+
+command=$1
+shift
+model=default
+if [ "$1" = "-m" ]; then
+  model=$2
+  shift 2
+fi
+echo "$command $*" >> "$log"
+applications=$state/$model
+mkdir -p "$applications"
+sleep $latency
+
+fail() {
+  if [ $((RANDOM % 10000)) -lt $failures ]; then
+    echo "ERROR injected failure of juju $command" >&2
+    exit 1
+  fi
+}
+
+case $command in
+  deploy)
+    fail
+    case $1 in
+      *.yaml) ;;
+      *) touch "$applications/$(basename "$1")" ;;
+    esac
+    ;;
+  expose|add-relation)
+    fail
+    ;;
+  remove-application)
+    for application in "$@"; do rm -f "$applications/$application"; done
+    ;;
+  status)
+    # status --format=json -o <file>
+    {
+      echo '{"applications": {'
+      separator=
+      for file in "$applications"/*; do
+        [ -e "$file" ] || continue
+        application=$(basename "$file")
+        printf '%s"%s": {"application-status": {"current": "active"}, "units": {"%s/0": ' \
+          "$separator" "$application" "$application"
+        printf '{"workload-status": {"current": "active"}, "juju-status": {"current": "idle"}, '
+        printf '"machine": "%s"}}}\n' "$application"
+        separator=,
+      done
+      echo '}}'
+    } > "$3"
+    ;;
+  add-model)
+    # add-model <model> -c <controller> --no-switch
+    mkdir -p "$state/$1"
+    ;;
+  destroy-model)
+    # destroy-model -y <model>
+    rm -rf "$state/$2"
+    ;;
+esac